@@ -0,0 +1,85 @@
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.ArrayList;
+
+/**
+ * A block of transactions, chained to its parent by the parent's hash. The coinbase transaction
+ * pays {@link #COINBASE} to the block's creator; it spends nothing, but names the parent block as
+ * its input so that coinbases of the same address on different blocks have different hashes.
+ * Like a transaction, a block must have its hash {@link #computeHash() computed} once complete.
+ */
+public class Block {
+
+    public static final double COINBASE = 25;
+
+    private byte[] hash;
+    private byte[] prevBlockHash;
+    private Transaction coinbase;
+    private ArrayList<Transaction> txs;
+
+    /** Creates an empty block on the block of hash {@code prevHash}, null for a genesis block, paying {@code address} */
+    public Block(byte[] prevHash, PublicKey address) {
+        prevBlockHash = prevHash;
+        coinbase = new Transaction();
+        coinbase.addInput(prevHash, 0);
+        coinbase.addOutput(COINBASE, address);
+        coinbase.finalize();
+        txs = new ArrayList<Transaction>();
+    }
+
+    public Transaction getCoinbase() {
+        return coinbase;
+    }
+
+    public byte[] getHash() {
+        return hash;
+    }
+
+    public byte[] getPrevBlockHash() {
+        return prevBlockHash;
+    }
+
+    public ArrayList<Transaction> getTransactions() {
+        return txs;
+    }
+
+    public Transaction getTransaction(int index) {
+        return txs.get(index);
+    }
+
+    public void addTransaction(Transaction tx) {
+        txs.add(tx);
+    }
+
+    /** @return the parent's hash followed by the raw coinbase and transactions */
+    public byte[] getRawBlock() {
+        ArrayList<byte[]> parts = new ArrayList<byte[]>();
+        if (prevBlockHash != null)
+            parts.add(prevBlockHash);
+        parts.add(coinbase.getRawTx());
+        for (Transaction tx : txs)
+            parts.add(tx.getRawTx());
+        int length = 0;
+        for (byte[] part : parts)
+            length += part.length;
+        byte[] rawBlock = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, rawBlock, offset, part.length);
+            offset += part.length;
+        }
+        return rawBlock;
+    }
+
+    /** Sets the hash of the block to the SHA-256 hash of {@link #getRawBlock()} */
+    public void computeHash() {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            md.update(getRawBlock());
+            hash = md.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A tree of recent blocks, rooted at the genesis block until the chain grows past the cut-off
+ * age. Each block keeps its UTXO pool as a {@link UTXOPool#layer() layer} over its parent's: the
+ * outputs it created and spent, not a copy of the whole pool. A block is added only if every one
+ * of its transactions is valid on the pool of its parent, checked by {@link TxValidator} in the
+ * order of {@link TxSelectionStrategies#firstCome()}; the coinbase is spendable from the next
+ * block on.
+ * <p>
+ * A new block must be higher than {@code maxHeight - cutOffAge}, where {@code maxHeight} is the
+ * height of the longest branch, so blocks at lower heights can never get a child and are pruned.
+ * The pool of a pruned block is handed over to one of its children, which applies its changes to
+ * it in place and becomes flat; its other children, forks at the cut-off, flatten copies. The
+ * tree therefore holds at most one flat pool per retained root and layers at most
+ * {@code cutOffAge} deep, whatever the length of the chain.
+ */
+public class BlockChain {
+
+    public static final int CUT_OFF_AGE = 10;
+
+    /** A block of the tree */
+    private static class Node {
+        final Block block;
+        final List<Node> children = new ArrayList<>();
+        final int height;
+        /** The UTXO pool after this block, its coinbase included */
+        final UTXOPool utxoPool;
+
+        Node(Block block, int height, UTXOPool utxoPool) {
+            this.block = block;
+            this.height = height;
+            this.utxoPool = utxoPool;
+        }
+    }
+
+    private final int cutOffAge;
+    private final HashMap<ByteBuffer, Node> nodes = new HashMap<>();
+    private List<Node> roots = new ArrayList<>();
+    private Node maxHeightNode;
+
+    /** Creates a chain with only {@code genesisBlock}, whose coinbase is the only UTXO */
+    public BlockChain(Block genesisBlock) {
+        this(genesisBlock, CUT_OFF_AGE);
+    }
+
+    /**
+     * Creates a chain with only {@code genesisBlock} that accepts blocks higher than its maximum
+     * height minus {@code cutOffAge}
+     */
+    public BlockChain(Block genesisBlock, int cutOffAge) {
+        if (cutOffAge < 1) {
+            throw new IllegalArgumentException("Cut-off age must be positive: " + cutOffAge);
+        }
+        this.cutOffAge = cutOffAge;
+        UTXOPool utxoPool = new UTXOPool();
+        addCoinbase(genesisBlock, utxoPool);
+        Node genesis = new Node(genesisBlock, 1, utxoPool);
+        nodes.put(key(genesisBlock.getHash()), genesis);
+        roots.add(genesis);
+        maxHeightNode = genesis;
+    }
+
+    /** @return the block at the maximum height, the oldest one if there are several */
+    public Block getMaxHeightBlock() {
+        return maxHeightNode.block;
+    }
+
+    /** @return a copy of the UTXO pool after the block at the maximum height */
+    public UTXOPool getMaxHeightUTXOPool() {
+        return new UTXOPool(maxHeightNode.utxoPool);
+    }
+
+    public int getMaxHeight() {
+        return maxHeightNode.height;
+    }
+
+    /** @return the number of blocks in the tree */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Adds {@code block} to the tree if its hash was {@link Block#computeHash() computed}, its
+     * parent is in the tree, it is higher than the maximum height minus the cut-off age and all of
+     * its transactions are valid; a block with no parent is never added, there is only one genesis
+     * block.
+     *
+     * @return true if the block was added
+     */
+    public boolean addBlock(Block block) {
+        if (block == null || block.getHash() == null || block.getPrevBlockHash() == null) {
+            return false;
+        }
+        Node parent = nodes.get(key(block.getPrevBlockHash()));
+        if (parent == null || parent.height + 1 <= maxHeightNode.height - cutOffAge
+                || nodes.containsKey(key(block.getHash()))) {
+            return false;
+        }
+
+        UTXOPool utxoPool = parent.utxoPool.layer();
+        Transaction[] txs = block.getTransactions().toArray(new Transaction[0]);
+        Transaction[] accepted = TxSelectionStrategies.firstCome().select(txs, utxoPool, new TxValidator(utxoPool));
+        if (accepted.length != txs.length) {
+            return false;
+        }
+        addCoinbase(block, utxoPool);
+
+        Node node = new Node(block, parent.height + 1, utxoPool);
+        parent.children.add(node);
+        nodes.put(key(block.getHash()), node);
+        if (node.height > maxHeightNode.height) {
+            maxHeightNode = node;
+            prune();
+        }
+        return true;
+    }
+
+    /** Removes the blocks that can no longer get a child, handing their pools over to their children */
+    private void prune() {
+        int minHeight = maxHeightNode.height - cutOffAge;
+        while (roots.get(0).height < minHeight) {
+            List<Node> newRoots = new ArrayList<>();
+            for (Node root : roots) {
+                nodes.remove(key(root.block.getHash()));
+                for (int i = 1; i < root.children.size(); i++) {
+                    root.children.get(i).utxoPool.flattenLayer();
+                }
+                if (!root.children.isEmpty()) {
+                    root.children.get(0).utxoPool.absorbParent();
+                }
+                newRoots.addAll(root.children);
+            }
+            // the tree keeps the branch of maxHeightNode, so there always is a new root
+            roots = newRoots;
+        }
+    }
+
+    private static void addCoinbase(Block block, UTXOPool utxoPool) {
+        Transaction coinbase = block.getCoinbase();
+        for (int i = 0; i < coinbase.numOutputs(); i++) {
+            utxoPool.addUTXO(new UTXO(coinbase.getId(), i), coinbase.getOutput(i));
+        }
+    }
+
+    private static ByteBuffer key(byte[] hash) {
+        return ByteBuffer.wrap(hash);
+    }
+}
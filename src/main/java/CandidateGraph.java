@@ -0,0 +1,260 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dependency and conflict graph over the candidate transactions of an epoch, the common input of
+ * the fee maximizing selectors. Candidates are referred to by index; duplicates (by hash) and null
+ * entries of the proposed array are left out.
+ * <p>
+ * A candidate's parents are the candidates it spends outputs of, its fee is the value of its inputs
+ * (taken from the UTXO pool or from its parents' outputs) minus the value of its outputs, and its
+ * size is the length of {@link Transaction#getRawTx()}, computed once. Outputs claimed by more than
+ * one candidate form conflict groups, at most one member of a group can be selected. Candidates
+ * with an input that cannot be resolved or with a negative fee are marked unresolved.
+ */
+public class CandidateGraph {
+
+    private final Transaction[] txs;
+    private final int[][] parents;
+    private final int[][] children;
+    private final double[] fees;
+    private final int[] sizes;
+    private final boolean[] unresolved;
+    private final int[][] conflictGroups;
+    private final int[][] groupSpenders;
+    private final UTXO[] groupOutputs;
+
+    public CandidateGraph(Transaction[] possibleTxs, UTXOPool utxoPool) {
+        Map<Hash256, Integer> indexByHash = new HashMap<>(possibleTxs.length * 2);
+        List<Transaction> unique = new ArrayList<>(possibleTxs.length);
+        for (Transaction tx : possibleTxs) {
+            if (tx != null && indexByHash.putIfAbsent(tx.getId(), unique.size()) == null) {
+                unique.add(tx);
+            }
+        }
+        int n = unique.size();
+        txs = unique.toArray(new Transaction[n]);
+        parents = new int[n][];
+        children = new int[n][];
+        fees = new double[n];
+        sizes = new int[n];
+        unresolved = new boolean[n];
+
+        Map<UTXO, Integer> spender = new HashMap<>();
+        Map<UTXO, List<Integer>> conflicts = new HashMap<>();
+        int[] childCount = new int[n];
+        for (int i = 0; i < n; i++) {
+            Transaction tx = txs[i];
+            int[] txParents = new int[tx.numInputs()];
+            int parentCount = 0;
+            double fee = 0;
+            for (Transaction.Input in : tx.getInputs()) {
+                if (in.prevTxId == null || in.outputIndex < 0) {
+                    // claims no output at all, so can never be valid
+                    unresolved[i] = true;
+                    continue;
+                }
+                UTXO utxo = new UTXO(in.prevTxId, in.outputIndex);
+                Integer parent = indexByHash.get(in.prevTxId);
+                Transaction.Output prevTxOutput = parent == null
+                        ? utxoPool.getTxOutput(utxo)
+                        : txs[parent].getOutput(in.outputIndex);
+                if (prevTxOutput == null) {
+                    unresolved[i] = true;
+                } else {
+                    fee += prevTxOutput.value;
+                }
+                if (parent != null && !contains(txParents, parentCount, parent)) {
+                    txParents[parentCount++] = parent;
+                    childCount[parent]++;
+                }
+                Integer other = spender.putIfAbsent(utxo, i);
+                if (other != null && other != i) {
+                    List<Integer> spenders = conflicts.get(utxo);
+                    if (spenders == null) {
+                        spenders = new ArrayList<>();
+                        spenders.add(other);
+                        conflicts.put(utxo, spenders);
+                    }
+                    if (!spenders.contains(i)) {
+                        spenders.add(i);
+                    }
+                }
+            }
+            for (Transaction.Output out : tx.getOutputs()) {
+                fee -= out.value;
+            }
+            parents[i] = Arrays.copyOf(txParents, parentCount);
+            fees[i] = fee;
+            sizes[i] = tx.getRawTx().length;
+            unresolved[i] |= fee < 0;
+        }
+        for (int i = 0; i < n; i++) {
+            children[i] = new int[childCount[i]];
+        }
+        for (int i = 0; i < n; i++) {
+            for (int parent : parents[i]) {
+                children[parent][--childCount[parent]] = i;
+            }
+        }
+
+        groupSpenders = new int[conflicts.size()][];
+        groupOutputs = new UTXO[conflicts.size()];
+        int[] groupCount = new int[n];
+        int group = 0;
+        for (Map.Entry<UTXO, List<Integer>> conflict : conflicts.entrySet()) {
+            groupOutputs[group] = conflict.getKey();
+            groupSpenders[group] = conflict.getValue().stream().mapToInt(Integer::intValue).toArray();
+            for (int i : groupSpenders[group]) {
+                groupCount[i]++;
+            }
+            group++;
+        }
+        conflictGroups = new int[n][];
+        for (int i = 0; i < n; i++) {
+            conflictGroups[i] = new int[groupCount[i]];
+        }
+        for (group = 0; group < groupSpenders.length; group++) {
+            for (int i : groupSpenders[group]) {
+                conflictGroups[i][--groupCount[i]] = group;
+            }
+        }
+    }
+
+    /** @return the number of candidates */
+    public int length() {
+        return txs.length;
+    }
+
+    public Transaction getTransaction(int i) {
+        return txs[i];
+    }
+
+    /** @return the candidates {@code i} spends outputs of */
+    public int[] getParents(int i) {
+        return parents[i];
+    }
+
+    /** @return the candidates spending outputs of {@code i} */
+    public int[] getChildren(int i) {
+        return children[i];
+    }
+
+    public double getFee(int i) {
+        return fees[i];
+    }
+
+    /** @return the encoded size of candidate {@code i} */
+    public int getSize(int i) {
+        return sizes[i];
+    }
+
+    /** @return true if an input of {@code i} cannot be resolved or its outputs exceed its inputs */
+    public boolean isUnresolved(int i) {
+        return unresolved[i];
+    }
+
+    /** @return the number of outputs claimed by more than one candidate */
+    public int numConflictGroups() {
+        return groupSpenders.length;
+    }
+
+    /** @return the conflict groups candidate {@code i} is a member of */
+    public int[] getConflictGroups(int i) {
+        return conflictGroups[i];
+    }
+
+    /** @return the candidates claiming the output of conflict group {@code group} */
+    public int[] getGroupSpenders(int group) {
+        return groupSpenders[group];
+    }
+
+    /** @return the output claimed by the members of conflict group {@code group} */
+    public UTXO getGroupOutput(int group) {
+        return groupOutputs[group];
+    }
+
+    /** @return all candidates ordered so that parents come before their children */
+    public int[] topologicalOrder() {
+        int n = txs.length;
+        int[] order = new int[n];
+        int[] pendingParents = new int[n];
+        int tail = 0;
+        for (int i = 0; i < n; i++) {
+            pendingParents[i] = parents[i].length;
+            if (pendingParents[i] == 0) {
+                order[tail++] = i;
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            for (int child : children[order[head]]) {
+                if (--pendingParents[child] == 0) {
+                    order[tail++] = child;
+                }
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Validates every candidate on its own, against a scratch pool holding the outputs it claims
+     * from {@code utxoPool} or from its parents, so each signature is checked once whatever
+     * subset is chosen later.
+     *
+     * @return for each candidate, true if it and all its ancestors are valid
+     */
+    public boolean[] validate(UTXOPool utxoPool) {
+        return validate(utxoPool, new ValidationStats());
+    }
+
+    /** Like {@link #validate(UTXOPool)}, recording the outcomes in {@code stats} */
+    public boolean[] validate(UTXOPool utxoPool, ValidationStats stats) {
+        TxValidator validator = newValidator(utxoPool, new TxValidator(utxoPool, stats));
+        boolean[] valid = new boolean[txs.length];
+        for (int i : topologicalOrder()) {
+            valid[i] = !unresolved[i];
+            for (int parent : parents[i]) {
+                valid[i] &= valid[parent];
+            }
+            valid[i] = valid[i] && validator.validate(txs[i]) == ValidationResult.VALID;
+        }
+        return valid;
+    }
+
+    /**
+     * @return a validator like {@code validator} checking each resolved candidate on its own,
+     *         against a scratch pool holding the outputs the candidates claim from {@code utxoPool}
+     *         or from their parents
+     */
+    public TxValidator newValidator(UTXOPool utxoPool, TxValidator validator) {
+        UTXOPool claimed = new UTXOPool();
+        for (int i = 0; i < txs.length; i++) {
+            if (unresolved[i]) {
+                continue;
+            }
+            for (Transaction.Input in : txs[i].getInputs()) {
+                UTXO utxo = new UTXO(in.prevTxId, in.outputIndex);
+                Transaction.Output output = utxoPool.getTxOutput(utxo);
+                for (int parent : parents[i]) {
+                    if (txs[parent].getId().equals(in.prevTxId)) {
+                        output = txs[parent].getOutput(in.outputIndex);
+                    }
+                }
+                claimed.addUTXO(utxo, output);
+            }
+        }
+        return validator.forPool(claimed);
+    }
+
+    private static boolean contains(int[] values, int length, int value) {
+        for (int k = 0; k < length; k++) {
+            if (values[k] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,314 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An accepted epoch relayed as short transaction IDs, for receivers that already hold most of its
+ * transactions in their {@link Mempool}, after BIP 152 compact blocks. A short ID is the low
+ * {@value #SHORT_ID_BYTES} bytes of SipHash-2-4 of the transaction hash, keyed with the SHA-256 of
+ * a nonce the sender picks per epoch, so no one can craft transactions whose IDs collide on every
+ * relay. The sender may prefill transactions the receivers are unlikely to have. Encoded as
+ *
+ * <pre>
+ * long nonce, {@link MerkleTree} root of the epoch, int count, count short IDs,
+ * int prefilledCount, per prefilled transaction: int index, int length, {@link TransactionCodec} encoding
+ * </pre>
+ *
+ * with prefilled indexes increasing. The receiver matches the IDs against its own transactions
+ * with {@link #reconstruct}, asks the sender for the {@link Reconstruction#getMissing() missing}
+ * ones, answered by {@link #getTransactions(Transaction[], int[])}, and {@link
+ * Reconstruction#complete completes} the epoch. An ID matching two local transactions counts as
+ * missing, and the Merkle root of a completed epoch is checked against the sender's, so an ID
+ * collision can cost a round trip, never a wrong epoch.
+ */
+public class CompactEpoch {
+
+    public static final int SHORT_ID_BYTES = 6;
+    private static final int ROOT_BYTES = 32;
+
+    private static final long SHORT_ID_MASK = (1L << 8 * SHORT_ID_BYTES) - 1;
+
+    private final long nonce;
+    private final long k0;
+    private final long k1;
+    private final byte[] root;
+    private final long[] shortIds;
+    private final int[] prefilledIndexes;
+    private final Transaction[] prefilled;
+
+    private CompactEpoch(long nonce, byte[] root, long[] shortIds, int[] prefilledIndexes, Transaction[] prefilled) {
+        this.nonce = nonce;
+        this.root = root;
+        byte[] key = sha256(ByteBuffer.allocate(Long.BYTES).putLong(nonce).array());
+        ByteBuffer keyBuf = ByteBuffer.wrap(key).order(ByteOrder.LITTLE_ENDIAN);
+        this.k0 = keyBuf.getLong();
+        this.k1 = keyBuf.getLong();
+        this.shortIds = shortIds;
+        this.prefilledIndexes = prefilledIndexes;
+        this.prefilled = prefilled;
+    }
+
+    /**
+     * @return the compact form of {@code epoch} under {@code nonce}, which should be random and
+     *         new for every epoch, with the transactions at {@code prefilledIndexes} sent in full
+     */
+    public static CompactEpoch of(Transaction[] epoch, long nonce, int... prefilledIndexes) {
+        int[] indexes = prefilledIndexes.clone();
+        Arrays.sort(indexes);
+        Transaction[] prefilled = new Transaction[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            if (i > 0 && indexes[i] == indexes[i - 1]) {
+                throw new IllegalArgumentException("Index " + indexes[i] + " prefilled twice");
+            }
+            prefilled[i] = epoch[indexes[i]];
+        }
+        CompactEpoch compact = new CompactEpoch(nonce, MerkleTree.of(epoch).getRoot(),
+                new long[epoch.length], indexes, prefilled);
+        for (int i = 0; i < epoch.length; i++) {
+            compact.shortIds[i] = compact.shortId(epoch[i].getHash());
+        }
+        return compact;
+    }
+
+    /** @return the short ID of the transaction of hash {@code txHash} under this epoch's nonce */
+    public long shortId(byte[] txHash) {
+        return sipHash24(k0, k1, txHash) & SHORT_ID_MASK;
+    }
+
+    public long getNonce() {
+        return nonce;
+    }
+
+    /** @return the number of transactions of the epoch */
+    public int size() {
+        return shortIds.length;
+    }
+
+    /** @return the encoding of this epoch */
+    public byte[] encode(TransactionCodec codec) {
+        int size = Long.BYTES + ROOT_BYTES + Integer.BYTES + SHORT_ID_BYTES * shortIds.length + Integer.BYTES;
+        for (Transaction tx : prefilled) {
+            size += 2 * Integer.BYTES + codec.encodedSize(tx);
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.putLong(nonce);
+        buf.put(root);
+        buf.putInt(shortIds.length);
+        for (long id : shortIds) {
+            for (int b = SHORT_ID_BYTES - 1; b >= 0; b--) {
+                buf.put((byte) (id >>> 8 * b));
+            }
+        }
+        buf.putInt(prefilled.length);
+        for (int i = 0; i < prefilled.length; i++) {
+            buf.putInt(prefilledIndexes[i]);
+            buf.putInt(codec.encodedSize(prefilled[i]));
+            codec.encode(prefilled[i], buf);
+        }
+        return buf.array();
+    }
+
+    /**
+     * Reads a compact epoch from the position of {@code buf}.
+     *
+     * @throws IllegalArgumentException if the bytes are not a well-formed compact epoch
+     */
+    public static CompactEpoch decode(ByteBuffer buf, TransactionCodec codec) {
+        try {
+            long nonce = buf.getLong();
+            byte[] root = new byte[ROOT_BYTES];
+            buf.get(root);
+            int count = buf.getInt();
+            if (count < 0 || count > buf.remaining() / SHORT_ID_BYTES) {
+                throw new IllegalArgumentException("Invalid transaction count " + count);
+            }
+            long[] shortIds = new long[count];
+            for (int i = 0; i < count; i++) {
+                long id = 0;
+                for (int b = 0; b < SHORT_ID_BYTES; b++) {
+                    id = id << 8 | buf.get() & 0xff;
+                }
+                shortIds[i] = id;
+            }
+            int prefilledCount = buf.getInt();
+            if (prefilledCount < 0 || prefilledCount > count) {
+                throw new IllegalArgumentException("Invalid prefilled count " + prefilledCount);
+            }
+            int[] indexes = new int[prefilledCount];
+            Transaction[] prefilled = new Transaction[prefilledCount];
+            for (int i = 0; i < prefilledCount; i++) {
+                indexes[i] = buf.getInt();
+                if (indexes[i] < 0 || indexes[i] >= count || (i > 0 && indexes[i] <= indexes[i - 1])) {
+                    throw new IllegalArgumentException("Invalid prefilled index " + indexes[i]);
+                }
+                int length = buf.getInt();
+                if (length < 0 || length > buf.remaining()) {
+                    throw new IllegalArgumentException("Invalid transaction length " + length);
+                }
+                ByteBuffer frame = buf.slice();
+                frame.limit(length);
+                prefilled[i] = codec.decode(frame);
+                buf.position(buf.position() + length);
+            }
+            return new CompactEpoch(nonce, root, shortIds, indexes, prefilled);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated compact epoch", e);
+        }
+    }
+
+    /** @return the transactions at {@code indexes} of {@code epoch}, the sender's answer to a receiver's missing list */
+    public static Transaction[] getTransactions(Transaction[] epoch, int[] indexes) {
+        Transaction[] txs = new Transaction[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            txs[i] = epoch[indexes[i]];
+        }
+        return txs;
+    }
+
+    /** @return the epoch rebuilt from the prefilled transactions and the pending ones of {@code mempool} */
+    public Reconstruction reconstruct(Mempool mempool) {
+        return reconstruct(mempool.getTransactions());
+    }
+
+    /**
+     * @return the epoch rebuilt from the prefilled transactions and {@code known}, with the
+     *         transactions no or several of them match missing
+     */
+    public Reconstruction reconstruct(Iterable<Transaction> known) {
+        Transaction[] txs = new Transaction[shortIds.length];
+        boolean[] ambiguous = new boolean[shortIds.length];
+        for (int i = 0; i < prefilled.length; i++) {
+            txs[prefilledIndexes[i]] = prefilled[i];
+        }
+        // the index covers the epoch, usually much smaller than what the receiver knows
+        Map<Long, Integer> byShortId = new HashMap<>(2 * shortIds.length);
+        for (int i = 0; i < shortIds.length; i++) {
+            Integer previous = txs[i] == null ? byShortId.put(shortIds[i], i) : null;
+            if (previous != null) {
+                // two transactions of the epoch share an ID, neither can be told apart locally
+                ambiguous[previous] = true;
+                ambiguous[i] = true;
+            }
+        }
+        for (Transaction tx : known) {
+            Integer i = byShortId.get(shortId(tx.getHash()));
+            if (i == null || ambiguous[i]) {
+                continue;
+            }
+            if (txs[i] != null && !Arrays.equals(txs[i].getHash(), tx.getHash())) {
+                ambiguous[i] = true;
+                txs[i] = null;
+            } else {
+                txs[i] = tx;
+            }
+        }
+        for (int i = 0; i < txs.length; i++) {
+            if (ambiguous[i]) {
+                txs[i] = null;
+            }
+        }
+        return new Reconstruction(txs);
+    }
+
+    /** An epoch rebuilt by a receiver, possibly with missing transactions */
+    public class Reconstruction {
+        private final Transaction[] txs;
+
+        private Reconstruction(Transaction[] txs) {
+            this.txs = txs;
+        }
+
+        /** @return the indexes of the transactions to ask the sender for, in increasing order */
+        public int[] getMissing() {
+            List<Integer> missing = new ArrayList<>();
+            for (int i = 0; i < txs.length; i++) {
+                if (txs[i] == null) {
+                    missing.add(i);
+                }
+            }
+            return missing.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        public boolean isComplete() {
+            return getMissing().length == 0;
+        }
+
+        /**
+         * Fills in the transactions the sender returned for {@link #getMissing()}, in the same
+         * order, and checks the Merkle root of the epoch.
+         *
+         * @return the epoch, or null if its root is not the sender's, in which case a local
+         *         transaction collided with another's ID and the full epoch must be fetched
+         * @throws IllegalArgumentException if {@code missingTxs} does not answer {@link #getMissing()}
+         */
+        public Transaction[] complete(Transaction[] missingTxs) {
+            int[] missing = getMissing();
+            if (missingTxs.length != missing.length) {
+                throw new IllegalArgumentException(missingTxs.length + " transactions for " + missing.length + " missing");
+            }
+            Transaction[] epoch = txs.clone();
+            for (int i = 0; i < missing.length; i++) {
+                epoch[missing[i]] = missingTxs[i];
+            }
+            for (Transaction tx : epoch) {
+                if (tx == null) {
+                    return null;
+                }
+            }
+            return Arrays.equals(MerkleTree.of(epoch).getRoot(), root) ? epoch : null;
+        }
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** @return SipHash-2-4 of {@code data} under the key {@code (k0, k1)}, as in the reference implementation */
+    static long sipHash24(long k0, long k1, byte[] data) {
+        long v0 = 0x736f6d6570736575L ^ k0;
+        long v1 = 0x646f72616e646f6dL ^ k1;
+        long v2 = 0x6c7967656e657261L ^ k0;
+        long v3 = 0x7465646279746573L ^ k1;
+        int end = data.length - data.length % 8;
+        // the last block holds the remaining bytes and the length, and is followed by 4 rounds on 0xff
+        for (int i = 0; i <= end + 8; i += 8) {
+            boolean finalization = i > end;
+            long m = i < end ? littleEndian(data, i, 8)
+                    : (long) data.length << 56 | littleEndian(data, end, data.length - end);
+            if (finalization) {
+                v2 ^= 0xff;
+            } else {
+                v3 ^= m;
+            }
+            for (int r = finalization ? 4 : 2; r > 0; r--) {
+                v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+                v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+                v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+                v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+            }
+            if (!finalization) {
+                v0 ^= m;
+            }
+        }
+        return v0 ^ v1 ^ v2 ^ v3;
+    }
+
+    private static long littleEndian(byte[] data, int offset, int length) {
+        long value = 0;
+        for (int i = length - 1; i >= 0; i--) {
+            value = value << 8 | data[offset + i] & 0xff;
+        }
+        return value;
+    }
+}
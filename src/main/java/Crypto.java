@@ -1,3 +1,4 @@
+import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
@@ -6,6 +7,21 @@ import java.security.SignatureException;
 
 public class Crypto {
 
+    private static volatile SignatureCache signatureCache;
+
+    /**
+     * Makes {@link #verifySignature} look valid signatures up in {@code cache} before verifying
+     * them, and add them after; null, the default, turns caching off.
+     */
+    public static void setSignatureCache(SignatureCache cache) {
+        signatureCache = cache;
+    }
+
+    /** @return the cache of verified signatures, null if caching is off */
+    public static SignatureCache getSignatureCache() {
+        return signatureCache;
+    }
+
     /**
      * @return true is {@code signature} is a valid digital signature of {@code message} under the
      *         key {@code pubKey}. Internally, this uses RSA signature, but the student does not
@@ -13,6 +29,36 @@ public class Crypto {
      *         algorithm
      */
     public static boolean verifySignature(PublicKey pubKey, byte[] message, byte[] signature) {
+        return verifySignature(pubKey, message, signature, signatureCache);
+    }
+
+    /**
+     * Like {@link #verifySignature(PublicKey, byte[], byte[])}, looking valid signatures up in
+     * {@code cache} rather than the installed one; null verifies without caching.
+     */
+    public static boolean verifySignature(PublicKey pubKey, byte[] message, byte[] signature, SignatureCache cache) {
+        if (cache == null) {
+            return verify(pubKey, message, signature);
+        }
+        ByteBuffer entry = SignatureCache.entry(pubKey, message, signature);
+        boolean hit = cache.contains(entry);
+        TxEvents.SignatureCacheLookup event = new TxEvents.SignatureCacheLookup();
+        if (event.shouldCommit()) {
+            event.hit = hit;
+            event.messageSize = message.length;
+            event.commit();
+        }
+        if (hit) {
+            return true;
+        }
+        boolean valid = verify(pubKey, message, signature);
+        if (valid) {
+            cache.add(entry);
+        }
+        return valid;
+    }
+
+    private static boolean verify(PublicKey pubKey, byte[] message, byte[] signature) {
         Signature sig = null;
         try {
             sig = Signature.getInstance("SHA256withRSA");
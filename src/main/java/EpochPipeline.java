@@ -0,0 +1,237 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Handles epochs with a replaceable {@link TxSelectionStrategy}: one UTXO pool and one
+ * {@link TxValidator}, whose counters cover every strategy the pipeline ran.
+ * <p>
+ * With {@link #setSnapshots snapshots} on, the pool is saved every few epochs as a
+ * {@link UTXOSnapshot}, written on a background thread. The pool is frozen at the end of the
+ * epoch and the following epochs run on a {@link UTXOPool#layer() layer} over it, which absorbs it
+ * once it is written, so an epoch never waits for a snapshot.
+ */
+public class EpochPipeline {
+
+    private volatile UTXOPool utxoPool;
+    private TxValidator validator;
+    private volatile TxSelectionStrategy strategy;
+    private volatile long epoch;
+
+    private Path snapshotDirectory;
+    private int snapshotInterval;
+    private ExecutorService snapshotExecutor;
+    /** The snapshot being written of the parent of the pool, null if none is */
+    private CompletableFuture<Path> snapshot;
+    private long lastSnapshotEpoch;
+    private IOException snapshotFailure;
+
+    /** Creates a pipeline on a copy of {@code utxoPool} */
+    public EpochPipeline(UTXOPool utxoPool, TxSelectionStrategy strategy) {
+        this(new UTXOPool(utxoPool), 0, strategy);
+    }
+
+    private EpochPipeline(UTXOPool utxoPool, long epoch, TxSelectionStrategy strategy) {
+        this.utxoPool = utxoPool;
+        this.validator = new TxValidator(utxoPool);
+        this.epoch = epoch;
+        this.lastSnapshotEpoch = epoch;
+        setStrategy(strategy);
+    }
+
+    /**
+     * @return a pipeline resuming after the epochs of {@code snapshot}, on its pool, which it takes
+     *         over rather than copies
+     */
+    public static EpochPipeline resume(UTXOSnapshot snapshot, TxSelectionStrategy strategy) {
+        return new EpochPipeline(snapshot.getUtxoPool(), snapshot.getEpoch(), strategy);
+    }
+
+    public TxSelectionStrategy getStrategy() {
+        return strategy;
+    }
+
+    /** Replaces the strategy, from the next epoch on */
+    public void setStrategy(TxSelectionStrategy strategy) {
+        if (strategy == null) {
+            throw new NullPointerException("strategy");
+        }
+        this.strategy = strategy;
+    }
+
+    /**
+     * @return the current UTXO pool, updated by every call to {@link #handleTxs(Transaction[])};
+     *         while a snapshot is written, a layer over the pool of the snapshot
+     */
+    public UTXOPool getUTXOPool() {
+        return utxoPool;
+    }
+
+    /** @return the number of epochs handled, those before the snapshot it resumed from included */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Saves a {@link UTXOSnapshot} of the pool into {@code directory} every {@code interval}
+     * epochs, counted from the last snapshot; a snapshot due while the previous one is still being
+     * written is taken after the first epoch that finds it written.
+     */
+    public synchronized void setSnapshots(Path directory, int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Interval must be positive: " + interval);
+        }
+        if (snapshotExecutor == null) {
+            snapshotExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "utxo-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (snapshot == null) {
+            // a snapshot records the commitment, so keep it up to date rather than rehash the pool each time
+            utxoPool.trackCommitment();
+        }
+        this.snapshotDirectory = directory;
+        this.snapshotInterval = interval;
+    }
+
+    /**
+     * Waits for the snapshot being written, if any.
+     *
+     * @throws IOException if a snapshot failed since the last call
+     */
+    public void awaitSnapshot() throws IOException, InterruptedException {
+        CompletableFuture<Path> pending;
+        synchronized (this) {
+            pending = snapshot;
+        }
+        if (pending != null) {
+            try {
+                pending.get();
+            } catch (ExecutionException e) {
+                // recorded by absorbSnapshot
+            }
+        }
+        synchronized (this) {
+            absorbSnapshot();
+            IOException failure = snapshotFailure;
+            snapshotFailure = null;
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /** Makes the pool flat again once the snapshot of its parent is written */
+    private void absorbSnapshot() {
+        if (snapshot == null || !snapshot.isDone()) {
+            return;
+        }
+        try {
+            snapshot.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            snapshotFailure = cause instanceof UncheckedIOException
+                    ? ((UncheckedIOException) cause).getCause()
+                    : new IOException(cause);
+        }
+        snapshot = null;
+        utxoPool.absorbParent();
+    }
+
+    /** Freezes the pool for a snapshot, going on with a layer over it */
+    private void takeSnapshot() {
+        UTXOPool frozen = utxoPool;
+        Path directory = snapshotDirectory;
+        long snapshotEpoch = epoch;
+        frozen.trackCommitment();
+        utxoPool = frozen.layer();
+        validator = validator.forPool(utxoPool);
+        lastSnapshotEpoch = snapshotEpoch;
+        snapshot = CompletableFuture.supplyAsync(() -> {
+            try {
+                return UTXOSnapshot.write(directory, frozen, snapshotEpoch);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, snapshotExecutor);
+    }
+
+    /**
+     * Validates {@code tx} against the current pool with the pipeline's validator.
+     *
+     * @return {@link ValidationResult#VALID} or the reason {@code tx} is invalid
+     */
+    public synchronized ValidationResult validateTx(Transaction tx) {
+        return validator.validate(tx);
+    }
+
+    public ValidationStats getValidationStats() {
+        return validator.getStats();
+    }
+
+    /** @return the cache of verified signatures of the pipeline, null if it uses the one of {@link Crypto} */
+    public synchronized SignatureCache getSignatureCache() {
+        return validator.getSignatureCache();
+    }
+
+    /**
+     * Makes the pipeline's validation cache verified signatures in {@code cache} rather than in the
+     * one installed in {@link Crypto}, from the next epoch on; null goes back to the latter.
+     */
+    public synchronized void setSignatureCache(SignatureCache cache) {
+        validator = new TxValidator(utxoPool, validator.getStats(), cache);
+    }
+
+    /**
+     * Registers the pipeline's validation counters and stage latencies as an MBean named
+     * {@code name}, see {@link ValidationMetrics}.
+     */
+    public ValidationMetrics registerMetrics(String name) {
+        ValidationMetrics metrics = new ValidationMetrics(validator.getStats());
+        metrics.register(name);
+        return metrics;
+    }
+
+    /**
+     * Handles an epoch: selects a mutually valid subset of {@code possibleTxs} with the current
+     * strategy and applies it to the UTXO pool.
+     *
+     * @return the accepted transactions in the order they were applied
+     */
+    public synchronized Transaction[] handleTxs(Transaction[] possibleTxs) {
+        return handleTxs(possibleTxs, strategy);
+    }
+
+    /**
+     * Handles an epoch as {@link #handleTxs(Transaction[])}, selecting with {@code strategy} rather
+     * than the current strategy, which is left as it is.
+     */
+    public synchronized Transaction[] handleTxs(Transaction[] possibleTxs, TxSelectionStrategy strategy) {
+        absorbSnapshot();
+        TxEvents.Epoch event = new TxEvents.Epoch();
+        event.begin();
+        long start = System.nanoTime();
+        Transaction[] accepted = strategy.select(possibleTxs, utxoPool, validator);
+        validator.getStats().recordEpoch(System.nanoTime() - start, utxoPool.size());
+        epoch++;
+        if (snapshotDirectory != null && snapshot == null && epoch - lastSnapshotEpoch >= snapshotInterval) {
+            takeSnapshot();
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.handler = "EpochPipeline[" + strategy.getName() + "]";
+            event.candidates = possibleTxs == null ? 0 : possibleTxs.length;
+            event.accepted = accepted.length;
+            event.poolSize = utxoPool.size();
+            event.commit();
+        }
+        return accepted;
+    }
+}
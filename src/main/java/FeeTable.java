@@ -0,0 +1,87 @@
+/**
+ * Fees of a batch of transactions, computed once into a primitive table so that ordering by fee
+ * costs one fee computation per transaction instead of two per comparison. The fee of a
+ * transaction is the value of its inputs found in the given UTXO pool minus the value of its
+ * outputs; inputs that are not in the pool count for nothing.
+ */
+public class FeeTable {
+
+    private final Transaction[] txs;
+    private final double[] fees;
+
+    public FeeTable(Transaction[] txs, UTXOPool utxoPool) {
+        this.txs = txs;
+        this.fees = new double[txs.length];
+        for (int i = 0; i < txs.length; i++) {
+            fees[i] = calcFee(txs[i], utxoPool);
+        }
+    }
+
+    private static double calcFee(Transaction tx, UTXOPool utxoPool) {
+        double fee = 0;
+        for (Transaction.Input in : tx.getInputs()) {
+            Transaction.Output txOutput = utxoPool.getTxOutput(new UTXO(in.prevTxId, in.outputIndex));
+            if (txOutput != null) {
+                fee += txOutput.value;
+            }
+        }
+        for (Transaction.Output out : tx.getOutputs()) {
+            fee -= out.value;
+        }
+        return fee;
+    }
+
+    /** @return the number of transactions in the table */
+    public int length() {
+        return fees.length;
+    }
+
+    /** @return the fee of the transaction at {@code index} */
+    public double getFee(int index) {
+        return fees[index];
+    }
+
+    /**
+     * @return the indexes of the transactions ordered by descending fee, transactions with equal
+     *         fees keep their relative order
+     */
+    public int[] sortedByFeeDescending() {
+        int n = fees.length;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        // bottom-up merge sort over indexes, stable and free of boxing
+        int[] buffer = new int[n];
+        for (int width = 1; width < n; width *= 2) {
+            for (int lo = 0; lo < n - width; lo += 2 * width) {
+                int mid = lo + width;
+                int hi = Math.min(lo + 2 * width, n);
+                if (fees[order[mid - 1]] >= fees[order[mid]]) {
+                    continue;
+                }
+                System.arraycopy(order, lo, buffer, lo, hi - lo);
+                int left = lo;
+                int right = mid;
+                for (int k = lo; k < hi; k++) {
+                    if (right >= hi || (left < mid && fees[buffer[left]] >= fees[buffer[right]])) {
+                        order[k] = buffer[left++];
+                    } else {
+                        order[k] = buffer[right++];
+                    }
+                }
+            }
+        }
+        return order;
+    }
+
+    /** @return the transactions ordered by descending fee, see {@link #sortedByFeeDescending()} */
+    public Transaction[] sortByFeeDescending() {
+        int[] order = sortedByFeeDescending();
+        Transaction[] sorted = new Transaction[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sorted[i] = txs[order[i]];
+        }
+        return sorted;
+    }
+}
@@ -0,0 +1,160 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Immutable transaction hash, held in four big-endian {@code long}s rather than a byte array, so
+ * it is compared and hashed a word at a time, its hash code is computed once and it is never
+ * defensively copied. SHA-256 hashes are always {@value #BYTES} bytes; shorter byte strings, like
+ * the made-up hashes of root transactions' inputs, are zero padded and keep their length, so they
+ * never equal a padded hash. Longer ones are not hashes of any transaction and are rejected.
+ * <p>
+ * Hashes order by length, then as unsigned big-endian numbers.
+ */
+public final class Hash256 implements Comparable<Hash256> {
+
+    public static final int BYTES = 32;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final long w0;
+    private final long w1;
+    private final long w2;
+    private final long w3;
+    private final int length;
+    private final int hashCode;
+
+    private Hash256(long w0, long w1, long w2, long w3, int length) {
+        this.w0 = w0;
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
+        this.length = length;
+        int hash = Long.hashCode(w0);
+        hash = 31 * hash + Long.hashCode(w1);
+        hash = 31 * hash + Long.hashCode(w2);
+        hash = 31 * hash + Long.hashCode(w3);
+        this.hashCode = 31 * hash + length;
+    }
+
+    /**
+     * @return the hash with the bytes of {@code bytes}, which may change afterwards
+     * @throws IllegalArgumentException if there are more than {@value #BYTES} bytes
+     */
+    public static Hash256 of(byte[] bytes) {
+        if (bytes.length == BYTES) {
+            return new Hash256((long) LONGS.get(bytes, 0), (long) LONGS.get(bytes, 8),
+                    (long) LONGS.get(bytes, 16), (long) LONGS.get(bytes, 24), BYTES);
+        }
+        return read(ByteBuffer.wrap(bytes), bytes.length);
+    }
+
+    /** @return the hash of the next {@value #BYTES} bytes of {@code buf} */
+    public static Hash256 read(ByteBuffer buf) {
+        return read(buf, BYTES);
+    }
+
+    /**
+     * @return the hash of the next {@code length} bytes of {@code buf}
+     * @throws IllegalArgumentException if {@code length} is negative or above {@value #BYTES}
+     */
+    public static Hash256 read(ByteBuffer buf, int length) {
+        if (length == BYTES && buf.order() == ByteOrder.BIG_ENDIAN) {
+            return new Hash256(buf.getLong(), buf.getLong(), buf.getLong(), buf.getLong(), BYTES);
+        }
+        if (length < 0 || length > BYTES) {
+            throw new IllegalArgumentException("Hash of " + length + " bytes");
+        }
+        long[] words = new long[4];
+        for (int i = 0; i < length; i++) {
+            words[i >>> 3] |= (buf.get() & 0xffL) << 8 * (7 - (i & 7));
+        }
+        return new Hash256(words[0], words[1], words[2], words[3], length);
+    }
+
+    /** Puts the bytes of the hash at the position of {@code buf} */
+    public void put(ByteBuffer buf) {
+        if (length == BYTES && buf.order() == ByteOrder.BIG_ENDIAN) {
+            buf.putLong(w0).putLong(w1).putLong(w2).putLong(w3);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            buf.put((byte) (word(i >>> 3) >>> 8 * (7 - (i & 7))));
+        }
+    }
+
+    /** @return a new array of the bytes of the hash */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[length];
+        if (length == BYTES) {
+            LONGS.set(bytes, 0, w0);
+            LONGS.set(bytes, 8, w1);
+            LONGS.set(bytes, 16, w2);
+            LONGS.set(bytes, 24, w3);
+        } else {
+            put(ByteBuffer.wrap(bytes));
+        }
+        return bytes;
+    }
+
+    /** @return the number of bytes of the hash, {@value #BYTES} for a SHA-256 hash */
+    public int length() {
+        return length;
+    }
+
+    private long word(int i) {
+        switch (i) {
+            case 0:
+                return w0;
+            case 1:
+                return w1;
+            case 2:
+                return w2;
+            default:
+                return w3;
+        }
+    }
+
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Hash256)) {
+            return false;
+        }
+        Hash256 hash = (Hash256) other;
+        return hashCode == hash.hashCode && w0 == hash.w0 && w1 == hash.w1 && w2 == hash.w2 && w3 == hash.w3
+                && length == hash.length;
+    }
+
+    public int hashCode() {
+        return hashCode;
+    }
+
+    public int compareTo(Hash256 other) {
+        if (length != other.length) {
+            return Integer.compare(length, other.length);
+        }
+        int cmp = Long.compareUnsigned(w0, other.w0);
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(w1, other.w1);
+        }
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(w2, other.w2);
+        }
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(w3, other.w3);
+        }
+        return cmp;
+    }
+
+    /** @return the bytes of the hash in hexadecimal */
+    public String toString() {
+        StringBuilder hex = new StringBuilder(2 * length);
+        for (byte b : toByteArray()) {
+            hex.append(Character.forDigit((b >>> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
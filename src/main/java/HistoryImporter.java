@@ -0,0 +1,583 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Replays a history of epochs into an {@link EpochPipeline}, to bootstrap a node. The history is
+ * a file of
+ *
+ * <pre>
+ * int MAGIC, per epoch: int count, per transaction: int length, {@link TransactionCodec} encoding
+ * </pre>
+ *
+ * as written by {@link #write}. The import runs in four stages connected by bounded queues:
+ * <ol>
+ * <li>READ, one thread: reads the file through a {@link FileChannel} and cuts the epochs into
+ *     chunks of at most {@value #CHUNK_SIZE} encoded transactions;</li>
+ * <li>DECODE, {@code threads} threads: decodes and hashes the transactions of a chunk;</li>
+ * <li>VERIFY, {@code threads} threads: verifies the signatures of the inputs whose output is
+ *     already known, into the {@link SignatureCache} of the pipeline;</li>
+ * <li>APPLY, the importing thread: puts the chunks back in file order and hands every epoch to
+ *     the pipeline, whose validation then finds the signatures verified.</li>
+ * </ol>
+ * The VERIFY stage looks outputs up in a concurrent map of the addresses of the pool's outputs and
+ * of every decoded transaction's outputs, which APPLY trims of spent and rejected outputs. An
+ * output decoded after the transaction spending it was verified is simply verified by APPLY, so
+ * the stages never wait for each other beyond the queues. At most {@code 2 * QUEUE_CAPACITY + 2 *
+ * threads} chunks are in flight, however far a stage falls behind.
+ * <p>
+ * The signature cache is the pipeline's own, or else the one installed in {@link Crypto}; with
+ * neither, the pipeline is given one for the duration of the import, so no other verifier in the
+ * process pays for it. An importer runs one import at a time; {@link #getProgress()} may be called
+ * from any thread.
+ */
+public class HistoryImporter {
+
+    public static final int MAGIC = 0x53435248;
+    public static final int CHUNK_SIZE = 256;
+
+    private static final int QUEUE_CAPACITY = 16;
+    private static final int READ_BUFFER_SIZE = 4 * TxIngestionServer.MAX_FRAME_SIZE;
+    private static final long POLL_MILLIS = 100;
+
+    /** The stages of an import */
+    public enum Stage {
+        READ, DECODE, VERIFY, APPLY
+    }
+
+    /** Encoded transactions of an epoch, decoded and verified on their way to APPLY */
+    private static class Chunk {
+        final long seq;
+        final long epoch;
+        final boolean last;
+        final byte[][] frames;
+        Transaction[] txs;
+
+        Chunk(long seq, long epoch, boolean last, byte[][] frames) {
+            this.seq = seq;
+            this.epoch = epoch;
+            this.last = last;
+            this.frames = frames;
+        }
+    }
+
+    /** The body of a stage thread */
+    private interface Worker {
+        void run() throws Exception;
+    }
+
+    private final EpochPipeline pipeline;
+    private final int threads;
+    private Consumer<Progress> progressListener;
+    private long progressPeriodMillis;
+
+    private final LongAdder[] transactions = new LongAdder[Stage.values().length];
+    private final LongAdder[] busyNanos = new LongAdder[Stage.values().length];
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder epochs = new LongAdder();
+    private final LongAdder accepted = new LongAdder();
+    private volatile long fileSize;
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    private BlockingQueue<Chunk> readQueue;
+    private BlockingQueue<Chunk> decodedQueue;
+    private BlockingQueue<Chunk> verifiedQueue;
+    private Semaphore window;
+    private Map<UTXO, PublicKey> addresses;
+    private SignatureCache signatureCache;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private volatile long chunkCount;
+
+    /** Creates an importer into {@code pipeline} with one DECODE and one VERIFY thread per core */
+    public HistoryImporter(EpochPipeline pipeline) {
+        this(pipeline, Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Creates an importer into {@code pipeline} with {@code threads} DECODE and as many VERIFY threads */
+    public HistoryImporter(EpochPipeline pipeline, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Threads must be positive: " + threads);
+        }
+        this.pipeline = pipeline;
+        this.threads = threads;
+        for (Stage stage : Stage.values()) {
+            transactions[stage.ordinal()] = new LongAdder();
+            busyNanos[stage.ordinal()] = new LongAdder();
+        }
+    }
+
+    /** Has {@code listener} called with the progress every {@code periodMillis} ms of an import, and at its end */
+    public HistoryImporter setProgressListener(Consumer<Progress> listener, long periodMillis) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + periodMillis);
+        }
+        this.progressListener = listener;
+        this.progressPeriodMillis = periodMillis;
+        return this;
+    }
+
+    /** Writes {@code epochs} as a history {@link #importFile} reads */
+    public static void write(Path file, Iterable<Transaction[]> epochs) throws IOException {
+        TransactionCodec codec = new TransactionCodec();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            buf.putInt(MAGIC);
+            for (Transaction[] epoch : epochs) {
+                reserve(channel, buf, Integer.BYTES);
+                buf.putInt(epoch.length);
+                for (Transaction tx : epoch) {
+                    int size = codec.encodedSize(tx);
+                    if (size > TxIngestionServer.MAX_FRAME_SIZE) {
+                        throw new IllegalArgumentException("Transaction of " + size + " bytes");
+                    }
+                    reserve(channel, buf, Integer.BYTES + size);
+                    buf.putInt(size);
+                    codec.encode(tx, buf);
+                }
+            }
+            buf.flip();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        }
+    }
+
+    /** Writes out {@code buf} if it has less than {@code n} bytes left */
+    private static void reserve(FileChannel channel, ByteBuffer buf, int n) throws IOException {
+        if (buf.remaining() < n) {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            buf.clear();
+        }
+    }
+
+    /**
+     * Imports the history in {@code file} into the pipeline, epoch by epoch.
+     *
+     * @return the progress at the end of the import
+     * @throws IOException if the file cannot be read or is not a well-formed history; the epochs
+     *         before the malformed one may have been imported
+     */
+    public Progress importFile(Path file) throws IOException, InterruptedException {
+        return importFile(file, 0);
+    }
+
+    /**
+     * Imports the epochs of the history in {@code file} from the epoch numbered {@code fromEpoch}
+     * on, skipping the ones before unread, e.g. those in the snapshot a pipeline was
+     * {@link EpochPipeline#resume resumed} from:
+     *
+     * <pre>
+     * UTXOSnapshot snapshot = UTXOSnapshot.latest(snapshots);
+     * EpochPipeline pipeline = EpochPipeline.resume(snapshot, strategy);
+     * new HistoryImporter(pipeline).importFile(history, snapshot.getEpoch());
+     * </pre>
+     *
+     * @return the progress at the end of the import
+     * @throws IOException if the file cannot be read or is not a well-formed history; the epochs
+     *         before the malformed one may have been imported
+     */
+    public Progress importFile(Path file, long fromEpoch) throws IOException, InterruptedException {
+        for (Stage stage : Stage.values()) {
+            transactions[stage.ordinal()].reset();
+            busyNanos[stage.ordinal()].reset();
+        }
+        bytesRead.reset();
+        epochs.reset();
+        accepted.reset();
+        failure.set(null);
+        chunkCount = -1;
+        readQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        decodedQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        verifiedQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        window = new Semaphore(2 * QUEUE_CAPACITY + 2 * threads);
+        addresses = new ConcurrentHashMap<>();
+        UTXOPool utxoPool = pipeline.getUTXOPool();
+        for (UTXO utxo : utxoPool.getAllUTXO()) {
+            addresses.put(utxo, utxoPool.getTxOutput(utxo).address);
+        }
+
+        SignatureCache own = null;
+        signatureCache = pipeline.getSignatureCache();
+        if (signatureCache == null) {
+            signatureCache = Crypto.getSignatureCache();
+        }
+        if (signatureCache == null) {
+            own = signatureCache = new SignatureCache(Math.max(SignatureCache.DEFAULT_CAPACITY,
+                    4 * CHUNK_SIZE * (2 * QUEUE_CAPACITY + 2 * threads)));
+            pipeline.setSignatureCache(own);
+        }
+        List<Thread> workers = new ArrayList<>();
+        Thread reporter = null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            fileSize = channel.size();
+            startNanos = System.nanoTime();
+            endNanos = 0;
+            workers.add(start("history-import-read", () -> read(channel, fromEpoch)));
+            for (int i = 0; i < threads; i++) {
+                workers.add(start("history-import-decode-" + i, this::decode));
+                workers.add(start("history-import-verify-" + i, this::verify));
+            }
+            if (progressListener != null) {
+                reporter = start("history-import-progress", this::report);
+            }
+            apply();
+        } finally {
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            endNanos = System.nanoTime();
+            if (reporter != null) {
+                reporter.interrupt();
+                reporter.join();
+            }
+            if (own != null && pipeline.getSignatureCache() == own) {
+                pipeline.setSignatureCache(null);
+            }
+            addresses = null;
+            signatureCache = null;
+        }
+        Progress progress = getProgress();
+        if (progressListener != null) {
+            progressListener.accept(progress);
+        }
+        return progress;
+    }
+
+    private Thread start(String name, Worker worker) {
+        Thread thread = new Thread(() -> {
+            try {
+                worker.run();
+            } catch (InterruptedException e) {
+                // stopped at the end of the import
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * READ: cuts the epochs from {@code fromEpoch} on into chunks, waiting for room in the window
+     * before each one
+     */
+    private void read(FileChannel channel, long fromEpoch) throws IOException, InterruptedException {
+        ByteBuffer buf = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        buf.flip();
+        long start = System.nanoTime();
+        if (!fill(channel, buf, Integer.BYTES) || buf.getInt() != MAGIC) {
+            throw new IOException("Not a history");
+        }
+        long seq = 0;
+        for (long epoch = 0; ; epoch++) {
+            if (!fill(channel, buf, Integer.BYTES)) {
+                if (buf.hasRemaining()) {
+                    throw new IOException("Truncated epoch count after epoch " + epoch);
+                }
+                break;
+            }
+            int count = buf.getInt();
+            if (count < 0) {
+                throw new IOException("Invalid transaction count " + count + " in epoch " + epoch);
+            }
+            if (epoch < fromEpoch) {
+                for (int i = 0; i < count; i++) {
+                    int length = frameLength(channel, buf, epoch);
+                    buf.position(buf.position() + length);
+                }
+                continue;
+            }
+            int done = 0;
+            do {
+                byte[][] frames = new byte[Math.min(CHUNK_SIZE, count - done)][];
+                for (int i = 0; i < frames.length; i++) {
+                    frames[i] = new byte[frameLength(channel, buf, epoch)];
+                    buf.get(frames[i]);
+                }
+                done += frames.length;
+                busyNanos[Stage.READ.ordinal()].add(System.nanoTime() - start);
+                transactions[Stage.READ.ordinal()].add(frames.length);
+                window.acquire();
+                readQueue.put(new Chunk(seq++, epoch, done == count, frames));
+                start = System.nanoTime();
+            } while (done < count);
+        }
+        busyNanos[Stage.READ.ordinal()].add(System.nanoTime() - start);
+        chunkCount = seq;
+    }
+
+    /** @return the length of the next frame of {@code epoch}, whose bytes are then available in {@code buf} */
+    private int frameLength(FileChannel channel, ByteBuffer buf, long epoch) throws IOException {
+        if (!fill(channel, buf, Integer.BYTES)) {
+            throw new IOException("Truncated epoch " + epoch);
+        }
+        int length = buf.getInt();
+        if (length < 0 || length > TxIngestionServer.MAX_FRAME_SIZE) {
+            throw new IOException("Invalid frame length " + length + " in epoch " + epoch);
+        }
+        if (!fill(channel, buf, length)) {
+            throw new IOException("Truncated epoch " + epoch);
+        }
+        return length;
+    }
+
+    /** Makes {@code n} bytes available to get from {@code buf}, reading more if needed; false at the end of the file */
+    private boolean fill(FileChannel channel, ByteBuffer buf, int n) throws IOException {
+        if (buf.remaining() >= n) {
+            return true;
+        }
+        buf.compact();
+        try {
+            while (buf.position() < n) {
+                int read = channel.read(buf);
+                if (read < 0) {
+                    return false;
+                }
+                bytesRead.add(read);
+            }
+            return true;
+        } finally {
+            buf.flip();
+        }
+    }
+
+    /** DECODE: decodes and hashes chunks, publishing the addresses of their outputs */
+    private void decode() throws IOException, InterruptedException {
+        TransactionCodec codec = new TransactionCodec();
+        while (true) {
+            Chunk chunk = readQueue.take();
+            long start = System.nanoTime();
+            chunk.txs = new Transaction[chunk.frames.length];
+            for (int i = 0; i < chunk.frames.length; i++) {
+                ByteBuffer frame = ByteBuffer.wrap(chunk.frames[i]);
+                try {
+                    chunk.txs[i] = codec.decode(frame);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Malformed transaction in epoch " + chunk.epoch, e);
+                }
+                if (frame.hasRemaining()) {
+                    throw new IOException("Trailing bytes after a transaction in epoch " + chunk.epoch);
+                }
+                Transaction tx = chunk.txs[i];
+                for (int j = 0; j < tx.numOutputs(); j++) {
+                    addresses.put(new UTXO(tx.getId(), j), tx.getOutput(j).address);
+                }
+            }
+            busyNanos[Stage.DECODE.ordinal()].add(System.nanoTime() - start);
+            transactions[Stage.DECODE.ordinal()].add(chunk.txs.length);
+            decodedQueue.put(chunk);
+        }
+    }
+
+    /** VERIFY: verifies the signatures of the inputs whose output is known, caching the valid ones */
+    private void verify() throws InterruptedException {
+        while (true) {
+            Chunk chunk = decodedQueue.take();
+            long start = System.nanoTime();
+            for (Transaction tx : chunk.txs) {
+                for (int i = 0; i < tx.numInputs(); i++) {
+                    Transaction.Input in = tx.getInput(i);
+                    if (in.prevTxId == null || in.signature == null) {
+                        continue;
+                    }
+                    PublicKey address = addresses.get(new UTXO(in.prevTxId, in.outputIndex));
+                    if (address != null) {
+                        Crypto.verifySignature(address, tx.getRawDataToSign(i), in.signature, signatureCache);
+                    }
+                }
+            }
+            busyNanos[Stage.VERIFY.ordinal()].add(System.nanoTime() - start);
+            transactions[Stage.VERIFY.ordinal()].add(chunk.txs.length);
+            verifiedQueue.put(chunk);
+        }
+    }
+
+    /** APPLY: hands the epochs to the pipeline in file order and trims the address map */
+    private void apply() throws IOException, InterruptedException {
+        Map<Long, Chunk> pending = new HashMap<>();
+        List<Transaction> epoch = new ArrayList<>();
+        long next = 0;
+        while (chunkCount < 0 || next < chunkCount) {
+            Chunk chunk = pending.remove(next);
+            if (chunk == null) {
+                chunk = verifiedQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                rethrowFailure();
+                if (chunk != null) {
+                    pending.put(chunk.seq, chunk);
+                }
+                continue;
+            }
+            next++;
+            window.release();
+            Collections.addAll(epoch, chunk.txs);
+            if (!chunk.last) {
+                continue;
+            }
+            long start = System.nanoTime();
+            Transaction[] txs = epoch.toArray(new Transaction[0]);
+            Transaction[] acceptedTxs = pipeline.handleTxs(txs);
+            Set<Transaction> acceptedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+            Collections.addAll(acceptedSet, acceptedTxs);
+            for (Transaction tx : txs) {
+                if (acceptedSet.contains(tx)) {
+                    for (Transaction.Input in : tx.getInputs()) {
+                        addresses.remove(new UTXO(in.prevTxId, in.outputIndex));
+                    }
+                } else {
+                    for (int j = 0; j < tx.numOutputs(); j++) {
+                        addresses.remove(new UTXO(tx.getId(), j));
+                    }
+                }
+            }
+            busyNanos[Stage.APPLY.ordinal()].add(System.nanoTime() - start);
+            transactions[Stage.APPLY.ordinal()].add(txs.length);
+            accepted.add(acceptedTxs.length);
+            epochs.increment();
+            epoch.clear();
+        }
+        rethrowFailure();
+    }
+
+    private void rethrowFailure() throws IOException {
+        Throwable e = failure.get();
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        }
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        if (e != null) {
+            throw new IOException(e);
+        }
+    }
+
+    private void report() throws InterruptedException {
+        while (true) {
+            Thread.sleep(progressPeriodMillis);
+            progressListener.accept(getProgress());
+        }
+    }
+
+    /** @return the progress of the current import, or of the last one if none is running */
+    public Progress getProgress() {
+        long[] stageTransactions = new long[Stage.values().length];
+        long[] stageBusyNanos = new long[Stage.values().length];
+        for (Stage stage : Stage.values()) {
+            stageTransactions[stage.ordinal()] = transactions[stage.ordinal()].sum();
+            stageBusyNanos[stage.ordinal()] = busyNanos[stage.ordinal()].sum();
+        }
+        long end = endNanos == 0 ? System.nanoTime() : endNanos;
+        return new Progress(fileSize, bytesRead.sum(), epochs.sum(), accepted.sum(),
+                startNanos == 0 ? 0 : end - startNanos, threads, stageTransactions, stageBusyNanos);
+    }
+
+    /** How far an import got and how fast each stage went */
+    public static class Progress {
+        private final long fileSize;
+        private final long bytesRead;
+        private final long epochs;
+        private final long accepted;
+        private final long elapsedNanos;
+        private final int threads;
+        private final long[] transactions;
+        private final long[] busyNanos;
+
+        Progress(long fileSize, long bytesRead, long epochs, long accepted, long elapsedNanos,
+                 int threads, long[] transactions, long[] busyNanos) {
+            this.fileSize = fileSize;
+            this.bytesRead = bytesRead;
+            this.epochs = epochs;
+            this.accepted = accepted;
+            this.elapsedNanos = elapsedNanos;
+            this.threads = threads;
+            this.transactions = transactions;
+            this.busyNanos = busyNanos;
+        }
+
+        public long getFileSize() {
+            return fileSize;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        /** @return the share of the file read, between 0 and 1 */
+        public double getFraction() {
+            return fileSize == 0 ? 1 : (double) bytesRead / fileSize;
+        }
+
+        /** @return the number of epochs applied */
+        public long getEpochs() {
+            return epochs;
+        }
+
+        /** @return the number of transactions the pipeline accepted */
+        public long getAccepted() {
+            return accepted;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /** @return the number of transactions through {@code stage} */
+        public long getTransactions(Stage stage) {
+            return transactions[stage.ordinal()];
+        }
+
+        /** @return the transactions through {@code stage} per second of the import */
+        public double getRate(Stage stage) {
+            return elapsedNanos == 0 ? 0 : transactions[stage.ordinal()] * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @return the share of the import the threads of {@code stage} were busy, rather than
+         *         waiting on a queue; a stage near 1 is the bottleneck
+         */
+        public double getUtilization(Stage stage) {
+            int stageThreads = stage == Stage.DECODE || stage == Stage.VERIFY ? threads : 1;
+            return elapsedNanos == 0 ? 0 : (double) busyNanos[stage.ordinal()] / elapsedNanos / stageThreads;
+        }
+
+        public String toString() {
+            StringBuilder sb = new StringBuilder(String.format("%5.1f%% %d epochs %d accepted in %.1f s",
+                    100 * getFraction(), epochs, accepted, elapsedNanos / 1e9));
+            for (Stage stage : Stage.values()) {
+                sb.append(String.format(", %s %.0f tx/s %.0f%% busy",
+                        stage.name().toLowerCase(), getRate(stage), 100 * getUtilization(stage)));
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of non-negative values such as latencies in nanoseconds, with log-linear
+ * buckets in the manner of HdrHistogram: values below 32 are counted exactly, larger ones in 16
+ * buckets per power of two, so a reported value is within 1/16 (6.25%) above the recorded one.
+ * <p>
+ * Counts are striped over several arrays picked by thread, so concurrent recorders rarely touch
+ * the same cache line; reads merge the stripes and are consistent only once recording stopped.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (62 - SUB_BUCKET_BITS) * SUB_BUCKETS + 2 * SUB_BUCKETS;
+    /** Per stripe, after the buckets: total count, sum and maximum */
+    private static final int COUNT = BUCKETS;
+    private static final int SUM = BUCKETS + 1;
+    private static final int MAX = BUCKETS + 2;
+
+    private final AtomicLongArray[] stripes;
+    private final int mask;
+
+    public LatencyHistogram() {
+        // a power of two of at least twice the processors
+        int stripeCount = Math.min(64, Integer.highestOneBit(4 * Runtime.getRuntime().availableProcessors() - 1));
+        stripes = new AtomicLongArray[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS + 3);
+        }
+        mask = stripeCount - 1;
+    }
+
+    /** Records {@code value}, negative values count as 0 */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        long id = Thread.currentThread().getId();
+        AtomicLongArray stripe = stripes[(int) (id ^ (id >>> 16)) & mask];
+        stripe.incrementAndGet(bucket(value));
+        stripe.incrementAndGet(COUNT);
+        stripe.addAndGet(SUM, value);
+        long max;
+        while (value > (max = stripe.get(MAX)) && !stripe.compareAndSet(MAX, max, value)) {
+            // retry
+        }
+    }
+
+    public void reset() {
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < stripe.length(); i++) {
+                stripe.set(i, 0);
+            }
+        }
+    }
+
+    /** @return the merged counts of all stripes */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS + 3];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < MAX; i++) {
+                counts[i] += stripe.get(i);
+            }
+            counts[MAX] = Math.max(counts[MAX], stripe.get(MAX));
+        }
+        return new Snapshot(counts);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (AtomicLongArray stripe : stripes) {
+            count += stripe.get(COUNT);
+        }
+        return count;
+    }
+
+    /** The recorded distribution at one point in time */
+    public static class Snapshot {
+        private final long[] counts;
+
+        Snapshot(long[] counts) {
+            this.counts = counts;
+        }
+
+        public long getCount() {
+            return counts[COUNT];
+        }
+
+        public double getMean() {
+            return counts[COUNT] == 0 ? 0 : (double) counts[SUM] / counts[COUNT];
+        }
+
+        public long getMax() {
+            return counts[MAX];
+        }
+
+        /**
+         * @return the highest value equivalent to the value below which {@code percentile} percent
+         *         of the recorded values fall, never more than the maximum; 0 if nothing was recorded
+         */
+        public long getValueAtPercentile(double percentile) {
+            long total = counts[COUNT];
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestEquivalent(i), counts[MAX]);
+                }
+            }
+            return counts[MAX];
+        }
+
+        public String toString() {
+            return String.format("count=%d mean=%.1f p50=%d p99=%d p99.9=%d max=%d", getCount(), getMean(),
+                    getValueAtPercentile(50), getValueAtPercentile(99), getValueAtPercentile(99.9), getMax());
+        }
+    }
+
+    static int bucket(long value) {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /** @return the largest value counted in bucket {@code index} */
+    static long highestEquivalent(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long subBucket = index - ((long) shift << SUB_BUCKET_BITS);
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
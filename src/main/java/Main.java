@@ -96,18 +96,7 @@ public class Main {
 
     public static class Tx extends Transaction { 
         public void signTx(PrivateKey sk, int input) throws SignatureException {
-            Signature sig = null;
-            try {
-                sig = Signature.getInstance("SHA256withRSA");
-                sig.initSign(sk);
-                sig.update(this.getRawDataToSign(input));
-            } catch (NoSuchAlgorithmException | InvalidKeyException e) {
-                throw new RuntimeException(e);
-            }
-            this.addSignature(sig.sign(),input);
-            // Note that this method is incorrectly named, and should not in fact override the Java
-            // object finalize garbage collection related method.
-            this.finalize();
+            new TransactionSigner().add(input, sk).sign(this);
         }
     }
 }
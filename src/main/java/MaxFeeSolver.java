@@ -0,0 +1,508 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Anytime solver for the maximum fee mutually valid subset of an epoch's transactions.
+ * <p>
+ * Every candidate is validated once on its own, against the outputs of the pool and of its
+ * in-epoch parents. The valid candidates split into components connected by dependencies and
+ * conflicting spends; a component without conflicts is taken whole. Every other component starts
+ * from a greedy solution (highest fee first among the candidates whose parents are taken) and is
+ * improved by a depth-first branch and bound in dependency order, pruned with the bound "fee so far
+ * plus the fees of every remaining candidate that is still selectable". Components are searched in
+ * parallel until the time budget, counted from the start of {@link #solve}, runs out; the best
+ * subset found by then is applied to the pool and returned.
+ * <p>
+ * With lazy signatures candidates are first validated without their signatures, so fees,
+ * dependencies and conflicts are resolved on unsigned data only. The signatures of the chosen
+ * candidates are then verified in dependency order; a candidate that fails is invalidated with its
+ * descendants and only its component is solved again, until every chosen candidate is verified.
+ * The signatures of candidates never chosen are not verified at all.
+ */
+public class MaxFeeSolver {
+
+    public static final long DEFAULT_BUDGET_MILLIS = 200;
+
+    /** Components larger than this keep their greedy solution */
+    public static final int MAX_SEARCH_SIZE = 2000;
+
+    private static final double EPSILON = 1e-9;
+
+    private final UTXOPool utxoPool;
+    private final long budgetNanos;
+    private final ValidationStats stats;
+    private final boolean lazySignatures;
+    private final SignatureCache signatureCache;
+
+    public MaxFeeSolver(UTXOPool utxoPool) {
+        this(utxoPool, DEFAULT_BUDGET_MILLIS);
+    }
+
+    /** Creates a solver that validates against and applies the chosen subset to {@code utxoPool} */
+    public MaxFeeSolver(UTXOPool utxoPool, long budgetMillis) {
+        this(utxoPool, budgetMillis, new ValidationStats());
+    }
+
+    /** Creates a solver that records the outcomes of its validations in {@code stats} */
+    public MaxFeeSolver(UTXOPool utxoPool, long budgetMillis, ValidationStats stats) {
+        this(utxoPool, budgetMillis, stats, false);
+    }
+
+    /**
+     * Creates a solver that, if {@code lazySignatures}, chooses on the checks that need no
+     * signature and verifies the signatures of the chosen transactions only
+     */
+    public MaxFeeSolver(UTXOPool utxoPool, long budgetMillis, ValidationStats stats, boolean lazySignatures) {
+        this(utxoPool, budgetMillis, stats, lazySignatures, null);
+    }
+
+    /** Creates a solver caching verified signatures in {@code signatureCache}, null for the one of {@link Crypto} */
+    public MaxFeeSolver(UTXOPool utxoPool, long budgetMillis, ValidationStats stats, boolean lazySignatures,
+            SignatureCache signatureCache) {
+        this.utxoPool = utxoPool;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        this.stats = stats;
+        this.lazySignatures = lazySignatures;
+        this.signatureCache = signatureCache;
+    }
+
+    /** The chosen subset with the metrics of the search that found it */
+    public static class Result {
+        private final Transaction[] transactions;
+        private final double totalFee;
+        private final double upperBound;
+        private final long nodesExplored;
+        private final boolean optimal;
+        private final long elapsedNanos;
+
+        Result(Transaction[] transactions, double totalFee, double upperBound, long nodesExplored,
+               boolean optimal, long elapsedNanos) {
+            this.transactions = transactions;
+            this.totalFee = totalFee;
+            this.upperBound = upperBound;
+            this.nodesExplored = nodesExplored;
+            this.optimal = optimal;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /** @return the chosen transactions, every one after the transactions it depends on */
+        public Transaction[] getTransactions() {
+            return transactions;
+        }
+
+        public double getTotalFee() {
+            return totalFee;
+        }
+
+        /** @return a fee no valid subset can exceed, equal to the total fee if the result is optimal */
+        public double getUpperBound() {
+            return upperBound;
+        }
+
+        /** @return the fraction of the upper bound the chosen subset may fall short of the optimum */
+        public double getOptimalityGap() {
+            return upperBound <= 0 ? 0 : Math.max(0, upperBound - totalFee) / upperBound;
+        }
+
+        /** @return the number of branch and bound nodes visited over all components */
+        public long getNodesExplored() {
+            return nodesExplored;
+        }
+
+        /** @return true if every component was searched exhaustively */
+        public boolean isOptimal() {
+            return optimal;
+        }
+
+        public long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        }
+
+        public String toString() {
+            return String.format("%d txs, fee %.4f, bound %.4f, gap %.4f%%, %d nodes, %s, %d ms",
+                    transactions.length, totalFee, upperBound, 100 * getOptimalityGap(), nodesExplored,
+                    optimal ? "optimal" : "budget exhausted", getElapsedMillis());
+        }
+    }
+
+    /** Chooses, applies to the pool and returns the best subset of {@code possibleTxs} found in time */
+    public Result solve(Transaction[] possibleTxs) {
+        long start = System.nanoTime();
+        long deadline = start + budgetNanos;
+        CandidateGraph graph = new CandidateGraph(possibleTxs == null ? new Transaction[0] : possibleTxs, utxoPool);
+        if (stats.isTimingEnabled()) {
+            stats.recordStage(ValidationStats.Stage.GRAPH, System.nanoTime() - start);
+        }
+        int n = graph.length();
+        int[] topological = graph.topologicalOrder();
+        TxValidator validator = graph.newValidator(utxoPool, new TxValidator(utxoPool, stats, signatureCache));
+        boolean[] valid = new boolean[n];
+        for (int i : topological) {
+            valid[i] = !graph.isUnresolved(i);
+            for (int parent : graph.getParents(i)) {
+                valid[i] &= valid[parent];
+            }
+            if (valid[i]) {
+                Transaction tx = graph.getTransaction(i);
+                valid[i] = (lazySignatures ? validator.validateStructure(tx) : validator.validate(tx))
+                        == ValidationResult.VALID;
+            }
+        }
+
+        // components over dependencies and conflicting spends between valid candidates
+        int[] root = new int[n];
+        for (int i = 0; i < n; i++) {
+            root[i] = i;
+        }
+        for (int i = 0; i < n; i++) {
+            if (valid[i]) {
+                for (int parent : graph.getParents(i)) {
+                    union(root, i, parent);
+                }
+            }
+        }
+        boolean[] conflicted = new boolean[n];
+        List<int[]> groups = new ArrayList<>();
+        for (int group = 0; group < graph.numConflictGroups(); group++) {
+            int[] spenders = Arrays.stream(graph.getGroupSpenders(group)).filter(i -> valid[i]).toArray();
+            if (spenders.length > 1) {
+                groups.add(spenders);
+                for (int i : spenders) {
+                    union(root, spenders[0], i);
+                }
+            }
+        }
+        for (int[] spenders : groups) {
+            conflicted[find(root, spenders[0])] = true;
+        }
+        Component[] componentOf = new Component[n];
+        List<Component> components = new ArrayList<>();
+        for (int i : topological) {
+            if (valid[i]) {
+                int r = find(root, i);
+                if (componentOf[r] == null) {
+                    componentOf[r] = new Component(conflicted[r]);
+                    components.add(componentOf[r]);
+                }
+                componentOf[i] = componentOf[r];
+                componentOf[i].members.add(i);
+            }
+        }
+
+        // solve, then with lazy signatures verify what was chosen and solve again where that failed
+        boolean[] chosen = new boolean[n];
+        boolean[] verified = new boolean[n];
+        List<Component> pending = components;
+        while (!pending.isEmpty()) {
+            pending.parallelStream().forEach(component -> component.solve(graph, valid, deadline));
+            for (Component component : pending) {
+                component.choose(valid, chosen);
+            }
+            if (!lazySignatures) {
+                break;
+            }
+            Set<Component> repair = new LinkedHashSet<>();
+            for (int i : topological) {
+                if (!chosen[i] || verified[i] || repair.contains(componentOf[i])) {
+                    continue;
+                }
+                if (validator.verifySignatures(graph.getTransaction(i)) == ValidationResult.VALID) {
+                    verified[i] = true;
+                } else {
+                    invalidate(graph, valid, i);
+                    repair.add(componentOf[i]);
+                }
+            }
+            pending = new ArrayList<>(repair);
+        }
+        if (lazySignatures) {
+            for (int i = 0; i < n; i++) {
+                if (valid[i] && !verified[i]) {
+                    stats.recordDeferred(graph.getTransaction(i).numInputs());
+                }
+            }
+        }
+
+        double upperBound = 0;
+        long nodes = 0;
+        boolean optimal = true;
+        for (Component component : components) {
+            upperBound += component.upperBound(graph, valid);
+            nodes += component.nodes;
+            optimal &= component.search == null || component.search.complete;
+        }
+
+        List<Transaction> selected = new ArrayList<>();
+        double totalFee = 0;
+        for (int i : topological) {
+            if (chosen[i]) {
+                Transaction tx = graph.getTransaction(i);
+                for (Transaction.Input in : tx.getInputs()) {
+                    utxoPool.removeUTXO(new UTXO(in.prevTxId, in.outputIndex));
+                }
+                for (int outputIndex = 0; outputIndex < tx.numOutputs(); outputIndex++) {
+                    utxoPool.addUTXO(new UTXO(tx.getId(), outputIndex), tx.getOutput(outputIndex));
+                }
+                selected.add(tx);
+                totalFee += graph.getFee(i);
+            }
+        }
+        return new Result(selected.toArray(new Transaction[selected.size()]), totalFee, upperBound, nodes,
+                optimal, System.nanoTime() - start);
+    }
+
+    /** Marks {@code i} and its descendants invalid */
+    private static void invalidate(CandidateGraph graph, boolean[] valid, int i) {
+        valid[i] = false;
+        List<Integer> stack = new ArrayList<>();
+        stack.add(i);
+        while (!stack.isEmpty()) {
+            for (int child : graph.getChildren(stack.remove(stack.size() - 1))) {
+                if (valid[child]) {
+                    valid[child] = false;
+                    stack.add(child);
+                }
+            }
+        }
+    }
+
+    private static int find(int[] component, int i) {
+        while (component[i] != i) {
+            component[i] = component[component[i]];
+            i = component[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] component, int a, int b) {
+        int rootA = find(component, a);
+        int rootB = find(component, b);
+        if (rootA != rootB) {
+            component[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+        }
+    }
+
+    /**
+     * Candidates connected by dependencies and conflicts, in dependency order. Without conflicts all
+     * its valid members are chosen, otherwise the valid members are searched.
+     */
+    private static class Component {
+        private final List<Integer> members = new ArrayList<>();
+        private final boolean conflicted;
+        private Search search;
+        private long nodes;
+
+        Component(boolean conflicted) {
+            this.conflicted = conflicted;
+        }
+
+        void solve(CandidateGraph graph, boolean[] valid, long deadline) {
+            if (conflicted) {
+                search = new Search(graph, members.stream().filter(i -> valid[i]).mapToInt(Integer::intValue).toArray());
+                search.run(deadline);
+                nodes += search.nodes;
+            }
+        }
+
+        void choose(boolean[] valid, boolean[] chosen) {
+            for (int i : members) {
+                chosen[i] = !conflicted && valid[i];
+            }
+            if (conflicted) {
+                for (int k = 0; k < search.members.length; k++) {
+                    chosen[search.members[k]] = search.best[k];
+                }
+            }
+        }
+
+        double upperBound(CandidateGraph graph, boolean[] valid) {
+            if (conflicted) {
+                return search.complete ? search.bestFee : Math.max(search.bestFee, search.rootBound);
+            }
+            double bound = 0;
+            for (int i : members) {
+                if (valid[i]) {
+                    bound += graph.getFee(i);
+                }
+            }
+            return bound;
+        }
+    }
+
+    /** Branch and bound over one component, candidates renumbered 0..m-1 in dependency order */
+    private static class Search {
+        private final int[] members;
+        private final double[] fees;
+        private final int[][] parents;
+        private final int[][] groups;
+        private final boolean[] taken;
+        private final boolean[] chosen;
+        private final boolean[] best;
+        private final boolean[] selectable;
+        private double bestFee = -1;
+        private double rootBound;
+        private long nodes;
+        private long deadline;
+        private boolean complete = true;
+
+        Search(CandidateGraph graph, int[] members) {
+            this.members = members;
+            int m = members.length;
+            int[] local = new int[graph.length()];
+            Arrays.fill(local, -1);
+            for (int k = 0; k < m; k++) {
+                local[members[k]] = k;
+            }
+            fees = new double[m];
+            parents = new int[m][];
+            groups = new int[m][];
+            int[] localGroup = new int[graph.numConflictGroups()];
+            Arrays.fill(localGroup, -1);
+            int groupCount = 0;
+            for (int k = 0; k < m; k++) {
+                int i = members[k];
+                fees[k] = graph.getFee(i);
+                parents[k] = Arrays.stream(graph.getParents(i)).map(p -> local[p]).toArray();
+                int[] txGroups = graph.getConflictGroups(i);
+                groups[k] = new int[txGroups.length];
+                for (int g = 0; g < txGroups.length; g++) {
+                    if (localGroup[txGroups[g]] < 0) {
+                        localGroup[txGroups[g]] = groupCount++;
+                    }
+                    groups[k][g] = localGroup[txGroups[g]];
+                }
+            }
+            taken = new boolean[groupCount];
+            chosen = new boolean[m];
+            best = new boolean[m];
+            selectable = new boolean[m];
+        }
+
+        void run(long deadline) {
+            this.deadline = deadline;
+            greedy();
+            Arrays.fill(chosen, false);
+            Arrays.fill(taken, false);
+            rootBound = bound(0);
+            if (members.length > MAX_SEARCH_SIZE) {
+                complete = false;
+                return;
+            }
+            search(0, 0);
+        }
+
+        /** Highest fee first among the candidates whose parents are all chosen */
+        private void greedy() {
+            int m = members.length;
+            int[] missingParents = new int[m];
+            List<List<Integer>> children = new ArrayList<>();
+            for (int k = 0; k < m; k++) {
+                children.add(new ArrayList<>());
+            }
+            PriorityQueue<Integer> ready = new PriorityQueue<>((a, b) -> {
+                int byFee = Double.compare(fees[b], fees[a]);
+                return byFee != 0 ? byFee : Integer.compare(a, b);
+            });
+            for (int k = 0; k < m; k++) {
+                missingParents[k] = parents[k].length;
+                for (int parent : parents[k]) {
+                    children.get(parent).add(k);
+                }
+                if (missingParents[k] == 0) {
+                    ready.add(k);
+                }
+            }
+            double fee = 0;
+            Integer k;
+            while ((k = ready.poll()) != null) {
+                if (!free(k)) {
+                    continue;
+                }
+                take(k, true);
+                fee += fees[k];
+                for (int child : children.get(k)) {
+                    if (--missingParents[child] == 0) {
+                        ready.add(child);
+                    }
+                }
+            }
+            record(fee);
+        }
+
+        private void search(int k, double fee) {
+            nodes++;
+            if ((nodes & 1023) == 0 && System.nanoTime() > deadline) {
+                complete = false;
+            }
+            if (!complete) {
+                return;
+            }
+            if (k == members.length) {
+                if (fee > bestFee + EPSILON) {
+                    record(fee);
+                }
+                return;
+            }
+            if (fee + bound(k) <= bestFee + EPSILON) {
+                return;
+            }
+            if (free(k) && parentsChosen(k)) {
+                take(k, true);
+                search(k + 1, fee + fees[k]);
+                take(k, false);
+            }
+            search(k + 1, fee);
+        }
+
+        /** @return the fees of the candidates from {@code k} on that can still be chosen */
+        private double bound(int k) {
+            double bound = 0;
+            for (int j = k; j < members.length; j++) {
+                boolean possible = free(j);
+                for (int parent : parents[j]) {
+                    possible &= parent < k ? chosen[parent] : selectable[parent];
+                }
+                selectable[j] = possible;
+                if (possible) {
+                    bound += fees[j];
+                }
+            }
+            return bound;
+        }
+
+        private boolean free(int k) {
+            for (int group : groups[k]) {
+                if (taken[group]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean parentsChosen(int k) {
+            for (int parent : parents[k]) {
+                if (!chosen[parent]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void take(int k, boolean value) {
+            chosen[k] = value;
+            for (int group : groups[k]) {
+                taken[group] = value;
+            }
+        }
+
+        private void record(double fee) {
+            bestFee = fee;
+            System.arraycopy(chosen, 0, best, 0, chosen.length);
+        }
+    }
+}
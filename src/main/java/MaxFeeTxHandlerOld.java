@@ -3,9 +3,17 @@ import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 
+/**
+ * @deprecated shares its UTXO pool between all instances; use {@link EpochPipeline} with
+ *             {@link TxSelectionStrategies#greedyFee()}
+ */
+@Deprecated
 public class MaxFeeTxHandlerOld {
 
     public static UTXOPool utxoPool;
+    /** validates against {@link #utxoPool}, rebound by {@link #isValidTx} whenever that is reassigned */
+    private TxValidator validator;
+
     /**
      * Creates a public ledger whose current UTXOPool (collection of unspent transaction outputs) is
      * {@code utxoPool}. This should make a copy of utxoPool by using the UTXOPool(UTXOPool uPool)
@@ -25,52 +33,14 @@ public class MaxFeeTxHandlerOld {
      *     values; and false otherwise.
      */
     public boolean isValidTx(Transaction tx) {
-        if(tx == null) {
-            return false;
-        }
-        double sumOfInputs = 0;
-        double sumOfOutputs = 0;
-
-        for (int i = 0; i < tx.getInputs().size(); i++) {
-            Transaction.Input currentInput = tx.getInput(i);
-            UTXO currentUtxo = new UTXO(currentInput.prevTxHash, currentInput.outputIndex);
-
-            if (!this.utxoPool.contains(currentUtxo)) return false; //{1} requirement
-            Transaction.Output prevTxOutput = this.utxoPool.getTxOutput(currentUtxo);
-            if (currentInput.signature == null || prevTxOutput.address == null || !Crypto.verifySignature(prevTxOutput.address, tx.getRawDataToSign(i), currentInput.signature)) { //{2} requirement
-                return false;
-            }
-
-            //compare with others elements "(3) no UTXO is claimed multiple times by {@code tx}"
-            for (int k = i + 1; k < tx.getInputs().size(); k++) {
-                Transaction.Input inputToCompare = tx.getInput(k);
-
-                UTXO u1 = new UTXO(currentInput.prevTxHash, currentInput.outputIndex);
-                UTXO u2 = new UTXO(inputToCompare.prevTxHash, inputToCompare.outputIndex);
-
-                if (u1.equals(u2)) { // {3} requirement
-                    return false;
-                }
-            }
-
-            sumOfInputs += prevTxOutput.value;
+        // against the pool as it is now, whichever instance assigned it last
+        UTXOPool current = MaxFeeTxHandlerOld.utxoPool;
+        if (validator == null) {
+            validator = new TxValidator(current);
+        } else if (validator.getUTXOPool() != current) {
+            validator = validator.forPool(current);
         }
-
-        for (int i = 0; i < tx.getOutputs().size(); i++) {
-            Transaction.Output currentOutput = tx.getOutput(i);
-
-            if(currentOutput.value >= 0) { // {4} requirement
-                sumOfOutputs += currentOutput.value;
-            } else {
-                return false;
-            }
-        }
-
-        if(sumOfOutputs > sumOfInputs) { //{5} requirement
-            return false;
-        }
-
-        return true;
+        return validator.validate(tx) == ValidationResult.VALID;
     }
 
     /**
@@ -90,14 +60,14 @@ public class MaxFeeTxHandlerOld {
 
             if(this.isValidTx(currentTx)) {
                 for(Transaction.Input txInput : currentTx.getInputs()) {
-                    UTXO utxo = new UTXO(txInput.prevTxHash, txInput.outputIndex);
+                    UTXO utxo = new UTXO(txInput.prevTxId, txInput.outputIndex);
 
                     this.utxoPool.removeUTXO(utxo);
                 }
 
                 for(int outputIndex = 0; outputIndex < currentTx.getOutputs().size(); outputIndex++) {
                     Transaction.Output txOutput = currentTx.getOutput(outputIndex);
-                    UTXO utxo = new UTXO(currentTx.getHash(), outputIndex);
+                    UTXO utxo = new UTXO(currentTx.getId(), outputIndex);
                     this.utxoPool.addUTXO(utxo, txOutput);
                 }
 
@@ -134,7 +104,7 @@ public class MaxFeeTxHandlerOld {
             double sumInputs = 0;
             double sumOutputs = 0;
             for (Transaction.Input in : tx.getInputs()) {
-                UTXO utxo = new UTXO(in.prevTxHash, in.outputIndex);
+                UTXO utxo = new UTXO(in.prevTxId, in.outputIndex);
                 Transaction.Output txOutput = MaxFeeTxHandlerOld.utxoPool.getTxOutput(utxo);
                 if(txOutput != null) {
                     sumInputs += txOutput.value;
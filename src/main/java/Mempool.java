@@ -0,0 +1,411 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Pool of pending transactions waiting for an epoch. Entries are indexed by transaction hash, by
+ * the outputs they spend and by fee rate, the fee paid per byte of {@link Transaction#getRawTx()}.
+ * <p>
+ * The pool never holds more than {@code maxBytes} of encoded transactions: when an addition
+ * exceeds the budget the entries with the lowest fee rate are evicted, together with everything
+ * spending their outputs, until it fits again. A transaction spending an output that a pending
+ * transaction already spends replaces it (and its descendants) only if it pays a higher fee than
+ * everything it replaces and a higher fee rate than every transaction it directly conflicts with.
+ * <p>
+ * Only the values and inputs of a transaction are checked on admission; signatures are left to the
+ * handler the candidates are fed to. Instances are not thread safe.
+ */
+public class Mempool {
+
+    public enum AddResult {
+        ADDED,
+        /** a transaction with the same hash is already pending */
+        DUPLICATE,
+        /** an input is neither in the UTXO pool nor an output of a pending transaction */
+        MISSING_INPUT,
+        /** an input is claimed twice, an output is negative or outputs exceed inputs */
+        INVALID,
+        /** the transaction conflicts with pending ones and does not pay enough to replace them */
+        REPLACEMENT_UNDERPAID,
+        /** the transaction does not fit into the byte budget at its fee rate */
+        POOL_FULL
+    }
+
+    /** A pending transaction with its fee and encoded size, both computed once on admission */
+    public static class Entry {
+        private final Transaction tx;
+        private final double fee;
+        private final int size;
+        private final long sequence;
+
+        private Entry(Transaction tx, double fee, int size, long sequence) {
+            this.tx = tx;
+            this.fee = fee;
+            this.size = size;
+            this.sequence = sequence;
+        }
+
+        public Transaction getTransaction() {
+            return tx;
+        }
+
+        public double getFee() {
+            return fee;
+        }
+
+        /** @return the length of {@link Transaction#getRawTx()} */
+        public int getSize() {
+            return size;
+        }
+
+        public double getFeeRate() {
+            return fee / size;
+        }
+    }
+
+    /** Lowest fee rate first, newest first among equal rates */
+    private static final Comparator<Entry> EVICTION_ORDER = Comparator
+            .comparingDouble(Entry::getFeeRate)
+            .thenComparing(Comparator.comparingLong((Entry e) -> e.sequence).reversed());
+
+    private final long maxBytes;
+    private final Map<Hash256, Entry> byHash = new HashMap<>();
+    private final Map<UTXO, Entry> bySpentOutput = new HashMap<>();
+    private final TreeSet<Entry> byFeeRate = new TreeSet<>(EVICTION_ORDER);
+    private long usedBytes;
+    private long sequence;
+
+    public Mempool(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Byte budget must be positive");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Adds {@code tx}, resolving its inputs against {@code utxoPool} and the outputs of pending
+     * transactions.
+     */
+    public AddResult add(Transaction tx, UTXOPool utxoPool) {
+        if (byHash.containsKey(tx.getId())) {
+            return AddResult.DUPLICATE;
+        }
+
+        double sumOfInputs = 0;
+        Set<UTXO> claimed = new HashSet<>();
+        Set<Entry> parents = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Entry> conflicts = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Transaction.Input in : tx.getInputs()) {
+            if (in.prevTxId == null || in.outputIndex < 0) {
+                return AddResult.INVALID;
+            }
+            UTXO utxo = new UTXO(in.prevTxId, in.outputIndex);
+            if (!claimed.add(utxo)) {
+                return AddResult.INVALID;
+            }
+            Transaction.Output prevTxOutput = utxoPool.getTxOutput(utxo);
+            if (prevTxOutput == null) {
+                Entry parent = byHash.get(in.prevTxId);
+                prevTxOutput = parent == null ? null : parent.tx.getOutput(in.outputIndex);
+                if (prevTxOutput == null) {
+                    return AddResult.MISSING_INPUT;
+                }
+                parents.add(parent);
+            }
+            Entry conflict = bySpentOutput.get(utxo);
+            if (conflict != null) {
+                conflicts.add(conflict);
+            }
+            sumOfInputs += prevTxOutput.value;
+        }
+        double sumOfOutputs = 0;
+        for (Transaction.Output out : tx.getOutputs()) {
+            if (out.value < 0) {
+                return AddResult.INVALID;
+            }
+            sumOfOutputs += out.value;
+        }
+        if (sumOfOutputs > sumOfInputs) {
+            return AddResult.INVALID;
+        }
+
+        Entry entry = new Entry(tx, sumOfInputs - sumOfOutputs, tx.getRawTx().length, sequence++);
+        if (entry.size > maxBytes) {
+            return AddResult.POOL_FULL;
+        }
+        Set<Entry> replaced = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (!conflicts.isEmpty()) {
+            double replacedFees = 0;
+            for (Entry conflict : conflicts) {
+                if (entry.getFeeRate() <= conflict.getFeeRate()) {
+                    return AddResult.REPLACEMENT_UNDERPAID;
+                }
+                collectWithDescendants(conflict, replaced);
+            }
+            for (Entry e : replaced) {
+                if (parents.contains(e)) {
+                    // spends an output of a transaction it would replace
+                    return AddResult.INVALID;
+                }
+                replacedFees += e.fee;
+            }
+            if (entry.fee <= replacedFees) {
+                return AddResult.REPLACEMENT_UNDERPAID;
+            }
+        }
+        // decided before anything changes, so a transaction that does not fit replaces nothing
+        if (!survivesEviction(entry, parents, replaced)) {
+            return AddResult.POOL_FULL;
+        }
+
+        for (Entry e : replaced) {
+            unindex(e);
+        }
+        index(entry);
+        while (usedBytes > maxBytes) {
+            removeWithDescendants(byFeeRate.first());
+        }
+        return AddResult.ADDED;
+    }
+
+    /**
+     * Replays the eviction that adding {@code entry}, spending outputs of {@code parents}, in place
+     * of {@code replaced} would cause, without changing the pool.
+     *
+     * @return true if {@code entry} would not be evicted itself, directly or as a descendant
+     */
+    private boolean survivesEviction(Entry entry, Set<Entry> parents, Set<Entry> replaced) {
+        Set<Entry> evicted = Collections.newSetFromMap(new IdentityHashMap<>());
+        evicted.addAll(replaced);
+        long bytes = usedBytes + entry.size;
+        for (Entry e : replaced) {
+            bytes -= e.size;
+        }
+        Iterator<Entry> lowest = byFeeRate.iterator();
+        while (bytes > maxBytes) {
+            if (!lowest.hasNext()) {
+                return false;
+            }
+            Entry next = lowest.next();
+            if (EVICTION_ORDER.compare(entry, next) < 0) {
+                return false;
+            }
+            if (evicted.contains(next)) {
+                continue;
+            }
+            Set<Entry> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+            collectWithDescendants(next, removed);
+            for (Entry e : removed) {
+                if (parents.contains(e)) {
+                    return false;
+                }
+                if (evicted.add(e)) {
+                    bytes -= e.size;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns pending transactions by descending fee rate, each preceded by the pending
+     * transactions it spends outputs of that were not returned yet, and skipping those that
+     * together with these would take the total encoded size over {@code maxBytes}. A transaction
+     * is therefore never returned without its pending parents, whose place in the epoch it could
+     * not be valid without.
+     */
+    public Transaction[] getCandidates(long maxBytes) {
+        Set<Entry> selected = new LinkedHashSet<>();
+        long bytes = 0;
+        for (Entry entry : byFeeRate.descendingSet()) {
+            if (selected.contains(entry)) {
+                continue;
+            }
+            Set<Entry> pkg = new LinkedHashSet<>();
+            collectWithAncestors(entry, selected, pkg);
+            long packageBytes = 0;
+            for (Entry e : pkg) {
+                packageBytes += e.size;
+            }
+            if (bytes + packageBytes <= maxBytes) {
+                selected.addAll(pkg);
+                bytes += packageBytes;
+            }
+        }
+        List<Transaction> candidates = new ArrayList<>(selected.size());
+        for (Entry entry : selected) {
+            candidates.add(entry.tx);
+        }
+        return candidates.toArray(new Transaction[candidates.size()]);
+    }
+
+    /**
+     * Removes transactions accepted in an epoch, and every pending transaction that spends an
+     * output one of them spent, along with its descendants.
+     */
+    public void removeConfirmed(Transaction[] acceptedTxs) {
+        for (Transaction tx : acceptedTxs) {
+            Entry entry = byHash.get(tx.getId());
+            if (entry != null) {
+                unindex(entry);
+            }
+            for (Transaction.Input in : tx.getInputs()) {
+                Entry conflict = bySpentOutput.get(new UTXO(in.prevTxId, in.outputIndex));
+                if (conflict != null) {
+                    removeWithDescendants(conflict);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs one epoch: feeds at most {@code maxBytes} of the best candidates to {@code txHandler},
+     * each after the candidates it spends outputs of, removes what it accepted, and drops
+     * candidates it rejected even though all their inputs are in its pool, since those can never
+     * become valid.
+     *
+     * @return the transactions accepted by {@code txHandler}
+     */
+    public Transaction[] handleEpoch(TxHandler txHandler, long maxBytes) {
+        Transaction[] candidates = getCandidates(maxBytes);
+        Transaction[] acceptedTxs = txHandler.handleTxs(candidates);
+        removeConfirmed(acceptedTxs);
+        UTXOPool utxoPool = txHandler.getUTXOPool();
+        for (Transaction tx : candidates) {
+            Entry entry = byHash.get(tx.getId());
+            if (entry != null && allInputsIn(tx, utxoPool)) {
+                removeWithDescendants(entry);
+            }
+        }
+        return acceptedTxs;
+    }
+
+    /** @return the pending entry for the transaction with hash {@code txHash}, or null */
+    public Entry get(byte[] txHash) {
+        return byHash.get(Hash256.of(txHash));
+    }
+
+    public boolean contains(byte[] txHash) {
+        return byHash.containsKey(Hash256.of(txHash));
+    }
+
+    /** @return the pending transactions, in no particular order */
+    public List<Transaction> getTransactions() {
+        List<Transaction> txs = new ArrayList<>(byHash.size());
+        for (Entry entry : byHash.values()) {
+            txs.add(entry.tx);
+        }
+        return txs;
+    }
+
+    /** @return the number of pending transactions */
+    public int size() {
+        return byHash.size();
+    }
+
+    /** @return the total encoded size of the pending transactions */
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private static boolean allInputsIn(Transaction tx, UTXOPool utxoPool) {
+        for (Transaction.Input in : tx.getInputs()) {
+            if (!utxoPool.contains(new UTXO(in.prevTxId, in.outputIndex))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void index(Entry entry) {
+        byHash.put(entry.tx.getId(), entry);
+        for (Transaction.Input in : entry.tx.getInputs()) {
+            bySpentOutput.put(new UTXO(in.prevTxId, in.outputIndex), entry);
+        }
+        byFeeRate.add(entry);
+        usedBytes += entry.size;
+    }
+
+    private void unindex(Entry entry) {
+        byHash.remove(entry.tx.getId());
+        for (Transaction.Input in : entry.tx.getInputs()) {
+            bySpentOutput.remove(new UTXO(in.prevTxId, in.outputIndex), entry);
+        }
+        byFeeRate.remove(entry);
+        usedBytes -= entry.size;
+    }
+
+    private void removeWithDescendants(Entry entry) {
+        Set<Entry> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        collectWithDescendants(entry, removed);
+        for (Entry e : removed) {
+            unindex(e);
+        }
+    }
+
+    /**
+     * Adds the pending ancestors of {@code entry} not in {@code excluded}, then {@code entry}, to
+     * {@code collected}. The walk keeps its path on an explicit stack, the mempool does not limit
+     * chain length.
+     */
+    private void collectWithAncestors(Entry entry, Set<Entry> excluded, Set<Entry> collected) {
+        if (excluded.contains(entry) || collected.contains(entry)) {
+            return;
+        }
+        ArrayDeque<Entry> path = new ArrayDeque<>();
+        ArrayDeque<Integer> nextInputs = new ArrayDeque<>();
+        path.push(entry);
+        nextInputs.push(0);
+        while (!path.isEmpty()) {
+            Entry current = path.peek();
+            int i = nextInputs.pop();
+            Entry parent = null;
+            while (parent == null && i < current.tx.numInputs()) {
+                Entry candidate = byHash.get(current.tx.getInput(i++).prevTxId);
+                if (candidate != null && !excluded.contains(candidate) && !collected.contains(candidate)) {
+                    parent = candidate;
+                }
+            }
+            if (parent == null) {
+                path.pop();
+                collected.add(current);
+            } else {
+                nextInputs.push(i);
+                path.push(parent);
+                nextInputs.push(0);
+            }
+        }
+    }
+
+    /** Adds {@code entry} and its pending descendants to {@code collected}, iteratively as {@link #collectWithAncestors} */
+    private void collectWithDescendants(Entry entry, Set<Entry> collected) {
+        if (!collected.add(entry)) {
+            return;
+        }
+        ArrayDeque<Entry> stack = new ArrayDeque<>();
+        stack.push(entry);
+        while (!stack.isEmpty()) {
+            Entry current = stack.pop();
+            for (int i = 0; i < current.tx.numOutputs(); i++) {
+                Entry child = bySpentOutput.get(new UTXO(current.tx.getId(), i));
+                if (child != null && collected.add(child)) {
+                    stack.push(child);
+                }
+            }
+        }
+    }
+}
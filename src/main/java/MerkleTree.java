@@ -0,0 +1,222 @@
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Merkle tree over transaction hashes, built as in RFC 6962 (Certificate Transparency): a leaf is
+ * {@code SHA-256(0x00 || txHash)}, an inner node {@code SHA-256(0x01 || left || right)}, and a
+ * tree of n leaves splits at the largest power of two below n, so no node is ever duplicated and
+ * a leaf can never pass for an inner node. Leaves can be {@link #append appended} one at a time,
+ * in O(1) amortized hashes; {@link #of(Transaction[])} hashes a whole epoch a level at a time, in
+ * parallel for large epochs. An {@link Proof inclusion proof} holds one hash per level, which
+ * {@link #verify} checks against the root with as many hashes. Not safe for concurrent use.
+ */
+public class MerkleTree {
+
+    /** Leaves from which {@link #of} hashes levels in parallel */
+    static final int PARALLEL_THRESHOLD = 4096;
+
+    private static final byte LEAF_PREFIX = 0;
+    private static final byte NODE_PREFIX = 1;
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    /** Level 0 holds the leaf hashes, level i the roots of the complete subtrees of 2^i leaves */
+    private final List<List<byte[]>> levels = new ArrayList<>();
+
+    /** Creates an empty tree */
+    public MerkleTree() {
+        levels.add(new ArrayList<>());
+    }
+
+    /** @return the tree of the hashes of {@code txs}, in order, hashed in parallel for large epochs */
+    public static MerkleTree of(Transaction[] txs) {
+        byte[][] hashes = new byte[txs.length][];
+        for (int i = 0; i < txs.length; i++) {
+            hashes[i] = txs[i].getHash();
+        }
+        return of(hashes);
+    }
+
+    /** @return the tree of {@code txHashes}, in order */
+    public static MerkleTree of(byte[][] txHashes) {
+        boolean parallel = txHashes.length >= PARALLEL_THRESHOLD;
+        MerkleTree tree = new MerkleTree();
+        byte[][] level = new byte[txHashes.length][];
+        range(level.length, parallel).forEach(i -> level[i] = leafHash(txHashes[i]));
+        tree.levels.set(0, new ArrayList<>(Arrays.asList(level)));
+        for (byte[][] below = level; below.length > 1; ) {
+            byte[][] children = below;
+            byte[][] above = new byte[children.length / 2][];
+            range(above.length, parallel).forEach(i -> above[i] = nodeHash(children[2 * i], children[2 * i + 1]));
+            tree.levels.add(new ArrayList<>(Arrays.asList(above)));
+            below = above;
+        }
+        return tree;
+    }
+
+    private static IntStream range(int n, boolean parallel) {
+        IntStream range = IntStream.range(0, n);
+        return parallel ? range.parallel() : range;
+    }
+
+    /** Appends the leaf of {@code txHash}, completing the subtrees it closes */
+    public void append(byte[] txHash) {
+        byte[] hash = leafHash(txHash);
+        for (int level = 0; ; level++) {
+            if (level == levels.size()) {
+                levels.add(new ArrayList<>());
+            }
+            List<byte[]> nodes = levels.get(level);
+            nodes.add(hash);
+            if (nodes.size() % 2 == 1) {
+                return;
+            }
+            hash = nodeHash(nodes.get(nodes.size() - 2), hash);
+        }
+    }
+
+    public void append(Transaction tx) {
+        append(tx.getHash());
+    }
+
+    /** @return the number of leaves */
+    public int size() {
+        return levels.get(0).size();
+    }
+
+    /** @return the root hash, {@code SHA-256()} of nothing for an empty tree */
+    public byte[] getRoot() {
+        if (size() == 0) {
+            return SHA256.get().digest();
+        }
+        return hash(0, size());
+    }
+
+    /**
+     * @return the proof that the leaf at {@code index} is in the tree of its current size
+     * @throws IndexOutOfBoundsException if there is no such leaf
+     */
+    public Proof prove(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Leaf " + index + " of " + size());
+        }
+        List<byte[]> path = new ArrayList<>();
+        path(index, 0, size(), path);
+        return new Proof(index, size(), path.toArray(new byte[0][]));
+    }
+
+    /** Adds the audit path of leaf {@code index} in the subtree of leaves [lo, hi), bottom first */
+    private void path(int index, int lo, int hi, List<byte[]> path) {
+        if (hi - lo == 1) {
+            return;
+        }
+        int k = Integer.highestOneBit(hi - lo - 1);
+        if (index < lo + k) {
+            path(index, lo, lo + k, path);
+            path.add(hash(lo + k, hi));
+        } else {
+            path(index, lo + k, hi, path);
+            path.add(hash(lo, lo + k));
+        }
+    }
+
+    /** @return the root of the subtree of leaves [lo, hi) */
+    private byte[] hash(int lo, int hi) {
+        int n = hi - lo;
+        if (Integer.bitCount(n) == 1 && lo % n == 0) {
+            return levels.get(Integer.numberOfTrailingZeros(n)).get(lo / n);
+        }
+        int k = Integer.highestOneBit(n - 1);
+        return nodeHash(hash(lo, lo + k), hash(lo + k, hi));
+    }
+
+    /**
+     * @return true if {@code proof} shows that {@code txHash} is the leaf at the proof's index in a
+     *         tree of the proof's size with root {@code root}
+     */
+    public static boolean verify(byte[] root, byte[] txHash, Proof proof) {
+        long index = proof.getIndex();
+        long last = proof.getTreeSize() - 1;
+        if (index < 0 || index > last) {
+            return false;
+        }
+        byte[] hash = leafHash(txHash);
+        for (byte[] sibling : proof.path) {
+            if (last == 0) {
+                return false;
+            }
+            if ((index & 1) == 1 || index == last) {
+                hash = nodeHash(sibling, hash);
+                // a right edge without sibling at the levels below is promoted unchanged
+                while ((index & 1) == 0 && index != 0) {
+                    index >>= 1;
+                    last >>= 1;
+                }
+            } else {
+                hash = nodeHash(hash, sibling);
+            }
+            index >>= 1;
+            last >>= 1;
+        }
+        return last == 0 && MessageDigest.isEqual(hash, root);
+    }
+
+    static byte[] leafHash(byte[] txHash) {
+        MessageDigest md = SHA256.get();
+        md.update(LEAF_PREFIX);
+        md.update(txHash);
+        return md.digest();
+    }
+
+    static byte[] nodeHash(byte[] left, byte[] right) {
+        MessageDigest md = SHA256.get();
+        md.update(NODE_PREFIX);
+        md.update(left);
+        md.update(right);
+        return md.digest();
+    }
+
+    /** The sibling hashes from a leaf up to the root of a tree of a given size */
+    public static class Proof {
+        private final int index;
+        private final int treeSize;
+        private final byte[][] path;
+
+        public Proof(int index, int treeSize, byte[][] path) {
+            this.index = index;
+            this.treeSize = treeSize;
+            this.path = path;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int getTreeSize() {
+            return treeSize;
+        }
+
+        /** @return the sibling hashes, bottom first */
+        public byte[][] getPath() {
+            return path.clone();
+        }
+
+        /** @return the size of the hashes of the proof, in bytes */
+        public int getByteSize() {
+            int bytes = 0;
+            for (byte[] hash : path) {
+                bytes += hash.length;
+            }
+            return bytes;
+        }
+    }
+}
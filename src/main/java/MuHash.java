@@ -0,0 +1,171 @@
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MuHash3072 rolling multiset hash: the hash of a multiset of byte strings is the product, modulo
+ * the prime {@code 2^3072 - 1103717}, of the 3072-bit numbers each string hashes to, so elements
+ * are inserted by multiplying, removed by dividing, and two multisets hash the same whatever the
+ * order they were built in. As in Bitcoin Core, divisions are kept in a separate denominator and
+ * only the final {@link #digest()} inverts it. Strings are hashed with SHA-256 and the digest
+ * expanded to 3072 bits by SHA-256 in counter mode, rather than ChaCha20, which the JDK cipher
+ * refuses to run twice on a key.
+ * <p>
+ * {@link #insert} and {@link #remove} only hash their string and count it in a set of pending
+ * digests, where an insertion and a removal of the same string cancel out; the big-number
+ * multiplications run when {@value #MAX_PENDING} digests are pending or the digest is asked for, in
+ * parallel for large batches. Safe to use from several threads.
+ */
+public class MuHash {
+
+    static final BigInteger PRIME = BigInteger.ONE.shiftLeft(3072).subtract(BigInteger.valueOf(1103717));
+
+    private static final int BYTES = 384;
+    private static final BigInteger MASK = BigInteger.ONE.shiftLeft(3072).subtract(BigInteger.ONE);
+    private static final BigInteger OFFSET = BigInteger.valueOf(1103717);
+    private static final int MAX_PENDING = 1024;
+    private static final int PARALLEL_FOLD = 256;
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private BigInteger numerator = BigInteger.ONE;
+    private BigInteger denominator = BigInteger.ONE;
+    /** Digests not multiplied in yet, with the number of insertions minus removals of each */
+    private Map<ByteBuffer, Integer> pending = new HashMap<>();
+    /** The digest as of the last change, null if it changed since */
+    private byte[] digest;
+
+    /** Creates the hash of the empty multiset */
+    public MuHash() {
+    }
+
+    /** Creates a copy of {@code other} */
+    public MuHash(MuHash other) {
+        synchronized (other) {
+            numerator = other.numerator;
+            denominator = other.denominator;
+            pending = new HashMap<>(other.pending);
+            digest = other.digest;
+        }
+    }
+
+    /** Adds {@code element} to the multiset */
+    public void insert(byte[] element) {
+        count(SHA256.get().digest(element), 1);
+    }
+
+    /** Removes {@code element} from the multiset; removing an element that is not in it is undone by inserting it */
+    public void remove(byte[] element) {
+        count(SHA256.get().digest(element), -1);
+    }
+
+    private synchronized void count(byte[] elementDigest, int count) {
+        digest = null;
+        pending.merge(ByteBuffer.wrap(elementDigest), count, (a, b) -> a + b == 0 ? null : a + b);
+        if (pending.size() >= MAX_PENDING) {
+            fold();
+        }
+    }
+
+    /** Adds every element of {@code other} to this multiset, and removes those it removes */
+    public MuHash combine(MuHash other) {
+        MuHash copy = new MuHash(other);
+        synchronized (this) {
+            digest = null;
+            numerator = multiply(numerator, copy.numerator);
+            denominator = multiply(denominator, copy.denominator);
+            for (Map.Entry<ByteBuffer, Integer> entry : copy.pending.entrySet()) {
+                pending.merge(entry.getKey(), entry.getValue(), (a, b) -> a + b == 0 ? null : a + b);
+            }
+            if (pending.size() >= MAX_PENDING) {
+                fold();
+            }
+        }
+        return this;
+    }
+
+    /** @return the 32-byte hash of the multiset, the SHA-256 of its 3072-bit product in little-endian order */
+    public synchronized byte[] digest() {
+        if (digest != null) {
+            return digest.clone();
+        }
+        fold();
+        BigInteger value = multiply(numerator, denominator.modInverse(PRIME));
+        byte[] bigEndian = value.toByteArray();
+        byte[] littleEndian = new byte[BYTES];
+        for (int i = 0; i < BYTES && i < bigEndian.length; i++) {
+            littleEndian[i] = bigEndian[bigEndian.length - 1 - i];
+        }
+        digest = SHA256.get().digest(littleEndian);
+        return digest.clone();
+    }
+
+    /** Multiplies the pending digests into the numerator and denominator */
+    private void fold() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<byte[]> inserted = new ArrayList<>();
+        List<byte[]> removed = new ArrayList<>();
+        for (Map.Entry<ByteBuffer, Integer> entry : pending.entrySet()) {
+            List<byte[]> digests = entry.getValue() > 0 ? inserted : removed;
+            for (int i = Math.abs(entry.getValue()); i > 0; i--) {
+                digests.add(entry.getKey().array());
+            }
+        }
+        pending = new HashMap<>();
+        numerator = multiply(numerator, product(inserted));
+        denominator = multiply(denominator, product(removed));
+    }
+
+    private static BigInteger product(List<byte[]> digests) {
+        if (digests.size() >= PARALLEL_FOLD) {
+            return digests.parallelStream().map(MuHash::toElement).reduce(BigInteger.ONE, MuHash::multiply);
+        }
+        BigInteger product = BigInteger.ONE;
+        for (byte[] digest : digests) {
+            product = multiply(product, toElement(digest));
+        }
+        return product;
+    }
+
+    /** @return the 3072-bit number {@code digest} stands for, modulo the prime */
+    static BigInteger toElement(byte[] digest) {
+        MessageDigest md = SHA256.get();
+        byte[] expanded = new byte[BYTES];
+        for (int block = 0; block < BYTES / 32; block++) {
+            md.update(digest);
+            md.update((byte) block);
+            try {
+                md.digest(expanded, 32 * block, 32);
+            } catch (DigestException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return reduce(new BigInteger(1, expanded));
+    }
+
+    /** @return {@code a * b} modulo the prime, for {@code a} and {@code b} below it */
+    static BigInteger multiply(BigInteger a, BigInteger b) {
+        return reduce(a.multiply(b));
+    }
+
+    /** Reduces {@code x} with {@code 2^3072 = 1103717} modulo the prime, cheaper than a division */
+    private static BigInteger reduce(BigInteger x) {
+        while (x.bitLength() > 3072) {
+            x = x.shiftRight(3072).multiply(OFFSET).add(x.and(MASK));
+        }
+        return x.compareTo(PRIME) >= 0 ? x.subtract(PRIME) : x;
+    }
+}
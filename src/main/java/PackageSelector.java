@@ -0,0 +1,295 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Package-aware (child-pays-for-parent) selection of a maximum fee set of transactions.
+ * <p>
+ * A candidate can only be accepted together with the candidates it spends outputs of, so it is
+ * scored by the fee rate of its ancestor package: the summed fee over the summed encoded size of
+ * itself and all its not yet selected in-epoch ancestors. Packages are taken from a priority heap
+ * best first; each transaction of a package is validated against the working pool and applied to
+ * it, candidates double spending an output it consumed are dropped with their descendants, and
+ * the descendants of what was selected are rescored and pushed again. Stale heap entries are
+ * recognised by a per-candidate version and skipped.
+ * <p>
+ * Packages are capped at {@code maxPackageSize} transactions; a deeper candidate becomes eligible
+ * once enough of its ancestors were selected on their own.
+ * <p>
+ * With a byte limit the selection is a greedy knapsack by fee rate: a package larger than the space
+ * left is passed over, smaller packages further down the heap still fill that space, and a passed
+ * over candidate is considered again if its package shrinks because an ancestor was selected.
+ */
+public class PackageSelector {
+
+    public static final int DEFAULT_MAX_PACKAGE_SIZE = 25;
+
+    private static final byte PENDING = 0;
+    private static final byte SELECTED = 1;
+    private static final byte DROPPED = 2;
+
+    private final UTXOPool utxoPool;
+    private final TxValidator validator;
+    private final int maxPackageSize;
+    private final long maxBytes;
+    private double totalFee;
+    private long totalBytes;
+
+    /** Creates a selector that validates against and applies selected transactions to {@code utxoPool} */
+    public PackageSelector(UTXOPool utxoPool) {
+        this(utxoPool, new TxValidator(utxoPool), DEFAULT_MAX_PACKAGE_SIZE);
+    }
+
+    public PackageSelector(UTXOPool utxoPool, TxValidator validator, int maxPackageSize) {
+        this(utxoPool, validator, maxPackageSize, Long.MAX_VALUE);
+    }
+
+    /** Creates a selector whose selection is at most {@code maxBytes} of encoded transactions */
+    public PackageSelector(UTXOPool utxoPool, TxValidator validator, int maxPackageSize, long maxBytes) {
+        if (maxPackageSize <= 0) {
+            throw new IllegalArgumentException("Package size must be positive");
+        }
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Byte limit must not be negative");
+        }
+        this.utxoPool = utxoPool;
+        this.validator = validator;
+        this.maxPackageSize = maxPackageSize;
+        this.maxBytes = maxBytes;
+    }
+
+    /** @return the total fee of the transactions returned by the last {@link #select} */
+    public double getTotalFee() {
+        return totalFee;
+    }
+
+    /** @return the summed encoded size of the transactions returned by the last {@link #select} */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Selects a mutually valid subset of {@code possibleTxs}, preferring the packages with the
+     * highest fee rate, and applies it to the UTXO pool.
+     *
+     * @return the selected transactions, every one after the transactions it depends on
+     */
+    public Transaction[] select(Transaction[] possibleTxs) {
+        totalFee = 0;
+        totalBytes = 0;
+        if (possibleTxs == null) {
+            return new Transaction[0];
+        }
+        return new Selection(possibleTxs).run();
+    }
+
+    private static class Node implements Comparable<Node> {
+        private final double feeRate;
+        private final int index;
+        private final int version;
+
+        Node(double feeRate, int index, int version) {
+            this.feeRate = feeRate;
+            this.index = index;
+            this.version = version;
+        }
+
+        public int compareTo(Node other) {
+            int byRate = Double.compare(other.feeRate, feeRate);
+            return byRate != 0 ? byRate : Integer.compare(index, other.index);
+        }
+    }
+
+    /** State of one call to {@link #select}, candidates are referred to by their graph index */
+    private class Selection {
+        private final CandidateGraph graph;
+        private final byte[] state;
+        private final int[] version;
+        private final PriorityQueue<Node> heap = new PriorityQueue<>();
+
+        /** Scratch space of the graph walks, a node is visited if its mark equals the walk's stamp */
+        private final int[] mark;
+        private int stamp;
+        private final int[] stack;
+        private final int[] cursor;
+        private final int[] buffer;
+
+        Selection(Transaction[] possibleTxs) {
+            ValidationStats stats = validator.getStats();
+            long start = stats.isTimingEnabled() ? System.nanoTime() : 0;
+            graph = new CandidateGraph(possibleTxs, utxoPool);
+            if (stats.isTimingEnabled()) {
+                stats.recordStage(ValidationStats.Stage.GRAPH, System.nanoTime() - start);
+            }
+            int n = graph.length();
+            state = new byte[n];
+            version = new int[n];
+            mark = new int[n];
+            stack = new int[n];
+            cursor = new int[n];
+            buffer = new int[n];
+            for (int i = 0; i < n; i++) {
+                if (graph.isUnresolved(i)) {
+                    drop(i);
+                }
+            }
+        }
+
+        Transaction[] run() {
+            for (int i = 0; i < graph.length(); i++) {
+                score(i);
+            }
+            List<Transaction> selected = new ArrayList<>();
+            List<Integer> applied = new ArrayList<>();
+            Node node;
+            while ((node = heap.poll()) != null) {
+                int i = node.index;
+                if (state[i] != PENDING || node.version != version[i]) {
+                    continue;
+                }
+                int packageSize = collectPackage(i);
+                long packageBytes = 0;
+                for (int k = 0; k < packageSize; k++) {
+                    packageBytes += graph.getSize(buffer[k]);
+                }
+                if (packageBytes > maxBytes - totalBytes) {
+                    continue;
+                }
+                int[] pkg = Arrays.copyOf(buffer, packageSize);
+                applied.clear();
+                for (int member : pkg) {
+                    if (state[member] != PENDING) {
+                        continue;
+                    }
+                    if (validator.validate(graph.getTransaction(member)) != ValidationResult.VALID) {
+                        drop(member);
+                        continue;
+                    }
+                    apply(member);
+                    selected.add(graph.getTransaction(member));
+                    applied.add(member);
+                }
+                rescoreDescendants(applied);
+            }
+            return selected.toArray(new Transaction[selected.size()]);
+        }
+
+        /** Pushes {@code i} with the fee rate of its package, unless the package is too large */
+        private void score(int i) {
+            if (state[i] != PENDING) {
+                return;
+            }
+            int packageSize = collectPackage(i);
+            if (packageSize > maxPackageSize) {
+                return;
+            }
+            double packageFee = 0;
+            long packageBytes = 0;
+            for (int k = 0; k < packageSize; k++) {
+                packageFee += graph.getFee(buffer[k]);
+                packageBytes += graph.getSize(buffer[k]);
+            }
+            heap.add(new Node(packageFee / packageBytes, i, ++version[i]));
+        }
+
+        /**
+         * Collects the pending ancestors of {@code i} and {@code i} itself into {@code buffer},
+         * parents before children, stopping once more than {@code maxPackageSize} were found.
+         *
+         * @return the number of transactions collected
+         */
+        private int collectPackage(int i) {
+            stamp++;
+            int count = 0;
+            int depth = 0;
+            stack[depth] = i;
+            cursor[depth] = 0;
+            mark[i] = stamp;
+            while (depth >= 0) {
+                int top = stack[depth];
+                int[] parents = graph.getParents(top);
+                if (cursor[depth] < parents.length) {
+                    int parent = parents[cursor[depth]++];
+                    if (mark[parent] != stamp && state[parent] == PENDING) {
+                        mark[parent] = stamp;
+                        stack[++depth] = parent;
+                        cursor[depth] = 0;
+                    }
+                } else {
+                    buffer[count++] = top;
+                    depth--;
+                    if (count > maxPackageSize) {
+                        return count;
+                    }
+                }
+            }
+            return count;
+        }
+
+        private void apply(int i) {
+            Transaction tx = graph.getTransaction(i);
+            state[i] = SELECTED;
+            totalFee += graph.getFee(i);
+            totalBytes += graph.getSize(i);
+            for (Transaction.Input in : tx.getInputs()) {
+                utxoPool.removeUTXO(new UTXO(in.prevTxId, in.outputIndex));
+            }
+            for (int outputIndex = 0; outputIndex < tx.numOutputs(); outputIndex++) {
+                utxoPool.addUTXO(new UTXO(tx.getId(), outputIndex), tx.getOutput(outputIndex));
+            }
+            for (int group : graph.getConflictGroups(i)) {
+                for (int other : graph.getGroupSpenders(group)) {
+                    if (other != i) {
+                        drop(other);
+                    }
+                }
+            }
+        }
+
+        /** Marks {@code i} and its pending descendants as dropped */
+        private void drop(int i) {
+            if (state[i] != PENDING) {
+                return;
+            }
+            state[i] = DROPPED;
+            int top = 0;
+            stack[top++] = i;
+            while (top > 0) {
+                int current = stack[--top];
+                for (int child : graph.getChildren(current)) {
+                    if (state[child] == PENDING) {
+                        state[child] = DROPPED;
+                        stack[top++] = child;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Rescores the pending descendants of the just selected transactions. Only descendants at
+         * most {@code maxPackageSize} generations below can have a small enough package.
+         */
+        private void rescoreDescendants(List<Integer> applied) {
+            stamp++;
+            List<Integer> level = new ArrayList<>(applied);
+            List<Integer> rescored = new ArrayList<>();
+            for (int generation = 1; generation <= maxPackageSize && !level.isEmpty(); generation++) {
+                List<Integer> next = new ArrayList<>();
+                for (int i : level) {
+                    for (int child : graph.getChildren(i)) {
+                        if (mark[child] != stamp && state[child] == PENDING) {
+                            mark[child] = stamp;
+                            next.add(child);
+                        }
+                    }
+                }
+                rescored.addAll(next);
+                level = next;
+            }
+            for (int i : rescored) {
+                score(i);
+            }
+        }
+    }
+}
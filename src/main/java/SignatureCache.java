@@ -0,0 +1,109 @@
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded set of signatures already verified, so a transaction seen again, typically when a
+ * rejected epoch is retried or a relayed transaction is finally accepted, does not cost another
+ * RSA verification. Entries are SHA-256 digests of the key, the message and the signature; only
+ * valid signatures are cached, so invalid ones cannot crowd out useful entries.
+ * <p>
+ * The cache is direct-mapped: an array of {@code capacity} slots, each entry going into the slot
+ * its hash picks and overwriting whatever was there. Lookups and additions are a single array
+ * access, never scan and cannot exceed the capacity, at the cost of evicting an entry whose slot
+ * is taken even when others are free. Safe to use from many threads without locking.
+ *
+ * @see Crypto#setSignatureCache(SignatureCache)
+ */
+public class SignatureCache {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final int capacity;
+    private final AtomicReferenceArray<ByteBuffer> slots;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public SignatureCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SignatureCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    /** @return the entry of a signature, to pass to {@link #contains} and {@link #add} */
+    public static ByteBuffer entry(PublicKey pubKey, byte[] message, byte[] signature) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] key = pubKey.getEncoded();
+        // length prefixes, so no two different triples hash the same concatenation
+        md.update(ByteBuffer.allocate(3 * Integer.BYTES).putInt(key.length).putInt(message.length).putInt(signature.length).array());
+        md.update(key);
+        md.update(message);
+        md.update(signature);
+        return ByteBuffer.wrap(md.digest());
+    }
+
+    /** @return true if the signature of {@code entry} was verified before, counting a hit or a miss */
+    public boolean contains(ByteBuffer entry) {
+        if (entry.equals(slots.get(slot(entry)))) {
+            hits.increment();
+            return true;
+        }
+        misses.increment();
+        return false;
+    }
+
+    /** Records the signature of {@code entry} as valid, evicting the entry in its slot if any */
+    public void add(ByteBuffer entry) {
+        slots.set(slot(entry), entry);
+    }
+
+    private int slot(ByteBuffer entry) {
+        int hash = entry.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** @return the number of occupied slots, counted in time proportional to the capacity */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < capacity; i++) {
+            if (slots.get(i) != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public void clear() {
+        for (int i = 0; i < capacity; i++) {
+            slots.set(i, null);
+        }
+        hits.reset();
+        misses.reset();
+    }
+}
@@ -1,6 +1,6 @@
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Objects;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
@@ -9,25 +9,37 @@ public class Transaction {
 
     public class Input {
         /** hash of the Transaction whose output is being used */
-        public byte[] prevTxHash;
+        public final Hash256 prevTxId;
         /** used output's index in the previous transaction */
         public int outputIndex;
         /** the signature produced to check validity */
         public byte[] signature;
 
+        /** @throws IllegalArgumentException if {@code prevHash} is longer than {@value Hash256#BYTES} bytes */
         public Input(byte[] prevHash, int index) {
-            if (prevHash == null)
-                prevTxHash = null;
-            else
-                prevTxHash = Arrays.copyOf(prevHash, prevHash.length);
+            this(prevHash == null ? null : Hash256.of(prevHash), index);
+        }
+
+        public Input(Hash256 prevTx, int index) {
+            prevTxId = prevTx;
             outputIndex = index;
         }
 
+        /** @return a new array of the bytes of {@link #prevTxId}, null if it is null */
+        public byte[] getPrevTxHash() {
+            return prevTxId == null ? null : prevTxId.toByteArray();
+        }
+
         public void addSignature(byte[] sig) {
             if (sig == null)
                 signature = null;
             else
-                signature = Arrays.copyOf(sig, sig.length);
+                signature = sig.clone();
+        }
+
+        /** @return true if this input and {@code other} claim the same output, compared without allocating UTXOs */
+        public boolean claimsSameOutput(Input other) {
+            return outputIndex == other.outputIndex && Objects.equals(prevTxId, other.prevTxId);
         }
     }
 
@@ -45,6 +57,8 @@ public class Transaction {
 
     /** hash of the transaction, its unique id */
     private byte[] hash;
+    /** {@link #hash} as a {@link Hash256} */
+    private Hash256 id;
     private ArrayList<Input> inputs;
     private ArrayList<Output> outputs;
 
@@ -55,6 +69,7 @@ public class Transaction {
 
     public Transaction(Transaction tx) {
         hash = tx.hash.clone();
+        id = tx.id;
         inputs = new ArrayList<Input>(tx.inputs);
         outputs = new ArrayList<Output>(tx.outputs);
     }
@@ -64,6 +79,10 @@ public class Transaction {
         inputs.add(in);
     }
 
+    public void addInput(Hash256 prevTxId, int outputIndex) {
+        inputs.add(new Input(prevTxId, outputIndex));
+    }
+
     public void addOutput(double value, PublicKey address) {
         Output op = new Output(value, address);
         outputs.add(op);
@@ -76,8 +95,7 @@ public class Transaction {
     public void removeInput(UTXO ut) {
         for (int i = 0; i < inputs.size(); i++) {
             Input in = inputs.get(i);
-            UTXO u = new UTXO(in.prevTxHash, in.outputIndex);
-            if (u.equals(ut)) {
+            if (in.outputIndex == ut.getIndex() && ut.getTxId().equals(in.prevTxId)) {
                 inputs.remove(i);
                 return;
             }
@@ -86,35 +104,38 @@ public class Transaction {
 
     public byte[] getRawDataToSign(int index) {
         // ith input and all outputs
-        ArrayList<Byte> sigData = new ArrayList<Byte>();
         if (index > inputs.size())
             return null;
         Input in = inputs.get(index);
-        byte[] prevTxHash = in.prevTxHash;
-        ByteBuffer b = ByteBuffer.allocate(Integer.SIZE / 8);
-        b.putInt(in.outputIndex);
-        byte[] outputIndex = b.array();
-        if (prevTxHash != null)
-            for (int i = 0; i < prevTxHash.length; i++)
-                sigData.add(prevTxHash[i]);
-        for (int i = 0; i < outputIndex.length; i++)
-            sigData.add(outputIndex[i]);
-        for (Output op : outputs) {
-            ByteBuffer bo = ByteBuffer.allocate(Double.SIZE / 8);
-            bo.putDouble(op.value);
-            byte[] value = bo.array();
-            byte[] addressBytes = op.address.getEncoded();
-            for (int i = 0; i < value.length; i++)
-                sigData.add(value[i]);
-
-            for (int i = 0; i < addressBytes.length; i++)
-                sigData.add(addressBytes[i]);
-        }
-        byte[] sigD = new byte[sigData.size()];
-        int i = 0;
-        for (Byte sb : sigData)
-            sigD[i++] = sb;
-        return sigD;
+        byte[][] addresses = encodedAddresses();
+        ByteBuffer sigData = ByteBuffer.allocate(length(in.prevTxId) + Integer.BYTES + outputsLength(addresses));
+        if (in.prevTxId != null)
+            in.prevTxId.put(sigData);
+        sigData.putInt(in.outputIndex);
+        putOutputs(sigData, addresses);
+        return sigData.array();
+    }
+
+    /**
+     * @return the outputs as serialized at the end of every {@link #getRawDataToSign(int)}, to be
+     *         passed to {@link #getRawDataToSign(int, byte[])} when signing several inputs
+     */
+    public byte[] getRawOutputs() {
+        byte[][] addresses = encodedAddresses();
+        ByteBuffer rawOutputs = ByteBuffer.allocate(outputsLength(addresses));
+        putOutputs(rawOutputs, addresses);
+        return rawOutputs.array();
+    }
+
+    /** @return {@link #getRawDataToSign(int)}, with the outputs already serialized by {@link #getRawOutputs()} */
+    public byte[] getRawDataToSign(int index, byte[] rawOutputs) {
+        Input in = inputs.get(index);
+        ByteBuffer sigData = ByteBuffer.allocate(length(in.prevTxId) + Integer.BYTES + rawOutputs.length);
+        if (in.prevTxId != null)
+            in.prevTxId.put(sigData);
+        sigData.putInt(in.outputIndex);
+        sigData.put(rawOutputs);
+        return sigData.array();
     }
 
     public void addSignature(byte[] signature, int index) {
@@ -122,40 +143,54 @@ public class Transaction {
     }
 
     public byte[] getRawTx() {
-        ArrayList<Byte> rawTx = new ArrayList<Byte>();
+        byte[][] addresses = encodedAddresses();
+        int size = outputsLength(addresses);
+        for (Input in : inputs)
+            size += length(in.prevTxId) + Integer.BYTES + length(in.signature);
+        ByteBuffer rawTx = ByteBuffer.allocate(size);
         for (Input in : inputs) {
-            byte[] prevTxHash = in.prevTxHash;
-            ByteBuffer b = ByteBuffer.allocate(Integer.SIZE / 8);
-            b.putInt(in.outputIndex);
-            byte[] outputIndex = b.array();
-            byte[] signature = in.signature;
-            if (prevTxHash != null)
-                for (int i = 0; i < prevTxHash.length; i++)
-                    rawTx.add(prevTxHash[i]);
-            for (int i = 0; i < outputIndex.length; i++)
-                rawTx.add(outputIndex[i]);
-            if (signature != null)
-                for (int i = 0; i < signature.length; i++)
-                    rawTx.add(signature[i]);
+            if (in.prevTxId != null)
+                in.prevTxId.put(rawTx);
+            rawTx.putInt(in.outputIndex);
+            if (in.signature != null)
+                rawTx.put(in.signature);
         }
-        for (Output op : outputs) {
-            ByteBuffer b = ByteBuffer.allocate(Double.SIZE / 8);
-            b.putDouble(op.value);
-            byte[] value = b.array();
-            byte[] addressBytes = op.address.getEncoded();
-            for (int i = 0; i < value.length; i++) {
-                rawTx.add(value[i]);
-            }
-            for (int i = 0; i < addressBytes.length; i++) {
-                rawTx.add(addressBytes[i]);
-            }
+        putOutputs(rawTx, addresses);
+        return rawTx.array();
+    }
+
+    /*
+     * The serializations are written straight into an array of their exact size: each output's
+     * address is encoded once, since getEncoded() returns a fresh copy on every call.
+     */
+
+    private byte[][] encodedAddresses() {
+        byte[][] addresses = new byte[outputs.size()][];
+        for (int i = 0; i < addresses.length; i++)
+            addresses[i] = outputs.get(i).address.getEncoded();
+        return addresses;
+    }
+
+    private static int outputsLength(byte[][] addresses) {
+        int length = addresses.length * Double.BYTES;
+        for (byte[] address : addresses)
+            length += address.length;
+        return length;
+    }
 
+    private void putOutputs(ByteBuffer buffer, byte[][] addresses) {
+        for (int i = 0; i < addresses.length; i++) {
+            buffer.putDouble(outputs.get(i).value);
+            buffer.put(addresses[i]);
         }
-        byte[] tx = new byte[rawTx.size()];
-        int i = 0;
-        for (Byte b : rawTx)
-            tx[i++] = b;
-        return tx;
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static int length(Hash256 hash) {
+        return hash == null ? 0 : hash.length();
     }
 
     public void finalize() {
@@ -163,6 +198,7 @@ public class Transaction {
             MessageDigest md = MessageDigest.getInstance("SHA-256");
             md.update(getRawTx());
             hash = md.digest();
+            id = Hash256.of(hash);
         } catch (NoSuchAlgorithmException x) {
             x.printStackTrace(System.err);
         }
@@ -170,12 +206,18 @@ public class Transaction {
 
     public void setHash(byte[] h) {
         hash = h;
+        id = h == null ? null : Hash256.of(h);
     }
 
     public byte[] getHash() {
         return hash;
     }
 
+    /** @return the hash of the transaction, null until it is finalized */
+    public Hash256 getId() {
+        return id;
+    }
+
     public ArrayList<Input> getInputs() {
         return inputs;
     }
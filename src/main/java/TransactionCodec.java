@@ -0,0 +1,166 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Self-delimiting binary encoding of a {@link Transaction}, used wherever transactions leave the
+ * process. Unlike {@link Transaction#getRawTx()} every variable length field carries its length,
+ * so a transaction can be decoded again:
+ *
+ * <pre>
+ * int numInputs,  per input:  int hashLength, hash, int outputIndex, int signatureLength, signature
+ * int numOutputs, per output: double value, int keyLength, X.509 encoded RSA key
+ * </pre>
+ *
+ * A missing hash or signature is encoded with length -1. The transaction hash is not encoded, it is
+ * recomputed on decode. Decoded public keys are cached by their encoding, so an instance is not
+ * thread safe.
+ */
+public class TransactionCodec {
+
+    private final KeyFactory keyFactory;
+    private final Map<ByteBuffer, PublicKey> keys = new HashMap<>();
+
+    public TransactionCodec() {
+        try {
+            keyFactory = KeyFactory.getInstance("RSA");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** @return the encoding of {@code tx} */
+    public byte[] encode(Transaction tx) {
+        ByteBuffer buf = ByteBuffer.allocate(encodedSize(tx));
+        encode(tx, buf);
+        return buf.array();
+    }
+
+    /** @return the number of bytes {@link #encode(Transaction, ByteBuffer)} writes for {@code tx} */
+    public int encodedSize(Transaction tx) {
+        int size = 2 * Integer.BYTES;
+        for (Transaction.Input in : tx.getInputs()) {
+            size += 3 * Integer.BYTES + (in.prevTxId == null ? 0 : in.prevTxId.length()) + length(in.signature);
+        }
+        for (Transaction.Output out : tx.getOutputs()) {
+            size += Double.BYTES + Integer.BYTES + out.address.getEncoded().length;
+        }
+        return size;
+    }
+
+    /** Writes the encoding of {@code tx} at the position of {@code buf} */
+    public void encode(Transaction tx, ByteBuffer buf) {
+        buf.putInt(tx.numInputs());
+        for (Transaction.Input in : tx.getInputs()) {
+            if (in.prevTxId == null) {
+                buf.putInt(-1);
+            } else {
+                buf.putInt(in.prevTxId.length());
+                in.prevTxId.put(buf);
+            }
+            buf.putInt(in.outputIndex);
+            putBytes(buf, in.signature);
+        }
+        buf.putInt(tx.numOutputs());
+        for (Transaction.Output out : tx.getOutputs()) {
+            buf.putDouble(out.value);
+            putBytes(buf, out.address.getEncoded());
+        }
+    }
+
+    /**
+     * Reads one transaction from the position of {@code buf} and computes its hash.
+     *
+     * @throws IllegalArgumentException if the bytes are not a well-formed transaction
+     */
+    public Transaction decode(ByteBuffer buf) {
+        try {
+            Transaction tx = new Transaction();
+            int numInputs = readCount(buf, 3 * Integer.BYTES);
+            for (int i = 0; i < numInputs; i++) {
+                Hash256 prevTxId = getHash(buf);
+                tx.addInput(prevTxId, buf.getInt());
+                tx.addSignature(getBytes(buf), i);
+            }
+            int numOutputs = readCount(buf, Double.BYTES + Integer.BYTES);
+            for (int i = 0; i < numOutputs; i++) {
+                double value = buf.getDouble();
+                byte[] address = getBytes(buf);
+                if (address == null) {
+                    throw new IllegalArgumentException("Output " + i + " has no address");
+                }
+                tx.addOutput(value, publicKey(address));
+            }
+            tx.finalize();
+            return tx;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated transaction", e);
+        }
+    }
+
+    private PublicKey publicKey(byte[] encoded) {
+        ByteBuffer key = ByteBuffer.wrap(encoded);
+        PublicKey publicKey = keys.get(key);
+        if (publicKey == null) {
+            try {
+                publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(encoded));
+            } catch (InvalidKeySpecException e) {
+                throw new IllegalArgumentException("Invalid public key", e);
+            }
+            keys.put(key, publicKey);
+        }
+        return publicKey;
+    }
+
+    private static int readCount(ByteBuffer buf, int minElementSize) {
+        int count = buf.getInt();
+        if (count < 0 || count > buf.remaining() / minElementSize) {
+            throw new IllegalArgumentException("Invalid element count " + count);
+        }
+        return count;
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static void putBytes(ByteBuffer buf, byte[] bytes) {
+        if (bytes == null) {
+            buf.putInt(-1);
+        } else {
+            buf.putInt(bytes.length);
+            buf.put(bytes);
+        }
+    }
+
+    /** Reads a hash as {@link #getBytes} reads a byte array, without the array */
+    private static Hash256 getHash(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buf.remaining()) {
+            throw new IllegalArgumentException("Invalid field length " + length);
+        }
+        return Hash256.read(buf, length);
+    }
+
+    private static byte[] getBytes(ByteBuffer buf) {
+        int length = buf.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buf.remaining()) {
+            throw new IllegalArgumentException("Invalid field length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,86 @@
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Signs several inputs of a transaction at once. The outputs every input's data to sign ends with
+ * are serialized once, the inputs are signed in parallel, and the transaction hash is computed
+ * once, after the last signature, rather than after each one. Since the data to sign holds no
+ * signatures, the order inputs are signed in does not matter. Each input gets a {@link Signature}
+ * of its own rather than one cached per thread, so no pooled thread holds on to a private key once
+ * signing is done.
+ * <p>
+ * {@code new TransactionSigner().add(0, alice).add(1, bob).sign(tx)}
+ */
+public class TransactionSigner {
+
+    /** Carries a checked exception out of the parallel stream */
+    private static class Failure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Failure(SignatureException cause) {
+            super(cause);
+        }
+    }
+
+    private final List<Integer> inputs = new ArrayList<>();
+    private final List<PrivateKey> keys = new ArrayList<>();
+
+    /** Signs input {@code input} with {@code key} */
+    public TransactionSigner add(int input, PrivateKey key) {
+        inputs.add(input);
+        keys.add(key);
+        return this;
+    }
+
+    /** Signs every input of the transaction with {@code key} */
+    public TransactionSigner addAll(Transaction tx, PrivateKey key) {
+        for (int i = 0; i < tx.numInputs(); i++) {
+            add(i, key);
+        }
+        return this;
+    }
+
+    /**
+     * Adds the signatures of the inputs to {@code tx} and finalizes it.
+     *
+     * @return {@code tx}
+     * @throws IllegalArgumentException if a key is not a valid RSA private key
+     */
+    public Transaction sign(Transaction tx) throws SignatureException {
+        byte[] rawOutputs = tx.getRawOutputs();
+        byte[][] signatures = new byte[inputs.size()][];
+        IntStream range = IntStream.range(0, signatures.length);
+        try {
+            (signatures.length > 1 ? range.parallel() : range).forEach(i ->
+                    signatures[i] = sign(keys.get(i), tx.getRawDataToSign(inputs.get(i), rawOutputs)));
+        } catch (Failure e) {
+            throw (SignatureException) e.getCause();
+        }
+        for (int i = 0; i < signatures.length; i++) {
+            tx.addSignature(signatures[i], inputs.get(i));
+        }
+        tx.finalize();
+        return tx;
+    }
+
+    private static byte[] sign(PrivateKey key, byte[] data) {
+        try {
+            Signature sig = Signature.getInstance("SHA256withRSA");
+            sig.initSign(key);
+            sig.update(data);
+            return sig.sign();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (InvalidKeyException e) {
+            throw new IllegalArgumentException(e);
+        } catch (SignatureException e) {
+            throw new Failure(e);
+        }
+    }
+}
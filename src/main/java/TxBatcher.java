@@ -0,0 +1,161 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces transactions submitted concurrently from many threads into micro-batches for
+ * {@link TxHandler#handleTxs(Transaction[])}. A single worker thread owns the handler: it waits for
+ * a first submission, keeps collecting for at most {@code maxDelayMicros} or until
+ * {@code maxBatchSize} transactions are pending, and then handles them as one epoch.
+ * <p>
+ * At most {@code maxBatchSize} transactions wait for the worker; further submitters block, which
+ * propagates backpressure to whoever feeds the batcher.
+ * <p>
+ * If the handler throws on a batch, the transactions it reports in its
+ * {@link TxHandler.EpochFailure} stay accepted and the others are handled one at a time; only the
+ * verdicts of those it throws on again complete exceptionally. A handler throwing anything else is
+ * taken to have applied nothing.
+ */
+public class TxBatcher implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 512;
+    public static final long DEFAULT_MAX_DELAY_MICROS = 1000;
+
+    /** How often a submitter blocked on a full queue checks whether the batcher was closed */
+    private static final long CLOSED_CHECK_MILLIS = 10;
+
+    private final TxHandler txHandler;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Pending> queue;
+    private final Thread worker;
+    private volatile boolean closed;
+
+    public TxBatcher(TxHandler txHandler) {
+        this(txHandler, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_DELAY_MICROS);
+    }
+
+    public TxBatcher(TxHandler txHandler, int maxBatchSize, long maxDelayMicros) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.txHandler = txHandler;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        this.queue = new ArrayBlockingQueue<>(maxBatchSize);
+        this.worker = new Thread(this::run, "tx-batcher");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Queues {@code tx} for the next batch, blocking while the queue is full.
+     *
+     * @return a future completed with the verdict once the batch containing {@code tx} was handled
+     * @throws IllegalStateException if the batcher is closed, also while blocked
+     */
+    public CompletableFuture<Verdict> submit(Transaction tx) throws InterruptedException {
+        Pending pending = new Pending(tx);
+        do {
+            if (closed) {
+                throw new IllegalStateException("Batcher is closed");
+            }
+        } while (!queue.offer(pending, CLOSED_CHECK_MILLIS, TimeUnit.MILLISECONDS));
+        // closed meanwhile, the worker may have drained the queue for the last time already
+        if (closed && queue.remove(pending)) {
+            pending.verdict.completeExceptionally(new IllegalStateException("Batcher is closed"));
+        }
+        return pending.verdict;
+    }
+
+    /** Stops the worker; submissions still queued are completed exceptionally */
+    public void close() {
+        closed = true;
+        worker.interrupt();
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (!closed) {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) == 0) {
+                        Pending next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                }
+                handleBatch(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+        queue.drainTo(batch);
+        IllegalStateException closedException = new IllegalStateException("Batcher is closed");
+        for (Pending pending : batch) {
+            pending.verdict.completeExceptionally(closedException);
+        }
+    }
+
+    private void handleBatch(List<Pending> batch) {
+        Transaction[] txs = new Transaction[batch.size()];
+        for (int i = 0; i < txs.length; i++) {
+            txs[i] = batch.get(i).tx;
+        }
+        Set<Transaction> accepted = Collections.newSetFromMap(new IdentityHashMap<>());
+        try {
+            Collections.addAll(accepted, txHandler.handleTxs(txs));
+        } catch (RuntimeException e) {
+            if (e instanceof TxHandler.EpochFailure) {
+                Collections.addAll(accepted, ((TxHandler.EpochFailure) e).getAccepted());
+            }
+            handleSeparately(batch, accepted);
+            return;
+        }
+        for (Pending pending : batch) {
+            pending.verdict.complete(new Verdict(pending.tx, accepted.contains(pending.tx)));
+        }
+    }
+
+    /**
+     * Completes the verdicts of a batch the handler failed on: the transactions the failed epoch
+     * {@code accepted} before failing were applied, every other one is handled as an epoch of its
+     * own, so a failure only fails the transaction that caused it.
+     */
+    private void handleSeparately(List<Pending> batch, Set<Transaction> accepted) {
+        for (Pending pending : batch) {
+            Transaction tx = pending.tx;
+            if (accepted.contains(tx)) {
+                pending.verdict.complete(new Verdict(tx, true));
+                continue;
+            }
+            try {
+                pending.verdict.complete(new Verdict(tx, txHandler.handleTxs(new Transaction[]{tx}).length == 1));
+            } catch (TxHandler.EpochFailure e) {
+                pending.verdict.completeExceptionally(e.getCause());
+            } catch (RuntimeException e) {
+                pending.verdict.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static class Pending {
+        private final Transaction tx;
+        private final CompletableFuture<Verdict> verdict = new CompletableFuture<>();
+
+        Pending(Transaction tx) {
+            this.tx = tx;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.HexFormat;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder events of transaction handling, so epochs and validations can be read
+ * against GC and JIT activity in the same recording. The defaults suit always-on profiling:
+ * only slow validations and pool copies are recorded, and signature cache lookups not at all.
+ * A recording overrides them like any JDK event, e.g. {@code scrooge.TxValidation#threshold=0 ms}
+ * in a {@code .jfc} file or {@code Recording.enable("scrooge.TxValidation").withoutThreshold()}.
+ */
+public final class TxEvents {
+
+    private TxEvents() {
+    }
+
+    /** One call of a handler's {@code handleTxs}; its start and end are the epoch's */
+    @Name("scrooge.Epoch")
+    @Label("Epoch")
+    @Category({"Scrooge Coin"})
+    @StackTrace(false)
+    public static class Epoch extends Event {
+        @Label("Handler")
+        public String handler;
+
+        @Label("Candidates")
+        public int candidates;
+
+        @Label("Accepted")
+        public int accepted;
+
+        @Label("Pool Size")
+        @Description("UTXOs in the pool after the epoch")
+        public int poolSize;
+    }
+
+    /** The validation of one transaction, recorded only if it took at least the threshold */
+    @Name("scrooge.TxValidation")
+    @Label("Transaction Validation")
+    @Category({"Scrooge Coin"})
+    @StackTrace(false)
+    @Threshold("1 ms")
+    public static class TxValidation extends Event {
+        @Label("Transaction Hash")
+        public String hash;
+
+        @Label("Inputs")
+        public int inputs;
+
+        @Label("Verdict")
+        public String verdict;
+
+        @Label("Crypto Time")
+        @Description("Time spent verifying signatures, serialization excluded")
+        @Timespan(Timespan.NANOSECONDS)
+        public long cryptoTime;
+    }
+
+    /** A copy or a listing of a whole UTXO pool */
+    @Name("scrooge.UTXOPoolSnapshot")
+    @Label("UTXO Pool Snapshot")
+    @Category({"Scrooge Coin"})
+    @Threshold("1 ms")
+    public static class PoolSnapshot extends Event {
+        @Label("Operation")
+        @Description("copy or list")
+        public String operation;
+
+        @Label("Size")
+        @Description("UTXOs in the pool")
+        public int size;
+    }
+
+    /** A lookup in the {@link SignatureCache}, off by default since every signature makes one */
+    @Name("scrooge.SignatureCacheLookup")
+    @Label("Signature Cache Lookup")
+    @Category({"Scrooge Coin"})
+    @StackTrace(false)
+    @Enabled(false)
+    public static class SignatureCacheLookup extends Event {
+        @Label("Hit")
+        public boolean hit;
+
+        @Label("Message Size")
+        @DataAmount
+        public int messageSize;
+    }
+
+    /** @return the hex of {@code hash}, null for a missing hash */
+    static String hex(byte[] hash) {
+        return hash == null ? null : HexFormat.of().formatHex(hash);
+    }
+}
@@ -2,7 +2,28 @@ import java.util.*;
 
 public class TxHandler {
 
+    /**
+     * Thrown by {@link #handleTxs(Transaction[])} when checking a transaction fails, carrying the
+     * transactions the epoch accepted, and applied to the pool, before that one.
+     */
+    public static class EpochFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Transaction[] accepted;
+
+        EpochFailure(Transaction[] accepted, RuntimeException cause) {
+            super("Epoch failed after accepting " + accepted.length + " transactions", cause);
+            this.accepted = accepted;
+        }
+
+        /** @return the transactions accepted before the failure, in the order they were applied */
+        public Transaction[] getAccepted() {
+            return accepted;
+        }
+    }
+
     private UTXOPool utxoPool;
+    private TxValidator validator;
 
     /**
      * Creates a public ledger whose current UTXOPool (collection of unspent transaction outputs) is
@@ -11,6 +32,12 @@ public class TxHandler {
      */
     public TxHandler(UTXOPool utxoPool) {
         this.utxoPool = new UTXOPool(utxoPool);
+        this.validator = new TxValidator(this.utxoPool);
+    }
+
+    /** @return the current UTXO pool, updated by every call to {@link #handleTxs(Transaction[])} */
+    public UTXOPool getUTXOPool() {
+        return utxoPool;
     }
 
     /**
@@ -23,98 +50,88 @@ public class TxHandler {
      *     values; and false otherwise.
      */
     public boolean isValidTx(Transaction tx) {
-        if(tx == null) {
-            return false;
-        }
-        double sumOfInputs = 0;
-        double sumOfOutputs = 0;
-
-        for (int i = 0; i < tx.getInputs().size(); i++) {
-            Transaction.Input currentInput = tx.getInput(i);
-            UTXO currentUtxo = new UTXO(currentInput.prevTxHash, currentInput.outputIndex);
-
-            if (!this.utxoPool.contains(currentUtxo)) return false; //{1} requirement
-            Transaction.Output prevTxOutput = this.utxoPool.getTxOutput(currentUtxo);
-            if (currentInput.signature == null || prevTxOutput.address == null || !Crypto.verifySignature(prevTxOutput.address, tx.getRawDataToSign(i), currentInput.signature)) { //{2} requirement
-                return false;
-            }
-
-            //compare with others elements "(3) no UTXO is claimed multiple times by {@code tx}"
-            for (int k = i + 1; k < tx.getInputs().size(); k++) {
-                Transaction.Input inputToCompare = tx.getInput(k);
-
-                UTXO u1 = new UTXO(currentInput.prevTxHash, currentInput.outputIndex);
-                UTXO u2 = new UTXO(inputToCompare.prevTxHash, inputToCompare.outputIndex);
-
-                if (u1.equals(u2)) { // {3} requirement
-                    return false;
-                }
-            }
-
-            sumOfInputs += prevTxOutput.value;
-        }
-
-        for (int i = 0; i < tx.getOutputs().size(); i++) {
-            Transaction.Output currentOutput = tx.getOutput(i);
-
-            if(currentOutput.value >= 0) { // {4} requirement
-                sumOfOutputs += currentOutput.value;
-            } else {
-                return false;
-            }
-        }
+        return validateTx(tx) == ValidationResult.VALID;
+    }
 
-        if(sumOfOutputs > sumOfInputs) { //{5} requirement
-            return false;
-        }
+    /**
+     * Runs the checks of {@link #isValidTx(Transaction)}, cheapest first.
+     *
+     * @return {@link ValidationResult#VALID} or the reason {@code tx} is invalid
+     */
+    public ValidationResult validateTx(Transaction tx) {
+        return validator.validate(tx);
+    }
 
-        return true;
+    /** @return the counters of validation outcomes of this handler */
+    public ValidationStats getValidationStats() {
+        return validator.getStats();
     }
 
     /**
      * Handles each epoch by receiving an unordered array of proposed transactions, checking each
      * transaction for correctness, returning a mutually valid array of accepted transactions, and
      * updating the current UTXO pool as appropriate.
+     *
+     * @throws EpochFailure if checking a transaction throws; the transactions accepted before it
+     *     stay applied
      */
     public Transaction[] handleTxs(Transaction[] possibleTxs) {
+        long start = System.nanoTime();
+        TxEvents.Epoch event = new TxEvents.Epoch();
+        event.begin();
+        List<Transaction> acceptedTransactions = new ArrayList<>();
+        try {
+            handleEpoch(possibleTxs, acceptedTransactions);
+        } catch (RuntimeException e) {
+            throw new EpochFailure(acceptedTransactions.toArray(new Transaction[acceptedTransactions.size()]), e);
+        }
+        Transaction[] accepted = acceptedTransactions.toArray(new Transaction[acceptedTransactions.size()]);
+        event.end();
+        validator.getStats().recordEpoch(System.nanoTime() - start, utxoPool.size());
+        if (event.shouldCommit()) {
+            event.handler = getClass().getSimpleName();
+            event.candidates = possibleTxs == null ? 0 : possibleTxs.length;
+            event.accepted = accepted.length;
+            event.poolSize = utxoPool.size();
+            event.commit();
+        }
+        return accepted;
+    }
+
+    /** Appends the transactions of {@code possibleTxs} it accepts to {@code acceptedTransactions} as it applies them */
+    private void handleEpoch(Transaction[] possibleTxs, List<Transaction> acceptedTransactions) {
         if (possibleTxs == null) {
-            return new Transaction[0];
+            return;
         }
 
-        List<Transaction> acceptedTransactions = new ArrayList<>();
         for(int i = 0; i < possibleTxs.length; i++) {
             Transaction currentTx = possibleTxs[i];
 
             //------ Find some transactions which depend on other transactions in possibleTxs array
             for (int k = i + 1; k < possibleTxs.length; k++) {
                 Transaction tx = possibleTxs[k];
-                UTXO u1 = new UTXO(currentTx.getInput(0).prevTxHash, currentTx.getInput(0).outputIndex);
-                UTXO u2 = new UTXO(tx.getHash(), currentTx.getInput(0).outputIndex);
-
-                if(u1.equals(u2)) {
+                if(currentTx.numInputs() > 0 && Objects.equals(currentTx.getInput(0).prevTxId, tx.getId())) {
                     Transaction[] theRestTransactions = Arrays.copyOfRange(possibleTxs, i + 1, possibleTxs.length);
-                    acceptedTransactions.addAll(Arrays.asList(handleTxs(theRestTransactions))); //recursively handle transaction from which currentTx depends on
+                    handleEpoch(theRestTransactions, acceptedTransactions); //recursively handle transaction from which currentTx depends on
                 }
             }
             //---------------------------------------------------------------------------------------
 
             if(this.isValidTx(currentTx)) {
                 for(Transaction.Input txInput : currentTx.getInputs()) {
-                    UTXO utxo = new UTXO(txInput.prevTxHash, txInput.outputIndex);
+                    UTXO utxo = new UTXO(txInput.prevTxId, txInput.outputIndex);
                     this.utxoPool.removeUTXO(utxo);
                 }
 
                 for(int outputIndex = 0; outputIndex < currentTx.getOutputs().size(); outputIndex++) {
                     Transaction.Output txOutput = currentTx.getOutput(outputIndex);
-                    UTXO utxo = new UTXO(currentTx.getHash(), outputIndex);
+                    UTXO utxo = new UTXO(currentTx.getId(), outputIndex);
                     this.utxoPool.addUTXO(utxo, txOutput);
                 }
 
                 acceptedTransactions.add(currentTx);
             }
         }
-
-        return acceptedTransactions.toArray(new Transaction[acceptedTransactions.size()]);
     }
 
 }
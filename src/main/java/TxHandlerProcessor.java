@@ -0,0 +1,156 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * Reactive front-end for {@link TxHandler}. Transactions are consumed from an upstream
+ * {@link Flow.Publisher} in batches of at most {@code batchSize}, each batch is handed to
+ * {@link TxHandler#handleTxs(Transaction[])} as one epoch, and one {@link Verdict} per transaction
+ * is published downstream in submission order.
+ * <p>
+ * Demand is bounded: the next batch is requested from upstream only after the verdicts of the
+ * previous one were accepted by every downstream subscriber. A subscriber that stops requesting
+ * fills its buffer (also {@code batchSize} verdicts), which blocks the batch in flight and so
+ * stops upstream requests, instead of queueing transactions in the heap.
+ * <p>
+ * Batches are handled one at a time on a dedicated thread, so a blocked batch never starves the
+ * executor verdicts are delivered on. A partially filled batch is handled once upstream completes.
+ */
+public class TxHandlerProcessor implements Flow.Processor<Transaction, Verdict> {
+
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    private final TxHandler txHandler;
+    private final int batchSize;
+    private final ExecutorService batchExecutor;
+    private final SubmissionPublisher<Verdict> publisher;
+
+    /** Upstream state, only touched from the serialized onSubscribe/onNext/onComplete signals */
+    private Flow.Subscription upstream;
+    private List<Transaction> batch;
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+    /** Set once a batch failed or upstream terminated; signals arriving later are dropped */
+    private volatile boolean terminated;
+
+    public TxHandlerProcessor(TxHandler txHandler) {
+        this(txHandler, DEFAULT_BATCH_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a processor feeding {@code txHandler} with batches of at most {@code batchSize}
+     * transactions. Verdicts are delivered to subscribers on {@code executor}.
+     */
+    public TxHandlerProcessor(TxHandler txHandler, int batchSize, Executor executor) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.txHandler = txHandler;
+        this.batchSize = batchSize;
+        this.batchExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "tx-handler-processor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.publisher = new SubmissionPublisher<>(executor, batchSize);
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    public void subscribe(Flow.Subscriber<? super Verdict> subscriber) {
+        publisher.subscribe(subscriber);
+    }
+
+    public void onSubscribe(Flow.Subscription subscription) {
+        Objects.requireNonNull(subscription);
+        if (upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        upstream.request(batchSize);
+    }
+
+    public void onNext(Transaction tx) {
+        // Reactive Streams rule 2.13: a null element is the publisher's bug, not a transaction
+        Objects.requireNonNull(tx);
+        batch.add(tx);
+        if (batch.size() == batchSize) {
+            List<Transaction> full = batch;
+            batch = new ArrayList<>(batchSize);
+            enqueue(() -> {
+                handleBatch(full);
+                upstream.request(batchSize);
+            });
+        }
+    }
+
+    public void onError(Throwable throwable) {
+        Objects.requireNonNull(throwable);
+        enqueue(() -> {
+            publisher.closeExceptionally(throwable);
+            batchExecutor.shutdown();
+        });
+        terminated = true;
+    }
+
+    public void onComplete() {
+        List<Transaction> rest = batch;
+        batch = Collections.emptyList();
+        enqueue(() -> {
+            if (!rest.isEmpty()) {
+                handleBatch(rest);
+            }
+            publisher.close();
+            batchExecutor.shutdown();
+        });
+        terminated = true;
+    }
+
+    /**
+     * Runs {@code task} after every previously enqueued batch was delivered. Once the processor
+     * terminated, the task is dropped rather than submitted to the shut down batch thread: a
+     * signal method must not throw (Reactive Streams rule 2.13), and upstream was cancelled
+     * already when a batch failed.
+     */
+    private void enqueue(Runnable task) {
+        if (terminated) {
+            return;
+        }
+        tail = tail.thenRunAsync(task, this::execute).exceptionally(e -> {
+            terminated = true;
+            upstream.cancel();
+            publisher.closeExceptionally(e);
+            batchExecutor.shutdown();
+            return null;
+        });
+    }
+
+    /** Submits to the batch thread, dropping {@code task} if a failed batch shut it down meanwhile */
+    private void execute(Runnable task) {
+        try {
+            batchExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // terminated between the check in enqueue and now
+        }
+    }
+
+    private void handleBatch(List<Transaction> txs) {
+        Transaction[] accepted = txHandler.handleTxs(txs.toArray(new Transaction[txs.size()]));
+        Set<Transaction> acceptedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+        Collections.addAll(acceptedSet, accepted);
+        for (Transaction tx : txs) {
+            // blocks while a subscriber's buffer is full, holding back the next upstream request
+            publisher.submit(new Verdict(tx, acceptedSet.contains(tx)));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Blocking client for a {@link TxIngestionServer}. Transactions can be pipelined: {@link #send}
+ * any number of them, {@link #flush()}, and {@link #receive()} their verdicts in the same order.
+ * Instances are not thread safe.
+ */
+public class TxIngestionClient implements AutoCloseable {
+
+    private final SocketChannel channel;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+    private final TransactionCodec codec = new TransactionCodec();
+    private final Deque<Transaction> inFlight = new ArrayDeque<>();
+
+    public TxIngestionClient(SocketAddress address) throws IOException {
+        channel = address instanceof UnixDomainSocketAddress
+                ? SocketChannel.open(StandardProtocolFamily.UNIX)
+                : SocketChannel.open();
+        channel.connect(address);
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+    }
+
+    /** Buffers {@code tx} for sending */
+    public void send(Transaction tx) throws IOException {
+        byte[] encoded = codec.encode(tx);
+        out.writeInt(encoded.length);
+        out.write(encoded);
+        inFlight.addLast(tx);
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /** Blocks until the verdict for the oldest transaction sent and not yet received arrives */
+    public Verdict receive() throws IOException {
+        Transaction tx = inFlight.pollFirst();
+        if (tx == null) {
+            throw new IllegalStateException("No transaction in flight");
+        }
+        int length = in.readInt();
+        if (length < 1) {
+            throw new IOException("Invalid verdict frame length " + length);
+        }
+        byte verdict = in.readByte();
+        byte[] hash = new byte[length - 1];
+        in.readFully(hash);
+        if (verdict != TxIngestionServer.MALFORMED && !Arrays.equals(hash, tx.getHash())) {
+            throw new IOException("Verdict does not match the transaction sent");
+        }
+        return new Verdict(tx, verdict == TxIngestionServer.ACCEPTED);
+    }
+
+    /** Sends {@code tx} and waits for its verdict */
+    public Verdict submit(Transaction tx) throws IOException {
+        send(tx);
+        flush();
+        return receive();
+    }
+
+    /** @return the number of transactions sent whose verdict was not received yet */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
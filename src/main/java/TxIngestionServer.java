@@ -0,0 +1,344 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Local ingestion server feeding a {@link TxHandler}. Clients connect over a loopback TCP or a
+ * Unix-domain socket and send transactions as frames of {@code int length} followed by the
+ * {@link TransactionCodec} encoding. Transactions from all connections are coalesced into
+ * micro-batches by a {@link TxBatcher}; for every frame the client receives, in order, a frame of
+ * {@code int length, byte verdict} followed by the transaction hash, where the verdict is one of
+ * {@link #REJECTED}, {@link #ACCEPTED} or {@link #MALFORMED} (which carries no hash). A frame is
+ * malformed if it does not decode or decodes to a transaction without inputs or with an input
+ * lacking its previous transaction hash.
+ * <p>
+ * A single selector thread serves every connection with non-blocking I/O, so an idle connection
+ * costs its socket and a small read buffer but no thread. The batcher wakes the selector up when
+ * verdicts complete. A connection with {@value #MAX_PENDING_VERDICTS} verdicts outstanding, or
+ * verdicts the client is not reading, is not read from until they are written; a full batcher
+ * queue blocks the selector thread, which propagates backpressure to all clients.
+ * <p>
+ * Failures to accept or close a connection do not stop the server; the first one is thrown by
+ * {@link #close()}.
+ */
+public class TxIngestionServer implements AutoCloseable {
+
+    public static final byte REJECTED = 0;
+    public static final byte ACCEPTED = 1;
+    public static final byte MALFORMED = 2;
+
+    /** Frames larger than this close the connection */
+    public static final int MAX_FRAME_SIZE = 1 << 20;
+
+    /** Verdicts a connection may wait for before it is no longer read from */
+    static final int MAX_PENDING_VERDICTS = 4096;
+
+    private static final int INITIAL_READ_BUFFER_SIZE = 2048;
+    private static final ByteBuffer NOTHING = ByteBuffer.allocate(0);
+
+    private final ServerSocketChannel serverChannel;
+    private final SocketAddress localAddress;
+    private final TxBatcher batcher;
+    private final Selector selector;
+    /** Connections some verdicts of which completed since the selector thread last wrote them */
+    private final Queue<Connection> completed = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+    private final Thread selectorThread;
+    /** Written by the selector thread only */
+    private volatile int connectionCount;
+    private volatile boolean closed;
+
+    /** Starts a server on the loopback interface, {@code port} 0 picks a free port */
+    public static TxIngestionServer tcp(TxHandler txHandler, int port) throws IOException {
+        return new TxIngestionServer(new TxBatcher(txHandler),
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /** Starts a server on a Unix-domain socket created at {@code path} */
+    public static TxIngestionServer unixDomain(TxHandler txHandler, Path path) throws IOException {
+        return new TxIngestionServer(new TxBatcher(txHandler), UnixDomainSocketAddress.of(path));
+    }
+
+    /**
+     * Binds to {@code address} and starts accepting connections whose transactions are submitted to
+     * {@code batcher}. The server takes ownership of the batcher and closes it with itself.
+     */
+    public TxIngestionServer(TxBatcher batcher, SocketAddress address) throws IOException {
+        this.batcher = batcher;
+        this.serverChannel = address instanceof UnixDomainSocketAddress
+                ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                : ServerSocketChannel.open();
+        this.serverChannel.bind(address, 4096);
+        this.serverChannel.configureBlocking(false);
+        this.localAddress = serverChannel.getLocalAddress();
+        this.selector = Selector.open();
+        this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.selectorThread = new Thread(this::selectLoop, "tx-ingestion-selector");
+        this.selectorThread.setDaemon(true);
+        this.selectorThread.start();
+    }
+
+    /** @return the address clients connect to */
+    public SocketAddress getLocalAddress() {
+        return localAddress;
+    }
+
+    /** @return the number of currently open client connections */
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * Closes every connection, the server socket and the batcher.
+     *
+     * @throws IOException the first failure to accept or close a connection, if any
+     */
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        batcher.close();
+        if (localAddress instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) localAddress).getPath());
+        }
+        IOException e = failure.getAndSet(null);
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    private void recordFailure(IOException e) {
+        if (!failure.compareAndSet(null, e)) {
+            failure.get().addSuppressed(e);
+        }
+    }
+
+    private void selectLoop() {
+        try {
+            while (!closed) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        ((Connection) key.attachment()).serve(key.isReadable());
+                    }
+                }
+                Connection connection;
+                while ((connection = completed.poll()) != null) {
+                    connection.scheduled.set(false);
+                    connection.serve(false);
+                }
+            }
+        } catch (IOException e) {
+            recordFailure(e);
+        } catch (InterruptedException e) {
+            // stopped while blocked on the batcher
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                close(key.channel());
+            }
+            close(selector);
+            connectionCount = 0;
+        }
+    }
+
+    private void accept() {
+        SocketChannel channel = null;
+        try {
+            channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            new Connection(channel);
+        } catch (IOException e) {
+            recordFailure(e);
+            if (channel != null) {
+                close(channel);
+            }
+        }
+    }
+
+    private void close(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            recordFailure(e);
+        }
+    }
+
+    /**
+     * @return false if {@code tx} decoded but has no inputs or an input without a previous
+     *     transaction hash, which no handler can validate
+     */
+    static boolean isWellFormed(Transaction tx) {
+        if (tx.numInputs() == 0) {
+            return false;
+        }
+        for (Transaction.Input input : tx.getInputs()) {
+            if (input.prevTxId == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** A client connection, only ever touched by the selector thread but for {@link #scheduled} */
+    private class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final TransactionCodec codec = new TransactionCodec();
+        private ByteBuffer in = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+        /** Verdicts not yet written, in the order of their frames; completed with null if malformed */
+        private final ArrayDeque<CompletableFuture<Verdict>> pending = new ArrayDeque<>();
+        private ByteBuffer out = NOTHING;
+        /** True once the client shut its output down, the connection closes when all is written */
+        private boolean endOfInput;
+        /** True while the connection is in {@link #completed} */
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Connection(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.key = channel.register(selector, SelectionKey.OP_READ, this);
+            connectionCount++;
+        }
+
+        /** Reads if {@code readable}, then writes whatever verdicts are complete */
+        void serve(boolean readable) throws InterruptedException {
+            if (!key.isValid()) {
+                return;
+            }
+            try {
+                if (readable) {
+                    read();
+                }
+                write();
+            } catch (IOException | CompletionException | IllegalStateException e) {
+                // connection closed, misbehaving client or batcher shut down
+                close();
+            }
+        }
+
+        private void read() throws IOException, InterruptedException {
+            if (channel.read(in) < 0) {
+                endOfInput = true;
+                return;
+            }
+            in.flip();
+            while (in.remaining() >= Integer.BYTES) {
+                int length = in.getInt(in.position());
+                if (length < 0 || length > MAX_FRAME_SIZE) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                if (in.remaining() < Integer.BYTES + length) {
+                    break;
+                }
+                ByteBuffer frame = in.slice(in.position() + Integer.BYTES, length);
+                in.position(in.position() + Integer.BYTES + length);
+                Transaction tx;
+                try {
+                    tx = codec.decode(frame);
+                } catch (IllegalArgumentException e) {
+                    tx = null;
+                }
+                if (tx == null || !isWellFormed(tx)) {
+                    // answered on this connection alone, it never reaches a batch shared with others
+                    pending.add(CompletableFuture.completedFuture(null));
+                    continue;
+                }
+                CompletableFuture<Verdict> verdict = batcher.submit(tx);
+                pending.add(verdict);
+                verdict.whenComplete((v, e) -> {
+                    if (scheduled.compareAndSet(false, true)) {
+                        completed.add(this);
+                        selector.wakeup();
+                    }
+                });
+            }
+            in.compact();
+            if (!in.hasRemaining()) {
+                // a single frame does not fit, it is at most MAX_FRAME_SIZE so growing terminates
+                ByteBuffer larger = ByteBuffer.allocate(in.capacity() * 2);
+                in.flip();
+                larger.put(in);
+                in = larger;
+            }
+        }
+
+        /** Writes the completed verdicts at the head of {@link #pending} and updates the interest set */
+        private void write() throws IOException {
+            if (!out.hasRemaining()) {
+                out = encodeCompleted();
+            }
+            channel.write(out);
+            boolean writing = out.hasRemaining();
+            if (endOfInput && !writing && pending.isEmpty()) {
+                close();
+                return;
+            }
+            boolean reading = !endOfInput && !writing && pending.size() < MAX_PENDING_VERDICTS;
+            key.interestOps((reading ? SelectionKey.OP_READ : 0) | (writing ? SelectionKey.OP_WRITE : 0));
+        }
+
+        private ByteBuffer encodeCompleted() {
+            List<Verdict> verdicts = new ArrayList<>();
+            int size = 0;
+            while (!pending.isEmpty() && pending.peek().isDone()) {
+                Verdict verdict = pending.poll().join();
+                verdicts.add(verdict);
+                size += Integer.BYTES + 1 + (verdict == null ? 0 : verdict.getTransaction().getHash().length);
+            }
+            if (verdicts.isEmpty()) {
+                return NOTHING;
+            }
+            ByteBuffer buf = ByteBuffer.allocate(size);
+            for (Verdict verdict : verdicts) {
+                if (verdict == null) {
+                    buf.putInt(1).put(MALFORMED);
+                } else {
+                    byte[] hash = verdict.getTransaction().getHash();
+                    buf.putInt(1 + hash.length).put(verdict.isAccepted() ? ACCEPTED : REJECTED).put(hash);
+                }
+            }
+            return buf.flip();
+        }
+
+        private void close() {
+            key.cancel();
+            TxIngestionServer.this.close(channel);
+            connectionCount--;
+        }
+    }
+}
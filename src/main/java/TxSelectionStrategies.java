@@ -0,0 +1,214 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.ServiceLoader;
+
+/** The built-in {@link TxSelectionStrategy} implementations */
+public final class TxSelectionStrategies {
+
+    public static final String FIRST_COME = "first-come";
+    public static final String GREEDY_FEE = "greedy-fee";
+    public static final String PACKAGE_FEE = "package-fee";
+    public static final String OPTIMAL = "optimal";
+    public static final String OPTIMAL_LAZY = "optimal-lazy";
+
+    private TxSelectionStrategies() {
+    }
+
+    /**
+     * Accepts valid transactions in the order they were proposed, but for a transaction proposed
+     * before a parent of it, which is moved after its parents. Each transaction is validated once.
+     */
+    public static TxSelectionStrategy firstCome() {
+        return new TxSelectionStrategy() {
+            public String getName() {
+                return FIRST_COME;
+            }
+
+            public Transaction[] select(Transaction[] possibleTxs, UTXOPool utxoPool, TxValidator validator) {
+                List<Transaction> accepted = new ArrayList<>();
+                for (Transaction tx : parentsFirst(nonNull(possibleTxs))) {
+                    if (validator.validate(tx) == ValidationResult.VALID) {
+                        apply(tx, utxoPool);
+                        accepted.add(tx);
+                    }
+                }
+                return accepted.toArray(new Transaction[accepted.size()]);
+            }
+        };
+    }
+
+    /** Accepts valid transactions by descending individual fee, computed once against the pool */
+    public static TxSelectionStrategy greedyFee() {
+        return new TxSelectionStrategy() {
+            public String getName() {
+                return GREEDY_FEE;
+            }
+
+            public Transaction[] select(Transaction[] possibleTxs, UTXOPool utxoPool, TxValidator validator) {
+                Transaction[] txs = nonNull(possibleTxs).toArray(new Transaction[0]);
+                List<Transaction> accepted = new ArrayList<>();
+                for (Transaction tx : new FeeTable(txs, utxoPool).sortByFeeDescending()) {
+                    if (validator.validate(tx) == ValidationResult.VALID) {
+                        apply(tx, utxoPool);
+                        accepted.add(tx);
+                    }
+                }
+                return accepted.toArray(new Transaction[accepted.size()]);
+            }
+        };
+    }
+
+    /** Accepts ancestor packages by descending fee rate, see {@link PackageSelector} */
+    public static TxSelectionStrategy packageFee() {
+        return packageFee(Long.MAX_VALUE);
+    }
+
+    /** Like {@link #packageFee()}, filling a block of at most {@code maxBlockBytes} encoded bytes */
+    public static TxSelectionStrategy packageFee(long maxBlockBytes) {
+        return new TxSelectionStrategy() {
+            public String getName() {
+                return PACKAGE_FEE;
+            }
+
+            public Transaction[] select(Transaction[] possibleTxs, UTXOPool utxoPool, TxValidator validator) {
+                return new PackageSelector(utxoPool, validator, PackageSelector.DEFAULT_MAX_PACKAGE_SIZE, maxBlockBytes)
+                        .select(possibleTxs);
+            }
+        };
+    }
+
+    public static TxSelectionStrategy optimal() {
+        return optimal(MaxFeeSolver.DEFAULT_BUDGET_MILLIS);
+    }
+
+    /** Accepts the best subset {@link MaxFeeSolver} finds within {@code budgetMillis} */
+    public static TxSelectionStrategy optimal(long budgetMillis) {
+        return new TxSelectionStrategy() {
+            public String getName() {
+                return OPTIMAL;
+            }
+
+            public Transaction[] select(Transaction[] possibleTxs, UTXOPool utxoPool, TxValidator validator) {
+                return new MaxFeeSolver(utxoPool, budgetMillis, validator.getStats(), false, validator.getSignatureCache())
+                        .solve(possibleTxs).getTransactions();
+            }
+        };
+    }
+
+    public static TxSelectionStrategy optimalLazy() {
+        return optimalLazy(MaxFeeSolver.DEFAULT_BUDGET_MILLIS);
+    }
+
+    /**
+     * Like {@link #optimal(long)}, but verifies the signatures of the chosen transactions only and
+     * repairs the choice where one fails
+     */
+    public static TxSelectionStrategy optimalLazy(long budgetMillis) {
+        return new TxSelectionStrategy() {
+            public String getName() {
+                return OPTIMAL_LAZY;
+            }
+
+            public Transaction[] select(Transaction[] possibleTxs, UTXOPool utxoPool, TxValidator validator) {
+                return new MaxFeeSolver(utxoPool, budgetMillis, validator.getStats(), true, validator.getSignatureCache())
+                        .solve(possibleTxs).getTransactions();
+            }
+        };
+    }
+
+    /** @return the built-in strategies, cheapest first */
+    public static List<TxSelectionStrategy> builtIn() {
+        return Arrays.asList(firstCome(), greedyFee(), packageFee(), optimal(), optimalLazy());
+    }
+
+    /**
+     * @return the built-in strategy or the strategy registered as a {@link ServiceLoader} provider
+     *         of {@link TxSelectionStrategy} named {@code name}
+     * @throws IllegalArgumentException if there is none
+     */
+    public static TxSelectionStrategy byName(String name) {
+        for (TxSelectionStrategy strategy : builtIn()) {
+            if (strategy.getName().equals(name)) {
+                return strategy;
+            }
+        }
+        for (TxSelectionStrategy strategy : ServiceLoader.load(TxSelectionStrategy.class)) {
+            if (strategy.getName().equals(name)) {
+                return strategy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown selection strategy: " + name);
+    }
+
+    private static List<Transaction> nonNull(Transaction[] possibleTxs) {
+        List<Transaction> txs = new ArrayList<>();
+        if (possibleTxs != null) {
+            for (Transaction tx : possibleTxs) {
+                if (tx != null) {
+                    txs.add(tx);
+                }
+            }
+        }
+        return txs;
+    }
+
+    /**
+     * @return {@code txs} ordered so that every transaction comes after the ones it spends outputs
+     *         of, and otherwise in proposal order as far as that allows
+     */
+    private static List<Transaction> parentsFirst(List<Transaction> txs) {
+        int n = txs.size();
+        Map<Hash256, Integer> indexByHash = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            indexByHash.putIfAbsent(txs.get(i).getId(), i);
+        }
+        // one child entry and one pending parent per input spending a proposed transaction
+        List<List<Integer>> children = new ArrayList<>(Collections.nCopies(n, null));
+        int[] pendingParents = new int[n];
+        for (int i = 0; i < n; i++) {
+            for (Transaction.Input in : txs.get(i).getInputs()) {
+                Integer parent = in.prevTxId == null ? null : indexByHash.get(in.prevTxId);
+                if (parent != null && parent != i) {
+                    if (children.get(parent) == null) {
+                        children.set(parent, new ArrayList<>());
+                    }
+                    children.get(parent).add(i);
+                    pendingParents[i]++;
+                }
+            }
+        }
+        PriorityQueue<Integer> ready = new PriorityQueue<>();
+        for (int i = 0; i < n; i++) {
+            if (pendingParents[i] == 0) {
+                ready.add(i);
+            }
+        }
+        List<Transaction> ordered = new ArrayList<>(n);
+        while (!ready.isEmpty()) {
+            int i = ready.poll();
+            ordered.add(txs.get(i));
+            if (children.get(i) != null) {
+                for (int child : children.get(i)) {
+                    if (--pendingParents[child] == 0) {
+                        ready.add(child);
+                    }
+                }
+            }
+        }
+        return ordered;
+    }
+
+    private static void apply(Transaction tx, UTXOPool utxoPool) {
+        for (Transaction.Input in : tx.getInputs()) {
+            utxoPool.removeUTXO(new UTXO(in.prevTxId, in.outputIndex));
+        }
+        for (int i = 0; i < tx.numOutputs(); i++) {
+            utxoPool.addUTXO(new UTXO(tx.getId(), i), tx.getOutput(i));
+        }
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * Service provider interface of the transaction selection step of an epoch: which mutually valid
+ * subset of the proposed transactions is accepted.
+ * <p>
+ * Implementations validate through the given {@link TxValidator}, which checks against
+ * {@code utxoPool}, and apply what they accept to {@code utxoPool}, so every strategy shares the
+ * same validation rules and counters. The built-in strategies are in {@link TxSelectionStrategies};
+ * others are found by {@link TxSelectionStrategies#byName(String)} through {@link java.util.ServiceLoader}.
+ */
+public interface TxSelectionStrategy {
+
+    /** @return the name the strategy is looked up and reported by */
+    String getName();
+
+    /**
+     * Selects a mutually valid subset of {@code possibleTxs} and applies it to {@code utxoPool}.
+     *
+     * @return the accepted transactions in the order they were applied
+     */
+    Transaction[] select(Transaction[] possibleTxs, UTXOPool utxoPool, TxValidator validator);
+}
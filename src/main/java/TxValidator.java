@@ -0,0 +1,204 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Validates transactions against a UTXO pool, running every structural and value check before
+ * any signature is verified, so a transaction that is invalid for a cheap reason never costs an
+ * RSA verification. The pool is referenced, not copied: validation always sees its current state.
+ * <p>
+ * Signatures are looked up in the validator's own {@link SignatureCache} if it has one, and in the
+ * one installed in {@link Crypto} otherwise.
+ */
+public class TxValidator {
+
+    /** Up to this many inputs, duplicates are found by comparing inputs pairwise rather than with a set */
+    private static final int PAIRWISE_INPUTS = 16;
+
+    private final UTXOPool utxoPool;
+    private final ValidationStats stats;
+    private final SignatureCache signatureCache;
+
+    public TxValidator(UTXOPool utxoPool) {
+        this(utxoPool, new ValidationStats());
+    }
+
+    public TxValidator(UTXOPool utxoPool, ValidationStats stats) {
+        this(utxoPool, stats, null);
+    }
+
+    /** Creates a validator caching verified signatures in {@code signatureCache}, null for the one of {@link Crypto} */
+    public TxValidator(UTXOPool utxoPool, ValidationStats stats, SignatureCache signatureCache) {
+        this.utxoPool = utxoPool;
+        this.stats = stats;
+        this.signatureCache = signatureCache;
+    }
+
+    /** @return a validator against {@code utxoPool} sharing the counters and signature cache of this one */
+    public TxValidator forPool(UTXOPool utxoPool) {
+        return new TxValidator(utxoPool, stats, signatureCache);
+    }
+
+    /**
+     * @return {@link ValidationResult#VALID} if
+     * (1) all outputs claimed by {@code tx} are in the current UTXO pool,
+     * (2) the signatures on each input of {@code tx} are valid,
+     * (3) no UTXO is claimed multiple times by {@code tx},
+     * (4) all of {@code tx}s output values are non-negative, and
+     * (5) the sum of {@code tx}s input values is greater than or equal to the sum of its output
+     *     values; and the reason of the first failed check otherwise.
+     */
+    public ValidationResult validate(Transaction tx) {
+        TxEvents.TxValidation event = new TxEvents.TxValidation();
+        if (!event.isEnabled()) {
+            ValidationResult result = validateStructure(tx);
+            return result == ValidationResult.VALID ? verifySignatures(tx) : result;
+        }
+        event.begin();
+        ValidationResult result = validateStructure(tx);
+        if (result == ValidationResult.VALID) {
+            result = verifySignatures(tx, event);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.hash = tx == null ? null : TxEvents.hex(tx.getHash());
+            event.inputs = tx == null ? 0 : tx.numInputs();
+            event.verdict = result.name();
+            event.commit();
+        }
+        return result;
+    }
+
+    /**
+     * Runs every check of {@link #validate(Transaction)} but the signature verification. A
+     * rejection is recorded, a pass is not: it is recorded by {@link #verifySignatures(Transaction)}
+     * or, if the signatures are never verified, by {@link ValidationStats#recordDeferred(int)}.
+     *
+     * @return {@link ValidationResult#VALID} or the reason {@code tx} is invalid
+     */
+    public ValidationResult validateStructure(Transaction tx) {
+        if (!stats.isTimingEnabled()) {
+            return checkStructure(tx);
+        }
+        long start = System.nanoTime();
+        ValidationResult result = checkStructure(tx);
+        stats.recordStage(ValidationStats.Stage.STRUCTURE, System.nanoTime() - start);
+        return result;
+    }
+
+    private ValidationResult checkStructure(Transaction tx) {
+        if (tx == null) {
+            stats.record(ValidationResult.NULL_TX, 0, 0);
+            return ValidationResult.NULL_TX;
+        }
+        int inputs = tx.numInputs();
+
+        // indexed loops and lookup keys sharing the inputs' hashes: a valid transaction with few
+        // inputs is checked without allocating, see AllocationBudgetTest
+        ArrayList<Transaction.Output> outputs = tx.getOutputs();
+        double sumOfOutputs = 0;
+        for (int i = 0; i < outputs.size(); i++) {
+            Transaction.Output output = outputs.get(i);
+            if (output.value < 0) { // {4} requirement
+                return reject(ValidationResult.NEGATIVE_OUTPUT, inputs, 0);
+            }
+            sumOfOutputs += output.value;
+        }
+
+        ArrayList<Transaction.Input> txInputs = tx.getInputs();
+        Set<UTXO> claimed = inputs > PAIRWISE_INPUTS ? new HashSet<>() : null;
+        double sumOfInputs = 0;
+        for (int i = 0; i < inputs; i++) {
+            Transaction.Input input = txInputs.get(i);
+            if (input.prevTxId == null) { // {1} requirement, claims no output at all
+                return reject(ValidationResult.MISSING_INPUT, inputs, 0);
+            }
+            UTXO utxo = new UTXO(input.prevTxId, input.outputIndex);
+            if (claimed != null ? !claimed.add(utxo) : claimedEarlier(txInputs, i)) { // {3} requirement
+                return reject(ValidationResult.DUPLICATE_INPUT, inputs, 0);
+            }
+            Transaction.Output prevTxOutput = utxoPool.getTxOutput(utxo);
+            if (prevTxOutput == null) { // {1} requirement
+                return reject(ValidationResult.MISSING_INPUT, inputs, 0);
+            }
+            if (input.signature == null || prevTxOutput.address == null) { // {2} requirement
+                return reject(ValidationResult.MISSING_SIGNATURE, inputs, 0);
+            }
+            sumOfInputs += prevTxOutput.value;
+        }
+        if (sumOfOutputs > sumOfInputs) { // {5} requirement
+            return reject(ValidationResult.INSUFFICIENT_INPUTS, inputs, 0);
+        }
+        return ValidationResult.VALID;
+    }
+
+    /**
+     * Verifies the signatures of {@code tx}, which must have passed
+     * {@link #validateStructure(Transaction)} against the current pool.
+     *
+     * @return {@link ValidationResult#VALID} or {@link ValidationResult#INVALID_SIGNATURE}
+     */
+    public ValidationResult verifySignatures(Transaction tx) {
+        return verifySignatures(tx, null);
+    }
+
+    /** Verifies as {@link #verifySignatures(Transaction)}, adding the time spent in crypto to {@code event} */
+    private ValidationResult verifySignatures(Transaction tx, TxEvents.TxValidation event) {
+        int inputs = tx.numInputs();
+        boolean timed = stats.isTimingEnabled() || event != null;
+        SignatureCache cache = signatureCache != null ? signatureCache : Crypto.getSignatureCache();
+        for (int i = 0; i < inputs; i++) {
+            Transaction.Input input = tx.getInput(i);
+            Transaction.Output prevTxOutput = utxoPool.getTxOutput(new UTXO(input.prevTxId, input.outputIndex));
+            long start = timed ? System.nanoTime() : 0;
+            byte[] message = tx.getRawDataToSign(i);
+            long serialized = timed ? System.nanoTime() : 0;
+            boolean verified = Crypto.verifySignature(prevTxOutput.address, message, input.signature, cache);
+            if (timed) {
+                long crypto = System.nanoTime() - serialized;
+                if (event != null) {
+                    event.cryptoTime += crypto;
+                }
+                if (stats.isTimingEnabled()) {
+                    stats.recordStage(ValidationStats.Stage.SERIALIZATION, serialized - start);
+                    stats.recordStage(ValidationStats.Stage.SIGNATURE, crypto);
+                }
+            }
+            if (!verified) { // {2} requirement
+                return reject(ValidationResult.INVALID_SIGNATURE, inputs, i + 1);
+            }
+        }
+        stats.record(ValidationResult.VALID, inputs, inputs);
+        return ValidationResult.VALID;
+    }
+
+    /** @return the pool this validator checks against */
+    public UTXOPool getUTXOPool() {
+        return utxoPool;
+    }
+
+    /** @return the counters this validator records into */
+    public ValidationStats getStats() {
+        return stats;
+    }
+
+    /** @return the validator's own signature cache, null if it uses the one of {@link Crypto} */
+    public SignatureCache getSignatureCache() {
+        return signatureCache;
+    }
+
+    private static boolean claimedEarlier(ArrayList<Transaction.Input> inputs, int index) {
+        Transaction.Input input = inputs.get(index);
+        for (int i = 0; i < index; i++) {
+            if (input.claimsSameOutput(inputs.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ValidationResult reject(ValidationResult result, int inputs, int verified) {
+        stats.record(result, inputs, verified);
+        return result;
+    }
+}
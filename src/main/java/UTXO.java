@@ -1,24 +1,39 @@
-import java.util.Arrays;
+import java.util.Objects;
 
 public class UTXO implements Comparable<UTXO> {
 
     /** Hash of the transaction from which this UTXO originates */
-    private byte[] txHash;
+    private final Hash256 txHash;
 
     /** Index of the corresponding output in said transaction */
-    private int index;
+    private final int index;
 
     /**
      * Creates a new UTXO corresponding to the output with index <index> in the transaction whose
      * hash is {@code txHash}
+     *
+     * @throws IllegalArgumentException if {@code txHash} is longer than {@value Hash256#BYTES} bytes
      */
     public UTXO(byte[] txHash, int index) {
-        this.txHash = Arrays.copyOf(txHash, txHash.length);
+        this(Hash256.of(txHash), index);
+    }
+
+    /**
+     * Creates a new UTXO corresponding to the output with index <index> in the transaction whose
+     * hash is {@code txHash}, without copying anything, so it is also the way to look an output up
+     */
+    public UTXO(Hash256 txHash, int index) {
+        this.txHash = Objects.requireNonNull(txHash, "txHash");
         this.index = index;
     }
 
-    /** @return the transaction hash of this UTXO */
+    /** @return a new array of the transaction hash of this UTXO */
     public byte[] getTxHash() {
+        return txHash.toByteArray();
+    }
+
+    /** @return the transaction hash of this UTXO */
+    public Hash256 getTxId() {
         return txHash;
     }
 
@@ -29,7 +44,7 @@ public class UTXO implements Comparable<UTXO> {
 
     /**
      * Compares this UTXO to the one specified by {@code other}, considering them equal if they have
-     * {@code txHash} arrays with equal contents and equal {@code index} values
+     * equal transaction hashes and equal {@code index} values
      */
     public boolean equals(Object other) {
         if (other == null) {
@@ -40,15 +55,7 @@ public class UTXO implements Comparable<UTXO> {
         }
 
         UTXO utxo = (UTXO) other;
-        byte[] hash = utxo.txHash;
-        int in = utxo.index;
-        if (hash.length != txHash.length || index != in)
-            return false;
-        for (int i = 0; i < hash.length; i++) {
-            if (hash[i] != txHash[i])
-                return false;
-        }
-        return true;
+        return index == utxo.index && txHash.equals(utxo.txHash);
     }
 
     /**
@@ -56,36 +63,14 @@ public class UTXO implements Comparable<UTXO> {
      * utxo1.equals(utxo2) => utxo1.hashCode() == utxo2.hashCode())
      */
     public int hashCode() {
-        int hash = 1;
-        hash = hash * 17 + index;
-        hash = hash * 31 + Arrays.hashCode(txHash);
-        return hash;
+        return txHash.hashCode() * 31 + index;
     }
 
-    /** Compares this UTXO to the one specified by {@code utxo} */
+    /** Compares this UTXO to the one specified by {@code utxo}, by index, then by transaction hash */
     public int compareTo(UTXO utxo) {
-        byte[] hash = utxo.txHash;
-        int in = utxo.index;
-        if (in > index)
-            return -1;
-        else if (in < index)
-            return 1;
-        else {
-            int len1 = txHash.length;
-            int len2 = hash.length;
-            if (len2 > len1)
-                return -1;
-            else if (len2 < len1)
-                return 1;
-            else {
-                for (int i = 0; i < len1; i++) {
-                    if (hash[i] > txHash[i])
-                        return -1;
-                    else if (hash[i] < txHash[i])
-                        return 1;
-                }
-                return 0;
-            }
+        if (index != utxo.index) {
+            return Integer.compare(index, utxo.index);
         }
+        return txHash.compareTo(utxo.txHash);
     }
 }
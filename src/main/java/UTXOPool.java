@@ -1,32 +1,208 @@
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
+/**
+ * A set of UTXOs with their outputs. A pool is either flat, holding every UTXO itself, or a
+ * {@link #layer()} over a parent pool, holding only what was added and removed since it was
+ * layered and reading everything else through the parent, so a pool per block costs the size of
+ * the block rather than of the whole pool. A parent must not change while it has layers, except
+ * through {@link #absorbParent()}.
+ * <p>
+ * The {@link #getCommitment() commitment} of a pool is a {@link MuHash} of its UTXOs with their
+ * outputs, the same for two pools exactly when they hold the same outputs, however they got there.
+ * It is computed from the whole pool when asked for, unless the pool
+ * {@link #trackCommitment() tracks} it: then every change updates it, at the cost of a SHA-256 per
+ * change and a share of a 3072-bit multiplication, so only long-lived pools that are asked for it
+ * repeatedly should. Layers over a tracking pool track their own changes and combine them with the
+ * parent's when asked; copies do not track.
+ */
 public class UTXOPool {
 
     /**
-     * The current collection of UTXOs, with each one mapped to its corresponding transaction output
+     * The current collection of UTXOs, with each one mapped to its corresponding transaction output;
+     * of a layer, the UTXOs added since it was layered
      */
     private HashMap<UTXO, Transaction.Output> H;
 
+    /** The pool this one is a layer over, null for a flat pool */
+    private UTXOPool parent;
+    /** UTXOs of the parent removed from this layer, null for a flat pool */
+    private Set<UTXO> removed;
+    /** Number of UTXOs of a layer, parent's included */
+    private int size;
+    /**
+     * Hash of the UTXOs with their outputs, of a layer of its changes over the parent; null if the
+     * pool does not track it
+     */
+    private MuHash commitment;
+
     /** Creates a new empty UTXOPool */
     public UTXOPool() {
         H = new HashMap<UTXO, Transaction.Output>();
     }
 
-    /** Creates a new UTXOPool that is a copy of {@code uPool} */
+    /** Creates a new empty UTXOPool that holds {@code expectedSize} UTXOs without rehashing */
+    public UTXOPool(int expectedSize) {
+        H = new HashMap<UTXO, Transaction.Output>((int) (expectedSize / 0.75f) + 1);
+    }
+
+    /** Creates a new UTXOPool that is a copy of {@code uPool}, not tracking its commitment */
     public UTXOPool(UTXOPool uPool) {
-        H = new HashMap<UTXO, Transaction.Output>(uPool.H);
+        TxEvents.PoolSnapshot event = new TxEvents.PoolSnapshot();
+        event.begin();
+        H = uPool.parent == null ? new HashMap<UTXO, Transaction.Output>(uPool.H) : uPool.flatten();
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = "copy";
+            event.size = H.size();
+            event.commit();
+        }
+    }
+
+    /** @return a new, empty layer over this pool, which reads as a copy of it until it is changed */
+    public UTXOPool layer() {
+        UTXOPool layer = new UTXOPool();
+        layer.parent = this;
+        layer.removed = new HashSet<UTXO>();
+        layer.size = size();
+        if (tracksCommitment()) {
+            layer.commitment = new MuHash();
+        }
+        return layer;
+    }
+
+    /**
+     * Makes every change update the {@link #getCommitment() commitment} from now on, computing it
+     * from the pool this once; a layer makes its parents track theirs too.
+     */
+    public void trackCommitment() {
+        if (tracksCommitment()) {
+            return;
+        }
+        MuHash delta = new MuHash();
+        if (parent != null) {
+            parent.trackCommitment();
+            for (UTXO utxo : removed) {
+                delta.remove(element(utxo, parent.getTxOutput(utxo)));
+            }
+        }
+        for (Map.Entry<UTXO, Transaction.Output> entry : H.entrySet()) {
+            Transaction.Output replaced = parent == null ? null : parent.getTxOutput(entry.getKey());
+            if (replaced != null) {
+                delta.remove(element(entry.getKey(), replaced));
+            }
+            delta.insert(element(entry.getKey(), entry.getValue()));
+        }
+        commitment = delta;
+    }
+
+    /** @return true if this pool and all it is layered over track the commitment */
+    public boolean tracksCommitment() {
+        return commitment != null && (parent == null || parent.tracksCommitment());
+    }
+
+    /** @return the number of layers between this pool and a flat one, 0 for a flat pool */
+    public int getDepth() {
+        int depth = 0;
+        for (UTXOPool pool = parent; pool != null; pool = pool.parent) {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * Makes this layer a flat pool by taking over its flat parent's UTXOs and applying its own
+     * changes to them, in time proportional to the changes. The parent is left empty and must not
+     * be used again, nor may it have other layers left.
+     *
+     * @throws IllegalStateException if this pool is flat or its parent is not
+     */
+    public void absorbParent() {
+        if (parent == null || parent.parent != null) {
+            throw new IllegalStateException("Not a layer over a flat pool");
+        }
+        HashMap<UTXO, Transaction.Output> base = parent.H;
+        for (UTXO utxo : removed) {
+            base.remove(utxo);
+        }
+        base.putAll(H);
+        parent.H = new HashMap<UTXO, Transaction.Output>();
+        commitment = commitment != null && parent.commitment != null ? parent.commitment.combine(commitment) : null;
+        parent.commitment = null;
+        detach(base);
+    }
+
+    /** Makes this layer a flat pool holding a copy of every UTXO it reads, in time proportional to its size */
+    public void flattenLayer() {
+        if (parent != null) {
+            commitment = tracksCommitment() ? totalCommitment() : null;
+            detach(flatten());
+        }
+    }
+
+    private void detach(HashMap<UTXO, Transaction.Output> flat) {
+        H = flat;
+        parent = null;
+        removed = null;
+    }
+
+    /** @return a new map of every UTXO of this layer */
+    private HashMap<UTXO, Transaction.Output> flatten() {
+        HashMap<UTXO, Transaction.Output> flat = parent.parent == null
+                ? new HashMap<UTXO, Transaction.Output>(parent.H)
+                : parent.flatten();
+        for (UTXO utxo : removed) {
+            flat.remove(utxo);
+        }
+        flat.putAll(H);
+        return flat;
     }
 
     /** Adds a mapping from UTXO {@code utxo} to transaction output @code{txOut} to the pool */
     public void addUTXO(UTXO utxo, Transaction.Output txOut) {
-        H.put(utxo, txOut);
+        Transaction.Output previous;
+        if (parent == null) {
+            previous = H.put(utxo, txOut);
+        } else {
+            previous = getTxOutput(utxo);
+            if (previous == null) {
+                size++;
+            }
+            H.put(utxo, txOut);
+            removed.remove(utxo);
+        }
+        if (commitment != null) {
+            commitment.insert(element(utxo, txOut));
+            if (previous != null) {
+                commitment.remove(element(utxo, previous));
+            }
+        }
     }
 
     /** Removes the UTXO {@code utxo} from the pool */
     public void removeUTXO(UTXO utxo) {
+        if (parent == null) {
+            Transaction.Output output = H.remove(utxo);
+            if (output != null && commitment != null) {
+                commitment.remove(element(utxo, output));
+            }
+            return;
+        }
+        Transaction.Output output = getTxOutput(utxo);
+        if (output != null) {
+            size--;
+            if (commitment != null) {
+                commitment.remove(element(utxo, output));
+            }
+        }
         H.remove(utxo);
+        if (parent.contains(utxo)) {
+            removed.add(utxo);
+        }
     }
 
     /**
@@ -34,21 +210,78 @@ public class UTXOPool {
      *         not in the pool.
      */
     public Transaction.Output getTxOutput(UTXO ut) {
-        return H.get(ut);
+        Transaction.Output output = H.get(ut);
+        if (output != null || parent == null || removed.contains(ut)) {
+            return output;
+        }
+        return parent.getTxOutput(ut);
     }
 
     /** @return true if UTXO {@code utxo} is in the pool and false otherwise */
     public boolean contains(UTXO utxo) {
-        return H.containsKey(utxo);
+        if (H.containsKey(utxo)) {
+            return true;
+        }
+        return parent != null && !removed.contains(utxo) && parent.contains(utxo);
+    }
+
+    /**
+     * @return the MuHash of the pool's UTXOs with their outputs, 32 bytes equal for two pools
+     *         exactly when they hold the same outputs; computed from every UTXO unless the pool
+     *         tracks it
+     */
+    public byte[] getCommitment() {
+        if (parent == null && commitment != null) {
+            return commitment.digest();
+        }
+        if (tracksCommitment()) {
+            return totalCommitment().digest();
+        }
+        MuHash hash = new MuHash();
+        for (Map.Entry<UTXO, Transaction.Output> entry : (parent == null ? H : flatten()).entrySet()) {
+            hash.insert(element(entry.getKey(), entry.getValue()));
+        }
+        return hash.digest();
+    }
+
+    /** @return a new hash of every UTXO of this pool, which tracks it */
+    private MuHash totalCommitment() {
+        return parent == null ? new MuHash(commitment) : parent.totalCommitment().combine(commitment);
+    }
+
+    /** @return the bytes a UTXO with its output adds to the commitment */
+    private static byte[] element(UTXO utxo, Transaction.Output output) {
+        Hash256 hash = utxo.getTxId();
+        byte[] address = output.address == null ? new byte[0] : output.address.getEncoded();
+        ByteBuffer element = ByteBuffer.allocate(3 * Integer.BYTES + hash.length() + Double.BYTES + address.length);
+        element.putInt(hash.length());
+        hash.put(element);
+        return element.putInt(utxo.getIndex())
+                .putDouble(output.value)
+                .putInt(address.length).put(address)
+                .array();
+    }
+
+    /** @return the number of UTXOs in the pool */
+    public int size() {
+        return parent == null ? H.size() : size;
     }
 
     /** Returns an {@code ArrayList} of all UTXOs in the pool */
     public ArrayList<UTXO> getAllUTXO() {
-        Set<UTXO> setUTXO = H.keySet();
+        TxEvents.PoolSnapshot event = new TxEvents.PoolSnapshot();
+        event.begin();
+        Set<UTXO> setUTXO = parent == null ? H.keySet() : flatten().keySet();
         ArrayList<UTXO> allUTXO = new ArrayList<UTXO>();
         for (UTXO ut : setUTXO) {
             allUTXO.add(ut);
         }
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = "list";
+            event.size = allUTXO.size();
+            event.commit();
+        }
         return allUTXO;
     }
 }
@@ -0,0 +1,315 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * A UTXO pool saved after a number of epochs, so a node starts from the latest snapshot and
+ * replays only the epochs after it. A snapshot file holds
+ *
+ * <pre>
+ * int MAGIC, long epoch, int keyCount, per key: int length, X.509 encoded RSA key,
+ * int utxoCount, per UTXO: byte hashLength, hash, int index, double value, int key number,
+ * {@link UTXOPool#getCommitment() commitment} of the pool, int CRC32C of every byte before it
+ * </pre>
+ *
+ * Addresses are stored once and referred to by number, since most outputs pay a few keys. Files
+ * are written under a temporary name and renamed when complete, and the last {@value #RETAINED}
+ * are kept, so a crash while writing leaves the previous snapshot in place. They are read
+ * sequentially, checksummed on the fly, into a pool sized for their UTXO count. The commitment is
+ * not recomputed on reading, which would hash every UTXO again; it is kept as
+ * {@link #getCommitment()} for whoever wants to check the pool against it.
+ *
+ * @see EpochPipeline#setSnapshots(Path, int)
+ */
+public class UTXOSnapshot {
+
+    public static final int MAGIC = 0x53435355;
+    /** Number of snapshots kept in a directory */
+    public static final int RETAINED = 2;
+
+    private static final String PREFIX = "utxo-";
+    private static final String SUFFIX = ".snapshot";
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int COMMITMENT_BYTES = 32;
+    /** Bytes of a UTXO with an empty hash */
+    private static final int MIN_UTXO_SIZE = 1 + Integer.BYTES + Double.BYTES + Integer.BYTES;
+
+    private final long epoch;
+    private final UTXOPool utxoPool;
+    private final byte[] commitment;
+
+    public UTXOSnapshot(long epoch, UTXOPool utxoPool) {
+        this(epoch, utxoPool, null);
+    }
+
+    private UTXOSnapshot(long epoch, UTXOPool utxoPool, byte[] commitment) {
+        this.epoch = epoch;
+        this.utxoPool = utxoPool;
+        this.commitment = commitment;
+    }
+
+    /** @return the number of epochs handled before the snapshot was taken */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public UTXOPool getUtxoPool() {
+        return utxoPool;
+    }
+
+    /**
+     * @return the {@link UTXOPool#getCommitment() commitment} of the pool as recorded when it was
+     *         written, null if the snapshot was not read from a file
+     */
+    public byte[] getCommitment() {
+        return commitment == null ? null : commitment.clone();
+    }
+
+    /**
+     * Writes a snapshot of {@code utxoPool} after {@code epoch} epochs into {@code directory} and
+     * deletes all but the last {@value #RETAINED} snapshots there. The pool is only read, so it may
+     * be written while layers over it are used, but it must not change.
+     *
+     * @return the snapshot file
+     */
+    public static Path write(Path directory, UTXOPool utxoPool, long epoch) throws IOException {
+        List<UTXO> utxos = utxoPool.getAllUTXO();
+        List<byte[]> keys = new ArrayList<>();
+        int[] keyNumbers = new int[utxos.size()];
+        Map<PublicKey, Integer> byInstance = new IdentityHashMap<>();
+        Map<ByteBuffer, Integer> byEncoding = new HashMap<>();
+        for (int i = 0; i < utxos.size(); i++) {
+            PublicKey address = utxoPool.getTxOutput(utxos.get(i)).address;
+            Integer number = byInstance.get(address);
+            if (number == null) {
+                byte[] encoded = address.getEncoded();
+                number = byEncoding.get(ByteBuffer.wrap(encoded));
+                if (number == null) {
+                    number = keys.size();
+                    keys.add(encoded);
+                    byEncoding.put(ByteBuffer.wrap(encoded), number);
+                }
+                byInstance.put(address, number);
+            }
+            keyNumbers[i] = number;
+        }
+
+        Files.createDirectories(directory);
+        Path file = directory.resolve(String.format("%s%020d%s", PREFIX, epoch, SUFFIX));
+        Path temp = directory.resolve(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32C crc = new CRC32C();
+            ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buf.putInt(MAGIC).putLong(epoch).putInt(keys.size());
+            for (byte[] key : keys) {
+                reserve(channel, buf, crc, Integer.BYTES + key.length);
+                buf.putInt(key.length).put(key);
+            }
+            reserve(channel, buf, crc, Integer.BYTES);
+            buf.putInt(utxos.size());
+            for (int i = 0; i < utxos.size(); i++) {
+                UTXO utxo = utxos.get(i);
+                Hash256 hash = utxo.getTxId();
+                reserve(channel, buf, crc, MIN_UTXO_SIZE + hash.length());
+                buf.put((byte) hash.length());
+                hash.put(buf);
+                buf.putInt(utxo.getIndex()).putDouble(utxoPool.getTxOutput(utxo).value).putInt(keyNumbers[i]);
+            }
+            reserve(channel, buf, crc, COMMITMENT_BYTES);
+            buf.put(utxoPool.getCommitment());
+            flush(channel, buf, crc);
+            buf.putInt((int) crc.getValue());
+            buf.flip();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        List<Path> files = list(directory);
+        for (int i = RETAINED; i < files.size(); i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+        return file;
+    }
+
+    /** Writes out {@code buf} if it has less than {@code n} bytes left */
+    private static void reserve(FileChannel channel, ByteBuffer buf, CRC32C crc, int n) throws IOException {
+        if (buf.remaining() < n) {
+            flush(channel, buf, crc);
+        }
+    }
+
+    /** Checksums and writes out the bytes put in {@code buf} */
+    private static void flush(FileChannel channel, ByteBuffer buf, CRC32C crc) throws IOException {
+        buf.flip();
+        crc.update(buf.duplicate());
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        buf.clear();
+    }
+
+    /**
+     * @return the latest snapshot of {@code directory} that reads back intact, null if there is none;
+     *         damaged snapshots are skipped
+     */
+    public static UTXOSnapshot latest(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return null;
+        }
+        for (Path file : list(directory)) {
+            try {
+                return read(file);
+            } catch (IOException e) {
+                // an older snapshot may still be intact
+            }
+        }
+        return null;
+    }
+
+    /** @return the snapshot files of {@code directory}, latest first */
+    private static List<Path> list(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        // the epoch is zero-padded, so names sort by epoch
+        files.sort(Collections.reverseOrder());
+        return files;
+    }
+
+    /**
+     * Reads the snapshot in {@code file}.
+     *
+     * @throws IOException if the file cannot be read, is not a snapshot or fails its checksum
+     */
+    public static UTXOSnapshot read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new Reader(channel).read();
+        }
+    }
+
+    /** Sequential reader of a snapshot, checksumming the bytes as they are read */
+    private static class Reader {
+        private final FileChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final CRC32C crc = new CRC32C();
+        /** Bytes of the file before its checksum not checksummed yet */
+        private long unchecked;
+
+        Reader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.unchecked = channel.size() - Integer.BYTES;
+            buf.flip();
+        }
+
+        UTXOSnapshot read() throws IOException {
+            long fileSize = unchecked + Integer.BYTES;
+            fill(Integer.BYTES + Long.BYTES + Integer.BYTES);
+            if (buf.getInt() != MAGIC) {
+                throw new IOException("Not a snapshot");
+            }
+            long epoch = buf.getLong();
+            int keyCount = count(buf.getInt(), fileSize / Integer.BYTES);
+            KeyFactory keyFactory;
+            try {
+                keyFactory = KeyFactory.getInstance("RSA");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            PublicKey[] keys = new PublicKey[keyCount];
+            for (int i = 0; i < keyCount; i++) {
+                fill(Integer.BYTES);
+                byte[] encoded = new byte[count(buf.getInt(), BUFFER_SIZE)];
+                fill(encoded.length);
+                buf.get(encoded);
+                try {
+                    keys[i] = keyFactory.generatePublic(new X509EncodedKeySpec(encoded));
+                } catch (InvalidKeySpecException e) {
+                    throw new IOException("Corrupt snapshot key " + i, e);
+                }
+            }
+
+            fill(Integer.BYTES);
+            int utxoCount = count(buf.getInt(), fileSize / MIN_UTXO_SIZE);
+            UTXOPool utxoPool = new UTXOPool(utxoCount);
+            // outputs are only read as value and address, so one transaction holds them all
+            Transaction outputs = new Transaction();
+            for (int i = 0; i < utxoCount; i++) {
+                fill(1);
+                int hashLength = buf.get() & 0xff;
+                if (hashLength > Hash256.BYTES) {
+                    throw new IOException("Corrupt snapshot: hash of " + hashLength + " bytes");
+                }
+                fill(hashLength + MIN_UTXO_SIZE - 1);
+                Hash256 hash = Hash256.read(buf, hashLength);
+                int index = buf.getInt();
+                double value = buf.getDouble();
+                int key = buf.getInt();
+                if (key < 0 || key >= keyCount) {
+                    throw new IOException("Corrupt snapshot: key number " + key);
+                }
+                utxoPool.addUTXO(new UTXO(hash, index), outputs.new Output(value, keys[key]));
+            }
+
+            byte[] commitment = new byte[COMMITMENT_BYTES];
+            fill(COMMITMENT_BYTES + Integer.BYTES);
+            buf.get(commitment);
+            if (unchecked != 0 || buf.remaining() != Integer.BYTES || buf.getInt() != (int) crc.getValue()) {
+                throw new IOException("Corrupt snapshot: checksum mismatch");
+            }
+            return new UTXOSnapshot(epoch, utxoPool, commitment);
+        }
+
+        private static int count(int count, long max) throws IOException {
+            if (count < 0 || count > max) {
+                throw new IOException("Corrupt snapshot: count " + count);
+            }
+            return count;
+        }
+
+        /** Makes {@code n} bytes available to get from the buffer, reading and checksumming more if needed */
+        private void fill(int n) throws IOException {
+            if (buf.remaining() >= n) {
+                return;
+            }
+            buf.compact();
+            try {
+                while (buf.position() < n) {
+                    int start = buf.position();
+                    if (channel.read(buf) < 0) {
+                        throw new IOException("Truncated snapshot");
+                    }
+                    ByteBuffer read = buf.duplicate();
+                    read.position(start).limit((int) Math.min(buf.position(), start + Math.max(unchecked, 0)));
+                    unchecked -= read.remaining();
+                    crc.update(read);
+                }
+            } finally {
+                buf.flip();
+            }
+        }
+    }
+}
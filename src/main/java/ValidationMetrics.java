@@ -0,0 +1,139 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Exposes a {@link ValidationStats} as a platform MXBean, so the counters and the stage latency
+ * percentiles can be watched with jconsole or any JMX client while epochs are handled. Reading an
+ * attribute merges the histogram stripes; nothing is computed on the validation path.
+ */
+public class ValidationMetrics implements ValidationMetricsMXBean {
+
+    /** Domain and type of the registered object names */
+    public static final String OBJECT_NAME_PREFIX = "scrooge:type=ValidationMetrics,name=";
+
+    private final ValidationStats stats;
+    private ObjectName objectName;
+
+    public ValidationMetrics(ValidationStats stats) {
+        this.stats = stats;
+    }
+
+    public ValidationStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Registers this bean with the platform MBean server under {@link #OBJECT_NAME_PREFIX} followed
+     * by {@code name}.
+     *
+     * @throws IllegalStateException if a bean of that name is already registered
+     */
+    public synchronized ObjectName register(String name) {
+        try {
+            ObjectName on = new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+            objectName = on;
+            return on;
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register validation metrics " + name, e);
+        }
+    }
+
+    /** Unregisters this bean if it is registered */
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot unregister " + objectName, e);
+        }
+        objectName = null;
+    }
+
+    /** @return the name this bean is registered under, null if it is not */
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+
+    public boolean isTimingEnabled() {
+        return stats.isTimingEnabled();
+    }
+
+    public void setTimingEnabled(boolean timingEnabled) {
+        stats.setTimingEnabled(timingEnabled);
+    }
+
+    public long getEpochs() {
+        return stats.getEpochs();
+    }
+
+    public long getPoolSize() {
+        return stats.getPoolSize();
+    }
+
+    public Map<String, Long> getResultCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (ValidationResult result : ValidationResult.values()) {
+            counts.put(result.name(), stats.getCount(result));
+        }
+        return counts;
+    }
+
+    public long getSignaturesVerified() {
+        return stats.getSignaturesVerified();
+    }
+
+    public long getSignaturesSkipped() {
+        return stats.getSignaturesSkipped();
+    }
+
+    public long getSignaturesDeferred() {
+        return stats.getSignaturesDeferred();
+    }
+
+    public Map<String, Long> getStageCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (ValidationStats.Stage stage : ValidationStats.Stage.values()) {
+            counts.put(stage.name(), stats.getStage(stage).getCount());
+        }
+        return counts;
+    }
+
+    public Map<String, Double> getMeanMicros() {
+        return perStage(LatencyHistogram.Snapshot::getMean);
+    }
+
+    public Map<String, Double> getP50Micros() {
+        return perStage(s -> s.getValueAtPercentile(50));
+    }
+
+    public Map<String, Double> getP99Micros() {
+        return perStage(s -> s.getValueAtPercentile(99));
+    }
+
+    public Map<String, Double> getMaxMicros() {
+        return perStage(LatencyHistogram.Snapshot::getMax);
+    }
+
+    public void reset() {
+        stats.reset();
+    }
+
+    private Map<String, Double> perStage(ToDoubleFunction<LatencyHistogram.Snapshot> nanos) {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (ValidationStats.Stage stage : ValidationStats.Stage.values()) {
+            values.put(stage.name(), nanos.applyAsDouble(stats.getStage(stage).snapshot()) / 1000);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,38 @@
+import java.util.Map;
+
+/**
+ * Management interface of {@link ValidationMetrics}. Maps are keyed by {@link ValidationResult}
+ * or {@link ValidationStats.Stage} name; latencies are in microseconds.
+ */
+public interface ValidationMetricsMXBean {
+
+    boolean isTimingEnabled();
+
+    /** Turns timing of the validation stages on or off, counters are always kept */
+    void setTimingEnabled(boolean timingEnabled);
+
+    long getEpochs();
+
+    long getPoolSize();
+
+    Map<String, Long> getResultCounts();
+
+    long getSignaturesVerified();
+
+    long getSignaturesSkipped();
+
+    long getSignaturesDeferred();
+
+    Map<String, Long> getStageCounts();
+
+    Map<String, Double> getMeanMicros();
+
+    Map<String, Double> getP50Micros();
+
+    Map<String, Double> getP99Micros();
+
+    Map<String, Double> getMaxMicros();
+
+    /** Clears every counter and histogram */
+    void reset();
+}
@@ -0,0 +1,22 @@
+/**
+ * Outcome of {@link TxValidator#validate(Transaction)}: {@link #VALID} or the first reason the
+ * transaction was rejected for. Constants are declared in the order the checks run, cheap
+ * structural and value checks before any signature is verified.
+ */
+public enum ValidationResult {
+    VALID,
+    /** the transaction is null */
+    NULL_TX,
+    /** an output value is negative, requirement (4) */
+    NEGATIVE_OUTPUT,
+    /** an output is claimed by more than one input, requirement (3) */
+    DUPLICATE_INPUT,
+    /** a claimed output is not in the current UTXO pool or an input names no transaction, requirement (1) */
+    MISSING_INPUT,
+    /** an input has no signature or the claimed output has no address, requirement (2) */
+    MISSING_SIGNATURE,
+    /** the outputs are worth more than the inputs, requirement (5) */
+    INSUFFICIENT_INPUTS,
+    /** a signature does not verify under the claimed output's address, requirement (2) */
+    INVALID_SIGNATURE
+}
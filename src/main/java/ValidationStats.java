@@ -0,0 +1,164 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of validation outcomes by {@link ValidationResult}, plus how many signatures were
+ * verified, how many verifications were skipped because a cheaper check had already rejected
+ * the transaction, and how many were deferred and never needed because the transaction was not
+ * selected. Safe to update from many threads.
+ * <p>
+ * With timing enabled, the time spent in each {@link Stage} is recorded into a
+ * {@link LatencyHistogram}; disabled, which is the default, the stages are not even timed and the
+ * histograms are not allocated until timing is first enabled.
+ * {@link ValidationMetrics} exposes everything through JMX.
+ */
+public class ValidationStats {
+
+    /** The timed parts of handling an epoch */
+    public enum Stage {
+        /** the checks that need no signature, mostly UTXO pool lookups */
+        STRUCTURE,
+        /** serializing the data an input signs */
+        SERIALIZATION,
+        /** RSA signature verification */
+        SIGNATURE,
+        /** building the dependency and conflict graph of the candidates */
+        GRAPH,
+        /** a whole epoch, selection and validation included */
+        EPOCH
+    }
+
+    private final LongAdder[] results = new LongAdder[ValidationResult.values().length];
+    private final LongAdder signaturesVerified = new LongAdder();
+    private final LongAdder signaturesSkipped = new LongAdder();
+    private final LongAdder signaturesDeferred = new LongAdder();
+    /** Empty latencies reported while timing was never enabled */
+    private static final LatencyHistogram NOT_TIMED = new LatencyHistogram();
+
+    /** The latencies of each stage, null until timing is first enabled */
+    private volatile LatencyHistogram[] stages;
+    private final LongAdder epochs = new LongAdder();
+    private volatile boolean timingEnabled;
+    private volatile long poolSize;
+
+    public ValidationStats() {
+        for (int i = 0; i < results.length; i++) {
+            results[i] = new LongAdder();
+        }
+    }
+
+    /** @return true if the stages are timed; callers check it before reading the clock */
+    public boolean isTimingEnabled() {
+        return timingEnabled;
+    }
+
+    /** Enables or disables timing, allocating the stage histograms the first time it is enabled */
+    public synchronized void setTimingEnabled(boolean timingEnabled) {
+        if (timingEnabled && stages == null) {
+            LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new LatencyHistogram();
+            }
+            stages = histograms;
+        }
+        this.timingEnabled = timingEnabled;
+    }
+
+    /** Records {@code nanos} spent in {@code stage}, ignored if timing was never enabled */
+    public void recordStage(Stage stage, long nanos) {
+        LatencyHistogram[] histograms = stages;
+        if (histograms != null) {
+            histograms[stage.ordinal()].record(nanos);
+        }
+    }
+
+    /** Records a handled epoch that took {@code nanos}, if timing is enabled, and left {@code poolSize} UTXOs */
+    public void recordEpoch(long nanos, int poolSize) {
+        epochs.increment();
+        if (timingEnabled) {
+            recordStage(Stage.EPOCH, nanos);
+        }
+        this.poolSize = poolSize;
+    }
+
+    /** @return the latencies of {@code stage}, in nanoseconds, empty if timing was never enabled */
+    public LatencyHistogram getStage(Stage stage) {
+        LatencyHistogram[] histograms = stages;
+        return histograms == null ? NOT_TIMED : histograms[stage.ordinal()];
+    }
+
+    public long getEpochs() {
+        return epochs.sum();
+    }
+
+    /** @return the size of the UTXO pool after the last recorded epoch */
+    public long getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Records one validation that ended with {@code result} after verifying {@code verified} of
+     * the transaction's {@code inputs} signatures.
+     */
+    public void record(ValidationResult result, int inputs, int verified) {
+        results[result.ordinal()].increment();
+        if (verified > 0) {
+            signaturesVerified.add(verified);
+        }
+        if (result != ValidationResult.VALID && result != ValidationResult.INVALID_SIGNATURE) {
+            signaturesSkipped.add(inputs - verified);
+        }
+    }
+
+    /**
+     * Records {@code signatures} verifications of transactions that passed every other check but
+     * were not selected, so their signatures were never verified.
+     */
+    public void recordDeferred(int signatures) {
+        signaturesDeferred.add(signatures);
+    }
+
+    /** @return the number of validations that ended with {@code result} */
+    public long getCount(ValidationResult result) {
+        return results[result.ordinal()].sum();
+    }
+
+    public long getSignaturesVerified() {
+        return signaturesVerified.sum();
+    }
+
+    /** @return the number of signature verifications saved by rejecting on a cheaper check */
+    public long getSignaturesSkipped() {
+        return signaturesSkipped.sum();
+    }
+
+    /** @return the number of signature verifications saved by verifying selected transactions only */
+    public long getSignaturesDeferred() {
+        return signaturesDeferred.sum();
+    }
+
+    public void reset() {
+        for (LongAdder result : results) {
+            result.reset();
+        }
+        signaturesVerified.reset();
+        signaturesSkipped.reset();
+        signaturesDeferred.reset();
+        epochs.reset();
+        LatencyHistogram[] histograms = stages;
+        if (histograms != null) {
+            for (LatencyHistogram stage : histograms) {
+                stage.reset();
+            }
+        }
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (ValidationResult result : ValidationResult.values()) {
+            sb.append(result).append('=').append(getCount(result)).append(' ');
+        }
+        return sb.append("signaturesVerified=").append(getSignaturesVerified())
+                .append(" signaturesSkipped=").append(getSignaturesSkipped())
+                .append(" signaturesDeferred=").append(getSignaturesDeferred()).toString();
+    }
+}
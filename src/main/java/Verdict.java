@@ -0,0 +1,28 @@
+/**
+ * Outcome of a single transaction pushed through a {@link TxHandlerProcessor}: the transaction
+ * itself and whether the handler accepted it into its epoch.
+ */
+public class Verdict {
+
+    private final Transaction tx;
+    private final boolean accepted;
+
+    public Verdict(Transaction tx, boolean accepted) {
+        this.tx = tx;
+        this.accepted = accepted;
+    }
+
+    /** @return the transaction this verdict was reached for */
+    public Transaction getTransaction() {
+        return tx;
+    }
+
+    /** @return true if the transaction was accepted and applied to the UTXO pool */
+    public boolean isAccepted() {
+        return accepted;
+    }
+
+    public String toString() {
+        return (accepted ? "accepted " : "rejected ") + tx;
+    }
+}
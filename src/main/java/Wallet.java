@@ -0,0 +1,347 @@
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The coins owned by a set of keys, and a builder of signed payments spending them. The coin set is
+ * read from a {@link UTXOPool} once by {@link #scan} and then kept up to date from the transactions
+ * each epoch accepts, so a payment never walks the pool.
+ * <p>
+ * Coins are selected as in Bitcoin Core, by their effective value: their value less the fee their
+ * input costs at the payment's fee rate, the fee paid per byte of {@link Transaction#getRawTx()}
+ * as in {@link Mempool}. A depth-first branch and bound first looks for coins matching the amount
+ * closely enough that a change output is not worth its cost; when there are none, the smallest
+ * coin covering the amount with change, or else the largest coins, are spent and the excess paid
+ * back to a change address. Coins spent by a built payment are reserved until an epoch accepts it
+ * or it is {@link #release released}. Instances are not thread safe.
+ */
+public class Wallet {
+
+    /** Most branches {@link #branchAndBound} visits before giving up on an exact match */
+    static final int MAX_TRIES = 100_000;
+
+    /** An owned key with the sizes it adds to a transaction */
+    private static class Owner {
+        final KeyPair keyPair;
+        /** Bytes of an input signed with the key: hash, index and signature */
+        final int inputSize;
+        /** Bytes of an output paying the key: value and address */
+        final int outputSize;
+
+        Owner(KeyPair keyPair) {
+            this.keyPair = keyPair;
+            int signatureSize = (((RSAPublicKey) keyPair.getPublic()).getModulus().bitLength() + 7) / 8;
+            this.inputSize = 32 + Integer.BYTES + signatureSize;
+            this.outputSize = Double.BYTES + keyPair.getPublic().getEncoded().length;
+        }
+    }
+
+    /** An unspent output paying an owned key */
+    public static class Coin {
+        private final UTXO utxo;
+        private final Transaction.Output output;
+        private final Owner owner;
+
+        private Coin(UTXO utxo, Transaction.Output output, Owner owner) {
+            this.utxo = utxo;
+            this.output = output;
+            this.owner = owner;
+        }
+
+        public UTXO getUtxo() {
+            return utxo;
+        }
+
+        public double getValue() {
+            return output.value;
+        }
+
+        public PublicKey getAddress() {
+            return output.address;
+        }
+
+        /** @return the value left of the coin once the fee of spending it at {@code feeRate} is paid */
+        public double getEffectiveValue(double feeRate) {
+            return output.value - feeRate * owner.inputSize;
+        }
+    }
+
+    private final Map<PublicKey, Owner> owners = new HashMap<>();
+    private final Map<UTXO, Coin> coins = new HashMap<>();
+    private final Map<UTXO, Coin> reserved = new HashMap<>();
+    private final Owner changeOwner;
+
+    /** Creates an empty wallet of {@code keys}, paying change to the first one */
+    public Wallet(KeyPair... keys) {
+        if (keys.length == 0) {
+            throw new IllegalArgumentException("No keys");
+        }
+        for (KeyPair key : keys) {
+            owners.put(key.getPublic(), new Owner(key));
+        }
+        changeOwner = owners.get(keys[0].getPublic());
+    }
+
+    /** Adds every output of {@code utxoPool} paying one of the keys, in time proportional to the pool */
+    public void scan(UTXOPool utxoPool) {
+        for (UTXO utxo : utxoPool.getAllUTXO()) {
+            Transaction.Output output = utxoPool.getTxOutput(utxo);
+            Owner owner = owners.get(output.address);
+            if (owner != null && !reserved.containsKey(utxo)) {
+                coins.put(utxo, new Coin(utxo, output, owner));
+            }
+        }
+    }
+
+    /**
+     * Updates the coins with an epoch's {@code acceptedTxs}: the coins they spend are gone, reserved
+     * or not, and their outputs paying one of the keys are new coins.
+     */
+    public void applyEpoch(Transaction[] acceptedTxs) {
+        for (Transaction tx : acceptedTxs) {
+            for (Transaction.Input in : tx.getInputs()) {
+                UTXO utxo = new UTXO(in.prevTxId, in.outputIndex);
+                if (coins.remove(utxo) == null) {
+                    reserved.remove(utxo);
+                }
+            }
+            for (int i = 0; i < tx.numOutputs(); i++) {
+                Transaction.Output output = tx.getOutput(i);
+                Owner owner = owners.get(output.address);
+                if (owner != null) {
+                    UTXO utxo = new UTXO(tx.getId(), i);
+                    coins.put(utxo, new Coin(utxo, output, owner));
+                }
+            }
+        }
+    }
+
+    /** Makes the coins reserved by a payment that was not accepted spendable again */
+    public void release(Transaction tx) {
+        for (Transaction.Input in : tx.getInputs()) {
+            Coin coin = reserved.remove(new UTXO(in.prevTxId, in.outputIndex));
+            if (coin != null) {
+                coins.put(coin.utxo, coin);
+            }
+        }
+    }
+
+    /** @return the coins that are not reserved */
+    public List<Coin> getCoins() {
+        return new ArrayList<>(coins.values());
+    }
+
+    /** @return the value of the coins that are not reserved */
+    public double getBalance() {
+        double balance = 0;
+        for (Coin coin : coins.values()) {
+            balance += coin.output.value;
+        }
+        return balance;
+    }
+
+    /** @return a new builder of a payment from this wallet */
+    public Payment newPayment() {
+        return new Payment();
+    }
+
+    /** A payment to one or more addresses, built and signed by {@link #build()} */
+    public class Payment {
+        private final Transaction tx = new Transaction();
+        private double amount;
+        private double feeRate;
+        private Owner change = changeOwner;
+
+        private Payment() {
+        }
+
+        /** Pays {@code value} to {@code address} */
+        public Payment addRecipient(PublicKey address, double value) {
+            if (!(value > 0)) {
+                throw new IllegalArgumentException("Value must be positive: " + value);
+            }
+            tx.addOutput(value, address);
+            amount += value;
+            return this;
+        }
+
+        /** Sets the fee paid per byte of the transaction, 0 by default */
+        public Payment setFeeRate(double feeRate) {
+            if (!(feeRate >= 0)) {
+                throw new IllegalArgumentException("Fee rate must not be negative: " + feeRate);
+            }
+            this.feeRate = feeRate;
+            return this;
+        }
+
+        /** Pays change to {@code address}, which must be one of the wallet's keys */
+        public Payment setChangeAddress(PublicKey address) {
+            Owner owner = owners.get(address);
+            if (owner == null) {
+                throw new IllegalArgumentException("Not a key of the wallet");
+            }
+            change = owner;
+            return this;
+        }
+
+        /**
+         * Selects coins, adds change if it is worth its cost, signs every input and reserves the
+         * coins spent.
+         *
+         * @return the signed transaction
+         * @throws IllegalStateException if the coins that are not reserved cannot pay the amount
+         *         and its fee
+         */
+        public Transaction build() {
+            if (tx.numOutputs() == 0) {
+                throw new IllegalStateException("No recipients");
+            }
+            int outputsSize = 0;
+            for (Transaction.Output out : tx.getOutputs()) {
+                outputsSize += Double.BYTES + out.address.getEncoded().length;
+            }
+            double target = amount + feeRate * outputsSize;
+            double changeFee = feeRate * change.outputSize;
+            // a change output only pays off if it is worth more than creating and later spending it
+            double costOfChange = changeFee + feeRate * change.inputSize;
+
+            Coin[] candidates = coins.values().stream()
+                    .filter(coin -> coin.getEffectiveValue(feeRate) > 0)
+                    .sorted(Comparator.comparingDouble((Coin coin) -> coin.getEffectiveValue(feeRate)).reversed())
+                    .toArray(Coin[]::new);
+            double[] values = new double[candidates.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = candidates[i].getEffectiveValue(feeRate);
+            }
+            boolean[] selection = branchAndBound(values, target, costOfChange);
+            if (selection == null) {
+                selection = largestFirst(values, target + costOfChange);
+            }
+            if (selection == null) {
+                // not enough for change, whatever is left over goes to the fee
+                selection = largestFirst(values, target);
+            }
+            if (selection == null) {
+                throw new IllegalStateException("Insufficient funds for " + amount + " at fee rate " + feeRate);
+            }
+
+            List<Coin> spent = new ArrayList<>();
+            double selected = 0;
+            for (int i = 0; i < selection.length; i++) {
+                if (selection[i]) {
+                    spent.add(candidates[i]);
+                    selected += values[i];
+                }
+            }
+            double changeValue = selected - target - changeFee;
+            if (selected - target > costOfChange && changeValue > 0) {
+                tx.addOutput(changeValue, change.keyPair.getPublic());
+            }
+            for (Coin coin : spent) {
+                tx.addInput(coin.utxo.getTxId(), coin.utxo.getIndex());
+            }
+            TransactionSigner signer = new TransactionSigner();
+            for (int i = 0; i < spent.size(); i++) {
+                signer.add(i, spent.get(i).owner.keyPair.getPrivate());
+            }
+            try {
+                signer.sign(tx);
+            } catch (SignatureException e) {
+                throw new IllegalStateException(e);
+            }
+            for (Coin coin : spent) {
+                coins.remove(coin.utxo);
+                reserved.put(coin.utxo, coin);
+            }
+            return tx;
+        }
+    }
+
+    /**
+     * Depth-first search over including or omitting each of {@code values}, sorted in descending
+     * order, for the selection adding up to between {@code target} and {@code target + costOfChange}
+     * with the least excess. A branch is cut when it overshoots the window or cannot reach the
+     * target with the values left, and a value equal to the one just omitted is omitted too, since
+     * including it leads to selections already seen.
+     *
+     * @return the selected values, null if no selection was found within {@link #MAX_TRIES} branches
+     */
+    static boolean[] branchAndBound(double[] values, double target, double costOfChange) {
+        double available = 0;
+        for (double value : values) {
+            available += value;
+        }
+        boolean[] selection = new boolean[values.length];
+        int[] included = new int[values.length];
+        int depth = 0;
+        double current = 0;
+        boolean[] best = null;
+        double bestExcess = Double.POSITIVE_INFINITY;
+        int index = 0;
+        for (int tries = 0; tries < MAX_TRIES; tries++, index++) {
+            boolean backtrack = false;
+            if (current > target + costOfChange) {
+                backtrack = true;
+            } else if (index == values.length || current + available < target) {
+                // the sum of the values left may be off by rounding once they are all passed
+                backtrack = current < target;
+            }
+            if (current >= target && current <= target + costOfChange) {
+                if (current - target < bestExcess) {
+                    bestExcess = current - target;
+                    best = selection.clone();
+                    if (bestExcess == 0) {
+                        break;
+                    }
+                }
+                backtrack = true;
+            }
+            if (backtrack) {
+                if (depth == 0) {
+                    break;
+                }
+                // values omitted after the last included one are available again to its omission branch
+                int last = included[--depth];
+                for (index--; index > last; index--) {
+                    available += values[index];
+                }
+                selection[last] = false;
+                current -= values[last];
+            } else {
+                available -= values[index];
+                if (depth == 0 || included[depth - 1] == index - 1 || values[index] != values[index - 1]) {
+                    selection[index] = true;
+                    included[depth++] = index;
+                    current += values[index];
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the smallest of {@code values}, sorted in descending order, that reaches {@code target}
+     *         on its own, or else the fewest largest ones that do; null if all of them do not
+     */
+    static boolean[] largestFirst(double[] values, double target) {
+        boolean[] selection = new boolean[values.length];
+        for (int i = values.length - 1; i >= 0; i--) {
+            if (values[i] >= target) {
+                selection[i] = true;
+                return selection;
+            }
+        }
+        double total = 0;
+        for (int i = 0; i < values.length && total < target; i++) {
+            selection[i] = true;
+            total += values[i];
+        }
+        return total >= target ? selection : null;
+    }
+}
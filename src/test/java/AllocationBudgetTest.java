@@ -0,0 +1,131 @@
+import static org.junit.Assert.assertTrue;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Fails the build when the validation hot path allocates more per operation than its budget, as
+ * read from the current thread's allocation counter over warmed-up {@link UtxoTestSet} workloads.
+ * The budgets are in bytes and can be overridden with system properties, e.g.
+ * {@code mvn test -Dallocation.budget.isValidTx=40000}. Signature verification allocates inside
+ * the JDK, so the paths that verify signatures have budgets well above zero; the structural
+ * checks and the serialization of valid transactions are held to what they need. Each budget is
+ * the most measured over repeated runs of the random workload plus a small margin.
+ */
+public class AllocationBudgetTest {
+
+    private static final int WARMUP = 20;
+    private static final int ROUNDS = 20;
+
+    /** Bytes per input of {@link TxValidator#validateStructure} of a valid transaction: exactly the pool lookup key */
+    private static final long STRUCTURE_BUDGET = budget("validateStructure", 24);
+    /** Bytes per {@link Transaction#getRawDataToSign} beyond the returned array and the encoded addresses */
+    private static final long SERIALIZATION_OVERHEAD_BUDGET = budget("getRawDataToSign", 256);
+    /** Bytes per input of {@link TxHandler#isValidTx} of a valid transaction, mostly the RSA verification: measured up to 12,900 */
+    private static final long IS_VALID_TX_BUDGET = budget("isValidTx", 13_500);
+    /**
+     * Bytes per candidate input of {@link TxHandler#handleTxs}, beyond the pool copy of the fresh
+     * handler each epoch needs: measured up to 12,300
+     */
+    private static final long HANDLE_TXS_BUDGET = budget("handleTxs", 13_500);
+
+    private static UtxoTestSet utxoTestSet;
+    private static Transaction[] valid;
+    private static Transaction[] all;
+
+    private static long budget(String name, long defaultBytes) {
+        return Long.getLong("allocation.budget." + name, defaultBytes);
+    }
+
+    @BeforeClass
+    public static void workload() throws Exception {
+        utxoTestSet = UtxoTestSet.builder()
+                .setPeopleSize(10)
+                .setUtxoTxNumber(10)
+                .setMaxUtxoTxOutput(10)
+                .setMaxValue(200)
+                .setTxPerTest(10)
+                .setMaxInput(10)
+                .setMaxOutput(10)
+                .setCorruptedPercentage(.20)
+                .build();
+        ValidationLists<Transaction> lists = utxoTestSet.getValidationLists();
+        all = lists.allElements().toArray(new Transaction[0]);
+        valid = lists.allElements().stream().filter(lists::isValid).toArray(Transaction[]::new);
+    }
+
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+    /** @return the mean bytes allocated by {@code operation} after warming it up */
+    private static double bytesPerRun(Operation operation) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            operation.run();
+        }
+        // the best of several rounds, so an unrelated allocation such as a JIT deoptimization does not count
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long bytes = -MicroBenchmark.allocatedBytes();
+            for (int i = 0; i < ROUNDS; i++) {
+                operation.run();
+            }
+            bytes += MicroBenchmark.allocatedBytes();
+            best = Math.min(best, (double) bytes / ROUNDS);
+        }
+        return best;
+    }
+
+    private static void assertWithin(String name, double bytes, double budget) {
+        assertTrue(String.format("%s allocates %.1f bytes, budget %.1f", name, bytes, budget), bytes <= budget);
+    }
+
+    private static int inputs(Transaction[] txs) {
+        int inputs = 0;
+        for (Transaction tx : txs) {
+            inputs += tx.numInputs();
+        }
+        return inputs;
+    }
+
+    @Test
+    public void testStructureChecks() throws Exception {
+        TxValidator validator = new TxValidator(utxoTestSet.getUtxoPool());
+        double bytes = bytesPerRun(() -> {
+            for (Transaction tx : valid) {
+                validator.validateStructure(tx);
+            }
+        }) / inputs(valid);
+        assertWithin("validateStructure per input", bytes, STRUCTURE_BUDGET);
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        for (Transaction tx : valid) {
+            long expected = tx.getRawDataToSign(0).length + 16;
+            for (int i = 0; i < tx.numOutputs(); i++) {
+                expected += tx.getOutput(i).address.getEncoded().length + 16;
+            }
+            double bytes = bytesPerRun(() -> tx.getRawDataToSign(0));
+            assertWithin("getRawDataToSign", bytes, expected + SERIALIZATION_OVERHEAD_BUDGET);
+        }
+    }
+
+    @Test
+    public void testIsValidTx() throws Exception {
+        TxHandler handler = new TxHandler(utxoTestSet.getUtxoPool());
+        double bytes = bytesPerRun(() -> {
+            for (Transaction tx : valid) {
+                handler.isValidTx(tx);
+            }
+        }) / inputs(valid);
+        assertWithin("isValidTx per input", bytes, IS_VALID_TX_BUDGET);
+    }
+
+    @Test
+    public void testHandleTxs() throws Exception {
+        double handler = bytesPerRun(() -> new TxHandler(utxoTestSet.getUtxoPool()));
+        double epoch = bytesPerRun(() -> new TxHandler(utxoTestSet.getUtxoPool()).handleTxs(all));
+        assertWithin("handleTxs per candidate input", (epoch - handler) / inputs(all), HANDLE_TXS_BUDGET);
+    }
+}
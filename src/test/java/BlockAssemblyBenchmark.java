@@ -0,0 +1,173 @@
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Compares the byte limited block assembly of {@link MaxFeeTxHandler#handleTxs(Transaction[], long)}
+ * against an exhaustive search for the maximum fee block on small generated epochs. An epoch mixes
+ * payments with one to four outputs, double spends of the same coin and high fee children, and
+ * every epoch is assembled with a limit of 30, 50 and 70 percent of its total size.
+ * <p>
+ * Usage: {@code BlockAssemblyBenchmark [instances] [coins]}, default 200 instances of 12 coins
+ * (about 20 candidates, the exhaustive search is exponential in their number).
+ */
+public class BlockAssemblyBenchmark {
+
+    private static final long SEED = 42;
+    private static final double[] LIMITS = {0.3, 0.5, 0.7};
+
+    public static void main(String[] args) throws Exception {
+        int instances = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int coins = args.length > 1 ? Integer.parseInt(args[1]) : 12;
+
+        System.out.printf("%6s %10s %12s %12s %12s %12s%n",
+                "limit", "instances", "mean ratio", "worst ratio", "approx us", "exact us");
+        for (double limit : LIMITS) {
+            double ratioSum = 0;
+            double worst = 1;
+            long approxNanos = 0;
+            long exactNanos = 0;
+            for (int instance = 0; instance < instances; instance++) {
+                Epoch epoch = new Epoch(coins, new SplittableRandom(SEED * 31 + instance));
+                long maxBytes = (long) (limit * epoch.totalBytes);
+
+                long start = System.nanoTime();
+                MaxFeeTxHandler handler = new MaxFeeTxHandler(epoch.pool);
+                Transaction[] block = handler.handleTxs(epoch.txs, maxBytes);
+                approxNanos += System.nanoTime() - start;
+                double approxFee = fee(new CandidateGraph(block, epoch.pool));
+
+                start = System.nanoTime();
+                double exactFee = new Exhaustive(new CandidateGraph(epoch.txs, epoch.pool), epoch.pool, maxBytes).solve();
+                exactNanos += System.nanoTime() - start;
+
+                double ratio = exactFee <= 0 ? 1 : approxFee / exactFee;
+                ratioSum += ratio;
+                worst = Math.min(worst, ratio);
+            }
+            System.out.printf("%5.0f%% %10d %12.4f %12.4f %12.1f %12.1f%n", 100 * limit, instances,
+                    ratioSum / instances, worst, approxNanos / 1e3 / instances, exactNanos / 1e3 / instances);
+        }
+    }
+
+    /** @return the summed fee of all candidates of {@code graph} */
+    private static double fee(CandidateGraph graph) {
+        double fee = 0;
+        for (int i = 0; i < graph.length(); i++) {
+            fee += graph.getFee(i);
+        }
+        return fee;
+    }
+
+    /** Depth-first search over all dependency closed, conflict free subsets within the limit */
+    private static class Exhaustive {
+        private final CandidateGraph graph;
+        private final int[] order;
+        private final boolean[] valid;
+        private final boolean[] chosen;
+        private final boolean[] taken;
+        private final double[] remainingFee;
+        private final long maxBytes;
+        private double best;
+
+        Exhaustive(CandidateGraph graph, UTXOPool pool, long maxBytes) {
+            this.graph = graph;
+            this.order = graph.topologicalOrder();
+            this.valid = graph.validate(pool);
+            this.chosen = new boolean[graph.length()];
+            this.taken = new boolean[graph.numConflictGroups()];
+            this.maxBytes = maxBytes;
+            remainingFee = new double[order.length + 1];
+            for (int k = order.length - 1; k >= 0; k--) {
+                remainingFee[k] = remainingFee[k + 1] + (valid[order[k]] ? graph.getFee(order[k]) : 0);
+            }
+        }
+
+        double solve() {
+            search(0, 0, 0);
+            return best;
+        }
+
+        private void search(int k, double fee, long bytes) {
+            if (fee > best) {
+                best = fee;
+            }
+            if (k == order.length || fee + remainingFee[k] <= best) {
+                return;
+            }
+            int i = order[k];
+            if (valid[i] && bytes + graph.getSize(i) <= maxBytes && selectable(i)) {
+                take(i, true);
+                search(k + 1, fee + graph.getFee(i), bytes + graph.getSize(i));
+                take(i, false);
+            }
+            search(k + 1, fee, bytes);
+        }
+
+        private boolean selectable(int i) {
+            for (int parent : graph.getParents(i)) {
+                if (!chosen[parent]) {
+                    return false;
+                }
+            }
+            for (int group : graph.getConflictGroups(i)) {
+                if (taken[group]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void take(int i, boolean value) {
+            chosen[i] = value;
+            for (int group : graph.getConflictGroups(i)) {
+                taken[group] = value;
+            }
+        }
+    }
+
+    /** A generated epoch whose candidates differ in size */
+    private static class Epoch {
+        private static final double COIN_VALUE = 10;
+
+        final UTXOPool pool;
+        final Transaction[] txs;
+        long totalBytes;
+
+        Epoch(int coins, SplittableRandom random) throws SignatureException {
+            TestLedger ledger = new TestLedger(coins, COIN_VALUE, new byte[]{(byte) random.nextInt()});
+            pool = ledger.getUtxoPool();
+            byte[] root = ledger.getRootHash();
+
+            List<Transaction> all = new ArrayList<>();
+            for (int coin = 0; coin < coins; coin++) {
+                Transaction payment = ledger.spend(root, coin,
+                        split(COIN_VALUE - 2 * random.nextDouble(), 1 + random.nextInt(4)));
+                all.add(payment);
+                double kind = random.nextDouble();
+                if (kind < 0.3) {
+                    all.add(ledger.spend(root, coin, split(COIN_VALUE - 2 * random.nextDouble(), 1 + random.nextInt(4))));
+                } else if (kind < 0.7) {
+                    double value = payment.getOutput(0).value;
+                    all.add(ledger.spend(payment.getHash(), 0, split(value * (1 - random.nextDouble()), 1 + random.nextInt(2))));
+                }
+            }
+            Collections.shuffle(all, new Random(random.nextLong()));
+            txs = all.toArray(new Transaction[all.size()]);
+            for (Transaction tx : txs) {
+                totalBytes += tx.getRawTx().length;
+            }
+        }
+
+        /** @return {@code value} split into {@code outputs} equal output values */
+        private static double[] split(double value, int outputs) {
+            double[] values = new double[outputs];
+            Arrays.fill(values, value / outputs);
+            return values;
+        }
+    }
+}
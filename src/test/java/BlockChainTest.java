@@ -0,0 +1,157 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class BlockChainTest {
+
+    private static KeyPair alice;
+    private static KeyPair bob;
+
+    @BeforeClass
+    public static void keys() throws Exception {
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(512);
+        alice = keyGen.genKeyPair();
+        bob = keyGen.genKeyPair();
+    }
+
+    private static Block block(Block parent, PublicKey miner, Transaction... txs) {
+        Block block = new Block(parent == null ? null : parent.getHash(), miner);
+        for (Transaction tx : txs) {
+            block.addTransaction(tx);
+        }
+        block.computeHash();
+        return block;
+    }
+
+    /** @return a transaction paying all of output {@code index} of {@code from}, owned by {@code owner}, to {@code to} */
+    private static Transaction pay(Transaction from, int index, KeyPair owner, PublicKey to) throws Exception {
+        HandleTxTest.Tx tx = new HandleTxTest.Tx();
+        tx.addInput(from.getHash(), index);
+        tx.addOutput(from.getOutput(index).value, to);
+        tx.signTx(owner.getPrivate(), 0);
+        return tx;
+    }
+
+    @Test
+    public void testChainSpendsCoinbases() throws Exception {
+        Block genesis = block(null, alice.getPublic());
+        BlockChain chain = new BlockChain(genesis);
+        assertEquals(1, chain.getMaxHeight());
+        assertEquals(1, chain.getMaxHeightUTXOPool().size());
+
+        Transaction spend = pay(genesis.getCoinbase(), 0, alice, bob.getPublic());
+        Block block = block(genesis, bob.getPublic(), spend);
+        assertTrue(chain.addBlock(block));
+        assertEquals(2, chain.getMaxHeight());
+        assertArrayEquals(block.getHash(), chain.getMaxHeightBlock().getHash());
+
+        UTXOPool pool = chain.getMaxHeightUTXOPool();
+        assertEquals(2, pool.size());
+        assertFalse(pool.contains(new UTXO(genesis.getCoinbase().getHash(), 0)));
+        assertTrue(pool.contains(new UTXO(spend.getHash(), 0)));
+        assertTrue(pool.contains(new UTXO(block.getCoinbase().getHash(), 0)));
+    }
+
+    @Test
+    public void testRejectsInvalidBlocks() throws Exception {
+        Block genesis = block(null, alice.getPublic());
+        BlockChain chain = new BlockChain(genesis);
+
+        Transaction spend = pay(genesis.getCoinbase(), 0, alice, bob.getPublic());
+        Transaction doubleSpend = pay(genesis.getCoinbase(), 0, alice, alice.getPublic());
+        assertFalse("double spend", chain.addBlock(block(genesis, bob.getPublic(), spend, doubleSpend)));
+        assertFalse("forged signature", chain.addBlock(block(genesis, bob.getPublic(), pay(genesis.getCoinbase(), 0, bob, bob.getPublic()))));
+        Block unfinished = new Block(genesis.getHash(), bob.getPublic());
+        assertFalse("no hash", chain.addBlock(unfinished));
+        assertFalse("second genesis", chain.addBlock(block(null, bob.getPublic())));
+        Block orphan = block(block(genesis, bob.getPublic()), bob.getPublic());
+        assertFalse("unknown parent", chain.addBlock(orphan));
+
+        Block block = block(genesis, bob.getPublic());
+        assertFalse("coinbase spent in its own block", chain.addBlock(block(genesis, bob.getPublic(), pay(block.getCoinbase(), 0, bob, alice.getPublic()))));
+        assertEquals(1, chain.size());
+
+        // transactions of a block may depend on each other, in any order
+        Transaction child = pay(spend, 0, bob, alice.getPublic());
+        assertTrue(chain.addBlock(block(genesis, bob.getPublic(), child, spend)));
+        assertFalse("block added twice", chain.addBlock(chain.getMaxHeightBlock()));
+    }
+
+    @Test
+    public void testForksAndCutOff() throws Exception {
+        Block genesis = block(null, alice.getPublic());
+        BlockChain chain = new BlockChain(genesis, 3);
+
+        Block a1 = block(genesis, alice.getPublic());
+        Block b1 = block(genesis, bob.getPublic());
+        assertTrue(chain.addBlock(a1));
+        assertTrue(chain.addBlock(b1));
+        // the oldest block wins a tie
+        assertArrayEquals(a1.getHash(), chain.getMaxHeightBlock().getHash());
+
+        // the fork of b1 outgrows a1 and spends bob's coinbase, which a1's branch does not have
+        Block b2 = block(b1, bob.getPublic(), pay(b1.getCoinbase(), 0, bob, alice.getPublic()));
+        assertTrue(chain.addBlock(b2));
+        assertArrayEquals(b2.getHash(), chain.getMaxHeightBlock().getHash());
+        assertFalse(chain.addBlock(block(a1, alice.getPublic(), pay(b1.getCoinbase(), 0, bob, alice.getPublic()))));
+
+        Block tip = b2;
+        for (int i = 0; i < 3; i++) {
+            tip = block(tip, bob.getPublic());
+            assertTrue(chain.addBlock(tip));
+        }
+        // max height 6: a child of a1 would be at height 3, not above 6 - 3
+        assertFalse(chain.addBlock(block(a1, alice.getPublic())));
+        assertTrue(chain.addBlock(block(b2, alice.getPublic())));
+    }
+
+    @Test
+    public void testPruningKeepsTreeBounded() throws Exception {
+        Block genesis = block(null, alice.getPublic());
+        int cutOffAge = 4;
+        BlockChain chain = new BlockChain(genesis, cutOffAge);
+        UTXOPool replay = new UTXOPool();
+        replay.addUTXO(new UTXO(genesis.getCoinbase().getHash(), 0), genesis.getCoinbase().getOutput(0));
+
+        Block tip = genesis;
+        Transaction coin = genesis.getCoinbase();
+        KeyPair owner = alice;
+        for (int height = 2; height <= 50; height++) {
+            KeyPair next = owner == alice ? bob : alice;
+            Transaction spend = pay(coin, 0, owner, next.getPublic());
+            Block block = block(tip, alice.getPublic(), spend);
+            // a short fork at every height, which dies out below the cut-off
+            assertTrue(chain.addBlock(block(tip, bob.getPublic())));
+            assertTrue(chain.addBlock(block));
+
+            replay.removeUTXO(new UTXO(coin.getHash(), 0));
+            replay.addUTXO(new UTXO(spend.getHash(), 0), spend.getOutput(0));
+            replay.addUTXO(new UTXO(block.getCoinbase().getHash(), 0), block.getCoinbase().getOutput(0));
+            tip = block;
+            coin = spend;
+            owner = next;
+
+            assertTrue(chain.size() <= 2 * (cutOffAge + 1));
+        }
+        // without a fork at the top, the main chain is the longest
+        Block last = block(tip, alice.getPublic());
+        assertTrue(chain.addBlock(last));
+        replay.addUTXO(new UTXO(last.getCoinbase().getHash(), 0), last.getCoinbase().getOutput(0));
+        assertEquals(51, chain.getMaxHeight());
+
+        UTXOPool pool = chain.getMaxHeightUTXOPool();
+        assertEquals(replay.size(), pool.size());
+        for (UTXO utxo : replay.getAllUTXO()) {
+            assertTrue(pool.contains(utxo));
+        }
+    }
+}
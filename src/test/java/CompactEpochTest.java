@@ -0,0 +1,103 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CompactEpochTest {
+
+    private static WorkloadGenerator.Workload workload;
+
+    @BeforeClass
+    public static void generateWorkload() throws IOException {
+        workload = new WorkloadGenerator(WorkloadKeys.load())
+                .setSeed(3)
+                .setTransactions(300)
+                .setConflictRate(0)
+                .setMaxChainDepth(1)
+                .generate();
+    }
+
+    private static byte[][] hashes(Transaction[] txs) {
+        byte[][] hashes = new byte[txs.length][];
+        for (int i = 0; i < txs.length; i++) {
+            hashes[i] = txs[i].getHash();
+        }
+        return hashes;
+    }
+
+    @Test
+    public void testSipHashVectors() {
+        // from the reference implementation: key 00..0f, messages 00..(n-1)
+        long k0 = 0x0706050403020100L;
+        long k1 = 0x0f0e0d0c0b0a0908L;
+        byte[] message = new byte[15];
+        for (int i = 0; i < message.length; i++) {
+            message[i] = (byte) i;
+        }
+        assertEquals(0x726fdb47dd0e0e31L, CompactEpoch.sipHash24(k0, k1, new byte[0]));
+        assertEquals(0x93f5f5799a932462L, CompactEpoch.sipHash24(k0, k1, Arrays.copyOf(message, 8)));
+        assertEquals(0xa129ca6149be45e5L, CompactEpoch.sipHash24(k0, k1, message));
+    }
+
+    @Test
+    public void testReconstructFromMempool() {
+        Transaction[] txs = workload.getTransactions();
+        Transaction[] epoch = Arrays.copyOf(txs, 200);
+        Mempool mempool = new Mempool(Long.MAX_VALUE);
+        for (int i = 10; i < txs.length; i++) {
+            assertEquals(Mempool.AddResult.ADDED, mempool.add(txs[i], workload.getUtxoPool()));
+        }
+
+        TransactionCodec codec = new TransactionCodec();
+        byte[] encoded = CompactEpoch.of(epoch, 0x5eed, 0, 1).encode(codec);
+        CompactEpoch received = CompactEpoch.decode(ByteBuffer.wrap(encoded), codec);
+        CompactEpoch.Reconstruction reconstruction = received.reconstruct(mempool);
+
+        int[] missing = reconstruction.getMissing();
+        assertArrayEquals(new int[]{2, 3, 4, 5, 6, 7, 8, 9}, missing);
+        Transaction[] rebuilt = reconstruction.complete(CompactEpoch.getTransactions(epoch, missing));
+        assertArrayEquals(hashes(epoch), hashes(rebuilt));
+
+        long full = 0;
+        for (Transaction tx : epoch) {
+            full += codec.encodedSize(tx);
+        }
+        long relayed = encoded.length;
+        for (Transaction tx : CompactEpoch.getTransactions(epoch, missing)) {
+            relayed += codec.encodedSize(tx);
+        }
+        assertTrue(relayed + " of " + full + " bytes", relayed < full / 10);
+    }
+
+    @Test
+    public void testCollidingLocalTransactionIsDetected() {
+        Transaction[] txs = workload.getTransactions();
+        Transaction[] epoch = Arrays.copyOf(txs, 50);
+        Transaction foreign = txs[299];
+        TransactionCodec codec = new TransactionCodec();
+        CompactEpoch compact = CompactEpoch.of(epoch, 42);
+        byte[] encoded = compact.encode(codec);
+
+        // makes the ID of transaction 0 the one of a transaction the receiver holds instead
+        long id = compact.shortId(foreign.getHash());
+        int offset = Long.BYTES + 32 + Integer.BYTES;
+        for (int b = 0; b < CompactEpoch.SHORT_ID_BYTES; b++) {
+            encoded[offset + b] = (byte) (id >>> 8 * (CompactEpoch.SHORT_ID_BYTES - 1 - b));
+        }
+        List<Transaction> known = new ArrayList<>(Arrays.asList(epoch));
+        known.add(foreign);
+        CompactEpoch.Reconstruction reconstruction = CompactEpoch.decode(ByteBuffer.wrap(encoded), codec).reconstruct(known);
+
+        assertTrue(reconstruction.isComplete());
+        assertNull(reconstruction.complete(new Transaction[0]));
+    }
+}
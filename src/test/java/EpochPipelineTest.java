@@ -0,0 +1,111 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.security.InvalidKeyException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.SignatureException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class EpochPipelineTest {
+
+    private static UtxoTestSet conflictingTestSet() throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        return UtxoTestSet.builder()
+                .setPeopleSize(10)
+                .setUtxoTxNumber(10)
+                .setMaxUtxoTxOutput(10)
+                .setMaxValue(200)
+                .setTxPerTest(10)
+                .setMaxInput(10)
+                .setMaxOutput(10)
+                .setCorruptedPercentage(.20)
+                .setClaimingUtxoSeveralTimes(true)
+                .setInvalidTotals(true)
+                .build();
+    }
+
+    /** @return the fee of {@code accepted}, whose inputs are in {@code utxoPool} or earlier in the array */
+    static double fee(Transaction[] accepted, UTXOPool utxoPool) {
+        CandidateGraph graph = new CandidateGraph(accepted, utxoPool);
+        double fee = 0;
+        for (int i = 0; i < graph.length(); i++) {
+            fee += graph.getFee(i);
+        }
+        return fee;
+    }
+
+    @Test
+    public void testEveryStrategyAcceptsMutuallyValidSet() throws Exception {
+        UtxoTestSet utxoTestSet = conflictingTestSet();
+        Transaction[] txs = utxoTestSet.getValidationLists().allElements().toArray(new Transaction[0]);
+
+        Map<String, Double> fees = new HashMap<>();
+        for (TxSelectionStrategy strategy : TxSelectionStrategies.builtIn()) {
+            EpochPipeline pipeline = new EpochPipeline(utxoTestSet.getUtxoPool(), strategy);
+            Transaction[] accepted = pipeline.handleTxs(txs);
+
+            // replaying the accepted transactions in order on the original pool must succeed
+            UTXOPool replay = utxoTestSet.getUtxoPool();
+            EpochPipeline check = new EpochPipeline(replay, TxSelectionStrategies.firstCome());
+            for (Transaction tx : accepted) {
+                assertEquals(strategy.getName(), 1, check.handleTxs(new Transaction[]{tx}).length);
+            }
+            fees.put(strategy.getName(), fee(accepted, utxoTestSet.getUtxoPool()));
+        }
+        double optimal = fees.get(TxSelectionStrategies.OPTIMAL);
+        for (double fee : fees.values()) {
+            assertTrue(fees.toString(), optimal >= fee - 1e-9);
+        }
+    }
+
+    @Test
+    public void testFirstComeAcceptsChildProposedBeforeParent() throws Exception {
+        KeyPair scrooge = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        HandleTxTest.Tx root = new HandleTxTest.Tx();
+        root.addInput(BigInteger.valueOf(0).toByteArray(), 0);
+        root.addOutput(10, scrooge.getPublic());
+        root.signTx(scrooge.getPrivate(), 0);
+        UTXOPool utxoPool = new UTXOPool();
+        utxoPool.addUTXO(new UTXO(root.getHash(), 0), root.getOutput(0));
+
+        HandleTxTest.Tx parent = new HandleTxTest.Tx();
+        parent.addInput(root.getHash(), 0);
+        parent.addOutput(9, scrooge.getPublic());
+        parent.signTx(scrooge.getPrivate(), 0);
+        HandleTxTest.Tx child = new HandleTxTest.Tx();
+        child.addInput(parent.getHash(), 0);
+        child.addOutput(8, scrooge.getPublic());
+        child.signTx(scrooge.getPrivate(), 0);
+
+        EpochPipeline pipeline = new EpochPipeline(utxoPool, TxSelectionStrategies.firstCome());
+        assertArrayEquals(new Transaction[]{parent, child}, pipeline.handleTxs(new Transaction[]{child, parent}));
+        // the child is moved after its parent rather than retried, each is validated once
+        assertEquals(2, pipeline.getValidationStats().getCount(ValidationResult.VALID));
+        assertEquals(0, pipeline.getValidationStats().getCount(ValidationResult.MISSING_INPUT));
+    }
+
+    @Test
+    public void testStrategyReplacedAtRuntime() throws Exception {
+        UtxoTestSet utxoTestSet = conflictingTestSet();
+        List<Transaction> txs = utxoTestSet.getValidationLists().allElements();
+        EpochPipeline pipeline = new EpochPipeline(utxoTestSet.getUtxoPool(), TxSelectionStrategies.firstCome());
+        pipeline.handleTxs(txs.subList(0, txs.size() / 2).toArray(new Transaction[0]));
+
+        pipeline.setStrategy(TxSelectionStrategies.byName(TxSelectionStrategies.PACKAGE_FEE));
+        assertEquals(TxSelectionStrategies.PACKAGE_FEE, pipeline.getStrategy().getName());
+        pipeline.handleTxs(txs.subList(txs.size() / 2, txs.size()).toArray(new Transaction[0]));
+        assertTrue(pipeline.getValidationStats().getCount(ValidationResult.VALID) > 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownStrategy() {
+        TxSelectionStrategies.byName("lottery");
+    }
+}
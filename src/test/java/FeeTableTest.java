@@ -0,0 +1,53 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.security.SignatureException;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class FeeTableTest {
+
+    private TestLedger ledger;
+    private UTXOPool utxoPool;
+
+    @Before
+    public void preparation() {
+        // a hundred coins of value 10 owned by Scrooge
+        ledger = new TestLedger(100, 10);
+        utxoPool = ledger.getUtxoPool();
+    }
+
+    @Test
+    public void testFees() throws SignatureException {
+        Transaction missingInput = new Transaction();
+        missingInput.addInput(new byte[]{1}, 0);
+        missingInput.addOutput(3, ledger.scrooge().getPublic());
+        missingInput.finalize();
+
+        FeeTable table = new FeeTable(new Transaction[]{ledger.spend(ledger.getRootHash(), 0, 9), ledger.spend(ledger.getRootHash(), 1, 4), missingInput}, utxoPool);
+        assertEquals(3, table.length());
+        assertEquals(1, table.getFee(0), 1e-9);
+        assertEquals(6, table.getFee(1), 1e-9);
+        assertEquals(-3, table.getFee(2), 1e-9);
+        assertArrayEquals(new int[]{1, 0, 2}, table.sortedByFeeDescending());
+    }
+
+    @Test
+    public void testSortIsStable() throws SignatureException {
+        Random random = new Random(7);
+        Transaction[] txs = new Transaction[100];
+        for (int i = 0; i < txs.length; i++) {
+            txs[i] = ledger.spend(ledger.getRootHash(), i, random.nextInt(5));
+        }
+        FeeTable table = new FeeTable(txs, utxoPool);
+        int[] order = table.sortedByFeeDescending();
+        for (int k = 1; k < order.length; k++) {
+            double previous = table.getFee(order[k - 1]);
+            double current = table.getFee(order[k]);
+            assertTrue(previous > current || (previous == current && order[k - 1] < order[k]));
+        }
+    }
+}
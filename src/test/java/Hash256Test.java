@@ -0,0 +1,57 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class Hash256Test {
+
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(7);
+        for (int length = 0; length <= Hash256.BYTES; length++) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            Hash256 hash = Hash256.of(bytes);
+            assertEquals(length, hash.length());
+            assertArrayEquals(bytes, hash.toByteArray());
+
+            ByteBuffer buf = ByteBuffer.allocate(length + 2);
+            buf.put((byte) 1);
+            hash.put(buf);
+            assertEquals(length + 1, buf.position());
+            buf.position(1);
+            assertEquals(hash, Hash256.read(buf, length));
+            assertEquals(hash.hashCode(), Hash256.read(ByteBuffer.wrap(bytes), length).hashCode());
+        }
+        try {
+            Hash256.of(new byte[Hash256.BYTES + 1]);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testPaddedHashesDiffer() {
+        assertNotEquals(Hash256.of(new byte[]{0}), Hash256.of(new byte[Hash256.BYTES]));
+        assertNotEquals(Hash256.of(new byte[]{0}), Hash256.of(new byte[]{0, 0}));
+        assertNotEquals(new UTXO(new byte[]{0}, 0), new UTXO(new byte[Hash256.BYTES], 0));
+    }
+
+    @Test
+    public void testOrderIsUnsigned() {
+        byte[] low = new byte[Hash256.BYTES];
+        byte[] high = new byte[Hash256.BYTES];
+        low[0] = 0x7f;
+        high[0] = (byte) 0x80;
+        assertTrue(Hash256.of(low).compareTo(Hash256.of(high)) < 0);
+        assertTrue(Hash256.of(high).compareTo(Hash256.of(new byte[]{1})) > 0);
+        assertEquals(0, new UTXO(high, 3).compareTo(new UTXO(Hash256.of(high), 3)));
+        assertTrue(new UTXO(high, 2).compareTo(new UTXO(low, 3)) < 0);
+    }
+}
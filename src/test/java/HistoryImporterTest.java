@@ -0,0 +1,142 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HistoryImporterTest {
+
+    private static WorkloadGenerator.Workload workload;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void generateWorkload() throws IOException {
+        workload = new WorkloadGenerator(WorkloadKeys.load())
+                .setSeed(11)
+                .setTransactions(1200)
+                .setConflictRate(0.05)
+                .setMaxChainDepth(3)
+                .setChainProbability(0.3)
+                .setShuffle(false)
+                .generate();
+    }
+
+    /** @return the workload's transactions cut into epochs of 1 to 700 transactions, and an empty one */
+    private static List<Transaction[]> epochs() {
+        Transaction[] txs = workload.getTransactions();
+        List<Transaction[]> epochs = new ArrayList<>();
+        epochs.add(new Transaction[0]);
+        int[] sizes = {1, 700, 37};
+        for (int from = 0, i = 0; from < txs.length; i++) {
+            int to = Math.min(txs.length, from + sizes[i % sizes.length]);
+            epochs.add(Arrays.copyOfRange(txs, from, to));
+            from = to;
+        }
+        return epochs;
+    }
+
+    @Test
+    public void testImportMatchesEpochByEpochHandling() throws Exception {
+        List<Transaction[]> epochs = epochs();
+        Path file = folder.newFile("history.bin").toPath();
+        HistoryImporter.write(file, epochs);
+
+        EpochPipeline expected = new EpochPipeline(workload.getUtxoPool(), TxSelectionStrategies.firstCome());
+        int accepted = 0;
+        for (Transaction[] epoch : epochs) {
+            accepted += expected.handleTxs(epoch).length;
+        }
+
+        EpochPipeline imported = new EpochPipeline(workload.getUtxoPool(), TxSelectionStrategies.firstCome());
+        AtomicInteger reports = new AtomicInteger();
+        HistoryImporter.Progress progress = new HistoryImporter(imported, 3)
+                .setProgressListener(p -> reports.incrementAndGet(), 1000)
+                .importFile(file);
+
+        assertEquals(new HashSet<>(expected.getUTXOPool().getAllUTXO()),
+                new HashSet<>(imported.getUTXOPool().getAllUTXO()));
+        assertEquals(epochs.size(), progress.getEpochs());
+        assertEquals(accepted, progress.getAccepted());
+        for (HistoryImporter.Stage stage : HistoryImporter.Stage.values()) {
+            assertEquals(stage.name(), workload.getTransactions().length, progress.getTransactions(stage));
+        }
+        assertEquals(Files.size(file), progress.getBytesRead());
+        assertEquals(1.0, progress.getFraction(), 0);
+        assertTrue(reports.get() >= 1);
+        assertNull(Crypto.getSignatureCache());
+        assertNull(imported.getSignatureCache());
+    }
+
+    @Test
+    public void testPipelineCacheIsUsed() throws Exception {
+        Path file = folder.newFile("history.bin").toPath();
+        HistoryImporter.write(file, epochs());
+        SignatureCache cache = new SignatureCache();
+        EpochPipeline pipeline = new EpochPipeline(workload.getUtxoPool(), TxSelectionStrategies.firstCome());
+        pipeline.setSignatureCache(cache);
+        new HistoryImporter(pipeline, 2).importFile(file);
+
+        assertNull(Crypto.getSignatureCache());
+        assertSame(cache, pipeline.getSignatureCache());
+        assertTrue(cache.getHits() + " hits", cache.getHits() > workload.getTransactions().length / 2);
+    }
+
+    @Test
+    public void testSignaturesAreVerifiedBeforeApply() throws Exception {
+        Path file = folder.newFile("history.bin").toPath();
+        HistoryImporter.write(file, epochs());
+        SignatureCache cache = new SignatureCache();
+        Crypto.setSignatureCache(cache);
+        try {
+            new HistoryImporter(new EpochPipeline(workload.getUtxoPool(), TxSelectionStrategies.firstCome()), 2)
+                    .importFile(file);
+        } finally {
+            Crypto.setSignatureCache(null);
+        }
+        // outputs of the pool and of earlier epochs are known to VERIFY, so APPLY finds most signatures cached
+        assertTrue(cache.getHits() + " hits", cache.getHits() > workload.getTransactions().length / 2);
+    }
+
+    @Test
+    public void testMalformedHistoryIsRejected() throws Exception {
+        Path file = folder.newFile("history.bin").toPath();
+        HistoryImporter.write(file, epochs());
+        byte[] bytes = Files.readAllBytes(file);
+
+        Path truncated = folder.newFile("truncated.bin").toPath();
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 10));
+        Path notHistory = folder.newFile("other.bin").toPath();
+        Files.write(notHistory, Arrays.copyOfRange(bytes, 4, bytes.length));
+        Path corrupted = folder.newFile("corrupted.bin").toPath();
+        byte[] corruptedBytes = bytes.clone();
+        // the input count of the first transaction of the second epoch
+        corruptedBytes[4 + 4 + 4 + 4] = 0x7f;
+        Files.write(corrupted, corruptedBytes);
+
+        for (Path path : Arrays.asList(truncated, notHistory, corrupted)) {
+            EpochPipeline pipeline = new EpochPipeline(workload.getUtxoPool(), TxSelectionStrategies.firstCome());
+            try {
+                new HistoryImporter(pipeline, 2).importFile(path);
+                fail(path.toString());
+            } catch (IOException expected) {
+            }
+            assertNull(Crypto.getSignatureCache());
+        }
+    }
+}
@@ -0,0 +1,199 @@
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Micro-benchmarks of the validation and UTXO pool hot paths, run with {@link MicroBenchmark}:
+ * signature verification, transaction serialization and hashing, pool lookups, updates and
+ * copies, {@link Wallet} payments, {@link TxHandler#isValidTx} and {@code handleTxs} of every
+ * handler and selection strategy. Parameters are the pool size, the number of inputs and outputs
+ * per transaction and the dependency depth of an epoch: {@value #EPOCH_SIZE} transactions in
+ * chains of that length, proposed parents first. Every line reports the time and the bytes allocated per operation.
+ * <p>
+ * Usage: {@code HotPathBenchmark [filter]}, runs the benchmarks whose name contains the filter,
+ * e.g. {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=HotPathBenchmark -Dexec.args="UTXOPool"}
+ */
+public class HotPathBenchmark {
+
+    private static final int[] POOL_SIZES = {1_000, 100_000};
+    private static final int[] SHAPES = {1, 4, 16};
+    private static final int[] DEPTHS = {1, 8, 32};
+    private static final int EPOCH_SIZE = 64;
+    private static final double COIN_VALUE = 10;
+
+    private static final MicroBenchmark BENCHMARK = new MicroBenchmark(2, 3, 300);
+
+    private static String filter;
+    private static KeyPair key;
+
+    public static void main(String[] args) throws Exception {
+        filter = args.length > 0 ? args[0] : "";
+        key = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+
+        System.out.println(MicroBenchmark.HEADER);
+        for (int shape : SHAPES) {
+            Transaction tx = fixture(shape);
+            byte[] message = tx.getRawDataToSign(0);
+            byte[] signature = tx.getInput(0).signature;
+            String params = "in=" + shape + " out=" + shape;
+            run("Crypto.verifySignature", params, () -> Crypto.verifySignature(key.getPublic(), message, signature));
+            run("Transaction.getRawTx", params, tx::getRawTx);
+            run("Transaction.getRawDataToSign", params, () -> tx.getRawDataToSign(0));
+            run("Transaction.finalize", params, () -> {
+                tx.finalize();
+                return tx.getHash();
+            });
+            run("Transaction.signEachInput", params, () -> {
+                // as the Tx helpers used to: a new Signature and a new hash for every input
+                for (int i = 0; i < tx.numInputs(); i++) {
+                    tx.addSignature(sign(key.getPrivate(), tx.getRawDataToSign(i)), i);
+                    tx.finalize();
+                }
+                return tx;
+            });
+            run("TransactionSigner.sign", params, () -> new TransactionSigner().addAll(tx, key.getPrivate()).sign(tx));
+        }
+
+        for (int poolSize : POOL_SIZES) {
+            Transaction root = root(poolSize, new Random(poolSize));
+            UTXOPool pool = pool(root);
+            UTXO[] utxos = pool.getAllUTXO().toArray(new UTXO[0]);
+            UTXO absent = new UTXO(new byte[32], 0);
+            Transaction.Output output = root.getOutput(0);
+            String params = "pool=" + poolSize;
+            int[] next = new int[1];
+            run("UTXOPool.getTxOutput", params, () -> pool.getTxOutput(utxos[next[0]++ % utxos.length]));
+            run("UTXOPool.addUTXO+removeUTXO", params, () -> {
+                pool.addUTXO(absent, output);
+                pool.removeUTXO(absent);
+                return pool;
+            });
+            run("UTXOPool.copy", params, () -> new UTXOPool(pool));
+            Transaction.Output[] outputs = {output, root.getOutput(1)};
+            run("UTXOPool.replaceOutput", params, () -> {
+                int i = next[0]++;
+                UTXO utxo = utxos[i % utxos.length];
+                pool.removeUTXO(utxo);
+                pool.addUTXO(utxo, outputs[i / utxos.length % 2]);
+                return pool;
+            });
+            UTXOPool tracked = new UTXOPool(pool);
+            tracked.trackCommitment();
+            run("UTXOPool.replaceOutput[tracked]", params, () -> {
+                int i = next[0]++;
+                UTXO utxo = utxos[i % utxos.length];
+                tracked.removeUTXO(utxo);
+                tracked.addUTXO(utxo, outputs[i / utxos.length % 2]);
+                return tracked;
+            });
+            run("UTXOPool.getCommitment[tracked]", params, tracked::getCommitment);
+            Wallet wallet = new Wallet(key);
+            wallet.scan(pool);
+            run("Wallet.build", params, () -> {
+                Transaction payment = wallet.newPayment().addRecipient(key.getPublic(), 25).setFeeRate(0.0001).build();
+                wallet.release(payment);
+                return payment;
+            });
+
+            for (int shape : SHAPES) {
+                Transaction tx = spend(root, 0, shape, shape);
+                TxHandler handler = new TxHandler(pool);
+                run("TxHandler.isValidTx", params + " in=" + shape + " out=" + shape, () -> handler.isValidTx(tx));
+            }
+
+            for (int depth : DEPTHS) {
+                Transaction[] epoch = epoch(root, depth);
+                for (Map.Entry<String, Function<Transaction[], Transaction[]>> handler : handlers(pool).entrySet()) {
+                    run(handler.getKey(), params + " depth=" + depth, () -> handler.getValue().apply(epoch));
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Map<String, Function<Transaction[], Transaction[]>> handlers(UTXOPool pool) {
+        Map<String, Function<Transaction[], Transaction[]>> handlers = new LinkedHashMap<>();
+        handlers.put("TxHandler.handleTxs", txs -> new TxHandler(pool).handleTxs(txs));
+        handlers.put("MaxFeeTxHandler.handleTxs", txs -> new MaxFeeTxHandler(pool).handleTxs(txs));
+        handlers.put("MaxFeeTxHandler2.handleTxs", txs -> new MaxFeeTxHandler2(pool).handleTxs(txs));
+        handlers.put("MaxFeeTxHandler3.handleTxs", txs -> new MaxFeeTxHandler3(pool).handleTxs(txs));
+        handlers.put("MaxFeeTxHandlerOld.handleTxs", txs -> new MaxFeeTxHandlerOld(pool).handleTxs(txs));
+        for (TxSelectionStrategy strategy : TxSelectionStrategies.builtIn()) {
+            handlers.put("EpochPipeline[" + strategy.getName() + "]", txs -> new EpochPipeline(pool, strategy).handleTxs(txs));
+        }
+        return handlers;
+    }
+
+    private static void run(String name, String params, MicroBenchmark.Body body) throws Exception {
+        if (name.contains(filter)) {
+            System.out.println(BENCHMARK.run(name, params, body));
+        }
+    }
+
+    /** @return a transaction with {@code shape} signed inputs and outputs */
+    private static Transaction fixture(int shape) throws Exception {
+        return spend(root(shape, new Random(shape)), 0, shape, shape);
+    }
+
+    /** @return a transaction, not in any pool, with {@code coins} outputs owned by the key */
+    private static Transaction root(int coins, Random random) {
+        Transaction root = new Transaction();
+        root.addInput(new byte[32], 0);
+        for (int i = 0; i < coins; i++) {
+            root.addOutput(COIN_VALUE, key.getPublic());
+        }
+        byte[] hash = new byte[32];
+        random.nextBytes(hash);
+        root.setHash(hash);
+        return root;
+    }
+
+    private static UTXOPool pool(Transaction root) {
+        UTXOPool pool = new UTXOPool();
+        for (int i = 0; i < root.numOutputs(); i++) {
+            pool.addUTXO(new UTXO(root.getHash(), i), root.getOutput(i));
+        }
+        return pool;
+    }
+
+    /** @return {@value #EPOCH_SIZE} transactions in chains of {@code depth}, each chain spending one coin of root */
+    private static Transaction[] epoch(Transaction root, int depth) throws Exception {
+        Transaction[] epoch = new Transaction[EPOCH_SIZE];
+        for (int i = 0; i < EPOCH_SIZE; i++) {
+            epoch[i] = i % depth == 0
+                    ? spend(root, i / depth, 1, 1)
+                    : spend(epoch[i - 1], 0, 1, 1);
+        }
+        return epoch;
+    }
+
+    /** @return a signed transaction spending outputs {@code first..first+inputs-1} of {@code prev} */
+    private static Transaction spend(Transaction prev, int first, int inputs, int outputs) throws Exception {
+        Transaction tx = new Transaction();
+        double value = 0;
+        for (int i = 0; i < inputs; i++) {
+            tx.addInput(prev.getHash(), first + i);
+            value += prev.getOutput(first + i).value;
+        }
+        for (int i = 0; i < outputs; i++) {
+            tx.addOutput((value - 0.01) / outputs, key.getPublic());
+        }
+        for (int i = 0; i < inputs; i++) {
+            tx.addSignature(sign(key.getPrivate(), tx.getRawDataToSign(i)), i);
+        }
+        tx.finalize();
+        return tx;
+    }
+
+    private static byte[] sign(PrivateKey privateKey, byte[] data) throws Exception {
+        Signature sig = Signature.getInstance("SHA256withRSA");
+        sig.initSign(privateKey);
+        sig.update(data);
+        return sig.sign();
+    }
+}
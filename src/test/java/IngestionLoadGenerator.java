@@ -0,0 +1,121 @@
+import java.lang.management.ManagementFactory;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local load generator for {@link TxIngestionServer}. Starts a server in-process, parks a number
+ * of idle connections on it, then pushes a pregenerated set of valid transactions through a number
+ * of active, pipelining connections and reports throughput, verdict latency and the footprint of
+ * the idle connections.
+ * <p>
+ * Usage: {@code IngestionLoadGenerator [transactions] [activeConnections] [idleConnections] [tcp|unix]},
+ * e.g. {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=IngestionLoadGenerator -Dexec.args="5000 8 10000"}
+ */
+public class IngestionLoadGenerator {
+
+    public static void main(String[] args) throws Exception {
+        int txCount = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int activeConnections = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int idleConnections = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        boolean unix = args.length > 3 && args[3].equals("unix");
+
+        System.out.println("Generating " + txCount + " transactions...");
+        UtxoTestSet utxoTestSet = UtxoTestSet.builder()
+                .setPeopleSize(10)
+                .setUtxoTxNumber(txCount / 4 + 1)
+                .setMaxUtxoTxOutput(10)
+                .setMaxValue(200)
+                .setTxPerTest(txCount)
+                .setMaxInput(2)
+                .setMaxOutput(2)
+                .setCorruptedPercentage(0)
+                .build();
+        List<Transaction> txs = utxoTestSet.getValidationLists().allElements();
+
+        Path socketDir = unix ? Files.createTempDirectory("tx-ingestion") : null;
+        TxHandler txHandler = new TxHandler(utxoTestSet.getUtxoPool());
+        try (TxIngestionServer server = unix
+                ? TxIngestionServer.unixDomain(txHandler, socketDir.resolve("server.sock"))
+                : TxIngestionServer.tcp(txHandler, 0)) {
+            SocketAddress address = server.getLocalAddress();
+
+            long heapBefore = usedHeap();
+            List<TxIngestionClient> idle = new ArrayList<>(idleConnections);
+            for (int i = 0; i < idleConnections; i++) {
+                idle.add(new TxIngestionClient(address));
+            }
+            while (server.getConnectionCount() < idleConnections) {
+                Thread.sleep(10);
+            }
+            long heapIdle = usedHeap() - heapBefore;
+            System.out.printf("%d idle connections: %d threads, ~%d bytes heap per connection%n",
+                    idleConnections, ManagementFactory.getThreadMXBean().getThreadCount(),
+                    idleConnections == 0 ? 0 : heapIdle / idleConnections);
+
+            long[] latencies = new long[txs.size()];
+            AtomicInteger accepted = new AtomicInteger();
+            List<Thread> clients = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int c = 0; c < activeConnections; c++) {
+                int from = c * txs.size() / activeConnections;
+                int to = (c + 1) * txs.size() / activeConnections;
+                Thread client = new Thread(() -> drive(address, txs, from, to, latencies, accepted));
+                clients.add(client);
+                client.start();
+            }
+            for (Thread client : clients) {
+                client.join();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            Arrays.sort(latencies);
+            System.out.printf("%d transactions over %d connections in %.1f ms: %.0f tx/s, %d accepted%n",
+                    txs.size(), activeConnections, elapsed / 1e6, txs.size() / (elapsed / 1e9), accepted.get());
+            System.out.printf("verdict latency p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                    percentile(latencies, .50) / 1e6, percentile(latencies, .99) / 1e6,
+                    latencies[latencies.length - 1] / 1e6);
+
+            for (TxIngestionClient client : idle) {
+                client.close();
+            }
+        }
+        if (socketDir != null) {
+            Files.deleteIfExists(socketDir);
+        }
+    }
+
+    private static void drive(SocketAddress address, List<Transaction> txs, int from, int to,
+                              long[] latencies, AtomicInteger accepted) {
+        long[] sentAt = new long[to - from];
+        try (TxIngestionClient client = new TxIngestionClient(address)) {
+            for (int i = from; i < to; i++) {
+                sentAt[i - from] = System.nanoTime();
+                client.send(txs.get(i));
+            }
+            client.flush();
+            for (int i = from; i < to; i++) {
+                if (client.receive().isAccepted()) {
+                    accepted.incrementAndGet();
+                }
+                latencies[i] = System.nanoTime() - sentAt[i - from];
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)];
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
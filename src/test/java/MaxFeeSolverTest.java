@@ -0,0 +1,102 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.security.SignatureException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MaxFeeSolverTest {
+
+    private TestLedger ledger;
+    private UTXOPool utxoPool;
+
+    @Before
+    public void preparation() {
+        // three coins of value 10 owned by Scrooge
+        ledger = new TestLedger(3, 10);
+        utxoPool = ledger.getUtxoPool();
+    }
+
+    @Test
+    public void testBeatsHighestFeeFirst() throws SignatureException {
+        // the merge pays the single highest fee, but both spends it conflicts with pay more together
+        Transaction merge = ledger.spend(ledger.scrooge(), ledger.getRootHash(), new int[]{0, 1}, 17);
+        Transaction first = ledger.spend(ledger.getRootHash(), 0, 8);
+        Transaction second = ledger.spend(ledger.getRootHash(), 1, 8);
+        Transaction independent = ledger.spend(ledger.getRootHash(), 2, 9);
+
+        MaxFeeSolver.Result result = new MaxFeeSolver(utxoPool).solve(new Transaction[]{merge, first, second, independent});
+
+        assertEquals(new HashSet<>(Arrays.asList(first, second, independent)),
+                new HashSet<>(Arrays.asList(result.getTransactions())));
+        assertEquals(5, result.getTotalFee(), 1e-9);
+        assertTrue(result.isOptimal());
+        assertEquals(0, result.getOptimalityGap(), 1e-9);
+        assertTrue(result.getNodesExplored() > 0);
+        assertTrue(utxoPool.contains(new UTXO(first.getHash(), 0)));
+        assertFalse(utxoPool.contains(new UTXO(merge.getHash(), 0)));
+        assertFalse(utxoPool.contains(new UTXO(ledger.getRootHash(), 0)));
+    }
+
+    @Test
+    public void testInvalidParentDropsDescendants() throws SignatureException {
+        Transaction badParent = ledger.spend(ledger.alice(), ledger.getRootHash(), 0, 1);
+        Transaction child = ledger.spend(badParent.getHash(), 0, 0.5);
+        Transaction conflict = ledger.spend(ledger.getRootHash(), 0, 9);
+
+        MaxFeeSolver.Result result = new MaxFeeSolver(utxoPool).solve(new Transaction[]{child, badParent, conflict});
+
+        assertEquals(Arrays.asList(conflict), Arrays.asList(result.getTransactions()));
+        assertEquals(1, result.getTotalFee(), 1e-9);
+    }
+
+    @Test
+    public void testParentsBeforeChildren() throws SignatureException {
+        Transaction parent = ledger.spend(ledger.getRootHash(), 0, 9);
+        Transaction child = ledger.spend(parent.getHash(), 0, 4);
+        Transaction conflict = ledger.spend(ledger.getRootHash(), 0, 5);
+
+        MaxFeeSolver.Result result = new MaxFeeSolver(utxoPool, 0).solve(new Transaction[]{child, conflict, parent});
+
+        // the chain pays 6 against the conflict's 5, and even without a budget the parent comes first
+        assertEquals(Arrays.asList(parent, child), Arrays.asList(result.getTransactions()));
+        assertEquals(6, result.getTotalFee(), 1e-9);
+        assertTrue(result.getUpperBound() >= result.getTotalFee());
+    }
+
+    @Test
+    public void testLazySignaturesRepairChoice() throws SignatureException {
+        // the merge pays most but carries Alice's signatures, the loser is outbid by the independent spend
+        Transaction merge = ledger.spend(ledger.alice(), ledger.getRootHash(), new int[]{0, 1}, 17);
+        Transaction first = ledger.spend(ledger.getRootHash(), 0, 9);
+        Transaction second = ledger.spend(ledger.getRootHash(), 1, 9);
+        Transaction independent = ledger.spend(ledger.getRootHash(), 2, 9);
+        Transaction loser = ledger.spend(ledger.getRootHash(), 2, 9.5);
+
+        ValidationStats stats = new ValidationStats();
+        MaxFeeSolver.Result result = new MaxFeeSolver(utxoPool, MaxFeeSolver.DEFAULT_BUDGET_MILLIS, stats, true)
+                .solve(new Transaction[]{merge, first, second, independent, loser});
+
+        assertEquals(new HashSet<>(Arrays.asList(first, second, independent)),
+                new HashSet<>(Arrays.asList(result.getTransactions())));
+        assertEquals(3, result.getTotalFee(), 1e-9);
+        assertEquals(3, stats.getCount(ValidationResult.VALID));
+        assertEquals(1, stats.getCount(ValidationResult.INVALID_SIGNATURE));
+        assertEquals(4, stats.getSignaturesVerified());
+        assertEquals(1, stats.getSignaturesDeferred());
+    }
+
+    @Test
+    public void testNegativeOutputIndexIsRejected() throws SignatureException {
+        Transaction parent = ledger.spend(ledger.getRootHash(), 0, 9);
+        Transaction hostile = ledger.spend(parent.getHash(), -1, 1);
+
+        MaxFeeSolver.Result result = new MaxFeeSolver(utxoPool).solve(new Transaction[]{hostile, parent});
+
+        assertEquals(Arrays.asList(parent), Arrays.asList(result.getTransactions()));
+    }
+}
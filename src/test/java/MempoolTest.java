@@ -0,0 +1,193 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.security.SignatureException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MempoolTest {
+
+    private TestLedger ledger;
+    private UTXOPool utxoPool;
+
+    @Before
+    public void preparation() {
+        // four coins of value 10 owned by Scrooge
+        ledger = new TestLedger(4, 10);
+        utxoPool = ledger.getUtxoPool();
+    }
+
+    @Test
+    public void testCandidatesByFeeRate() throws SignatureException {
+        Mempool mempool = new Mempool(1 << 20);
+        Transaction low = ledger.spend(ledger.getRootHash(), 0, 9);
+        Transaction high = ledger.spend(ledger.getRootHash(), 1, 5);
+        Transaction middle = ledger.spend(ledger.getRootHash(), 2, 7);
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(low, utxoPool));
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(high, utxoPool));
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(middle, utxoPool));
+        assertEquals(Mempool.AddResult.DUPLICATE, mempool.add(middle, utxoPool));
+
+        assertArrayEquals(new Transaction[]{high, middle, low}, mempool.getCandidates(Long.MAX_VALUE));
+        assertEquals(5, mempool.get(high.getHash()).getFee(), 0);
+        assertEquals(3 * high.getRawTx().length, mempool.getUsedBytes());
+    }
+
+    @Test
+    public void testCandidateNeverWithoutPendingParent() throws SignatureException {
+        Mempool mempool = new Mempool(1 << 20);
+        Transaction parent = ledger.spend(ledger.getRootHash(), 0, 9.9);
+        Transaction child = ledger.spend(parent.getHash(), 0, 5);
+        Transaction other = ledger.spend(ledger.getRootHash(), 1, 9);
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(parent, utxoPool));
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(child, utxoPool));
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(other, utxoPool));
+        int size = other.getRawTx().length;
+
+        // the child pays the best rate, but it does not fit with its parent
+        assertArrayEquals(new Transaction[]{other}, mempool.getCandidates(size));
+        assertArrayEquals(new Transaction[]{parent, child}, mempool.getCandidates(2 * size));
+        assertArrayEquals(new Transaction[]{parent, child, other}, mempool.getCandidates(3 * size));
+    }
+
+    @Test
+    public void testRejectsInvalidAndMissingInputs() throws SignatureException {
+        Mempool mempool = new Mempool(1 << 20);
+        assertEquals(Mempool.AddResult.INVALID, mempool.add(ledger.spend(ledger.getRootHash(), 0, 11), utxoPool));
+        assertEquals(Mempool.AddResult.INVALID, mempool.add(ledger.spend(ledger.getRootHash(), 0, -1), utxoPool));
+        assertEquals(Mempool.AddResult.MISSING_INPUT, mempool.add(ledger.spend(ledger.getRootHash(), 7, 1), utxoPool));
+        Transaction parent = ledger.spend(ledger.getRootHash(), 0, 9);
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(parent, utxoPool));
+        assertEquals(Mempool.AddResult.INVALID, mempool.add(ledger.spend(parent.getHash(), -1, 1), utxoPool));
+        assertEquals(1, mempool.size());
+    }
+
+    @Test
+    public void testEvictsLowestFeeRateWithDescendants() throws SignatureException {
+        Transaction low = ledger.spend(ledger.getRootHash(), 0, 9);
+        Transaction child = ledger.spend(low.getHash(), 0, 1);
+        Transaction high = ledger.spend(ledger.getRootHash(), 1, 5);
+        int size = high.getRawTx().length;
+        Mempool mempool = new Mempool(2 * size);
+
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(low, utxoPool));
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(child, utxoPool));
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(high, utxoPool));
+
+        // low has the lowest fee rate, its child goes with it
+        assertEquals(1, mempool.size());
+        assertTrue(mempool.contains(high.getHash()));
+        assertTrue(mempool.getUsedBytes() <= mempool.getMaxBytes());
+
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(ledger.spend(ledger.getRootHash(), 2, 7), utxoPool));
+        assertEquals(Mempool.AddResult.POOL_FULL, mempool.add(ledger.spend(ledger.getRootHash(), 3, 9.5), utxoPool));
+        assertEquals(2, mempool.size());
+    }
+
+    @Test
+    public void testEvictedReplacementReplacesNothing() throws SignatureException {
+        Transaction low = ledger.spend(ledger.getRootHash(), 0, 9.5);
+        Transaction child = ledger.spend(low.getHash(), 0, 9.4);
+        Transaction high = ledger.spend(ledger.getRootHash(), 1, 7);
+        int size = high.getRawTx().length;
+        Mempool mempool = new Mempool(3 * size);
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(low, utxoPool));
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(child, utxoPool));
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(high, utxoPool));
+
+        // outbids the child, but is larger, so low is evicted to make room and the replacement with it
+        Transaction replacement = ledger.spend(low.getHash(), 0, 4, 4);
+        assertTrue(replacement.getRawTx().length > size);
+        assertEquals(Mempool.AddResult.POOL_FULL, mempool.add(replacement, utxoPool));
+        assertEquals(3, mempool.size());
+        assertTrue(mempool.contains(low.getHash()));
+        assertTrue(mempool.contains(child.getHash()));
+        assertFalse(mempool.contains(replacement.getHash()));
+    }
+
+    @Test
+    public void testReplaceByHigherFee() throws SignatureException {
+        Mempool mempool = new Mempool(1 << 20);
+        Transaction original = ledger.spend(ledger.getRootHash(), 0, 9);
+        Transaction child = ledger.spend(original.getHash(), 0, 8);
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(original, utxoPool));
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(child, utxoPool));
+
+        // pays more than the original, but not more than the original and its child together
+        assertEquals(Mempool.AddResult.REPLACEMENT_UNDERPAID, mempool.add(ledger.spend(ledger.getRootHash(), 0, 8.5), utxoPool));
+        assertEquals(2, mempool.size());
+
+        Transaction replacement = ledger.spend(ledger.getRootHash(), 0, 7);
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(replacement, utxoPool));
+        assertEquals(1, mempool.size());
+        assertFalse(mempool.contains(original.getHash()));
+        assertFalse(mempool.contains(child.getHash()));
+    }
+
+    @Test
+    public void testLongPendingChain() throws SignatureException {
+        // deeper than a recursive walk of the chain could go, unsigned as the mempool checks no signatures
+        int length = 20_000;
+        Mempool mempool = new Mempool(1L << 30);
+        Transaction[] chain = new Transaction[length];
+        byte[] prevTxHash = ledger.getRootHash();
+        for (int i = 0; i < length; i++) {
+            Transaction tx = new Transaction();
+            tx.addInput(prevTxHash, 0);
+            tx.addOutput(9, ledger.scrooge().getPublic());
+            tx.finalize();
+            assertEquals(Mempool.AddResult.ADDED, mempool.add(tx, utxoPool));
+            chain[i] = tx;
+            prevTxHash = tx.getHash();
+        }
+        assertArrayEquals(chain, mempool.getCandidates(Long.MAX_VALUE));
+
+        Transaction replacement = ledger.spend(ledger.getRootHash(), 0, 5);
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(replacement, utxoPool));
+        assertEquals(1, mempool.size());
+        assertEquals(replacement.getRawTx().length, mempool.getUsedBytes());
+    }
+
+    @Test
+    public void testHandleEpoch() throws SignatureException {
+        Mempool mempool = new Mempool(1 << 20);
+        Transaction parent = ledger.spend(ledger.getRootHash(), 0, 9);
+        Transaction child = ledger.spend(parent.getHash(), 0, 8);
+        HandleTxTest.Tx badSignature = new HandleTxTest.Tx();
+        badSignature.addInput(ledger.getRootHash(), 1);
+        badSignature.addOutput(1, ledger.scrooge().getPublic());
+        badSignature.addSignature(new byte[]{1, 2, 3}, 0);
+        badSignature.finalize();
+        mempool.add(parent, utxoPool);
+        mempool.add(child, utxoPool);
+        mempool.add(badSignature, utxoPool);
+
+        TxHandler txHandler = new TxHandler(utxoPool);
+        Transaction[] accepted = mempool.handleEpoch(txHandler, Long.MAX_VALUE);
+        assertEquals(2, accepted.length);
+        assertEquals(0, mempool.size());
+        assertEquals(0, mempool.getUsedBytes());
+    }
+
+    @Test
+    public void testHandleEpochWithChildPayingForParent() throws SignatureException {
+        Mempool mempool = new Mempool(1 << 20);
+        Transaction parent = ledger.spend(ledger.getRootHash(), 0, 9.9);
+        // spends its parent through its second input, and pays enough for both
+        Transaction child = new Transaction();
+        child.addInput(ledger.getRootHash(), 1);
+        child.addInput(parent.getHash(), 0);
+        child.addOutput(15, ledger.scrooge().getPublic());
+        new TransactionSigner().addAll(child, ledger.scrooge().getPrivate()).sign(child);
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(parent, utxoPool));
+        assertEquals(Mempool.AddResult.ADDED, mempool.add(child, utxoPool));
+        assertArrayEquals(new Transaction[]{parent, child}, mempool.getCandidates(Long.MAX_VALUE));
+
+        Transaction[] accepted = mempool.handleEpoch(new TxHandler(utxoPool), Long.MAX_VALUE);
+        assertArrayEquals(new Transaction[]{parent, child}, accepted);
+        assertEquals(0, mempool.size());
+    }
+}
@@ -0,0 +1,99 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HexFormat;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MerkleTreeTest {
+
+    private static byte[][] hashes(int n) {
+        Random random = new Random(n);
+        byte[][] hashes = new byte[n][32];
+        for (byte[] hash : hashes) {
+            random.nextBytes(hash);
+        }
+        return hashes;
+    }
+
+    private static MerkleTree appended(byte[][] hashes) {
+        MerkleTree tree = new MerkleTree();
+        for (byte[] hash : hashes) {
+            tree.append(hash);
+        }
+        return tree;
+    }
+
+    @Test
+    public void testRfc6962Vectors() {
+        HexFormat hex = HexFormat.of();
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", hex.formatHex(new MerkleTree().getRoot()));
+        String[] leaves = {"", "00", "10", "2021", "3031", "40414243", "5051525354555657", "606162636465666768696a6b6c6d6e6f"};
+        byte[][] data = new byte[leaves.length][];
+        for (int i = 0; i < leaves.length; i++) {
+            data[i] = hex.parseHex(leaves[i]);
+        }
+        MerkleTree tree = MerkleTree.of(data);
+        assertEquals("5dc9da79a70659a9ad559cb701ded9a2ab9d823aad2f4960cfe370eff4604328", hex.formatHex(tree.getRoot()));
+        assertEquals("6e340b9cffb37a989ca544e6bb780a2c78901d3fb33738768511a30617afa01d",
+                hex.formatHex(MerkleTree.of(new byte[][]{data[0]}).getRoot()));
+    }
+
+    @Test
+    public void testIncrementalMatchesBatch() {
+        for (int n = 0; n <= 70; n++) {
+            byte[][] hashes = hashes(n);
+            assertArrayEquals("n=" + n, MerkleTree.of(hashes).getRoot(), appended(hashes).getRoot());
+        }
+        // large enough to hash levels in parallel
+        byte[][] hashes = hashes(MerkleTree.PARALLEL_THRESHOLD + 3);
+        assertArrayEquals(appended(hashes).getRoot(), MerkleTree.of(hashes).getRoot());
+    }
+
+    @Test
+    public void testProofs() {
+        for (int n = 1; n <= 70; n++) {
+            byte[][] hashes = hashes(n);
+            MerkleTree tree = appended(hashes);
+            byte[] root = tree.getRoot();
+            int maxPath = 32 - Integer.numberOfLeadingZeros(n - 1);
+            for (int i = 0; i < n; i++) {
+                MerkleTree.Proof proof = tree.prove(i);
+                assertTrue("n=" + n + " i=" + i, MerkleTree.verify(root, hashes[i], proof));
+                assertTrue(proof.getPath().length <= maxPath);
+                assertEquals(32 * proof.getPath().length, proof.getByteSize());
+                if (n > 1) {
+                    assertFalse(MerkleTree.verify(root, hashes[(i + 1) % n], proof));
+                    byte[][] path = proof.getPath();
+                    path[0] = path[0].clone();
+                    path[0][0] ^= 1;
+                    assertFalse(MerkleTree.verify(root, hashes[i], new MerkleTree.Proof(i, n, path)));
+                    assertFalse(MerkleTree.verify(root, hashes[i], new MerkleTree.Proof(n, n, proof.getPath())));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testProofOfEpoch() throws Exception {
+        UtxoTestSet utxoTestSet = UtxoTestSet.builder()
+                .setPeopleSize(10)
+                .setUtxoTxNumber(10)
+                .setMaxUtxoTxOutput(10)
+                .setMaxValue(200)
+                .setTxPerTest(10)
+                .setMaxInput(10)
+                .setMaxOutput(10)
+                .setCorruptedPercentage(0)
+                .build();
+        Transaction[] accepted = new TxHandler(utxoTestSet.getUtxoPool())
+                .handleTxs(utxoTestSet.getValidationLists().allElements().toArray(new Transaction[0]));
+        MerkleTree tree = MerkleTree.of(accepted);
+        assertEquals(accepted.length, tree.size());
+        Transaction last = accepted[accepted.length - 1];
+        assertTrue(MerkleTree.verify(tree.getRoot(), last.getHash(), tree.prove(accepted.length - 1)));
+    }
+}
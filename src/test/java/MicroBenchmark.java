@@ -0,0 +1,100 @@
+import java.lang.management.ManagementFactory;
+
+/**
+ * Minimal in-process micro-benchmark runner: warms a body up, then runs it for a fixed number of
+ * timed iterations and reports the mean time and the bytes allocated per operation, read from the
+ * current thread's allocation counter ({@link com.sun.management.ThreadMXBean}). Results are
+ * consumed into a volatile field so the JIT cannot eliminate the measured work.
+ */
+public class MicroBenchmark {
+
+    /** One benchmarked operation, returning a value derived from its work */
+    public interface Body {
+        Object run() throws Exception;
+    }
+
+    /** Mean cost of one operation */
+    public static class Result {
+        private final String name;
+        private final String params;
+        private final long operations;
+        private final double nanosPerOp;
+        private final double bytesPerOp;
+
+        Result(String name, String params, long operations, double nanosPerOp, double bytesPerOp) {
+            this.name = name;
+            this.params = params;
+            this.operations = operations;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        public double getNanosPerOp() {
+            return nanosPerOp;
+        }
+
+        public double getBytesPerOp() {
+            return bytesPerOp;
+        }
+
+        /** @return the allocation rate while running the operation, in MB per second */
+        public double getAllocationRate() {
+            return nanosPerOp == 0 ? 0 : bytesPerOp / nanosPerOp * 1e9 / (1 << 20);
+        }
+
+        public String toString() {
+            return String.format("%-32s %-28s %10d %14.1f %14.1f %10.1f",
+                    name, params, operations, nanosPerOp, bytesPerOp, getAllocationRate());
+        }
+    }
+
+    public static final String HEADER = String.format("%-32s %-28s %10s %14s %14s %10s",
+            "benchmark", "params", "ops", "ns/op", "B/op", "MB/s");
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static volatile Object sink;
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+
+    public MicroBenchmark(int warmupIterations, int measurementIterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationMillis * 1_000_000;
+    }
+
+    /** @return the bytes allocated by the current thread so far */
+    public static long allocatedBytes() {
+        return THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    public Result run(String name, String params, Body body) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            iterate(body);
+        }
+        long operations = 0;
+        long nanos = 0;
+        long bytes = -allocatedBytes();
+        for (int i = 0; i < measurementIterations; i++) {
+            long start = System.nanoTime();
+            operations += iterate(body);
+            nanos += System.nanoTime() - start;
+        }
+        bytes += allocatedBytes();
+        return new Result(name, params, operations, (double) nanos / operations, (double) bytes / operations);
+    }
+
+    /** Runs {@code body} for one iteration's time, at least once */
+    private long iterate(Body body) throws Exception {
+        long end = System.nanoTime() + iterationNanos;
+        long operations = 0;
+        do {
+            sink = body.run();
+            operations++;
+        } while (System.nanoTime() < end);
+        return operations;
+    }
+}
@@ -0,0 +1,77 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MuHashTest {
+
+    private static byte[] element(int i) {
+        return ("element " + i).getBytes();
+    }
+
+    @Test
+    public void testMultiplyMatchesModularArithmetic() {
+        Random random = new Random(1);
+        for (int i = 0; i < 50; i++) {
+            BigInteger a = new BigInteger(3072, random).mod(MuHash.PRIME);
+            BigInteger b = i == 0 ? MuHash.PRIME.subtract(BigInteger.ONE) : new BigInteger(3072, random).mod(MuHash.PRIME);
+            assertEquals(a.multiply(b).mod(MuHash.PRIME), MuHash.multiply(a, b));
+        }
+    }
+
+    @Test
+    public void testOrderAndBatchingDoNotMatter() {
+        // more elements than are kept pending, so some are multiplied in before the digest
+        int n = 3000;
+        MuHash forward = new MuHash();
+        for (int i = 0; i < n; i++) {
+            forward.insert(element(i));
+        }
+        MuHash backward = new MuHash();
+        for (int i = n - 1; i >= 0; i--) {
+            backward.insert(element(i));
+        }
+        assertArrayEquals(forward.digest(), backward.digest());
+
+        MuHash half = new MuHash();
+        MuHash otherHalf = new MuHash();
+        for (int i = 0; i < n; i++) {
+            (i % 2 == 0 ? half : otherHalf).insert(element(i));
+        }
+        assertArrayEquals(forward.digest(), half.combine(otherHalf).digest());
+    }
+
+    @Test
+    public void testRemoveUndoesInsert() {
+        MuHash empty = new MuHash();
+        MuHash hash = new MuHash();
+        hash.insert(element(1));
+        byte[] one = hash.digest();
+        for (int i = 2; i < 2000; i++) {
+            hash.insert(element(i));
+        }
+        hash.insert(element(1));
+        assertFalse(Arrays.equals(one, hash.digest()));
+        for (int i = 2; i < 2000; i++) {
+            hash.remove(element(i));
+        }
+        hash.remove(element(1));
+        assertArrayEquals(one, hash.digest());
+        hash.remove(element(1));
+        assertArrayEquals(empty.digest(), hash.digest());
+
+        // removed before it was ever inserted
+        MuHash early = new MuHash();
+        early.remove(element(5));
+        early.insert(element(6));
+        early.insert(element(5));
+        MuHash six = new MuHash();
+        six.insert(element(6));
+        assertArrayEquals(six.digest(), early.digest());
+    }
+}
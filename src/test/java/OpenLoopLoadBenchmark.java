@@ -0,0 +1,243 @@
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * Open-loop load test of the handlers: replays a transaction stream, parents before children, at
+ * a fixed arrival rate with exponentially distributed gaps, so arrivals come in bursts as they
+ * would from a network. Arrival times are scheduled up front and never wait for the handler: a
+ * transaction's latency runs from its scheduled arrival to the end of the epoch that accepted it,
+ * so time spent queued behind a slow epoch is counted instead of silently omitted. Each epoch
+ * takes whatever has arrived, at most {@value #MAX_EPOCH} transactions.
+ * <p>
+ * For every handler and pool size the rate starts at {@value #INITIAL_RATE} transactions per
+ * second and doubles until a rate is not sustained, its p99 above {@value #SLO_MILLIS} ms or the
+ * handler {@value #MAX_LAG_MILLIS} ms behind the schedule in two runs in a row, then is bisected
+ * to the maximum sustainable throughput. Accept latencies are recorded in a {@link LatencyHistogram}. The pool
+ * holds the coins of the stream plus unrelated coins up to the pool size.
+ * <p>
+ * Usage: {@code OpenLoopLoadBenchmark [filter] [poolSize,...] [workload file]}, runs the handlers whose
+ * name contains the filter against the stream of {@link WorkloadGenerator}, kept in
+ * {@code target/workloads}, or a recorded one written by {@link WorkloadGenerator.Workload#write},
+ * e.g. {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=OpenLoopLoadBenchmark -Dexec.args="TxHandler 100000,1000000"}
+ */
+public class OpenLoopLoadBenchmark {
+
+    private static final long SEED = 42;
+    private static final int TRANSACTIONS = 20_000;
+    private static final Path FIXTURES = Paths.get("target", "workloads");
+
+    private static final int MAX_EPOCH = 512;
+    private static final double INITIAL_RATE = 250;
+    private static final double MAX_RATE = 1_000_000;
+    private static final int BISECTIONS = 3;
+    private static final long RUN_MILLIS = 2_000;
+    private static final long SLO_MILLIS = 50;
+    private static final long MAX_LAG_MILLIS = 2_000;
+
+    /** The outcome of one run at a fixed rate */
+    private static class Run {
+        final double rate;
+        final LatencyHistogram.Snapshot latency;
+        final int offered;
+        final int accepted;
+        final boolean fellBehind;
+
+        Run(double rate, LatencyHistogram.Snapshot latency, int offered, int accepted, boolean fellBehind) {
+            this.rate = rate;
+            this.latency = latency;
+            this.offered = offered;
+            this.accepted = accepted;
+            this.fellBehind = fellBehind;
+        }
+
+        boolean isSustained() {
+            return !fellBehind && latency.getValueAtPercentile(99) <= SLO_MILLIS * 1_000_000;
+        }
+
+        public String toString() {
+            return String.format("%10.0f %8d %8d %10.3f %10.3f %10.3f %10.3f  %s",
+                    rate, offered, accepted, millis(latency.getValueAtPercentile(50)),
+                    millis(latency.getValueAtPercentile(99)), millis(latency.getValueAtPercentile(99.9)),
+                    millis(latency.getMax()), fellBehind ? "fell behind" : isSustained() ? "ok" : "over SLO");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String filter = args.length > 0 ? args[0] : "";
+        int[] poolSizes = args.length > 1
+                ? Arrays.stream(args[1].split(",")).mapToInt(Integer::parseInt).toArray()
+                : new int[]{100_000};
+        WorkloadKeys keys = WorkloadKeys.load();
+        WorkloadGenerator.Workload workload = args.length > 2
+                ? WorkloadGenerator.Workload.read(Paths.get(args[2]))
+                : new WorkloadGenerator(keys)
+                        .setSeed(SEED)
+                        .setTransactions(TRANSACTIONS)
+                        .setConflictRate(0.05)
+                        .setMaxChainDepth(3)
+                        .setChainProbability(0.3)
+                        .setMaxInputs(2)
+                        .setMaxOutputs(2)
+                        .setShuffle(false)
+                        .generateOrLoad(FIXTURES);
+        Transaction[] stream = workload.getTransactions();
+
+        for (int poolSize : poolSizes) {
+            UTXOPool pool = pool(workload, poolSize, keys);
+            for (Map.Entry<String, Function<UTXOPool, Function<Transaction[], Transaction[]>>> handler : handlers().entrySet()) {
+                if (!handler.getKey().contains(filter)) {
+                    continue;
+                }
+                System.out.printf("%n%s pool=%d stream=%d%n", handler.getKey(), pool.size(), stream.length);
+                System.out.printf("%10s %8s %8s %10s %10s %10s %10s%n",
+                        "tx/s", "offered", "accepted", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+                // warms the handler up, the run is not reported
+                run(handler.getValue(), pool, stream, INITIAL_RATE);
+                System.out.printf("%s pool=%d: max sustainable %.0f tx/s%n",
+                        handler.getKey(), pool.size(), maxSustainableRate(handler.getValue(), pool, stream));
+            }
+        }
+    }
+
+    private static Map<String, Function<UTXOPool, Function<Transaction[], Transaction[]>>> handlers() {
+        Map<String, Function<UTXOPool, Function<Transaction[], Transaction[]>>> handlers = new LinkedHashMap<>();
+        handlers.put("TxHandler", pool -> new TxHandler(pool)::handleTxs);
+        handlers.put("MaxFeeTxHandler", pool -> new MaxFeeTxHandler(pool)::handleTxs);
+        handlers.put("MaxFeeTxHandler3", pool -> new MaxFeeTxHandler3(pool)::handleTxs);
+        for (TxSelectionStrategy strategy : TxSelectionStrategies.builtIn()) {
+            handlers.put("EpochPipeline[" + strategy.getName() + "]", pool -> new EpochPipeline(pool, strategy)::handleTxs);
+        }
+        return handlers;
+    }
+
+    /** @return the highest rate found sustained, 0 if even {@value #INITIAL_RATE} was not */
+    private static double maxSustainableRate(Function<UTXOPool, Function<Transaction[], Transaction[]>> handler,
+                                             UTXOPool pool, Transaction[] stream) {
+        double sustained = 0;
+        double failed = 0;
+        for (double rate = INITIAL_RATE; rate <= MAX_RATE; rate *= 2) {
+            if (!isSustained(handler, pool, stream, rate)) {
+                failed = rate;
+                break;
+            }
+            sustained = rate;
+        }
+        if (failed == 0 || sustained == 0) {
+            return sustained;
+        }
+        for (int i = 0; i < BISECTIONS; i++) {
+            double rate = (sustained + failed) / 2;
+            if (isSustained(handler, pool, stream, rate)) {
+                sustained = rate;
+            } else {
+                failed = rate;
+            }
+        }
+        return sustained;
+    }
+
+    /**
+     * @return true if a run at {@code rate} is sustained; a failed run is repeated once, so a single
+     *         collector pause does not end the search
+     */
+    private static boolean isSustained(Function<UTXOPool, Function<Transaction[], Transaction[]>> handler,
+                                       UTXOPool pool, Transaction[] stream, double rate) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Run run = run(handler, pool, stream, rate);
+            System.out.println(run);
+            if (run.isSustained()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replays the start of {@code stream} at {@code rate} against a new handler on {@code pool},
+     * for at most {@value #RUN_MILLIS} ms of arrivals.
+     */
+    private static Run run(Function<UTXOPool, Function<Transaction[], Transaction[]>> handlerFactory,
+                           UTXOPool pool, Transaction[] stream, double rate) {
+        Function<Transaction[], Transaction[]> handler = handlerFactory.apply(pool);
+        int offered = (int) Math.min(stream.length, Math.max(1, rate * RUN_MILLIS / 1000));
+        long[] arrivals = schedule(offered, rate, new SplittableRandom(SEED));
+        LatencyHistogram latency = new LatencyHistogram();
+        long maxLag = MAX_LAG_MILLIS * 1_000_000;
+        int accepted = 0;
+        boolean fellBehind = false;
+
+        long start = System.nanoTime();
+        int next = 0;
+        while (next < offered) {
+            long now = System.nanoTime() - start;
+            if (arrivals[next] > now) {
+                LockSupport.parkNanos(arrivals[next] - now);
+                continue;
+            }
+            if (now - arrivals[next] > maxLag) {
+                fellBehind = true;
+                break;
+            }
+            int end = next;
+            while (end < offered && end - next < MAX_EPOCH && arrivals[end] <= now) {
+                end++;
+            }
+            Transaction[] acceptedTxs = handler.apply(Arrays.copyOfRange(stream, next, end));
+            long done = System.nanoTime() - start;
+            Set<Transaction> acceptedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+            acceptedSet.addAll(Arrays.asList(acceptedTxs));
+            for (int i = next; i < end; i++) {
+                if (acceptedSet.contains(stream[i])) {
+                    latency.record(done - arrivals[i]);
+                    accepted++;
+                }
+            }
+            next = end;
+        }
+        return new Run(rate, latency.snapshot(), offered, accepted, fellBehind);
+    }
+
+    /** @return {@code count} arrival times in nanoseconds from the start, a Poisson process of {@code rate} per second */
+    private static long[] schedule(int count, double rate, SplittableRandom random) {
+        long[] arrivals = new long[count];
+        double time = 0;
+        for (int i = 0; i < count; i++) {
+            time += -Math.log(1 - random.nextDouble()) / rate * 1e9;
+            arrivals[i] = (long) time;
+        }
+        return arrivals;
+    }
+
+    /** @return the pool of {@code workload}, padded with unrelated coins to {@code size} UTXOs */
+    private static UTXOPool pool(WorkloadGenerator.Workload workload, int size, WorkloadKeys keys) {
+        UTXOPool pool = workload.getUtxoPool();
+        Transaction ballast = new Transaction();
+        ballast.addOutput(1, keys.get(0).getPublic());
+        Transaction.Output output = ballast.getOutput(0);
+        SplittableRandom random = new SplittableRandom(SEED);
+        byte[] hash = new byte[32];
+        while (pool.size() < size) {
+            for (int i = 0; i < hash.length; i += 8) {
+                long bits = random.nextLong();
+                for (int b = 0; b < 8; b++) {
+                    hash[i + b] = (byte) (bits >>> 8 * b);
+                }
+            }
+            pool.addUTXO(new UTXO(hash, 0), output);
+        }
+        return pool;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,92 @@
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Compares the total fee collected and the selection time of {@link PackageSelector} and
+ * {@link MaxFeeSolver} (with its default budget) against greedy
+ * selection by individual fee (the ordering of {@link MaxFeeTxHandler3}, with fees computed once)
+ * on epochs of {@link WorkloadGenerator}: chains of up to three single input transactions with
+ * exponentially distributed fees, a fifth of them double spent. Epochs are kept as fixtures in
+ * {@code target/workloads}, so only the first run of a size pays for signing.
+ * <p>
+ * Usage: {@code PackageSelectionBenchmark [epochSize...]}, default 10000 100000; 1000000 needs
+ * a heap of about 3 GB, e.g. {@code mvn test-compile exec:exec -Dexec.executable=java
+ * -Dexec.classpathScope=test -Dexec.args="-Xmx3g -cp %classpath PackageSelectionBenchmark 1000000"}.
+ */
+public class PackageSelectionBenchmark {
+
+    private static final long SEED = 42;
+    private static final Path FIXTURES = Paths.get("target", "workloads");
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length == 0
+                ? new int[]{10_000, 100_000}
+                : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        WorkloadGenerator generator = new WorkloadGenerator(WorkloadKeys.load())
+                .setSeed(SEED)
+                .setConflictRate(0.2)
+                .setMaxChainDepth(3)
+                .setChainProbability(0.6)
+                .setMaxInputs(1)
+                .setMaxOutputs(1);
+        System.out.printf("%10s %-10s %10s %14s %10s%n", "epoch", "selector", "selected", "total fee", "ms");
+        for (int size : sizes) {
+            WorkloadGenerator.Workload workload = generator.setTransactions(size).generateOrLoad(FIXTURES);
+            Transaction[] txs = workload.getTransactions();
+            run(workload, "greedy", pool -> greedy(txs, pool));
+            run(workload, "package", pool -> {
+                PackageSelector selector = new PackageSelector(pool);
+                Transaction[] selected = selector.select(txs);
+                return new double[]{selected.length, selector.getTotalFee()};
+            });
+            run(workload, "solver", pool -> {
+                MaxFeeSolver.Result result = new MaxFeeSolver(pool).solve(txs);
+                System.out.println("           solver: " + result);
+                return new double[]{result.getTransactions().length, result.getTotalFee()};
+            });
+        }
+    }
+
+    private interface Selector {
+        /** @return the number of selected transactions and their total fee */
+        double[] select(UTXOPool pool);
+    }
+
+    private static void run(WorkloadGenerator.Workload workload, String name, Selector selector) {
+        UTXOPool pool = workload.getUtxoPool();
+        long start = System.nanoTime();
+        double[] result = selector.select(pool);
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%10d %-10s %10d %14.2f %10.1f%n",
+                workload.getTransactions().length, name, (long) result[0], result[1], elapsed / 1e6);
+    }
+
+    /** Highest individual fee first, inputs that are not in the pool count for nothing */
+    static double[] greedy(Transaction[] txs, UTXOPool pool) {
+        int[] order = new FeeTable(txs, pool).sortedByFeeDescending();
+
+        TxValidator validator = new TxValidator(pool);
+        int selected = 0;
+        double totalFee = 0;
+        for (int i : order) {
+            Transaction tx = txs[i];
+            if (validator.validate(tx) != ValidationResult.VALID) {
+                continue;
+            }
+            double fee = 0;
+            for (Transaction.Input in : tx.getInputs()) {
+                UTXO utxo = new UTXO(in.prevTxId, in.outputIndex);
+                fee += pool.getTxOutput(utxo).value;
+                pool.removeUTXO(utxo);
+            }
+            for (int k = 0; k < tx.numOutputs(); k++) {
+                fee -= tx.getOutput(k).value;
+                pool.addUTXO(new UTXO(tx.getHash(), k), tx.getOutput(k));
+            }
+            selected++;
+            totalFee += fee;
+        }
+        return new double[]{selected, totalFee};
+    }
+}
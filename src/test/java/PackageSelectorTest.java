@@ -0,0 +1,122 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.security.SignatureException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PackageSelectorTest {
+
+    private TestLedger ledger;
+    private UTXOPool utxoPool;
+
+    @Before
+    public void preparation() {
+        // two coins of value 10 owned by Scrooge
+        ledger = new TestLedger(2, 10);
+        utxoPool = ledger.getUtxoPool();
+    }
+
+    @Test
+    public void testChildPaysForParent() throws SignatureException {
+        Transaction parent = ledger.spend(ledger.getRootHash(), 0, 9.9);
+        Transaction child = ledger.spend(parent.getHash(), 0, 4.9);
+        Transaction conflict = ledger.spend(ledger.getRootHash(), 0, 9);
+
+        PackageSelector selector = new PackageSelector(utxoPool);
+        Transaction[] selected = selector.select(new Transaction[]{child, conflict, parent});
+
+        // the conflict pays more than the parent alone, but less than parent and child together
+        assertArrayEquals(new Transaction[]{parent, child}, selected);
+        assertEquals(5.1, selector.getTotalFee(), 1e-9);
+        assertTrue(utxoPool.contains(new UTXO(child.getHash(), 0)));
+        assertFalse(utxoPool.contains(new UTXO(ledger.getRootHash(), 0)));
+    }
+
+    @Test
+    public void testIndependentTransactionsByFeeRate() throws SignatureException {
+        Transaction low = ledger.spend(ledger.getRootHash(), 0, 9.9);
+        Transaction high = ledger.spend(ledger.getRootHash(), 1, 5);
+
+        PackageSelector selector = new PackageSelector(utxoPool);
+        assertArrayEquals(new Transaction[]{high, low}, selector.select(new Transaction[]{low, high}));
+        assertEquals(5.1, selector.getTotalFee(), 1e-9);
+    }
+
+    @Test
+    public void testInvalidPackageMemberDropsDescendants() throws SignatureException {
+        Transaction badParent = ledger.spend(ledger.alice(), ledger.getRootHash(), 0, 9.9);
+        Transaction child = ledger.spend(badParent.getHash(), 0, 1);
+        Transaction conflict = ledger.spend(ledger.getRootHash(), 0, 9);
+
+        PackageSelector selector = new PackageSelector(utxoPool);
+        assertArrayEquals(new Transaction[]{conflict}, selector.select(new Transaction[]{badParent, child, conflict}));
+        assertEquals(1, selector.getTotalFee(), 1e-9);
+    }
+
+    @Test
+    public void testDeepChainBeyondPackageLimit() throws SignatureException {
+        Transaction[] chain = new Transaction[6];
+        byte[] prevTxHash = ledger.getRootHash();
+        double value = 10;
+        for (int i = 0; i < chain.length; i++) {
+            value -= 0.5;
+            chain[i] = ledger.spend(prevTxHash, 0, value);
+            prevTxHash = chain[i].getHash();
+        }
+        PackageSelector selector = new PackageSelector(utxoPool, new TxValidator(utxoPool), 2);
+        Transaction[] reversed = new Transaction[chain.length];
+        for (int i = 0; i < chain.length; i++) {
+            reversed[i] = chain[chain.length - 1 - i];
+        }
+        assertArrayEquals(chain, selector.select(reversed));
+    }
+
+    @Test
+    public void testRescoresDescendantAtPackageLimit() throws SignatureException {
+        // the tip of the chain is maxPackageSize generations below its root, which is selected alone
+        Transaction first = ledger.spend(ledger.getRootHash(), 0, 9);
+        Transaction second = ledger.spend(first.getHash(), 0, 9);
+        Transaction tip = ledger.spend(second.getHash(), 0, 5);
+        Transaction other = ledger.spend(ledger.getRootHash(), 1, 9.5);
+        int size = first.getRawTx().length;
+        assertEquals(size, other.getRawTx().length);
+
+        // once the first is selected, the package of the second and the tip pays more than the other
+        PackageSelector selector = new PackageSelector(utxoPool, new TxValidator(utxoPool), 2, 3 * size);
+        assertArrayEquals(new Transaction[]{first, second, tip},
+                selector.select(new Transaction[]{tip, other, second, first}));
+        assertEquals(5, selector.getTotalFee(), 1e-9);
+    }
+
+    @Test
+    public void testByteLimitPassesOverLargePackage() throws SignatureException {
+        Transaction large = ledger.spend(ledger.getRootHash(), 0, 0.5, 0.5, 0.5);
+        Transaction small = ledger.spend(ledger.getRootHash(), 1, 9);
+
+        // the large transaction pays the better rate but only the small one fits
+        int smallSize = small.getRawTx().length;
+        assertTrue(smallSize < large.getRawTx().length);
+        MaxFeeTxHandler handler = new MaxFeeTxHandler(utxoPool);
+        assertArrayEquals(new Transaction[]{small}, handler.handleTxs(new Transaction[]{large, small}, smallSize));
+
+        PackageSelector selector = new PackageSelector(utxoPool, new TxValidator(utxoPool),
+                PackageSelector.DEFAULT_MAX_PACKAGE_SIZE, smallSize + large.getRawTx().length);
+        assertArrayEquals(new Transaction[]{large, small}, selector.select(new Transaction[]{small, large}));
+        assertEquals(smallSize + large.getRawTx().length, selector.getTotalBytes());
+    }
+
+    @Test
+    public void testMaxFeeTxHandlerRejectsTransactionWithoutInputs() throws SignatureException {
+        Transaction noInputs = new Transaction();
+        noInputs.addOutput(1, ledger.scrooge().getPublic());
+        noInputs.finalize();
+        Transaction spend = ledger.spend(ledger.getRootHash(), 0, 9);
+
+        MaxFeeTxHandler handler = new MaxFeeTxHandler(utxoPool);
+        assertArrayEquals(new Transaction[]{spend}, handler.handleTxs(new Transaction[]{noInputs, spend}));
+    }
+}
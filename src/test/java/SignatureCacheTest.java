@@ -0,0 +1,76 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+
+import org.junit.Test;
+
+public class SignatureCacheTest {
+
+    @Test
+    public void testCachesValidSignaturesOnly() throws Exception {
+        KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(512);
+        KeyPair keyPair = keyGen.genKeyPair();
+        byte[] message = {1, 2, 3};
+        Signature sig = Signature.getInstance("SHA256withRSA");
+        sig.initSign(keyPair.getPrivate());
+        sig.update(message);
+        byte[] signature = sig.sign();
+        byte[] forged = signature.clone();
+        forged[0] ^= 1;
+
+        SignatureCache cache = new SignatureCache(2);
+        Crypto.setSignatureCache(cache);
+        try {
+            assertTrue(Crypto.verifySignature(keyPair.getPublic(), message, signature));
+            assertTrue(Crypto.verifySignature(keyPair.getPublic(), message, signature));
+            assertFalse(Crypto.verifySignature(keyPair.getPublic(), message, forged));
+            assertFalse(Crypto.verifySignature(keyPair.getPublic(), message, forged));
+        } finally {
+            Crypto.setSignatureCache(null);
+        }
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testEvictsBeyondCapacity() {
+        SignatureCache cache = new SignatureCache(4);
+        for (int i = 0; i < 10; i++) {
+            cache.add(ByteBuffer.wrap(new byte[]{(byte) i}));
+        }
+        assertEquals(4, cache.size());
+        assertTrue(cache.contains(ByteBuffer.wrap(new byte[]{9})));
+    }
+
+    @Test
+    public void testStaysWithinCapacityUnderConcurrentAdds() throws Exception {
+        KeyPair keyPair = KeyPairGenerator.getInstance("RSA").genKeyPair();
+        SignatureCache cache = new SignatureCache(64);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int offset = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    byte[] signature = ByteBuffer.allocate(Integer.BYTES).putInt(i).array();
+                    cache.add(SignatureCache.entry(keyPair.getPublic(), new byte[]{(byte) offset}, signature));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(cache.size() <= 64);
+        // the latest entry is always found
+        ByteBuffer last = SignatureCache.entry(keyPair.getPublic(), new byte[]{9}, new byte[]{9});
+        cache.add(last);
+        assertTrue(cache.contains(last));
+    }
+}
@@ -0,0 +1,70 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs every built-in {@link TxSelectionStrategy} on the same {@link UtxoTestSet} workloads and
+ * reports, side by side, the epoch latency (mean and worst over the rounds), the throughput in
+ * proposed transactions per second, the number of accepted transactions, their total fee and the
+ * signatures verified and deferred (never verified) per epoch. Each round starts from a fresh {@link EpochPipeline}.
+ * <p>
+ * Usage: {@code StrategyBenchmark [txPerEpoch] [rounds]}, default 300 transactions and 10 rounds,
+ * e.g. {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=StrategyBenchmark -Dexec.args="1000 5"}
+ */
+public class StrategyBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int txPerEpoch = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        Map<String, UtxoTestSet.UtxoTestSetBuilder> workloads = new LinkedHashMap<>();
+        workloads.put("valid", builder(txPerEpoch));
+        workloads.put("corrupted", builder(txPerEpoch)
+                .setCorruptedPercentage(.20)
+                .setForceCorruptedSignature(true)
+                .setInvalidTotals(true)
+                .setNegativeOutputs(true));
+        workloads.put("double-spend", builder(txPerEpoch)
+                .setCorruptedPercentage(.30)
+                .setClaimingUtxoSeveralTimes(true)
+                .setClaimingOutputsNotInPool(true));
+
+        System.out.printf("%-13s %-12s %10s %10s %12s %9s %12s %10s %10s%n",
+                "workload", "strategy", "mean ms", "max ms", "tx/s", "accepted", "total fee", "sigs", "deferred");
+        for (Map.Entry<String, UtxoTestSet.UtxoTestSetBuilder> workload : workloads.entrySet()) {
+            UtxoTestSet utxoTestSet = workload.getValue().build();
+            List<Transaction> txList = utxoTestSet.getValidationLists().allElements();
+            Transaction[] txs = txList.toArray(new Transaction[txList.size()]);
+            for (TxSelectionStrategy strategy : TxSelectionStrategies.builtIn()) {
+                long[] nanos = new long[rounds];
+                Transaction[] accepted = null;
+                ValidationStats stats = null;
+                for (int round = 0; round < rounds; round++) {
+                    EpochPipeline pipeline = new EpochPipeline(utxoTestSet.getUtxoPool(), strategy);
+                    long start = System.nanoTime();
+                    accepted = pipeline.handleTxs(txs);
+                    nanos[round] = System.nanoTime() - start;
+                    stats = pipeline.getValidationStats();
+                }
+                double mean = Arrays.stream(nanos).average().getAsDouble();
+                System.out.printf("%-13s %-12s %10.2f %10.2f %12.0f %9d %12.2f %10d %10d%n",
+                        workload.getKey(), strategy.getName(), mean / 1e6, Arrays.stream(nanos).max().getAsLong() / 1e6,
+                        txs.length / (mean / 1e9), accepted.length,
+                        EpochPipelineTest.fee(accepted, utxoTestSet.getUtxoPool()), stats.getSignaturesVerified(),
+                        stats.getSignaturesDeferred());
+            }
+        }
+    }
+
+    private static UtxoTestSet.UtxoTestSetBuilder builder(int txPerEpoch) {
+        return UtxoTestSet.builder()
+                .setPeopleSize(10)
+                .setUtxoTxNumber(txPerEpoch / 2 + 1)
+                .setMaxUtxoTxOutput(10)
+                .setMaxValue(200)
+                .setTxPerTest(txPerEpoch)
+                .setMaxInput(3)
+                .setMaxOutput(3);
+    }
+}
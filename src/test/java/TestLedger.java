@@ -0,0 +1,102 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.KeyPair;
+import java.security.SignatureException;
+
+/**
+ * A test fixture: a UTXO pool holding the coins of a root transaction out of thin air owned by
+ * Scrooge, and a builder of signed transactions spending them.
+ * Scrooge and Alice are the first two keys of {@link WorkloadKeys}, loaded once, so no test pays
+ * for RSA key generation.
+ * <p>
+ * {@code ledger.spend(ledger.getRootHash(), 0, 9)} pays 9 of Scrooge's first coin back to him,
+ * leaving a fee of 1.
+ */
+public class TestLedger {
+
+    private static WorkloadKeys keys;
+
+    private final KeyPair scrooge;
+    private final KeyPair alice;
+    private final Transaction root;
+    private final UTXOPool utxoPool = new UTXOPool();
+
+    /** Creates a ledger of {@code coins} coins of {@code value} each */
+    public TestLedger(int coins, double value) {
+        this(coins, value, new byte[]{0});
+    }
+
+    /**
+     * Creates a ledger of {@code coins} coins of {@code value} each, whose root transaction claims
+     * {@code rootInputHash}, so that ledgers with different ones have different roots
+     */
+    public TestLedger(int coins, double value, byte[] rootInputHash) {
+        WorkloadKeys keys = keys();
+        scrooge = keys.get(0);
+        alice = keys.get(1);
+        root = new Transaction();
+        root.addInput(rootInputHash, 0);
+        for (int i = 0; i < coins; i++) {
+            root.addOutput(value, scrooge.getPublic());
+        }
+        root.finalize();
+        for (int i = 0; i < coins; i++) {
+            utxoPool.addUTXO(new UTXO(root.getHash(), i), root.getOutput(i));
+        }
+    }
+
+    private static synchronized WorkloadKeys keys() {
+        if (keys == null) {
+            try {
+                keys = WorkloadKeys.load();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return keys;
+    }
+
+    public KeyPair scrooge() {
+        return scrooge;
+    }
+
+    public KeyPair alice() {
+        return alice;
+    }
+
+    public byte[] getRootHash() {
+        return root.getHash();
+    }
+
+    /** @return the pool holding the root's coins, not a copy: tests hand it to the code under test */
+    public UTXOPool getUtxoPool() {
+        return utxoPool;
+    }
+
+    /** @return a transaction spending output {@code outputIndex} of {@code prevTxHash}, signed by Scrooge */
+    public Transaction spend(byte[] prevTxHash, int outputIndex, double... values) throws SignatureException {
+        return spend(scrooge, prevTxHash, new int[]{outputIndex}, values);
+    }
+
+    /** @return a transaction spending output {@code outputIndex} of {@code prevTxHash}, signed by {@code signer} */
+    public Transaction spend(KeyPair signer, byte[] prevTxHash, int outputIndex, double... values)
+            throws SignatureException {
+        return spend(signer, prevTxHash, new int[]{outputIndex}, values);
+    }
+
+    /**
+     * @return a transaction spending the outputs {@code outputIndexes} of {@code prevTxHash}, all
+     *         signed by {@code signer}, and paying {@code values} to Scrooge
+     */
+    public Transaction spend(KeyPair signer, byte[] prevTxHash, int[] outputIndexes, double... values)
+            throws SignatureException {
+        Transaction tx = new Transaction();
+        for (int outputIndex : outputIndexes) {
+            tx.addInput(prevTxHash, outputIndex);
+        }
+        for (double value : values) {
+            tx.addOutput(value, scrooge.getPublic());
+        }
+        return new TransactionSigner().addAll(tx, signer.getPrivate()).sign(tx);
+    }
+}
@@ -0,0 +1,45 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.security.SignatureException;
+
+import org.junit.Test;
+
+public class TransactionSignerTest {
+
+    @Test
+    public void testSignsLikeOneInputAtATime() throws IOException, SignatureException {
+        WorkloadKeys keys = WorkloadKeys.load();
+        Transaction root = new Transaction();
+        root.addInput(new byte[]{0}, 0);
+        for (int i = 0; i < 40; i++) {
+            root.addOutput(1, keys.get(i % 4).getPublic());
+        }
+        root.finalize();
+        UTXOPool utxoPool = new UTXOPool();
+        HandleTxTest.Tx expected = new HandleTxTest.Tx();
+        Transaction tx = new Transaction();
+        for (int i = 0; i < root.numOutputs(); i++) {
+            utxoPool.addUTXO(new UTXO(root.getHash(), i), root.getOutput(i));
+            expected.addInput(root.getHash(), i);
+            tx.addInput(root.getHash(), i);
+        }
+        expected.addOutput(39, keys.get(5).getPublic());
+        tx.addOutput(39, keys.get(5).getPublic());
+
+        byte[] rawOutputs = tx.getRawOutputs();
+        TransactionSigner signer = new TransactionSigner();
+        for (int i = tx.numInputs() - 1; i >= 0; i--) {
+            assertArrayEquals(tx.getRawDataToSign(i), tx.getRawDataToSign(i, rawOutputs));
+            signer.add(i, keys.get(i % 4).getPrivate());
+            expected.signTx(keys.get(i % 4).getPrivate(), i);
+        }
+
+        // RSA PKCS#1 v1.5 signatures are deterministic, so both transactions are the same
+        signer.sign(tx);
+        assertArrayEquals(expected.getHash(), tx.getHash());
+        assertArrayEquals(expected.getRawTx(), tx.getRawTx());
+        assertEquals(ValidationResult.VALID, new TxValidator(utxoPool).validate(tx));
+    }
+}
@@ -0,0 +1,119 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+public class TxEventsTest {
+
+    private static UtxoTestSet testSet() throws Exception {
+        return UtxoTestSet.builder()
+                .setPeopleSize(10)
+                .setUtxoTxNumber(10)
+                .setMaxUtxoTxOutput(10)
+                .setMaxValue(200)
+                .setTxPerTest(10)
+                .setMaxInput(10)
+                .setMaxOutput(10)
+                .setCorruptedPercentage(.20)
+                .build();
+    }
+
+    private static List<RecordedEvent> events(Recording recording, String name) throws Exception {
+        Path file = Files.createTempFile("tx-events", ".jfr");
+        try {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                    .filter(e -> e.getEventType().getName().equals(name))
+                    .collect(Collectors.toList());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testEpochAndValidationEvents() throws Exception {
+        UtxoTestSet utxoTestSet = testSet();
+        List<Transaction> txs = utxoTestSet.getValidationLists().allElements();
+        try (Recording recording = new Recording()) {
+            recording.enable("scrooge.Epoch");
+            recording.enable("scrooge.TxValidation").withoutThreshold();
+            recording.enable("scrooge.UTXOPoolSnapshot").withoutThreshold();
+            recording.start();
+            TxHandler handler = new TxHandler(utxoTestSet.getUtxoPool());
+            Transaction[] accepted = handler.handleTxs(txs.toArray(new Transaction[0]));
+            recording.stop();
+
+            List<RecordedEvent> epochs = events(recording, "scrooge.Epoch");
+            assertEquals(1, epochs.size());
+            assertEquals("TxHandler", epochs.get(0).getString("handler"));
+            assertEquals(txs.size(), epochs.get(0).getInt("candidates"));
+            assertEquals(accepted.length, epochs.get(0).getInt("accepted"));
+            assertEquals(handler.getUTXOPool().size(), epochs.get(0).getInt("poolSize"));
+
+            List<RecordedEvent> validations = events(recording, "scrooge.TxValidation");
+            long valid = validations.stream().filter(e -> e.getString("verdict").equals("VALID")).count();
+            assertEquals(handler.getValidationStats().getCount(ValidationResult.VALID), valid);
+            for (RecordedEvent e : validations) {
+                if (e.getString("verdict").equals("VALID")) {
+                    assertTrue(e.getDuration("cryptoTime").toNanos() > 0);
+                    assertTrue(e.getDuration("cryptoTime").compareTo(e.getDuration()) <= 0);
+                }
+            }
+
+            List<RecordedEvent> copies = events(recording, "scrooge.UTXOPoolSnapshot");
+            assertTrue(copies.stream().anyMatch(e -> e.getString("operation").equals("copy")
+                    && e.getInt("size") == utxoTestSet.getUtxoPool().size()));
+        }
+    }
+
+    @Test
+    public void testFastValidationsBelowDefaultThreshold() throws Exception {
+        UtxoTestSet utxoTestSet = testSet();
+        try (Recording recording = new Recording()) {
+            recording.enable("scrooge.TxValidation");
+            recording.start();
+            TxValidator validator = new TxValidator(utxoTestSet.getUtxoPool());
+            // rejected before any signature: far below the default 1 ms threshold
+            for (int i = 0; i < 100; i++) {
+                validator.validate(null);
+            }
+            recording.stop();
+            assertTrue(events(recording, "scrooge.TxValidation").isEmpty());
+        }
+    }
+
+    @Test
+    public void testSignatureCacheLookups() throws Exception {
+        UtxoTestSet utxoTestSet = testSet();
+        Transaction[] txs = utxoTestSet.getValidationLists().allElements().toArray(new Transaction[0]);
+        SignatureCache cache = new SignatureCache();
+        Crypto.setSignatureCache(cache);
+        try (Recording recording = new Recording()) {
+            recording.enable("scrooge.SignatureCacheLookup");
+            recording.start();
+            Transaction[] first = new TxHandler(utxoTestSet.getUtxoPool()).handleTxs(txs);
+            Transaction[] second = new TxHandler(utxoTestSet.getUtxoPool()).handleTxs(txs);
+            recording.stop();
+
+            assertEquals(first.length, second.length);
+            assertTrue(cache.getHits() > 0);
+            List<RecordedEvent> lookups = events(recording, "scrooge.SignatureCacheLookup");
+            assertEquals(cache.getHits() + cache.getMisses(), lookups.size());
+            assertEquals(cache.getHits(), lookups.stream().filter(e -> e.getBoolean("hit")).count());
+            // the second epoch verifies nothing the first found valid
+            assertEquals(cache.size(), cache.getHits());
+        } finally {
+            Crypto.setSignatureCache(null);
+        }
+        assertNull(Crypto.getSignatureCache());
+    }
+}
@@ -0,0 +1,187 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SignatureException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class TxHandlerProcessorTest {
+
+    private static UtxoTestSet mixedTestSet() throws NoSuchAlgorithmException, InvalidKeyException, SignatureException {
+        return UtxoTestSet.builder()
+                .setPeopleSize(10)
+                .setUtxoTxNumber(10)
+                .setMaxUtxoTxOutput(10)
+                .setMaxValue(200)
+                .setTxPerTest(10)
+                .setMaxInput(10)
+                .setMaxOutput(10)
+                .setCorruptedPercentage(.20)
+                .setNegativeOutputs(true)
+                .setInvalidTotals(true)
+                .build();
+    }
+
+    @Test
+    public void testVerdictPerTransaction() throws Exception {
+        UtxoTestSet utxoTestSet = mixedTestSet();
+        ValidationLists<Transaction> lists = utxoTestSet.getValidationLists();
+        List<Transaction> txs = lists.allElements();
+
+        TxHandlerProcessor processor = new TxHandlerProcessor(
+                new TxHandler(utxoTestSet.getUtxoPool()), 3, ForkJoinPool.commonPool());
+        CollectingSubscriber subscriber = new CollectingSubscriber(1);
+        processor.subscribe(subscriber);
+
+        try (SubmissionPublisher<Transaction> producer = new SubmissionPublisher<>()) {
+            producer.subscribe(processor);
+            for (Transaction tx : txs) {
+                producer.submit(tx);
+            }
+        }
+
+        assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+        assertEquals(txs.size(), subscriber.verdicts.size());
+        for (int i = 0; i < txs.size(); i++) {
+            Verdict verdict = subscriber.verdicts.get(i);
+            assertTrue(txs.get(i) == verdict.getTransaction());
+            assertEquals(lists.isValid(txs.get(i)), verdict.isAccepted());
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullTransactionIsRejected() throws Exception {
+        TxHandlerProcessor processor = new TxHandlerProcessor(
+                new TxHandler(mixedTestSet().getUtxoPool()), 3, ForkJoinPool.commonPool());
+        processor.onNext(null);
+    }
+
+    @Test
+    public void testSlowSubscriberThrottlesUpstream() throws Exception {
+        UtxoTestSet utxoTestSet = mixedTestSet();
+        List<Transaction> txs = utxoTestSet.getValidationLists().allElements();
+
+        TxHandlerProcessor processor = new TxHandlerProcessor(
+                new TxHandler(utxoTestSet.getUtxoPool()), 2, ForkJoinPool.commonPool());
+        CollectingSubscriber subscriber = new CollectingSubscriber(0);
+        processor.subscribe(subscriber);
+        ListPublisher producer = new ListPublisher(txs);
+        producer.subscribe(processor);
+
+        // nothing was requested downstream: only the verdict buffer and one blocked batch get through
+        Thread.sleep(200);
+        assertTrue(subscriber.verdicts.isEmpty());
+        assertTrue(producer.requested.get() <= 4);
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+        assertEquals(txs.size(), subscriber.verdicts.size());
+    }
+
+    @Test
+    public void testSignalsAfterFailedBatchAreDropped() throws Exception {
+        UtxoTestSet utxoTestSet = mixedTestSet();
+        List<Transaction> txs = utxoTestSet.getValidationLists().allElements();
+        TxHandler failing = new TxHandler(utxoTestSet.getUtxoPool()) {
+            public Transaction[] handleTxs(Transaction[] possibleTxs) {
+                throw new IllegalStateException("failed");
+            }
+        };
+        TxHandlerProcessor processor = new TxHandlerProcessor(failing, 1, ForkJoinPool.commonPool());
+        CollectingSubscriber subscriber = new CollectingSubscriber(1);
+        processor.subscribe(subscriber);
+        AtomicInteger cancels = new AtomicInteger();
+        processor.onSubscribe(new Flow.Subscription() {
+            public void request(long n) {
+            }
+
+            public void cancel() {
+                cancels.incrementAndGet();
+            }
+        });
+
+        processor.onNext(txs.get(0));
+        assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+        // lets the failed batch shut the batch thread down
+        Thread.sleep(100);
+        // in flight when upstream was cancelled: dropped, neither thrown nor run into the failure again
+        processor.onNext(txs.get(1));
+        processor.onComplete();
+        Thread.sleep(100);
+        assertEquals(1, cancels.get());
+        assertTrue(subscriber.verdicts.isEmpty());
+    }
+
+    /** Emits the elements of a list synchronously on request and records the total demand */
+    private static class ListPublisher implements Flow.Publisher<Transaction> {
+        private final List<Transaction> items;
+        private final AtomicLong requested = new AtomicLong();
+        private int next;
+
+        ListPublisher(List<Transaction> items) {
+            this.items = items;
+        }
+
+        public void subscribe(Flow.Subscriber<? super Transaction> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                public synchronized void request(long n) {
+                    requested.addAndGet(n);
+                    for (long i = 0; i < n && next < items.size(); i++) {
+                        subscriber.onNext(items.get(next++));
+                    }
+                    if (next == items.size()) {
+                        next++;
+                        subscriber.onComplete();
+                    }
+                }
+
+                public void cancel() {
+                }
+            });
+        }
+    }
+
+    private static class CollectingSubscriber implements Flow.Subscriber<Verdict> {
+        private final long initialDemand;
+        private final List<Verdict> verdicts = new CopyOnWriteArrayList<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private volatile Flow.Subscription subscription;
+
+        CollectingSubscriber(long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialDemand > 0) {
+                subscription.request(initialDemand);
+            }
+        }
+
+        public void onNext(Verdict item) {
+            verdicts.add(item);
+            if (initialDemand > 0) {
+                subscription.request(initialDemand);
+            }
+        }
+
+        public void onError(Throwable throwable) {
+            completed.countDown();
+        }
+
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
@@ -0,0 +1,269 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TxIngestionServerTest {
+
+    private UtxoTestSet utxoTestSet;
+
+    @Before
+    public void preparation() throws Exception {
+        utxoTestSet = UtxoTestSet.builder()
+                .setPeopleSize(10)
+                .setUtxoTxNumber(10)
+                .setMaxUtxoTxOutput(10)
+                .setMaxValue(200)
+                .setTxPerTest(10)
+                .setMaxInput(10)
+                .setMaxOutput(10)
+                .setCorruptedPercentage(.20)
+                .setForceCorruptedSignature(true)
+                .setInvalidTotals(true)
+                .build();
+    }
+
+    @Test
+    public void testCodecRoundTrip() {
+        TransactionCodec codec = new TransactionCodec();
+        for (Transaction tx : utxoTestSet.getValidationLists().allElements()) {
+            byte[] encoded = codec.encode(tx);
+            assertEquals(codec.encodedSize(tx), encoded.length);
+            Transaction decoded = codec.decode(ByteBuffer.wrap(encoded));
+            assertArrayEquals(tx.getHash(), decoded.getHash());
+            assertArrayEquals(tx.getRawTx(), decoded.getRawTx());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCodecRejectsTruncatedInput() {
+        TransactionCodec codec = new TransactionCodec();
+        byte[] encoded = codec.encode(utxoTestSet.getValidationLists().allElements().get(0));
+        codec.decode(ByteBuffer.wrap(encoded, 0, encoded.length - 1));
+    }
+
+    @Test
+    public void testPipelinedVerdictsOverTcp() throws Exception {
+        ValidationLists<Transaction> lists = utxoTestSet.getValidationLists();
+        List<Transaction> txs = lists.allElements();
+        try (TxIngestionServer server = TxIngestionServer.tcp(new TxHandler(utxoTestSet.getUtxoPool()), 0);
+             TxIngestionClient client = new TxIngestionClient(server.getLocalAddress())) {
+            for (Transaction tx : txs) {
+                client.send(tx);
+            }
+            client.flush();
+            for (Transaction tx : txs) {
+                Verdict verdict = client.receive();
+                assertTrue(tx == verdict.getTransaction());
+                assertEquals(lists.isValid(tx), verdict.isAccepted());
+            }
+        }
+    }
+
+    @Test
+    public void testUnixDomainSocket() throws Exception {
+        Path dir = Files.createTempDirectory("tx-ingestion");
+        Path socket = dir.resolve("server.sock");
+        Transaction tx = utxoTestSet.getValidationLists().allElements().get(0);
+        try (TxIngestionServer server = TxIngestionServer.unixDomain(new TxHandler(utxoTestSet.getUtxoPool()), socket);
+             TxIngestionClient client = new TxIngestionClient(server.getLocalAddress())) {
+            assertEquals(utxoTestSet.getValidationLists().isValid(tx), client.submit(tx).isAccepted());
+        }
+        assertFalse(Files.exists(socket));
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testMalformedFrame() throws Exception {
+        try (TxIngestionServer server = TxIngestionServer.tcp(new TxHandler(utxoTestSet.getUtxoPool()), 0);
+             SocketChannel channel = SocketChannel.open(server.getLocalAddress())) {
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel));
+            DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+            out.writeInt(3);
+            out.write(new byte[]{1, 2, 3});
+            out.flush();
+            assertEquals(1, in.readInt());
+            assertEquals(TxIngestionServer.MALFORMED, in.readByte());
+        }
+    }
+
+    @Test
+    public void testMalformedTransactionDoesNotFailOtherClients() throws Exception {
+        ValidationLists<Transaction> lists = utxoTestSet.getValidationLists();
+        Transaction valid = lists.allElements().stream().filter(lists::isValid).findFirst().get();
+        Transaction noPrevHash = new Transaction();
+        noPrevHash.addInput((Hash256) null, 0);
+        noPrevHash.addOutput(0, valid.getOutput(0).address);
+        noPrevHash.addSignature(valid.getInput(0).signature, 0);
+        noPrevHash.finalize();
+        Transaction noInputs = new Transaction();
+        noInputs.addOutput(0, valid.getOutput(0).address);
+        noInputs.finalize();
+        // a long delay so that all three would share a batch
+        try (TxIngestionServer server = new TxIngestionServer(
+                new TxBatcher(new TxHandler(utxoTestSet.getUtxoPool()), 512, 100_000),
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+             TxIngestionClient malformed = new TxIngestionClient(server.getLocalAddress());
+             TxIngestionClient honest = new TxIngestionClient(server.getLocalAddress())) {
+            malformed.send(noPrevHash);
+            malformed.send(noInputs);
+            malformed.flush();
+            honest.send(valid);
+            honest.flush();
+            assertFalse(malformed.receive().isAccepted());
+            assertFalse(malformed.receive().isAccepted());
+            assertTrue(honest.receive().isAccepted());
+        }
+    }
+
+    @Test
+    public void testHandlerFailureOnlyFailsItsTransaction() throws Exception {
+        ValidationLists<Transaction> lists = utxoTestSet.getValidationLists();
+        List<Transaction> txs = lists.allElements();
+        Transaction poison = txs.get(0);
+        TxHandler failing = new TxHandler(utxoTestSet.getUtxoPool()) {
+            public Transaction[] handleTxs(Transaction[] possibleTxs) {
+                if (Arrays.asList(possibleTxs).contains(poison)) {
+                    throw new IllegalStateException("poison");
+                }
+                return super.handleTxs(possibleTxs);
+            }
+        };
+        TxBatcher batcher = new TxBatcher(failing, 512, 100_000);
+        try {
+            CompletableFuture<Verdict> poisoned = batcher.submit(poison);
+            CompletableFuture<Verdict> other = batcher.submit(txs.get(1));
+            assertEquals(lists.isValid(txs.get(1)), other.get(5, TimeUnit.SECONDS).isAccepted());
+            try {
+                poisoned.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException expected) {
+                assertEquals("poison", expected.getCause().getMessage());
+            }
+        } finally {
+            batcher.close();
+        }
+    }
+
+    @Test
+    public void testFailedEpochKeepsWhatItAccepted() throws Exception {
+        TestLedger ledger = new TestLedger(2, 10);
+        Transaction parent = ledger.spend(ledger.getRootHash(), 0, 9);
+        // spends the parent's only output, so the parent's outputs are no longer in the pool
+        Transaction child = ledger.spend(parent.getHash(), 0, 8);
+        Transaction poison = ledger.spend(ledger.getRootHash(), 1, 9);
+        TxHandler failing = new TxHandler(ledger.getUtxoPool()) {
+            public boolean isValidTx(Transaction tx) {
+                if (tx == poison) {
+                    throw new IllegalStateException("poison");
+                }
+                return super.isValidTx(tx);
+            }
+        };
+        TxBatcher batcher = new TxBatcher(failing, 512, 100_000);
+        try {
+            CompletableFuture<Verdict> parentVerdict = batcher.submit(parent);
+            CompletableFuture<Verdict> childVerdict = batcher.submit(child);
+            CompletableFuture<Verdict> poisoned = batcher.submit(poison);
+            assertTrue(parentVerdict.get(5, TimeUnit.SECONDS).isAccepted());
+            assertTrue(childVerdict.get(5, TimeUnit.SECONDS).isAccepted());
+            try {
+                poisoned.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException expected) {
+                assertEquals("poison", expected.getCause().getMessage());
+            }
+            assertTrue(failing.getUTXOPool().contains(new UTXO(child.getHash(), 0)));
+        } finally {
+            batcher.close();
+        }
+    }
+
+    @Test
+    public void testVerdictsAfterClientShutsDownOutput() throws Exception {
+        ValidationLists<Transaction> lists = utxoTestSet.getValidationLists();
+        Transaction tx = lists.allElements().get(0);
+        byte[] encoded = new TransactionCodec().encode(tx);
+        try (TxIngestionServer server = TxIngestionServer.tcp(new TxHandler(utxoTestSet.getUtxoPool()), 0);
+             SocketChannel channel = SocketChannel.open(server.getLocalAddress())) {
+            DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel));
+            DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+            out.writeInt(encoded.length);
+            out.write(encoded);
+            out.flush();
+            channel.shutdownOutput();
+            assertEquals(1 + tx.getHash().length, in.readInt());
+            assertEquals(lists.isValid(tx) ? TxIngestionServer.ACCEPTED : TxIngestionServer.REJECTED, in.readByte());
+            byte[] hash = new byte[tx.getHash().length];
+            in.readFully(hash);
+            assertArrayEquals(tx.getHash(), hash);
+            // the server closes the connection once everything is written
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void testSubmitBlockedOnFullBatcherFailsOnClose() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TxHandler stuck = new TxHandler(utxoTestSet.getUtxoPool()) {
+            public Transaction[] handleTxs(Transaction[] possibleTxs) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new Transaction[0];
+            }
+        };
+        List<Transaction> txs = utxoTestSet.getValidationLists().allElements();
+        TxBatcher batcher = new TxBatcher(stuck, 1, 0);
+        try {
+            // the worker is stuck on the first, the second fills the queue, the third blocks
+            batcher.submit(txs.get(0));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            batcher.submit(txs.get(1));
+            CompletableFuture<CompletableFuture<Verdict>> third = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return batcher.submit(txs.get(2));
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            Thread.sleep(50);
+            assertFalse(third.isDone());
+
+            batcher.close();
+            try {
+                // fails either on submission or through the queued verdict
+                third.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException expected) {
+                assertTrue(expected.getCause() instanceof IllegalStateException);
+            }
+        } finally {
+            release.countDown();
+        }
+    }
+}
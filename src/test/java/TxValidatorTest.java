@@ -0,0 +1,63 @@
+import static org.junit.Assert.assertEquals;
+
+import java.security.KeyPair;
+import java.security.SignatureException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TxValidatorTest {
+
+    private TestLedger ledger;
+    private TxValidator validator;
+
+    @Before
+    public void preparation() {
+        // two coins of value 10 owned by Scrooge
+        ledger = new TestLedger(2, 10);
+        validator = new TxValidator(ledger.getUtxoPool());
+    }
+
+    @Test
+    public void testReasons() throws SignatureException {
+        KeyPair scrooge = ledger.scrooge();
+        KeyPair alice = ledger.alice();
+        byte[] root = ledger.getRootHash();
+        assertEquals(ValidationResult.VALID, validator.validate(ledger.spend(scrooge, root, new int[]{0, 1}, 15, 5)));
+        assertEquals(ValidationResult.NULL_TX, validator.validate(null));
+        assertEquals(ValidationResult.DUPLICATE_INPUT, validator.validate(ledger.spend(scrooge, root, new int[]{0, 0}, 1)));
+        assertEquals(ValidationResult.MISSING_INPUT, validator.validate(ledger.spend(scrooge, root, 2, 1)));
+        assertEquals(ValidationResult.INSUFFICIENT_INPUTS, validator.validate(ledger.spend(scrooge, root, 0, 10.5)));
+        assertEquals(ValidationResult.INVALID_SIGNATURE, validator.validate(ledger.spend(alice, root, 0, 1)));
+
+        Transaction unsigned = new Transaction();
+        unsigned.addInput(root, 0);
+        unsigned.addOutput(1, alice.getPublic());
+        unsigned.finalize();
+        assertEquals(ValidationResult.MISSING_SIGNATURE, validator.validate(unsigned));
+
+        Transaction noPrevHash = new Transaction();
+        noPrevHash.addInput((Hash256) null, 0);
+        noPrevHash.addOutput(1, alice.getPublic());
+        noPrevHash.finalize();
+        assertEquals(ValidationResult.MISSING_INPUT, validator.validate(noPrevHash));
+    }
+
+    @Test
+    public void testCheapChecksRunBeforeSignatures() throws SignatureException {
+        KeyPair alice = ledger.alice();
+        byte[] root = ledger.getRootHash();
+        // wrong signer as well, but the negative output is found first
+        assertEquals(ValidationResult.NEGATIVE_OUTPUT, validator.validate(ledger.spend(alice, root, new int[]{0, 1}, 5, -1)));
+        assertEquals(ValidationResult.INSUFFICIENT_INPUTS, validator.validate(ledger.spend(alice, root, new int[]{0, 1}, 25)));
+
+        ValidationStats stats = validator.getStats();
+        assertEquals(1, stats.getCount(ValidationResult.NEGATIVE_OUTPUT));
+        assertEquals(1, stats.getCount(ValidationResult.INSUFFICIENT_INPUTS));
+        assertEquals(0, stats.getSignaturesVerified());
+        assertEquals(4, stats.getSignaturesSkipped());
+
+        assertEquals(ValidationResult.INVALID_SIGNATURE, validator.validate(ledger.spend(alice, root, new int[]{0, 1}, 5)));
+        assertEquals(1, stats.getSignaturesVerified());
+    }
+}
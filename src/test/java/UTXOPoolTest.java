@@ -0,0 +1,150 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+public class UTXOPoolTest {
+
+    private static UTXO utxo(int i) {
+        return new UTXO(new byte[]{(byte) i}, i);
+    }
+
+    private static Transaction.Output output(double value) {
+        return new Transaction().new Output(value, null);
+    }
+
+    @Test
+    public void testLayerReadsThroughAndRecordsChanges() {
+        UTXOPool base = new UTXOPool();
+        Transaction.Output one = output(1);
+        Transaction.Output two = output(2);
+        base.addUTXO(utxo(1), one);
+        base.addUTXO(utxo(2), two);
+
+        UTXOPool layer = base.layer();
+        assertEquals(1, layer.getDepth());
+        assertEquals(2, layer.size());
+        assertSame(one, layer.getTxOutput(utxo(1)));
+
+        layer.removeUTXO(utxo(1));
+        layer.addUTXO(utxo(3), output(3));
+        layer.removeUTXO(utxo(4));
+        assertFalse(layer.contains(utxo(1)));
+        assertNull(layer.getTxOutput(utxo(1)));
+        assertTrue(layer.contains(utxo(3)));
+        assertEquals(2, layer.size());
+        assertEquals(new HashSet<>(Arrays.asList(utxo(2), utxo(3))), new HashSet<>(layer.getAllUTXO()));
+        // the parent is untouched
+        assertEquals(2, base.size());
+        assertTrue(base.contains(utxo(1)));
+
+        // removed, then added again, then removed again
+        Transaction.Output again = output(4);
+        layer.addUTXO(utxo(1), again);
+        assertSame(again, layer.getTxOutput(utxo(1)));
+        assertEquals(3, layer.size());
+        layer.removeUTXO(utxo(1));
+        assertFalse(layer.contains(utxo(1)));
+        assertEquals(2, layer.size());
+
+        UTXOPool copy = new UTXOPool(layer);
+        assertEquals(0, copy.getDepth());
+        assertEquals(2, copy.size());
+        assertTrue(copy.contains(utxo(3)));
+    }
+
+    @Test
+    public void testAbsorbAndFlatten() {
+        UTXOPool base = new UTXOPool();
+        base.addUTXO(utxo(1), output(1));
+        UTXOPool first = base.layer();
+        first.addUTXO(utxo(2), output(2));
+        UTXOPool fork = base.layer();
+        fork.removeUTXO(utxo(1));
+        UTXOPool second = first.layer();
+        second.removeUTXO(utxo(2));
+        assertEquals(2, second.getDepth());
+
+        fork.flattenLayer();
+        first.absorbParent();
+        assertEquals(0, first.getDepth());
+        assertEquals(0, fork.getDepth());
+        assertEquals(1, second.getDepth());
+        assertEquals(2, first.size());
+        assertEquals(0, fork.size());
+        assertEquals(1, second.size());
+        assertTrue(second.contains(utxo(1)));
+        assertFalse(second.contains(utxo(2)));
+    }
+
+    @Test
+    public void testCommitmentDependsOnContentsOnly() {
+        UTXOPool base = new UTXOPool();
+        for (int i = 0; i < 50; i++) {
+            base.addUTXO(utxo(i), output(i));
+        }
+        UTXOPool layer = base.layer();
+        layer.removeUTXO(utxo(7));
+        layer.addUTXO(utxo(60), output(60));
+        layer.addUTXO(utxo(8), output(80));
+        UTXOPool second = layer.layer();
+        second.removeUTXO(utxo(60));
+
+        // the same outputs, added in reverse order
+        UTXOPool expected = new UTXOPool(60);
+        for (int i = 49; i >= 0; i--) {
+            if (i != 7) {
+                expected.addUTXO(utxo(i), output(i == 8 ? 80 : i));
+            }
+        }
+        assertArrayEquals(expected.getCommitment(), second.getCommitment());
+        assertArrayEquals(expected.getCommitment(), new UTXOPool(second).getCommitment());
+        layer.absorbParent();
+        assertArrayEquals(expected.getCommitment(), second.getCommitment());
+        second.flattenLayer();
+        assertArrayEquals(expected.getCommitment(), second.getCommitment());
+
+        second.addUTXO(utxo(8), output(81));
+        assertFalse(Arrays.equals(expected.getCommitment(), second.getCommitment()));
+        assertFalse(Arrays.equals(new UTXOPool().getCommitment(), second.getCommitment()));
+    }
+
+    @Test
+    public void testTrackedCommitmentMatchesComputed() {
+        UTXOPool base = new UTXOPool();
+        for (int i = 0; i < 20; i++) {
+            base.addUTXO(utxo(i), output(i));
+        }
+        UTXOPool untracked = base.layer();
+        untracked.removeUTXO(utxo(3));
+        untracked.addUTXO(utxo(4), output(40));
+        assertFalse(untracked.tracksCommitment());
+        byte[] computed = untracked.getCommitment();
+
+        // tracking starts from the current contents, the layer's changes included
+        untracked.trackCommitment();
+        assertTrue(base.tracksCommitment());
+        assertTrue(untracked.tracksCommitment());
+        assertArrayEquals(computed, untracked.getCommitment());
+
+        UTXOPool layer = untracked.layer();
+        assertTrue(layer.tracksCommitment());
+        layer.addUTXO(utxo(30), output(30));
+        layer.removeUTXO(utxo(5));
+        UTXOPool copy = new UTXOPool(layer);
+        assertFalse(copy.tracksCommitment());
+        assertArrayEquals(copy.getCommitment(), layer.getCommitment());
+
+        untracked.absorbParent();
+        layer.absorbParent();
+        assertTrue(layer.tracksCommitment());
+        assertArrayEquals(copy.getCommitment(), layer.getCommitment());
+    }
+}
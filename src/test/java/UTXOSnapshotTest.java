@@ -0,0 +1,125 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UTXOSnapshotTest {
+
+    private static WorkloadGenerator.Workload workload;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void generateWorkload() throws IOException {
+        workload = new WorkloadGenerator(WorkloadKeys.load())
+                .setSeed(5)
+                .setTransactions(600)
+                .setConflictRate(0.05)
+                .setMaxChainDepth(3)
+                .setChainProbability(0.3)
+                .setShuffle(false)
+                .generate();
+    }
+
+    private static void assertSamePool(UTXOPool expected, UTXOPool actual) {
+        assertEquals(new HashSet<>(expected.getAllUTXO()), new HashSet<>(actual.getAllUTXO()));
+        for (UTXO utxo : expected.getAllUTXO()) {
+            Transaction.Output output = expected.getTxOutput(utxo);
+            assertEquals(output.value, actual.getTxOutput(utxo).value, 0);
+            assertArrayEquals(output.address.getEncoded(), actual.getTxOutput(utxo).address.getEncoded());
+        }
+    }
+
+    private static List<Transaction[]> epochs(int size) {
+        Transaction[] txs = workload.getTransactions();
+        List<Transaction[]> epochs = new ArrayList<>();
+        for (int from = 0; from < txs.length; from += size) {
+            epochs.add(Arrays.copyOfRange(txs, from, Math.min(txs.length, from + size)));
+        }
+        return epochs;
+    }
+
+    @Test
+    public void testWriteAndReadBack() throws Exception {
+        Path directory = folder.newFolder().toPath();
+        UTXOPool pool = workload.getUtxoPool();
+        for (long epoch = 1; epoch <= 3; epoch++) {
+            UTXOSnapshot.write(directory, pool, epoch);
+        }
+
+        assertEquals(UTXOSnapshot.RETAINED, directory.toFile().list().length);
+        UTXOSnapshot latest = UTXOSnapshot.latest(directory);
+        assertEquals(3, latest.getEpoch());
+        assertSamePool(pool, latest.getUtxoPool());
+        assertArrayEquals(pool.getCommitment(), latest.getCommitment());
+        assertArrayEquals(latest.getCommitment(), latest.getUtxoPool().getCommitment());
+        assertNull(UTXOSnapshot.latest(directory.resolve("missing")));
+    }
+
+    @Test
+    public void testDamagedSnapshotIsSkipped() throws Exception {
+        Path directory = folder.newFolder().toPath();
+        UTXOPool pool = workload.getUtxoPool();
+        UTXOSnapshot.write(directory, pool, 1);
+        Path latest = UTXOSnapshot.write(directory, pool, 2);
+
+        byte[] bytes = Files.readAllBytes(latest);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(latest, bytes);
+        try {
+            UTXOSnapshot.read(latest);
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(1, UTXOSnapshot.latest(directory).getEpoch());
+
+        Files.write(latest, Arrays.copyOf(bytes, bytes.length - 1));
+        assertEquals(1, UTXOSnapshot.latest(directory).getEpoch());
+    }
+
+    @Test
+    public void testResumeFromPipelineSnapshot() throws Exception {
+        Path directory = folder.newFolder().toPath();
+        List<Transaction[]> epochs = epochs(40);
+        EpochPipeline pipeline = new EpochPipeline(workload.getUtxoPool(), TxSelectionStrategies.firstCome());
+        pipeline.setSnapshots(directory, 4);
+        List<UTXOPool> pools = new ArrayList<>();
+        for (Transaction[] epoch : epochs) {
+            pipeline.handleTxs(epoch);
+            pools.add(new UTXOPool(pipeline.getUTXOPool()));
+        }
+        pipeline.awaitSnapshot();
+        assertEquals(0, pipeline.getUTXOPool().getDepth());
+        assertTrue(pipeline.getUTXOPool().tracksCommitment());
+
+        UTXOSnapshot snapshot = UTXOSnapshot.latest(directory);
+        assertNotNull(snapshot);
+        // a snapshot due while the previous one is written is deferred, so it need not be a multiple of 4
+        assertTrue(snapshot.getEpoch() >= 4);
+        assertSamePool(pools.get((int) snapshot.getEpoch() - 1), snapshot.getUtxoPool());
+
+        Path history = folder.newFile("history.bin").toPath();
+        HistoryImporter.write(history, epochs);
+        EpochPipeline resumed = EpochPipeline.resume(snapshot, TxSelectionStrategies.firstCome());
+        HistoryImporter.Progress progress = new HistoryImporter(resumed, 2).importFile(history, snapshot.getEpoch());
+        assertEquals(epochs.size() - snapshot.getEpoch(), progress.getEpochs());
+        assertEquals(epochs.size(), resumed.getEpoch());
+        assertSamePool(pipeline.getUTXOPool(), resumed.getUTXOPool());
+    }
+}
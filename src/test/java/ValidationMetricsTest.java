@@ -0,0 +1,97 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.Test;
+
+public class ValidationMetricsTest {
+
+    private static UtxoTestSet testSet() throws Exception {
+        return UtxoTestSet.builder()
+                .setPeopleSize(10)
+                .setUtxoTxNumber(10)
+                .setMaxUtxoTxOutput(10)
+                .setMaxValue(200)
+                .setTxPerTest(10)
+                .setMaxInput(10)
+                .setMaxOutput(10)
+                .setCorruptedPercentage(.20)
+                .build();
+    }
+
+    private static long stageCount(TabularData stages, ValidationStats.Stage stage) {
+        CompositeData row = stages.get(new Object[]{stage.name()});
+        return (Long) row.get("value");
+    }
+
+    @Test
+    public void testAttributesThroughMBeanServer() throws Exception {
+        UtxoTestSet utxoTestSet = testSet();
+        EpochPipeline pipeline = new EpochPipeline(utxoTestSet.getUtxoPool(), TxSelectionStrategies.greedyFee());
+        ValidationMetrics metrics = pipeline.registerMetrics("test-" + System.nanoTime());
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = metrics.getObjectName();
+            assertTrue(server.isRegistered(name));
+            assertFalse((Boolean) server.getAttribute(name, "TimingEnabled"));
+
+            server.setAttribute(name, new Attribute("TimingEnabled", true));
+            assertTrue(pipeline.getValidationStats().isTimingEnabled());
+            Transaction[] accepted = pipeline.handleTxs(utxoTestSet.getValidationLists().allElements().toArray(new Transaction[0]));
+
+            assertEquals(1L, server.getAttribute(name, "Epochs"));
+            assertEquals((long) pipeline.getUTXOPool().size(), server.getAttribute(name, "PoolSize"));
+            assertTrue(accepted.length > 0);
+            TabularData stages = (TabularData) server.getAttribute(name, "StageCounts");
+            assertEquals(1, stageCount(stages, ValidationStats.Stage.EPOCH));
+            assertTrue(stageCount(stages, ValidationStats.Stage.STRUCTURE) > 0);
+            assertEquals(pipeline.getValidationStats().getSignaturesVerified(), stageCount(stages, ValidationStats.Stage.SIGNATURE));
+            assertTrue(metrics.getP99Micros().get("EPOCH") > 0);
+
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, server.getAttribute(name, "Epochs"));
+        } finally {
+            metrics.unregister();
+        }
+        assertEquals(null, metrics.getObjectName());
+    }
+
+    @Test
+    public void testStagesNotTimedByDefault() throws Exception {
+        UtxoTestSet utxoTestSet = testSet();
+        EpochPipeline pipeline = new EpochPipeline(utxoTestSet.getUtxoPool(), TxSelectionStrategies.packageFee());
+        pipeline.handleTxs(utxoTestSet.getValidationLists().allElements().toArray(new Transaction[0]));
+
+        ValidationMetrics metrics = new ValidationMetrics(pipeline.getValidationStats());
+        assertEquals(1, metrics.getEpochs());
+        for (Map.Entry<String, Long> stage : metrics.getStageCounts().entrySet()) {
+            assertEquals(stage.getKey(), 0L, (long) stage.getValue());
+        }
+        assertTrue(metrics.getResultCounts().get("VALID") > 0);
+    }
+
+    @Test
+    public void testTxHandlerRecordsEpochs() throws Exception {
+        UtxoTestSet utxoTestSet = testSet();
+        TxHandler txHandler = new TxHandler(utxoTestSet.getUtxoPool());
+        txHandler.handleTxs(utxoTestSet.getValidationLists().allElements().toArray(new Transaction[0]));
+
+        ValidationStats stats = txHandler.getValidationStats();
+        assertEquals(1, stats.getEpochs());
+        assertEquals(txHandler.getUTXOPool().size(), stats.getPoolSize());
+        assertEquals(0, stats.getStage(ValidationStats.Stage.EPOCH).getCount());
+
+        stats.setTimingEnabled(true);
+        txHandler.handleTxs(new Transaction[0]);
+        assertEquals(2, stats.getEpochs());
+        assertEquals(1, stats.getStage(ValidationStats.Stage.EPOCH).getCount());
+    }
+}
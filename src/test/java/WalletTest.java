@@ -0,0 +1,111 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.security.KeyPair;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class WalletTest {
+
+    private KeyPair alice;
+    private KeyPair bob;
+    private UTXOPool utxoPool;
+    private Wallet wallet;
+
+    @Before
+    public void preparation() throws IOException {
+        WorkloadKeys keys = WorkloadKeys.load();
+        alice = keys.get(0);
+        bob = keys.get(1);
+
+        // coins of 1, 2, 5 and 10 owned by Alice and one of 100 owned by Bob, out of thin air
+        Transaction root = new Transaction();
+        root.addInput(new byte[]{0}, 0);
+        for (double value : new double[]{1, 2, 5, 10}) {
+            root.addOutput(value, alice.getPublic());
+        }
+        root.addOutput(100, bob.getPublic());
+        root.finalize();
+        utxoPool = new UTXOPool();
+        for (int i = 0; i < root.numOutputs(); i++) {
+            utxoPool.addUTXO(new UTXO(root.getHash(), i), root.getOutput(i));
+        }
+        wallet = new Wallet(alice);
+        wallet.scan(utxoPool);
+    }
+
+    private static double sum(Transaction tx, UTXOPool utxoPool) {
+        double sum = 0;
+        for (Transaction.Input in : tx.getInputs()) {
+            sum += utxoPool.getTxOutput(new UTXO(in.prevTxId, in.outputIndex)).value;
+        }
+        return sum;
+    }
+
+    @Test
+    public void testBranchAndBoundFindsExactMatch() {
+        assertArrayEquals(new boolean[]{false, true, false, true},
+                Wallet.branchAndBound(new double[]{10, 5, 2, 1}, 6, 0));
+        assertArrayEquals(new boolean[]{false, true, true, false},
+                Wallet.branchAndBound(new double[]{10, 5, 2, 1}, 6.5, 0.6));
+        assertNull(Wallet.branchAndBound(new double[]{10, 5, 2, 1}, 4.5, 0.2));
+        assertNull(Wallet.branchAndBound(new double[]{10, 5, 2, 1}, 19, 0));
+        // many equal values must not blow up the search
+        double[] equal = new double[200];
+        Arrays.fill(equal, 1);
+        assertNull(Wallet.branchAndBound(equal, 150.5, 0.1));
+    }
+
+    @Test
+    public void testExactPaymentHasNoChange() {
+        assertEquals(18, wallet.getBalance(), 0);
+        Transaction tx = wallet.newPayment().addRecipient(bob.getPublic(), 7).build();
+
+        assertEquals(1, tx.numOutputs());
+        assertEquals(7, sum(tx, utxoPool), 0);
+        assertTrue(new TxHandler(utxoPool).isValidTx(tx));
+        assertEquals(11, wallet.getBalance(), 0);
+    }
+
+    @Test
+    public void testPaymentWithChangeAndFee() {
+        double feeRate = 0.001;
+        // no coins come within the cost of change of 13.5 and its fee, so 10 and 5 are spent with change
+        Transaction tx = wallet.newPayment().addRecipient(bob.getPublic(), 13.5).setFeeRate(feeRate).build();
+
+        assertEquals(2, tx.numOutputs());
+        assertSame(alice.getPublic(), tx.getOutput(1).address);
+        assertEquals(15, sum(tx, utxoPool), 0);
+        double fee = 15 - 13.5 - tx.getOutput(1).value;
+        assertEquals(feeRate * tx.getRawTx().length, fee, 1e-9);
+        assertTrue(new TxHandler(utxoPool).isValidTx(tx));
+
+        // the change is a coin once an epoch accepts the payment
+        assertEquals(3, wallet.getBalance(), 0);
+        wallet.applyEpoch(new TxHandler(utxoPool).handleTxs(new Transaction[]{tx}));
+        assertEquals(18 - 13.5 - fee, wallet.getBalance(), 1e-9);
+        assertEquals(3, wallet.getCoins().size());
+    }
+
+    @Test
+    public void testReservedCoinsAreNotSpentTwice() {
+        Transaction first = wallet.newPayment().addRecipient(bob.getPublic(), 15).build();
+        try {
+            wallet.newPayment().addRecipient(bob.getPublic(), 4).build();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+
+        wallet.release(first);
+        assertEquals(18, wallet.getBalance(), 0);
+        Transaction second = wallet.newPayment().addRecipient(bob.getPublic(), 4).build();
+        assertTrue(new TxHandler(utxoPool).isValidTx(second));
+    }
+}
@@ -0,0 +1,417 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Seedable generator of large epochs, with the keys of {@link WorkloadKeys}. The same seed and
+ * parameters always produce the same transactions with the same hashes.
+ * <p>
+ * The coins of the UTXO pool are outputs of root transactions that are not part of the epoch.
+ * An epoch is made of families: a transaction spending 1 to {@code maxInputs} fresh coins into 1
+ * to {@code maxOutputs} outputs, followed, with probability {@code chainProbability} at each
+ * step, by a child spending outputs of the previous transaction, up to {@code maxChainDepth}
+ * transactions in a chain. With probability {@code conflictRate} a transaction gets a double
+ * spend of its first input. Fees follow {@code feeDistribution} with mean {@code meanFee}, capped
+ * at half the value spent.
+ * <p>
+ * The structure is planned sequentially from one {@link SplittableRandom}, then transactions are
+ * signed in parallel, a dependency level at a time. Since RSA PKCS#1 v1.5 signatures are
+ * deterministic, the result does not depend on the thread schedule. {@link #generateOrLoad(Path)}
+ * keeps the result in a fixture file named after the parameters, so later runs only decode it.
+ */
+public class WorkloadGenerator {
+
+    public enum FeeDistribution {
+        UNIFORM {
+            double sample(SplittableRandom random, double mean) {
+                return 2 * mean * random.nextDouble();
+            }
+        },
+        EXPONENTIAL {
+            double sample(SplittableRandom random, double mean) {
+                return -mean * Math.log(1 - random.nextDouble());
+            }
+        },
+        /** Heavy tailed, shape 2: a few transactions pay most of the fees */
+        PARETO {
+            double sample(SplittableRandom random, double mean) {
+                return mean / 2 / Math.sqrt(1 - random.nextDouble());
+            }
+        };
+
+        abstract double sample(SplittableRandom random, double mean);
+    }
+
+    private static final int FIXTURE_MAGIC = 0x574b4c44;
+    private static final int COINS_PER_ROOT = 1000;
+
+    private final WorkloadKeys keys;
+    private long seed = 42;
+    private int transactions = 10_000;
+    private double conflictRate = 0.1;
+    private int maxChainDepth = 3;
+    private double chainProbability = 0.5;
+    private int maxInputs = 2;
+    private int maxOutputs = 2;
+    private FeeDistribution feeDistribution = FeeDistribution.EXPONENTIAL;
+    private double meanFee = 0.5;
+    private double coinValue = 10;
+    private boolean shuffle = true;
+
+    public WorkloadGenerator(WorkloadKeys keys) {
+        this.keys = keys;
+    }
+
+    public WorkloadGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /** Number of transactions of the epoch, double spends included */
+    public WorkloadGenerator setTransactions(int transactions) {
+        this.transactions = transactions;
+        return this;
+    }
+
+    /** Probability that a transaction gets a double spend */
+    public WorkloadGenerator setConflictRate(double conflictRate) {
+        this.conflictRate = conflictRate;
+        return this;
+    }
+
+    /** Longest chain of dependent transactions, 1 for independent transactions only */
+    public WorkloadGenerator setMaxChainDepth(int maxChainDepth) {
+        this.maxChainDepth = maxChainDepth;
+        return this;
+    }
+
+    /** Probability that a chain shorter than the maximum depth gets another child */
+    public WorkloadGenerator setChainProbability(double chainProbability) {
+        this.chainProbability = chainProbability;
+        return this;
+    }
+
+    /** Fan-in: the most inputs of a transaction */
+    public WorkloadGenerator setMaxInputs(int maxInputs) {
+        this.maxInputs = maxInputs;
+        return this;
+    }
+
+    /** Fan-out: the most outputs of a transaction */
+    public WorkloadGenerator setMaxOutputs(int maxOutputs) {
+        this.maxOutputs = maxOutputs;
+        return this;
+    }
+
+    public WorkloadGenerator setFeeDistribution(FeeDistribution feeDistribution, double meanFee) {
+        this.feeDistribution = feeDistribution;
+        this.meanFee = meanFee;
+        return this;
+    }
+
+    public WorkloadGenerator setCoinValue(double coinValue) {
+        this.coinValue = coinValue;
+        return this;
+    }
+
+    /** Whether the epoch is shuffled (with the seed) rather than proposed parents first */
+    public WorkloadGenerator setShuffle(boolean shuffle) {
+        this.shuffle = shuffle;
+        return this;
+    }
+
+    /** @return the parameters, which identify the workload together with the keys */
+    public String describe() {
+        return String.format("seed=%d transactions=%d conflictRate=%s maxChainDepth=%d chainProbability=%s "
+                        + "maxInputs=%d maxOutputs=%d fees=%s/%s coinValue=%s shuffle=%b keys=%d/%08x",
+                seed, transactions, conflictRate, maxChainDepth, chainProbability, maxInputs, maxOutputs,
+                feeDistribution, meanFee, coinValue, shuffle, keys.size(),
+                Arrays.hashCode(keys.get(0).getPublic().getEncoded()));
+    }
+
+    /** A generated epoch: the root transactions whose outputs are the pool, and the candidates */
+    public static class Workload {
+        private final Transaction[] roots;
+        private final Transaction[] txs;
+
+        Workload(Transaction[] roots, Transaction[] txs) {
+            this.roots = roots;
+            this.txs = txs;
+        }
+
+        /** @return a new pool holding the outputs of the root transactions */
+        public UTXOPool getUtxoPool() {
+            UTXOPool pool = new UTXOPool();
+            for (Transaction root : roots) {
+                for (int i = 0; i < root.numOutputs(); i++) {
+                    pool.addUTXO(new UTXO(root.getHash(), i), root.getOutput(i));
+                }
+            }
+            return pool;
+        }
+
+        public Transaction[] getRoots() {
+            return roots;
+        }
+
+        /** @return the candidate transactions, shared: callers must not modify the array */
+        public Transaction[] getTransactions() {
+            return txs;
+        }
+
+        /** Writes the workload as {@link TransactionCodec} encoded transactions, described by {@code description} */
+        public void write(Path file, String description) throws IOException {
+            TransactionCodec codec = new TransactionCodec();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+                out.writeInt(FIXTURE_MAGIC);
+                out.writeUTF(description);
+                for (Transaction[] section : new Transaction[][]{roots, txs}) {
+                    out.writeInt(section.length);
+                    for (Transaction tx : section) {
+                        byte[] encoded = codec.encode(tx);
+                        out.writeInt(encoded.length);
+                        out.write(encoded);
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the workload written to {@code file} with {@code description}
+         * @throws IOException if the file cannot be read or holds another workload
+         */
+        public static Workload read(Path file, String description) throws IOException {
+            return read(file, description, true);
+        }
+
+        /**
+         * @return the workload written to {@code file}, whatever its description, e.g. a recorded
+         *         stream to replay
+         * @throws IOException if the file cannot be read or holds no workload
+         */
+        public static Workload read(Path file) throws IOException {
+            return read(file, null, false);
+        }
+
+        private static Workload read(Path file, String description, boolean check) throws IOException {
+            TransactionCodec codec = new TransactionCodec();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+                if (in.readInt() != FIXTURE_MAGIC || (!in.readUTF().equals(description) && check)) {
+                    throw new IOException("Not a fixture of " + description + ": " + file);
+                }
+                Transaction[][] sections = new Transaction[2][];
+                byte[] buffer = new byte[1024];
+                for (int s = 0; s < sections.length; s++) {
+                    sections[s] = new Transaction[in.readInt()];
+                    for (int i = 0; i < sections[s].length; i++) {
+                        int length = in.readInt();
+                        if (buffer.length < length) {
+                            buffer = new byte[Math.max(length, 2 * buffer.length)];
+                        }
+                        in.readFully(buffer, 0, length);
+                        sections[s][i] = codec.decode(ByteBuffer.wrap(buffer, 0, length));
+                    }
+                }
+                return new Workload(sections[0], sections[1]);
+            }
+        }
+    }
+
+    /**
+     * @return the workload of the fixture in {@code directory} for these parameters, generated and
+     *         written there first if there is none
+     */
+    public Workload generateOrLoad(Path directory) throws IOException {
+        String description = describe();
+        Path file = directory.resolve(String.format("workload-%08x.bin", description.hashCode()));
+        if (Files.exists(file)) {
+            try {
+                return Workload.read(file, description);
+            } catch (IOException | IllegalArgumentException e) {
+                // a stale or truncated fixture, generated again below
+            }
+        }
+        Workload workload = generate();
+        Files.createDirectories(directory);
+        Path partial = Files.createTempFile(directory, "workload", ".partial");
+        workload.write(partial, description);
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return workload;
+    }
+
+    /** A planned transaction: what it spends and pays, before it is built and signed */
+    private static class Draft {
+        /** per input: the spent draft, or -1 - coin for a coin of the pool */
+        final int[] sources;
+        final int[] sourceIndexes;
+        final int[] signers;
+        final double[] values;
+        final int[] owners;
+        final int level;
+        Transaction tx;
+
+        Draft(int[] sources, int[] sourceIndexes, int[] signers, double[] values, int[] owners, int level) {
+            this.sources = sources;
+            this.sourceIndexes = sourceIndexes;
+            this.signers = signers;
+            this.values = values;
+            this.owners = owners;
+            this.level = level;
+        }
+    }
+
+    public Workload generate() {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Draft> drafts = new ArrayList<>(transactions);
+        int[] coinOwners = new int[16];
+        int coins = 0;
+        int maxLevel = 0;
+        while (drafts.size() < transactions) {
+            int inputs = 1 + random.nextInt(maxInputs);
+            int[] sources = new int[inputs];
+            int[] sourceIndexes = new int[inputs];
+            int[] signers = new int[inputs];
+            for (int i = 0; i < inputs; i++) {
+                if (coins == coinOwners.length) {
+                    coinOwners = Arrays.copyOf(coinOwners, 2 * coins);
+                }
+                coinOwners[coins] = random.nextInt(keys.size());
+                sources[i] = -1 - coins;
+                signers[i] = coinOwners[coins++];
+            }
+            Draft draft = plan(random, sources, sourceIndexes, signers, inputs * coinValue, 0);
+            int draftIndex = drafts.size();
+            drafts.add(draft);
+            maybeConflict(random, drafts, draft, coinValue);
+            for (int depth = 1; depth < maxChainDepth && drafts.size() < transactions
+                    && random.nextDouble() < chainProbability; depth++) {
+                Draft parent = draft;
+                int parentIndex = draftIndex;
+                inputs = 1 + random.nextInt(Math.min(maxInputs, parent.values.length));
+                sources = new int[inputs];
+                sourceIndexes = new int[inputs];
+                signers = new int[inputs];
+                double value = 0;
+                for (int i = 0; i < inputs; i++) {
+                    sources[i] = parentIndex;
+                    sourceIndexes[i] = i;
+                    signers[i] = parent.owners[i];
+                    value += parent.values[i];
+                }
+                draft = plan(random, sources, sourceIndexes, signers, value, depth);
+                draftIndex = drafts.size();
+                drafts.add(draft);
+                maybeConflict(random, drafts, draft, parent.values[0]);
+                maxLevel = Math.max(maxLevel, depth);
+            }
+        }
+
+        Transaction[] roots = new Transaction[(coins + COINS_PER_ROOT - 1) / COINS_PER_ROOT];
+        int coinCount = coins;
+        int[] owners = coinOwners;
+        IntStream.range(0, roots.length).parallel().forEach(r -> {
+            Transaction root = new Transaction();
+            root.addInput(ByteBuffer.allocate(Long.BYTES + Integer.BYTES).putLong(seed).putInt(r).array(), 0);
+            for (int coin = r * COINS_PER_ROOT; coin < Math.min(coinCount, (r + 1) * COINS_PER_ROOT); coin++) {
+                root.addOutput(coinValue, keys.get(owners[coin]).getPublic());
+            }
+            root.finalize();
+            roots[r] = root;
+        });
+
+        ThreadLocal<Signature> signature = ThreadLocal.withInitial(() -> {
+            try {
+                return Signature.getInstance("SHA256withRSA");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        for (int level = 0; level <= maxLevel; level++) {
+            int current = level;
+            drafts.parallelStream().filter(draft -> draft.level == current).forEach(draft -> {
+                Transaction tx = new Transaction();
+                for (int i = 0; i < draft.sources.length; i++) {
+                    int source = draft.sources[i];
+                    if (source < 0) {
+                        int coin = -1 - source;
+                        tx.addInput(roots[coin / COINS_PER_ROOT].getHash(), coin % COINS_PER_ROOT);
+                    } else {
+                        tx.addInput(drafts.get(source).tx.getHash(), draft.sourceIndexes[i]);
+                    }
+                }
+                for (int i = 0; i < draft.values.length; i++) {
+                    tx.addOutput(draft.values[i], keys.get(draft.owners[i]).getPublic());
+                }
+                for (int i = 0; i < draft.sources.length; i++) {
+                    tx.addSignature(sign(signature.get(), keys.get(draft.signers[i]).getPrivate(), tx.getRawDataToSign(i)), i);
+                }
+                tx.finalize();
+                draft.tx = tx;
+            });
+        }
+
+        List<Transaction> txs = new ArrayList<>(drafts.size());
+        for (Draft draft : drafts) {
+            txs.add(draft.tx);
+        }
+        if (shuffle) {
+            Collections.shuffle(txs, new Random(seed));
+        }
+        return new Workload(roots, txs.toArray(new Transaction[txs.size()]));
+    }
+
+    /** Plans a transaction spending {@code value}, paying a sampled fee and splitting the rest */
+    private Draft plan(SplittableRandom random, int[] sources, int[] sourceIndexes, int[] signers, double value, int level) {
+        double fee = Math.min(feeDistribution.sample(random, meanFee), value / 2);
+        int outputs = 1 + random.nextInt(maxOutputs);
+        double[] weights = new double[outputs];
+        double totalWeight = 0;
+        for (int i = 0; i < outputs; i++) {
+            weights[i] = 0.5 + random.nextDouble();
+            totalWeight += weights[i];
+        }
+        double[] values = new double[outputs];
+        int[] owners = new int[outputs];
+        for (int i = 0; i < outputs; i++) {
+            values[i] = (value - fee) * weights[i] / totalWeight;
+            owners[i] = random.nextInt(keys.size());
+        }
+        return new Draft(sources, sourceIndexes, signers, values, owners, level);
+    }
+
+    /** With probability {@code conflictRate} adds a double spend of the first input of {@code draft} */
+    private void maybeConflict(SplittableRandom random, List<Draft> drafts, Draft draft, double value) {
+        if (drafts.size() < transactions && random.nextDouble() < conflictRate) {
+            drafts.add(plan(random, new int[]{draft.sources[0]}, new int[]{draft.sourceIndexes[0]},
+                    new int[]{draft.signers[0]}, value, draft.level));
+        }
+    }
+
+    private static byte[] sign(Signature sig, PrivateKey key, byte[] data) {
+        try {
+            sig.initSign(key);
+            sig.update(data);
+            return sig.sign();
+        } catch (InvalidKeyException | SignatureException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WorkloadGeneratorTest {
+
+    private static WorkloadKeys keys;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void loadKeys() throws IOException {
+        keys = WorkloadKeys.load();
+    }
+
+    private static byte[][] hashes(Transaction[] txs) {
+        byte[][] hashes = new byte[txs.length][];
+        for (int i = 0; i < txs.length; i++) {
+            hashes[i] = txs[i].getHash();
+        }
+        return hashes;
+    }
+
+    @Test
+    public void testSameSeedSameEpoch() {
+        WorkloadGenerator generator = new WorkloadGenerator(keys).setSeed(7).setTransactions(300);
+        Transaction[] first = generator.generate().getTransactions();
+        Transaction[] second = new WorkloadGenerator(keys).setSeed(7).setTransactions(300).generate().getTransactions();
+        Transaction[] other = generator.setSeed(8).generate().getTransactions();
+
+        assertEquals(300, first.length);
+        assertArrayEquals(hashes(first), hashes(second));
+        assertFalse(Arrays.equals(first[0].getHash(), other[0].getHash()));
+    }
+
+    @Test
+    public void testShapeParameters() {
+        WorkloadGenerator.Workload independent = new WorkloadGenerator(keys)
+                .setTransactions(200).setConflictRate(0).setMaxChainDepth(1).setMaxInputs(3).setMaxOutputs(4)
+                .generate();
+        CandidateGraph graph = new CandidateGraph(independent.getTransactions(), independent.getUtxoPool());
+        assertEquals(0, graph.numConflictGroups());
+        for (int i = 0; i < graph.length(); i++) {
+            assertEquals(0, graph.getParents(i).length);
+            assertTrue(graph.getTransaction(i).numInputs() <= 3);
+            assertTrue(graph.getTransaction(i).numOutputs() <= 4);
+        }
+
+        WorkloadGenerator.Workload chained = new WorkloadGenerator(keys)
+                .setTransactions(200).setConflictRate(0.5).setMaxChainDepth(4).setChainProbability(1)
+                .generate();
+        graph = new CandidateGraph(chained.getTransactions(), chained.getUtxoPool());
+        assertTrue(graph.numConflictGroups() > 0);
+        int[] depth = new int[graph.length()];
+        int maxDepth = 0;
+        for (int i : graph.topologicalOrder()) {
+            depth[i] = 1;
+            for (int parent : graph.getParents(i)) {
+                depth[i] = Math.max(depth[i], depth[parent] + 1);
+            }
+            maxDepth = Math.max(maxDepth, depth[i]);
+        }
+        assertEquals(4, maxDepth);
+        for (boolean valid : graph.validate(chained.getUtxoPool())) {
+            assertTrue(valid);
+        }
+    }
+
+    @Test
+    public void testFixtureRoundTrip() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        WorkloadGenerator generator = new WorkloadGenerator(keys).setTransactions(100);
+        WorkloadGenerator.Workload generated = generator.generateOrLoad(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+        WorkloadGenerator.Workload loaded = generator.generateOrLoad(directory);
+
+        assertArrayEquals(hashes(generated.getTransactions()), hashes(loaded.getTransactions()));
+        assertArrayEquals(hashes(generated.getRoots()), hashes(loaded.getRoots()));
+        assertEquals(generated.getUtxoPool().getAllUTXO().size(), loaded.getUtxoPool().getAllUTXO().size());
+    }
+}
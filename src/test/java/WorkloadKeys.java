@@ -0,0 +1,109 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+
+/**
+ * Pre-generated RSA key pairs for generated workloads, so that no benchmark pays for key generation
+ * and the same keys, hence the same signatures and transaction hashes, are used on every run. The
+ * keys ship as the test resource {@value #RESOURCE}:
+ *
+ * <pre>
+ * int count, per key: int length, PKCS#8 private key, int length, X.509 public key
+ * </pre>
+ *
+ * Usage to regenerate it: {@code WorkloadKeys [count] [bits] [file]}, default 64 keys of 512 bits
+ * written to {@code src/test/resources/workload-keys.bin}.
+ */
+public class WorkloadKeys {
+
+    public static final String RESOURCE = "/workload-keys.bin";
+
+    private final KeyPair[] keys;
+
+    private WorkloadKeys(KeyPair[] keys) {
+        this.keys = keys;
+    }
+
+    /** @return the keys of the {@value #RESOURCE} resource */
+    public static WorkloadKeys load() throws IOException {
+        try (InputStream in = WorkloadKeys.class.getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                throw new IOException("Missing resource " + RESOURCE);
+            }
+            return read(in);
+        }
+    }
+
+    public static WorkloadKeys read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        try {
+            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+            KeyPair[] keys = new KeyPair[data.readInt()];
+            for (int i = 0; i < keys.length; i++) {
+                byte[] privateKey = new byte[data.readInt()];
+                data.readFully(privateKey);
+                byte[] publicKey = new byte[data.readInt()];
+                data.readFully(publicKey);
+                keys[i] = new KeyPair(keyFactory.generatePublic(new X509EncodedKeySpec(publicKey)),
+                        keyFactory.generatePrivate(new PKCS8EncodedKeySpec(privateKey)));
+            }
+            return new WorkloadKeys(keys);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Invalid key", e);
+        }
+    }
+
+    public static WorkloadKeys generate(int count, int bits) throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(bits);
+        KeyPair[] keys = new KeyPair[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = generator.generateKeyPair();
+        }
+        return new WorkloadKeys(keys);
+    }
+
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(keys.length);
+        for (KeyPair key : keys) {
+            byte[] privateKey = key.getPrivate().getEncoded();
+            data.writeInt(privateKey.length);
+            data.write(privateKey);
+            byte[] publicKey = key.getPublic().getEncoded();
+            data.writeInt(publicKey.length);
+            data.write(publicKey);
+        }
+        data.flush();
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public KeyPair get(int i) {
+        return keys[i];
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int bits = args.length > 1 ? Integer.parseInt(args[1]) : 512;
+        Path file = Paths.get(args.length > 2 ? args[2] : "src/test/resources/workload-keys.bin");
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        try (OutputStream out = Files.newOutputStream(file)) {
+            generate(count, bits).write(out);
+        }
+        System.out.println("Wrote " + count + " keys of " + bits + " bits to " + file);
+    }
+}